@@ -0,0 +1,721 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A compact, read-only representation of a {@link Cnf}. The clauses are stored as one <code>int</code> array of
+ * DIMACS-style literals plus an array of clause offsets, and the variable names are interned in a table. Instead of
+ * one object per clause and literal, this only needs two buffers, which can be shared by all solvers.
+ * <p>
+ * The same layout is used in files, which are memory-mapped by {@link #map(File)}. Thus, several processes that
+ * analyze the same variability model share one copy of it in the page cache, and loading it needs no parsing. The
+ * file layout is (all numbers are big-endian 32 bit integers):
+ * </p>
+ * <pre>
+ * magic ("UDCN"), version (1)
+ * numVariables, numClauses, numLiterals
+ * clause offsets: numClauses + 1 numbers; clause i consists of the literals from offset[i] to offset[i + 1]
+ * literals: numLiterals numbers; variable numbers start at 1, negative numbers are negated variables
+ * variable names: numVariables times (length in bytes, UTF-8 bytes)
+ * </pre>
+ * <p>
+ * A CNF that was simplified by the {@link CnfPreprocessor} has version 2 and the following additional sections, so
+ * that queries can still use all variables of the original CNF:
+ * </p>
+ * <pre>
+ * substitutions: numVariables + 1 numbers; entry v is the literal that replaces variable v, 0 if it is not replaced
+ * numEliminatedClauses, numEliminatedLiterals
+ * eliminated clause offsets and literals: as for the clauses
+ * eliminated ranges: numVariables + 2 numbers; the clauses removed with pure variable v are the eliminated clauses
+ *      from range[v] to range[v + 1]
+ * </pre>
+ * <p>
+ * Instances are immutable and thread-safe.
+ * </p>
+ * 
+ * @author Adam
+ */
+class BinaryCnf {
+
+    private static final int MAGIC = 0x5544434E;
+
+    private static final int VERSION = 1;
+
+    private static final int PREPROCESSED_VERSION = 2;
+
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+
+    /**
+     * Receives the clauses of {@link BinaryCnf#restoreEliminatedClauses(int, boolean[], ClauseConsumer)}.
+     */
+    interface ClauseConsumer {
+
+        /**
+         * Receives one clause.
+         * 
+         * @param literals The buffer that contains the literals of the clause. Must not be stored, since it is
+         *      re-used.
+         * @param size The number of literals.
+         */
+        void accept(int @NonNull [] literals, int size);
+
+    }
+
+    /**
+     * The complete data in the file layout, for {@link #write(File)}.
+     */
+    private @NonNull ByteBuffer data;
+
+    private @NonNull IntBuffer offsets;
+
+    private @NonNull IntBuffer literals;
+
+    private @NonNull String @NonNull [] names;
+
+    private @NonNull Map<String, Integer> numbers;
+
+    private int maxClauseSize;
+
+    private @Nullable IntBuffer substitutions;
+
+    private @Nullable IntBuffer eliminatedOffsets;
+
+    private @Nullable IntBuffer eliminatedLiterals;
+
+    private @Nullable IntBuffer eliminatedRanges;
+
+    private int maxEliminatedClauseSize;
+
+    /**
+     * Creates a {@link BinaryCnf} from a buffer in the file layout.
+     * 
+     * @param buffer The buffer to read; positioned at the start of the data.
+     * 
+     * @throws FormatException If the buffer does not contain a valid binary CNF.
+     */
+    private BinaryCnf(@NonNull ByteBuffer buffer) throws FormatException {
+        this.data = notNull(buffer.duplicate());
+        if (buffer.remaining() < HEADER_SIZE + Integer.BYTES) {
+            throw new FormatException("Binary CNF too short");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new FormatException("Not a binary CNF");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION && version != PREPROCESSED_VERSION) {
+            throw new FormatException("Unsupported binary CNF version: " + version);
+        }
+
+        int numVariables = buffer.getInt();
+        int numClauses = buffer.getInt();
+        int numLiterals = buffer.getInt();
+        if (numVariables < 0 || numClauses < 0 || numLiterals < 0
+                || buffer.remaining() < ((long) numClauses + 1 + numLiterals) * Integer.BYTES) {
+            throw new FormatException("Invalid binary CNF header");
+        }
+
+        this.offsets = slice(buffer, numClauses + 1);
+        this.literals = slice(buffer, numLiterals);
+
+        this.names = new @NonNull String[numVariables + 1];
+        this.names[0] = "";
+        this.numbers = new HashMap<>(numVariables * 2);
+        try {
+            for (int i = 1; i <= numVariables; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                String name = new String(bytes, StandardCharsets.UTF_8);
+                names[i] = name;
+                numbers.put(name, i);
+            }
+        } catch (RuntimeException e) {
+            throw new FormatException("Invalid variable table in binary CNF: " + e);
+        }
+
+        for (int i = 0; i < numClauses; i++) {
+            int size = offsets.get(i + 1) - offsets.get(i);
+            if (size < 0 || offsets.get(i + 1) > numLiterals) {
+                throw new FormatException("Invalid offset of clause " + i + " in binary CNF");
+            }
+            maxClauseSize = Math.max(maxClauseSize, size);
+        }
+
+        if (version == PREPROCESSED_VERSION) {
+            readPreprocessing(buffer, numVariables);
+        }
+    }
+
+    /**
+     * Reads the additional sections of a preprocessed CNF.
+     * 
+     * @param buffer The buffer to read; positioned after the variable names.
+     * @param numVariables The number of variables.
+     * 
+     * @throws FormatException If the sections are invalid.
+     */
+    private void readPreprocessing(@NonNull ByteBuffer buffer, int numVariables) throws FormatException {
+        IntBuffer substitutions;
+        IntBuffer eliminatedOffsets;
+        IntBuffer eliminatedRanges;
+        int numEliminatedClauses;
+        int numEliminatedLiterals;
+        try {
+            substitutions = slice(buffer, numVariables + 1);
+            numEliminatedClauses = buffer.getInt();
+            numEliminatedLiterals = buffer.getInt();
+            eliminatedOffsets = slice(buffer, numEliminatedClauses + 1);
+            this.eliminatedLiterals = slice(buffer, numEliminatedLiterals);
+            eliminatedRanges = slice(buffer, numVariables + 2);
+        } catch (RuntimeException e) {
+            throw new FormatException("Invalid preprocessing sections in binary CNF: " + e);
+        }
+
+        for (int i = 1; i <= numVariables; i++) {
+            if (Math.abs(substitutions.get(i)) > numVariables) {
+                throw new FormatException("Invalid substitution of variable " + i + " in binary CNF");
+            }
+            if (eliminatedRanges.get(i) > eliminatedRanges.get(i + 1)
+                    || eliminatedRanges.get(i + 1) > numEliminatedClauses) {
+                throw new FormatException("Invalid eliminated clauses of variable " + i + " in binary CNF");
+            }
+        }
+        for (int i = 0; i < numEliminatedClauses; i++) {
+            int size = eliminatedOffsets.get(i + 1) - eliminatedOffsets.get(i);
+            if (size < 0 || eliminatedOffsets.get(i + 1) > numEliminatedLiterals) {
+                throw new FormatException("Invalid offset of eliminated clause " + i + " in binary CNF");
+            }
+            maxEliminatedClauseSize = Math.max(maxEliminatedClauseSize, size);
+        }
+
+        this.substitutions = substitutions;
+        this.eliminatedOffsets = eliminatedOffsets;
+        this.eliminatedRanges = eliminatedRanges;
+    }
+
+    /**
+     * Returns the next <code>count</code> integers of the buffer as an {@link IntBuffer}, and advances the buffer.
+     * 
+     * @param buffer The buffer to read from.
+     * @param count The number of integers.
+     * 
+     * @return A read-only view of the integers.
+     */
+    private static @NonNull IntBuffer slice(@NonNull ByteBuffer buffer, int count) {
+        ByteBuffer part = buffer.slice();
+        part.limit(count * Integer.BYTES);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return notNull(part.asIntBuffer().asReadOnlyBuffer());
+    }
+
+    /**
+     * Creates a heap-based {@link BinaryCnf} from the given {@link Cnf}.
+     * 
+     * @param cnf The CNF to convert.
+     * 
+     * @return The binary representation of the CNF.
+     */
+    static @NonNull BinaryCnf fromCnf(@NonNull Cnf cnf) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(cnf, bytes);
+            return new BinaryCnf(notNull(ByteBuffer.wrap(bytes.toByteArray())));
+        } catch (IOException | FormatException e) {
+            // can't happen for an in-memory stream that we just wrote ourselves
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Creates a heap-based {@link BinaryCnf} from <code>int</code> clauses.
+     * 
+     * @param names The variable names; index 0 is unused.
+     * @param clauses The clauses; each literal is a variable number, negative if negated.
+     * 
+     * @return The binary representation of the CNF.
+     */
+    static @NonNull BinaryCnf fromClauses(@NonNull String @NonNull [] names,
+            @NonNull List<int @NonNull []> clauses) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeHeaderAndClauses(out, VERSION, names.length - 1, clauses);
+            writeNames(out, names);
+            out.flush();
+            return new BinaryCnf(notNull(ByteBuffer.wrap(bytes.toByteArray())));
+        } catch (IOException | FormatException e) {
+            // can't happen for an in-memory stream that we just wrote ourselves
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Creates a heap-based, preprocessed {@link BinaryCnf} from <code>int</code> clauses.
+     * 
+     * @param names The variable names; index 0 is unused.
+     * @param clauses The clauses.
+     * @param substitutions For each variable, the literal that replaces it; 0 if it is not replaced.
+     * @param eliminatedClauses The clauses removed by pure-literal elimination, grouped by their pure variable.
+     * @param eliminatedRanges For each variable v, the clauses removed with it are the eliminated clauses from
+     *      <code>eliminatedRanges[v]</code> to <code>eliminatedRanges[v + 1]</code>.
+     * 
+     * @return The binary representation of the CNF.
+     */
+    static @NonNull BinaryCnf fromClauses(@NonNull String @NonNull [] names, @NonNull List<int @NonNull []> clauses,
+            int @NonNull [] substitutions, @NonNull List<int @NonNull []> eliminatedClauses,
+            int @NonNull [] eliminatedRanges) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeHeaderAndClauses(out, PREPROCESSED_VERSION, names.length - 1, clauses);
+            writeNames(out, names);
+            for (int substitution : substitutions) {
+                out.writeInt(substitution);
+            }
+            out.writeInt(eliminatedClauses.size());
+            out.writeInt(countLiterals(eliminatedClauses));
+            writeClauses(out, eliminatedClauses);
+            for (int start : eliminatedRanges) {
+                out.writeInt(start);
+            }
+            out.flush();
+            return new BinaryCnf(notNull(ByteBuffer.wrap(bytes.toByteArray())));
+        } catch (IOException | FormatException e) {
+            // can't happen for an in-memory stream that we just wrote ourselves
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Memory-maps a file written by {@link #write(Cnf, File)} or {@link #write(File)}. The file is only read; it must
+     * not be modified while it is mapped.
+     * 
+     * @param file The file to map.
+     * 
+     * @return The mapped CNF.
+     * 
+     * @throws IOException If mapping the file fails.
+     * @throws FormatException If the file is not a valid binary CNF.
+     */
+    static @NonNull BinaryCnf map(@NonNull File file) throws IOException, FormatException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new BinaryCnf(notNull(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+        }
+    }
+
+    /**
+     * Writes the given {@link Cnf} in the binary layout to a file.
+     * 
+     * @param cnf The CNF to write.
+     * @param file The file to write to.
+     * 
+     * @throws IOException If writing the file fails.
+     */
+    static void write(@NonNull Cnf cnf, @NonNull File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(cnf, out);
+        }
+    }
+
+    /**
+     * Writes this CNF, including the preprocessing information, in the binary layout to a file, so that it can be
+     * {@link #map(File) mapped} again.
+     * 
+     * @param file The file to write to.
+     * 
+     * @throws IOException If writing the file fails.
+     */
+    void write(@NonNull File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = data.duplicate();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Writes the given {@link Cnf} in the binary layout to a stream.
+     * 
+     * @param cnf The CNF to write.
+     * @param stream The stream to write to; not closed by this method.
+     * 
+     * @throws IOException If writing fails.
+     */
+    private static void write(@NonNull Cnf cnf, @NonNull OutputStream stream) throws IOException {
+        Map<String, Integer> numbers = new HashMap<>();
+        List<int @NonNull []> clauses = new ArrayList<>(cnf.getRowCount());
+        for (int i = 0; i < cnf.getRowCount(); i++) {
+            List<CnfVariable> row = cnf.getRow(i);
+            int[] clause = new int[row.size()];
+            for (int j = 0; j < clause.length; j++) {
+                CnfVariable variable = row.get(j);
+                int number = numbers.computeIfAbsent(variable.getName(), (name) -> numbers.size() + 1);
+                clause[j] = variable.isNegation() ? -number : number;
+            }
+            clauses.add(clause);
+        }
+
+        String[] names = new String[numbers.size() + 1];
+        names[0] = "";
+        for (Map.Entry<String, Integer> entry : numbers.entrySet()) {
+            names[entry.getValue()] = entry.getKey();
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        writeHeaderAndClauses(out, VERSION, numbers.size(), clauses);
+        writeNames(out, names);
+        out.flush();
+    }
+
+    /**
+     * Writes the header, the clause offsets and the literals.
+     * 
+     * @param out The stream to write to.
+     * @param version The version of the layout.
+     * @param numVariables The number of variables.
+     * @param clauses The clauses.
+     * 
+     * @throws IOException If writing fails.
+     */
+    private static void writeHeaderAndClauses(@NonNull DataOutputStream out, int version, int numVariables,
+            @NonNull List<int @NonNull []> clauses) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(version);
+        out.writeInt(numVariables);
+        out.writeInt(clauses.size());
+        out.writeInt(countLiterals(clauses));
+        writeClauses(out, clauses);
+    }
+
+    /**
+     * Counts the literals of the given clauses.
+     * 
+     * @param clauses The clauses.
+     * 
+     * @return The total number of literals.
+     */
+    private static int countLiterals(@NonNull List<int @NonNull []> clauses) {
+        int result = 0;
+        for (int[] clause : clauses) {
+            result += clause.length;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the offsets and literals of the given clauses.
+     * 
+     * @param out The stream to write to.
+     * @param clauses The clauses.
+     * 
+     * @throws IOException If writing fails.
+     */
+    private static void writeClauses(@NonNull DataOutputStream out, @NonNull List<int @NonNull []> clauses)
+            throws IOException {
+        int offset = 0;
+        out.writeInt(offset);
+        for (int[] clause : clauses) {
+            offset += clause.length;
+            out.writeInt(offset);
+        }
+        for (int[] clause : clauses) {
+            for (int literal : clause) {
+                out.writeInt(literal);
+            }
+        }
+    }
+
+    /**
+     * Writes the variable names.
+     * 
+     * @param out The stream to write to.
+     * @param names The variable names; index 0 is unused.
+     * 
+     * @throws IOException If writing fails.
+     */
+    private static void writeNames(@NonNull DataOutputStream out, @NonNull String @NonNull [] names)
+            throws IOException {
+        for (int i = 1; i < names.length; i++) {
+            byte[] bytes = names[i].getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Returns a checksum of the complete data, including the preprocessing information. Two instances with the same
+     * data (e.g. one {@link #map(File) mapped} from a file {@link #write(File) written} by the other) have the same
+     * fingerprint.
+     * 
+     * @return The fingerprint of this CNF.
+     */
+    long getFingerprint() {
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the number of variables. Variables are numbered from 1 to this number.
+     * 
+     * @return The number of variables.
+     */
+    int getNumVariables() {
+        return names.length - 1;
+    }
+
+    /**
+     * Returns the number of clauses.
+     * 
+     * @return The number of clauses.
+     */
+    int getNumClauses() {
+        return offsets.limit() - 1;
+    }
+
+    /**
+     * Returns the number of literals of the largest clause.
+     * 
+     * @return The maximum clause size.
+     */
+    int getMaxClauseSize() {
+        return maxClauseSize;
+    }
+
+    /**
+     * Returns the number of the given variable.
+     * 
+     * @param name The name of the variable.
+     * 
+     * @return The number of the variable, or <code>null</code> if it does not appear in this CNF.
+     */
+    @Nullable Integer getVariableNumber(@NonNull String name) {
+        return numbers.get(name);
+    }
+
+    /**
+     * Returns the name of the given variable.
+     * 
+     * @param number The number of the variable, between 1 and {@link #getNumVariables()}.
+     * 
+     * @return The name of the variable.
+     */
+    @NonNull String getVariableName(int number) {
+        return names[number];
+    }
+
+    /**
+     * Copies the literals of a clause into the given array.
+     * 
+     * @param clause The index of the clause.
+     * @param target The array to copy into; must have space for at least {@link #getMaxClauseSize()} literals.
+     * 
+     * @return The number of literals of the clause.
+     */
+    int getClause(int clause, int @NonNull [] target) {
+        int start = offsets.get(clause);
+        int size = offsets.get(clause + 1) - start;
+        for (int i = 0; i < size; i++) {
+            target[i] = literals.get(start + i);
+        }
+        return size;
+    }
+
+    /**
+     * Returns whether this CNF was simplified by the {@link CnfPreprocessor}.
+     * 
+     * @return Whether this CNF is preprocessed.
+     */
+    boolean isPreprocessed() {
+        return substitutions != null;
+    }
+
+    /**
+     * Returns the literal that represents the given variable in the clauses. This is the variable itself, unless the
+     * preprocessing replaced it by an equivalent literal.
+     * 
+     * @param variable The number of the variable, between 1 and {@link #getNumVariables()}.
+     * 
+     * @return The literal of the variable.
+     */
+    int getLiteral(int variable) {
+        IntBuffer substitutions = this.substitutions;
+        int result = variable;
+        if (substitutions != null && substitutions.get(variable) != 0) {
+            result = substitutions.get(variable);
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the preprocessing removed clauses by pure-literal elimination. If so, queries must call
+     * {@link #restoreEliminatedClauses(int, boolean[], ClauseConsumer)} for their variables.
+     * 
+     * @return Whether there are eliminated clauses.
+     */
+    boolean hasEliminatedClauses() {
+        IntBuffer eliminatedOffsets = this.eliminatedOffsets;
+        return eliminatedOffsets != null && eliminatedOffsets.limit() > 1;
+    }
+
+    /**
+     * Passes the eliminated clauses that a query needs, because it contains the given variable, to the consumer.
+     * Pure-literal elimination only preserves satisfiability for queries without the pure variable, so these are the
+     * clauses removed with the variable, and recursively those of all eliminated variables that occur in them. The
+     * clauses are part of the original CNF, so they can be added permanently; each clause is passed at most once for
+     * the same marks.
+     * 
+     * @param variable The variable that occurs in the query, as returned by {@link #getLiteral(int)}.
+     * @param marks For each variable, whether its clauses were already restored; updated by this method. Must have
+     *      {@link #getNumVariables()} + 1 entries.
+     * @param consumer The consumer for the clauses.
+     */
+    void restoreEliminatedClauses(int variable, boolean @NonNull [] marks, @NonNull ClauseConsumer consumer) {
+
+        IntBuffer ranges = this.eliminatedRanges;
+        if (ranges == null || marks[variable]) {
+            return;
+        }
+        marks[variable] = true;
+        if (ranges.get(variable) == ranges.get(variable + 1)) {
+            return;
+        }
+
+        int[] clause = new int[maxEliminatedClauseSize];
+        int[] pending = new int[16];
+        int numPending = 0;
+        pending[numPending++] = variable;
+        while (numPending > 0) {
+            int current = pending[--numPending];
+            for (int i = ranges.get(current); i < ranges.get(current + 1); i++) {
+                int size = getEliminatedClause(i, clause);
+                for (int j = 0; j < size; j++) {
+                    int other = Math.abs(clause[j]);
+                    if (!marks[other]) {
+                        marks[other] = true;
+                        if (ranges.get(other) != ranges.get(other + 1)) {
+                            if (numPending == pending.length) {
+                                pending = Arrays.copyOf(pending, numPending * 2);
+                            }
+                            pending[numPending++] = other;
+                        }
+                    }
+                }
+                consumer.accept(clause, size);
+            }
+        }
+    }
+
+    /**
+     * Copies the literals of an eliminated clause into the given array.
+     * 
+     * @param clause The index of the eliminated clause.
+     * @param target The array to copy into.
+     * 
+     * @return The number of literals of the clause.
+     */
+    private int getEliminatedClause(int clause, int @NonNull [] target) {
+        IntBuffer offsets = notNull(eliminatedOffsets);
+        IntBuffer literals = notNull(eliminatedLiterals);
+        int start = offsets.get(clause);
+        int size = offsets.get(clause + 1) - start;
+        for (int i = 0; i < size; i++) {
+            target[i] = literals.get(start + i);
+        }
+        return size;
+    }
+
+    /**
+     * Converts this back to a {@link Cnf}. This creates the object graph that this class avoids, so it should only
+     * be used for components that require a {@link Cnf}. For a preprocessed CNF, the result also contains the
+     * eliminated clauses and the equivalences of the substituted variables, so that it is equivalent to the original
+     * CNF.
+     * 
+     * @return The CNF.
+     */
+    @NonNull Cnf toCnf() {
+        Cnf result = new Cnf();
+        int[] clause = new int[Math.max(maxClauseSize, maxEliminatedClauseSize)];
+        for (int i = 0; i < getNumClauses(); i++) {
+            int size = getClause(i, clause);
+            addRow(result, clause, size);
+        }
+
+        IntBuffer substitutions = this.substitutions;
+        IntBuffer eliminatedOffsets = this.eliminatedOffsets;
+        if (substitutions != null && eliminatedOffsets != null) {
+            for (int i = 0; i < eliminatedOffsets.limit() - 1; i++) {
+                int size = getEliminatedClause(i, clause);
+                addRow(result, clause, size);
+            }
+            for (int variable = 1; variable <= getNumVariables(); variable++) {
+                int substitution = substitutions.get(variable);
+                if (substitution != 0) {
+                    addRow(result, new int[] {-variable, substitution}, 2);
+                    addRow(result, new int[] {variable, -substitution}, 2);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds an <code>int</code> clause as a row to a {@link Cnf}.
+     * 
+     * @param cnf The CNF to add to.
+     * @param clause The literals of the clause.
+     * @param size The number of literals.
+     */
+    private void addRow(@NonNull Cnf cnf, int @NonNull [] clause, int size) {
+        CnfVariable[] row = new CnfVariable[size];
+        for (int j = 0; j < size; j++) {
+            row[j] = new CnfVariable(clause[j] < 0, names[Math.abs(clause[j])]);
+        }
+        cnf.addRow(row);
+    }
+
+}
@@ -0,0 +1,600 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DeadCodeBlock;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DetailedDeadCodeBlock;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.Reason;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Stores the completed files of a dead code analysis, together with the {@link DeadCodeBlock}s found in them, in a
+ * checkpoint file. A restarted analysis can use this to skip the files that are already done.
+ * <p>
+ * {@link #record(File, List)} only adds to a queue; a background thread appends the queued files to the checkpoint
+ * file periodically, so that the analysis threads are never blocked by file I/O. Each file is written as one record
+ * that ends with an <code>END</code> line; incomplete records at the end of the checkpoint file (e.g. from a crash
+ * while writing) are ignored when reading, and cut off before new records are appended.
+ * </p>
+ * 
+ * @author Adam
+ */
+class CheckpointStore {
+
+    static final @NonNull String CHECKPOINT_FILE_NAME = "undead_checkpoint.txt";
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    private static final @NonNull String HEADER = "UNDEAD_CHECKPOINT 1";
+
+    private @NonNull File checkpointFile;
+
+    private @NonNull String configuration;
+
+    private @NonNull Map<String, List<@NonNull DeadCodeBlock>> completed;
+
+    /**
+     * The number of bytes of the existing checkpoint file up to the end of the last complete record.
+     */
+    private long completeLength;
+
+    private @NonNull ConcurrentLinkedQueue<@NonNull Record> pending;
+
+    private @Nullable Writer writer;
+
+    private @Nullable ScheduledExecutorService flusher;
+
+    /**
+     * A completed file that still has to be written to the checkpoint file.
+     */
+    private static class Record {
+
+        private @NonNull File file;
+
+        private @NonNull List<@NonNull DeadCodeBlock> blocks;
+
+        /**
+         * Creates a record.
+         * 
+         * @param file The completed file.
+         * @param blocks The dead code blocks found in the file.
+         */
+        Record(@NonNull File file, @NonNull List<@NonNull DeadCodeBlock> blocks) {
+            this.file = file;
+            this.blocks = blocks;
+        }
+
+    }
+
+    /**
+     * Creates a checkpoint store in the given directory. Previously completed files are read from an existing
+     * checkpoint file, if it was created with the same configuration.
+     * 
+     * @param directory The directory to store the checkpoint file in. Created if it does not exist.
+     * @param configuration A description of the analysis configuration; results from a checkpoint with a different
+     *      configuration are not re-used.
+     * 
+     * @throws IOException If reading the existing checkpoint file fails.
+     */
+    CheckpointStore(@NonNull File directory, @NonNull String configuration) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create checkpoint directory " + directory);
+        }
+
+        this.checkpointFile = new File(directory, CHECKPOINT_FILE_NAME);
+        this.configuration = configuration;
+        this.completed = new HashMap<>();
+        this.pending = new ConcurrentLinkedQueue<>();
+
+        if (checkpointFile.isFile()) {
+            readCheckpoint();
+        }
+    }
+
+    /**
+     * Creates the configuration description of a dead code analysis with the given settings and models, for use with
+     * {@link #CheckpointStore(File, String)}. The fingerprints make sure that results are not re-used after one of
+     * the models changed.
+     * 
+     * @param detailedAnalysis Whether a detailed analysis is done.
+     * @param findUndead Whether undead blocks are searched, too.
+     * @param considerVmVarsOnly Whether only blocks with variables of the variability model are considered.
+     * @param vmFingerprint The fingerprint of the variability model CNF, see
+     *      {@link DeadCodeContext#getVmFingerprint()}.
+     * @param bmFingerprint The fingerprint of the build model, see {@link #fingerprint(BuildModel)}.
+     * 
+     * @return The configuration description.
+     */
+    static @NonNull String describeConfiguration(boolean detailedAnalysis, boolean findUndead,
+            boolean considerVmVarsOnly, long vmFingerprint, long bmFingerprint) {
+        return "detailed=" + detailedAnalysis + (findUndead ? " undead=true" : "") + " vmVarsOnly="
+                + considerVmVarsOnly + " vm=" + Long.toHexString(vmFingerprint) + " bm="
+                + Long.toHexString(bmFingerprint);
+    }
+
+    /**
+     * Creates a fingerprint of all presence conditions of the given build model. This is the sum of
+     * {@link #fingerprint(File, Formula)} for all files, so it does not depend on the order of the files.
+     * 
+     * @param bm The build model.
+     * 
+     * @return The fingerprint of the build model.
+     */
+    static long fingerprint(@NonNull BuildModel bm) {
+        long result = 0;
+        for (File file : bm) {
+            Formula pc = bm.getPc(notNull(file));
+            if (pc != null) {
+                result += fingerprint(notNull(file), pc);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a fingerprint of a single presence condition of a build model.
+     * 
+     * @param file The source file.
+     * @param pc The presence condition of the file.
+     * 
+     * @return The fingerprint of the entry.
+     */
+    static long fingerprint(@NonNull File file, @NonNull Formula pc) {
+        CRC32 crc = new CRC32();
+        crc.update((encode(file.getPath()) + "\t" + serializeFormula(pc)).getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * Reads the completed files from the existing checkpoint file.
+     * 
+     * @throws IOException If reading the file fails.
+     */
+    private void readCheckpoint() throws IOException {
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(checkpointFile), StandardCharsets.UTF_8))) {
+
+            String header = in.readLine();
+            if (!(HEADER + " " + configuration).equals(header)) {
+                LOGGER.logWarning("Ignoring checkpoint " + checkpointFile + " since it was created with a "
+                        + "different configuration");
+                return;
+            }
+            // all lines are written with a single \n
+            long offset = header.getBytes(StandardCharsets.UTF_8).length + 1;
+            completeLength = offset;
+
+            String line;
+            File currentFile = null;
+            List<@NonNull DeadCodeBlock> currentBlocks = null;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                try {
+                    if (parts[0].equals("FILE") && parts.length == 2) {
+                        currentFile = new File(decode(notNull(parts[1])));
+                        currentBlocks = new ArrayList<>();
+                    } else if (parts[0].equals("BLOCK") && parts.length == 7 && currentBlocks != null) {
+                        currentBlocks.add(parseBlock(parts));
+                    } else if (parts[0].equals("END") && currentFile != null && currentBlocks != null) {
+                        completed.put(currentFile.getPath(), currentBlocks);
+                        currentFile = null;
+                        currentBlocks = null;
+                        completeLength = offset + line.getBytes(StandardCharsets.UTF_8).length + 1;
+                    } else {
+                        throw new FormatException("Unexpected line: " + line);
+                    }
+                } catch (FormatException | IllegalArgumentException e) {
+                    // only the last record can be damaged, since the file is only appended to
+                    LOGGER.logWarning("Ignoring damaged end of checkpoint " + checkpointFile + ": " + e.getMessage());
+                    break;
+                }
+                offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            }
+        }
+
+        LOGGER.logInfo("Read " + completed.size() + " completed files from checkpoint " + checkpointFile);
+    }
+
+    /**
+     * Parses a <code>BLOCK</code> line.
+     * 
+     * @param parts The tab-separated parts of the line.
+     * 
+     * @return The parsed block.
+     * 
+     * @throws FormatException If the line is malformed.
+     */
+    private static @NonNull DeadCodeBlock parseBlock(@NonNull String @NonNull [] parts) throws FormatException {
+        File sourceFile = new File(decode(notNull(parts[1])));
+        int startLine = Integer.parseInt(parts[2]);
+        int endLine = Integer.parseInt(parts[3]);
+        Formula filePc = parts[4].isEmpty() ? null : parseFormula(notNull(parts[4]));
+        Formula pc = parts[5].isEmpty() ? null : parseFormula(notNull(parts[5]));
+
+        DeadCodeBlock block;
+        if (parts[6].isEmpty()) {
+            block = new DeadCodeBlock(sourceFile, startLine, endLine, filePc, pc);
+        } else {
+            block = new DetailedDeadCodeBlock(sourceFile, startLine, endLine, filePc, pc,
+                    notNull(Reason.valueOf(parts[6])));
+        }
+        return block;
+    }
+
+    /**
+     * Returns the number of files that were read as completed from an earlier checkpoint.
+     * 
+     * @return The number of completed files.
+     */
+    int getNumCompleted() {
+        return completed.size();
+    }
+
+    /**
+     * Returns the dead code blocks of a file that was completed in an earlier run.
+     * 
+     * @param file The path of the source file.
+     * 
+     * @return The dead code blocks of the file, or <code>null</code> if the file was not completed yet.
+     */
+    @Nullable List<@NonNull DeadCodeBlock> getCompleted(@NonNull File file) {
+        return completed.get(file.getPath());
+    }
+
+    /**
+     * Starts writing records to the checkpoint file in the background.
+     * 
+     * @param intervalSeconds The interval between two writes to the checkpoint file.
+     * 
+     * @throws IOException If opening the checkpoint file fails.
+     */
+    void start(int intervalSeconds) throws IOException {
+        boolean append = !completed.isEmpty();
+        if (append) {
+            cutDamagedTail();
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(checkpointFile, append), StandardCharsets.UTF_8);
+        if (!append) {
+            writer.write(HEADER + " " + configuration + "\n");
+            writer.flush();
+        }
+        this.writer = writer;
+
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "CheckpointWriter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        this.flusher = flusher;
+    }
+
+    /**
+     * Cuts off everything after the last complete record of the existing checkpoint file, so that new records are not
+     * appended to a damaged one (which would hide them from {@link #readCheckpoint()}).
+     * 
+     * @throws IOException If truncating the file fails.
+     */
+    private void cutDamagedTail() throws IOException {
+        try (FileChannel channel = FileChannel.open(checkpointFile.toPath(), StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size > completeLength) {
+                LOGGER.logInfo("Cutting off " + (size - completeLength) + " bytes of damaged records at the end of "
+                        + "checkpoint " + checkpointFile);
+                channel.truncate(completeLength);
+
+            } else if (size < completeLength) {
+                // the final \n of the last END line is missing
+                channel.write(notNull(ByteBuffer.wrap(new byte[] {'\n'})), size);
+            }
+        }
+    }
+
+    /**
+     * Records a completed file. This only adds the file to a queue and never blocks.
+     * 
+     * @param file The path of the completed source file.
+     * @param blocks The dead code blocks found in the file.
+     */
+    void record(@NonNull File file, @NonNull List<@NonNull DeadCodeBlock> blocks) {
+        pending.add(new Record(file, blocks));
+    }
+
+    /**
+     * Writes all pending records to the checkpoint file.
+     */
+    private synchronized void flush() {
+        Writer writer = this.writer;
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            Record record;
+            while ((record = pending.poll()) != null) {
+                StringBuilder text = new StringBuilder();
+                text.append("FILE\t").append(encode(record.file.getPath())).append('\n');
+                for (DeadCodeBlock block : record.blocks) {
+                    text.append("BLOCK\t").append(encode(block.getSourceFile().getPath()))
+                        .append('\t').append(block.getStartLine())
+                        .append('\t').append(block.getEndLine())
+                        .append('\t').append(serializeFormula(block.getFilePc()))
+                        .append('\t').append(serializeFormula(block.getPresenceCondition()))
+                        .append('\t');
+                    if (block instanceof DetailedDeadCodeBlock) {
+                        text.append(((DetailedDeadCodeBlock) block).getReason().name());
+                    }
+                    text.append('\n');
+                }
+                text.append("END\n");
+                writer.write(text.toString());
+            }
+            writer.flush();
+        } catch (IOException e) {
+            LOGGER.logException("Can't write checkpoint " + checkpointFile, e);
+        }
+    }
+
+    /**
+     * Writes all pending records and stops the background thread.
+     * 
+     * @param delete Whether the checkpoint file should be deleted, because the analysis is complete.
+     */
+    void close(boolean delete) {
+        ScheduledExecutorService flusher = this.flusher;
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        flush();
+
+        synchronized (this) {
+            Writer writer = this.writer;
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    LOGGER.logException("Can't close checkpoint " + checkpointFile, e);
+                }
+                this.writer = null;
+            }
+        }
+
+        if (delete && !checkpointFile.delete()) {
+            LOGGER.logWarning("Can't delete checkpoint " + checkpointFile);
+        }
+    }
+
+    /**
+     * Encodes a string so that it contains no tabs or line breaks.
+     * 
+     * @param text The string to encode.
+     * 
+     * @return The encoded string.
+     */
+    static @NonNull String encode(@NonNull String text) {
+        try {
+            return notNull(URLEncoder.encode(text, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError("UTF-8 is always supported", e);
+        }
+    }
+
+    /**
+     * Decodes a string encoded with {@link #encode(String)}.
+     * 
+     * @param text The encoded string.
+     * 
+     * @return The decoded string.
+     */
+    static @NonNull String decode(@NonNull String text) {
+        try {
+            return notNull(URLDecoder.decode(text, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError("UTF-8 is always supported", e);
+        }
+    }
+
+    /**
+     * Serializes a formula in a prefix notation that can be parsed again without loss:
+     * <code>1</code>, <code>0</code>, <code>!(a)</code>, <code>&amp;(a,b)</code>, <code>|(a,b)</code> and
+     * <code>:name</code> for variables (with encoded names).
+     * 
+     * @param formula The formula to serialize; may be <code>null</code>.
+     * 
+     * @return The serialized formula; an empty string for <code>null</code>.
+     */
+    static @NonNull String serializeFormula(@Nullable Formula formula) {
+        StringBuilder result = new StringBuilder();
+        if (formula != null) {
+            serializeFormula(formula, result);
+        }
+        return notNull(result.toString());
+    }
+
+    /**
+     * Serializes a formula into the given string builder.
+     * 
+     * @param formula The formula to serialize.
+     * @param result The string builder to append to.
+     */
+    private static void serializeFormula(@NonNull Formula formula, @NonNull StringBuilder result) {
+        if (formula instanceof True) {
+            result.append('1');
+        } else if (formula instanceof False) {
+            result.append('0');
+        } else if (formula instanceof Variable) {
+            result.append(':').append(encode(((Variable) formula).getName()));
+        } else if (formula instanceof Negation) {
+            result.append("!(");
+            serializeFormula(((Negation) formula).getFormula(), result);
+            result.append(')');
+        } else if (formula instanceof Conjunction) {
+            result.append("&(");
+            serializeFormula(((Conjunction) formula).getLeft(), result);
+            result.append(',');
+            serializeFormula(((Conjunction) formula).getRight(), result);
+            result.append(')');
+        } else if (formula instanceof Disjunction) {
+            result.append("|(");
+            serializeFormula(((Disjunction) formula).getLeft(), result);
+            result.append(',');
+            serializeFormula(((Disjunction) formula).getRight(), result);
+            result.append(')');
+        } else {
+            throw new IllegalArgumentException("Unknown formula type: " + formula.getClass().getName());
+        }
+    }
+
+    /**
+     * Parses a formula serialized with {@link #serializeFormula(Formula)}.
+     * 
+     * @param text The serialized formula.
+     * 
+     * @return The parsed formula.
+     * 
+     * @throws FormatException If the text is not a valid serialized formula.
+     */
+    static @NonNull Formula parseFormula(@NonNull String text) throws FormatException {
+        int[] position = {0};
+        Formula result = parseFormula(text, position);
+        if (position[0] != text.length()) {
+            throw new FormatException("Unexpected trailing characters in formula: " + text);
+        }
+        return result;
+    }
+
+    /**
+     * Parses a formula starting at the given position.
+     * 
+     * @param text The serialized formula.
+     * @param position The current position; a single-element array that is advanced while parsing.
+     * 
+     * @return The parsed (sub-)formula.
+     * 
+     * @throws FormatException If the text is not a valid serialized formula.
+     */
+    private static @NonNull Formula parseFormula(@NonNull String text, int @NonNull [] position)
+            throws FormatException {
+
+        if (position[0] >= text.length()) {
+            throw new FormatException("Unexpected end of formula: " + text);
+        }
+
+        Formula result;
+        char type = text.charAt(position[0]++);
+        switch (type) {
+        case '1':
+            result = True.INSTANCE;
+            break;
+
+        case '0':
+            result = False.INSTANCE;
+            break;
+
+        case ':':
+            int end = position[0];
+            while (end < text.length() && text.charAt(end) != ',' && text.charAt(end) != ')') {
+                end++;
+            }
+            result = new Variable(decode(notNull(text.substring(position[0], end))));
+            position[0] = end;
+            break;
+
+        case '!':
+            expect(text, position, '(');
+            result = new Negation(parseFormula(text, position));
+            expect(text, position, ')');
+            break;
+
+        case '&':
+        case '|':
+            expect(text, position, '(');
+            Formula left = parseFormula(text, position);
+            expect(text, position, ',');
+            Formula right = parseFormula(text, position);
+            expect(text, position, ')');
+            result = type == '&' ? new Conjunction(left, right) : new Disjunction(left, right);
+            break;
+
+        default:
+            throw new FormatException("Unexpected character '" + type + "' in formula: " + text);
+        }
+
+        return result;
+    }
+
+    /**
+     * Consumes the expected character.
+     * 
+     * @param text The serialized formula.
+     * @param position The current position; advanced by one.
+     * @param expected The expected character.
+     * 
+     * @throws FormatException If the character at the current position is not the expected one.
+     */
+    private static void expect(@NonNull String text, int @NonNull [] position, char expected)
+            throws FormatException {
+        if (position[0] >= text.length() || text.charAt(position[0]) != expected) {
+            throw new FormatException("Expected '" + expected + "' at position " + position[0] + " in: " + text);
+        }
+        position[0]++;
+    }
+
+}
@@ -0,0 +1,775 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Simplifies the CNF of the variability model once, before any solver is loaded with it. The following techniques
+ * are applied in rounds until nothing changes anymore:
+ * <ul>
+ *     <li>Unit propagation: assigned variables are removed from all clauses and kept as unit clauses.</li>
+ *     <li>Equivalent-literal substitution: literals in the same strongly connected component of the binary
+ *         implication graph are replaced by one representative.</li>
+ *     <li>Subsumption and self-subsuming resolution: clauses that contain another clause are removed, and clauses
+ *         that can be shortened by resolution with another clause are strengthened. The candidates are searched in
+ *         parallel and applied afterwards.</li>
+ * </ul>
+ * Finally, variables that occur only in one polarity are eliminated together with their clauses.
+ * <p>
+ * The result keeps the variable numbers and names of the input. Since presence conditions may still use the
+ * substituted and eliminated variables, it also records which literal replaces each variable and which clauses were
+ * eliminated for each pure variable (see {@link BinaryCnf#getLiteral(int)} and
+ * {@link BinaryCnf#restoreEliminatedClauses(int, boolean[], BinaryCnf.ClauseConsumer)}). Queries with the result are
+ * thus satisfiable iff they are satisfiable with the input.
+ * </p>
+ * 
+ * @author Adam
+ */
+final class CnfPreprocessor {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * The maximum number of rounds of unit propagation, substitution and subsumption.
+     */
+    private static final int MAX_ROUNDS = 8;
+
+    /**
+     * The number of clauses that one parallel subsumption task checks.
+     */
+    private static final int CHUNK_SIZE = 2048;
+
+    /**
+     * Clauses with more candidates than this are not used to subsume or strengthen other clauses, to bound the
+     * effort for very common literals.
+     */
+    private static final int MAX_CANDIDATES = 10000;
+
+    private int numVariables;
+
+    private @NonNull String @NonNull [] names;
+
+    /**
+     * The current clauses; sorted and without duplicate literals. Removed clauses are <code>null</code>.
+     */
+    private @NonNull List<int @Nullable []> clauses;
+
+    /**
+     * The value of each variable assigned by unit propagation: 1 for true, -1 for false, 0 if not assigned.
+     */
+    private int @NonNull [] values;
+
+    /**
+     * The literal that replaces each variable; 0 if it is not replaced.
+     */
+    private int @NonNull [] substitutions;
+
+    private boolean unsat;
+
+    private int numThreads;
+
+    private int numUnits;
+
+    private int numSubstituted;
+
+    private int numSubsumed;
+
+    private int numStrengthened;
+
+    private int numPure;
+
+    /**
+     * Creates a preprocessor for the given CNF.
+     * 
+     * @param cnf The CNF to simplify.
+     * @param numThreads The number of threads for the subsumption checks.
+     */
+    private CnfPreprocessor(@NonNull BinaryCnf cnf, int numThreads) {
+        this.numVariables = cnf.getNumVariables();
+        this.numThreads = Math.max(numThreads, 1);
+        this.names = new @NonNull String[numVariables + 1];
+        names[0] = "";
+        for (int i = 1; i <= numVariables; i++) {
+            names[i] = cnf.getVariableName(i);
+        }
+        this.values = new int[numVariables + 1];
+        this.substitutions = new int[numVariables + 1];
+
+        this.clauses = new ArrayList<>(cnf.getNumClauses());
+        int[] literals = new int[cnf.getMaxClauseSize()];
+        for (int i = 0; i < cnf.getNumClauses(); i++) {
+            int[] clause = normalize(Arrays.copyOf(literals, cnf.getClause(i, literals)));
+            if (clause != null) {
+                if (clause.length == 0) {
+                    unsat = true;
+                }
+                clauses.add(clause);
+            }
+        }
+    }
+
+    /**
+     * Simplifies the given CNF. If it is already preprocessed, it is returned as it is.
+     * 
+     * @param cnf The CNF to simplify.
+     * @param numThreads The number of threads for the subsumption checks.
+     * 
+     * @return The simplified CNF; equivalent to the input for all queries.
+     */
+    static @NonNull BinaryCnf preprocess(@NonNull BinaryCnf cnf, int numThreads) {
+        BinaryCnf result = cnf;
+        if (!cnf.isPreprocessed()) {
+            result = new CnfPreprocessor(cnf, numThreads).run();
+        }
+        return result;
+    }
+
+    /**
+     * Runs all simplifications.
+     * 
+     * @return The simplified CNF.
+     */
+    private @NonNull BinaryCnf run() {
+        long start = System.currentTimeMillis();
+        int originalClauses = clauses.size();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, (runnable) -> {
+            Thread thread = new Thread(runnable, "CnfPreprocessor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            boolean changed = true;
+            for (int round = 0; round < MAX_ROUNDS && changed && !unsat; round++) {
+                changed = propagateUnits();
+                if (!unsat) {
+                    changed |= substituteEquivalentLiterals();
+                }
+                if (!unsat) {
+                    changed |= removeSubsumed(executor);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!unsat) {
+            // the last strengthening may have created new units
+            propagateUnits();
+        }
+
+        BinaryCnf result = unsat ? createUnsat() : createResult();
+        LOGGER.logInfo("Preprocessed variability model in " + (System.currentTimeMillis() - start) + " ms: "
+                + originalClauses + " -> " + result.getNumClauses() + " clauses" + (unsat ? " (unsatisfiable)" : "")
+                + "; units: " + numUnits + ", substituted variables: " + numSubstituted + ", subsumed clauses: "
+                + numSubsumed + ", strengthened clauses: " + numStrengthened + ", pure variables: " + numPure);
+        return result;
+    }
+
+    /**
+     * Sorts a clause and removes duplicate literals.
+     * 
+     * @param clause The clause; modified by this method.
+     * 
+     * @return The normalized clause; <code>null</code> if it is a tautology.
+     */
+    private static int @Nullable [] normalize(int @NonNull [] clause) {
+        Arrays.sort(clause);
+        int size = 0;
+        for (int i = 0; i < clause.length; i++) {
+            if (clause[i] < 0 && Arrays.binarySearch(clause, -clause[i]) >= 0) {
+                return null;
+            }
+            if (size == 0 || clause[size - 1] != clause[i]) {
+                clause[size++] = clause[i];
+            }
+        }
+        return size == clause.length ? clause : Arrays.copyOf(clause, size);
+    }
+
+    /**
+     * Returns the index of a literal in occurrence lists and the implication graph.
+     * 
+     * @param literal The literal.
+     * 
+     * @return The index; between 2 and 2 * {@link #numVariables} + 1.
+     */
+    private static int index(int literal) {
+        return literal > 0 ? 2 * literal : -2 * literal + 1;
+    }
+
+    /**
+     * Returns the literal for an index of {@link #index(int)}.
+     * 
+     * @param index The index.
+     * 
+     * @return The literal.
+     */
+    private static int literal(int index) {
+        return (index & 1) == 0 ? index / 2 : -(index / 2);
+    }
+
+    /**
+     * Lists, for each literal, the current clauses that contain it.
+     * 
+     * @return The clause indices for each {@link #index(int) literal index}.
+     */
+    private int @NonNull [] @NonNull [] buildOccurrences() {
+        int[] counts = new int[2 * numVariables + 2];
+        for (int[] clause : clauses) {
+            if (clause != null) {
+                for (int literal : clause) {
+                    counts[index(literal)]++;
+                }
+            }
+        }
+        int[][] result = new int[counts.length][];
+        for (int i = 0; i < counts.length; i++) {
+            result[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (int c = 0; c < clauses.size(); c++) {
+            int[] clause = clauses.get(c);
+            if (clause != null) {
+                for (int literal : clause) {
+                    int index = index(literal);
+                    result[index][counts[index]++] = c;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Propagates all unit clauses. Satisfied clauses and the unit clauses themselves are removed; the assigned
+     * values are kept in {@link #values}.
+     * 
+     * @return Whether any variable was assigned.
+     */
+    private boolean propagateUnits() {
+        int[][] occurrences = buildOccurrences();
+        int[] queue = new int[numVariables];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < clauses.size() && !unsat; c++) {
+            int[] clause = clauses.get(c);
+            if (clause != null && clause.length == 1) {
+                clauses.set(c, null);
+                tail = assign(clause[0], queue, tail);
+            }
+        }
+
+        while (head < tail && !unsat) {
+            int literal = queue[head++];
+            for (int c : occurrences[index(literal)]) {
+                clauses.set(c, null);
+            }
+            for (int c : occurrences[index(-literal)]) {
+                int[] clause = clauses.get(c);
+                if (clause == null) {
+                    continue;
+                }
+                int[] reduced = new int[clause.length];
+                int size = 0;
+                boolean satisfied = false;
+                for (int other : clause) {
+                    int value = values[Math.abs(other)] * Integer.signum(other);
+                    satisfied |= value > 0;
+                    if (value == 0) {
+                        reduced[size++] = other;
+                    }
+                }
+
+                if (satisfied) {
+                    clauses.set(c, null);
+                } else if (size == 0) {
+                    unsat = true;
+                } else if (size == 1) {
+                    clauses.set(c, null);
+                    tail = assign(reduced[0], queue, tail);
+                } else {
+                    clauses.set(c, Arrays.copyOf(reduced, size));
+                }
+            }
+        }
+        return tail > 0;
+    }
+
+    /**
+     * Assigns a literal to true, and adds it to the propagation queue.
+     * 
+     * @param literal The literal.
+     * @param queue The propagation queue.
+     * @param tail The current end of the queue.
+     * 
+     * @return The new end of the queue.
+     */
+    private int assign(int literal, int @NonNull [] queue, int tail) {
+        int variable = Math.abs(literal);
+        int value = Integer.signum(literal);
+        int result = tail;
+        if (values[variable] == 0) {
+            values[variable] = value;
+            queue[result++] = literal;
+            numUnits++;
+        } else if (values[variable] != value) {
+            unsat = true;
+        }
+        return result;
+    }
+
+    /**
+     * Finds equivalent literals as the strongly connected components of the binary implication graph, and replaces
+     * each by the literal with the smallest variable number in its component.
+     * 
+     * @return Whether any variable was replaced.
+     */
+    private boolean substituteEquivalentLiterals() {
+        int numNodes = 2 * numVariables + 2;
+        int[] counts = new int[numNodes];
+        for (int[] clause : clauses) {
+            if (clause != null && clause.length == 2) {
+                counts[index(-clause[0])]++;
+                counts[index(-clause[1])]++;
+            }
+        }
+        int[][] edges = new int[numNodes][];
+        for (int i = 0; i < numNodes; i++) {
+            edges[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (int[] clause : clauses) {
+            if (clause != null && clause.length == 2) {
+                int from = index(-clause[0]);
+                edges[from][counts[from]++] = index(clause[1]);
+                from = index(-clause[1]);
+                edges[from][counts[from]++] = index(clause[0]);
+            }
+        }
+
+        int[] component = findComponents(edges);
+
+        int[] representatives = new int[numNodes];
+        for (int node = 2; node < numNodes; node++) {
+            int literal = literal(node);
+            int current = representatives[component[node]];
+            if (current == 0 || Math.abs(literal) < Math.abs(current)) {
+                representatives[component[node]] = literal;
+            }
+        }
+
+        boolean changed = false;
+        for (int variable = 1; variable <= numVariables; variable++) {
+            if (component[index(variable)] == component[index(-variable)]) {
+                unsat = true;
+                return false;
+            }
+            int representative = representatives[component[index(variable)]];
+            if (representative != variable) {
+                substitutions[variable] = representative;
+                numSubstituted++;
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            for (int c = 0; c < clauses.size(); c++) {
+                int[] clause = clauses.get(c);
+                if (clause != null) {
+                    for (int i = 0; i < clause.length; i++) {
+                        int substitution = substitutions[Math.abs(clause[i])];
+                        if (substitution != 0) {
+                            clause[i] = clause[i] > 0 ? substitution : -substitution;
+                        }
+                    }
+                    clauses.set(c, normalize(clause));
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Computes the strongly connected components of a graph with Tarjan's algorithm, iteratively so that long
+     * implication chains don't overflow the stack.
+     * 
+     * @param edges The successors of each node.
+     * 
+     * @return The component number of each node.
+     */
+    private static int @NonNull [] findComponents(int @NonNull [] @NonNull [] edges) {
+        int numNodes = edges.length;
+        int[] order = new int[numNodes];
+        int[] low = new int[numNodes];
+        int[] component = new int[numNodes];
+        Arrays.fill(component, -1);
+        int[] stack = new int[numNodes];
+        int stackSize = 0;
+        int[] callNode = new int[numNodes];
+        int[] callEdge = new int[numNodes];
+        int counter = 0;
+        int numComponents = 0;
+
+        for (int root = 0; root < numNodes; root++) {
+            if (order[root] != 0) {
+                continue;
+            }
+            order[root] = ++counter;
+            low[root] = order[root];
+            stack[stackSize++] = root;
+            callNode[0] = root;
+            callEdge[0] = 0;
+            int depth = 1;
+
+            while (depth > 0) {
+                int node = callNode[depth - 1];
+                int edge = callEdge[depth - 1];
+                if (edge < edges[node].length) {
+                    callEdge[depth - 1]++;
+                    int next = edges[node][edge];
+                    if (order[next] == 0) {
+                        order[next] = ++counter;
+                        low[next] = order[next];
+                        stack[stackSize++] = next;
+                        callNode[depth] = next;
+                        callEdge[depth] = 0;
+                        depth++;
+                    } else if (component[next] == -1) {
+                        // still on the stack
+                        low[node] = Math.min(low[node], order[next]);
+                    }
+
+                } else {
+                    depth--;
+                    if (depth > 0) {
+                        int parent = callNode[depth - 1];
+                        low[parent] = Math.min(low[parent], low[node]);
+                    }
+                    if (low[node] == order[node]) {
+                        int member;
+                        do {
+                            member = stack[--stackSize];
+                            component[member] = numComponents;
+                        } while (member != node);
+                        numComponents++;
+                    }
+                }
+            }
+        }
+        return component;
+    }
+
+    /**
+     * Removes subsumed clauses and strengthens clauses by self-subsuming resolution. The candidates are searched in
+     * parallel on the unchanged clauses; they are applied sequentially afterwards, and each is checked again against
+     * the clauses as they are at that point.
+     * 
+     * @param executor The executor for the parallel search.
+     * 
+     * @return Whether any clause was removed or strengthened.
+     */
+    private boolean removeSubsumed(@NonNull ExecutorService executor) {
+        int[][] occurrences = buildOccurrences();
+        List<Future<@NonNull List<int @NonNull []>>> futures = new ArrayList<>();
+        for (int from = 0; from < clauses.size(); from += CHUNK_SIZE) {
+            int chunkStart = from;
+            int chunkEnd = Math.min(from + CHUNK_SIZE, clauses.size());
+            futures.add(executor.submit(() -> findSubsumptions(occurrences, chunkStart, chunkEnd)));
+        }
+
+        boolean changed = false;
+        for (Future<@NonNull List<int @NonNull []>> future : futures) {
+            List<int @NonNull []> candidates;
+            try {
+                candidates = future.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            for (int[] candidate : candidates) {
+                changed |= apply(candidate[0], candidate[1], candidate[2]);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Searches the clauses that the given clauses subsume or strengthen. Only reads the clauses.
+     * 
+     * @param occurrences The occurrence lists of the clauses.
+     * @param from The first clause to check.
+     * @param to The end of the clauses to check (exclusive).
+     * 
+     * @return The candidates as triples: the subsuming clause, the other clause, and the literal to remove from the
+     *      other clause (0 if it is subsumed).
+     */
+    private @NonNull List<int @NonNull []> findSubsumptions(int @NonNull [] @NonNull [] occurrences, int from,
+            int to) {
+
+        List<int @NonNull []> result = new ArrayList<>();
+        int[] marks = new int[2 * numVariables + 2];
+        for (int c = from; c < to; c++) {
+            int[] clause = clauses.get(c);
+            if (clause == null) {
+                continue;
+            }
+
+            int best = 0;
+            for (int literal : clause) {
+                if (best == 0 || occurrences[index(literal)].length + occurrences[index(-literal)].length
+                        < occurrences[index(best)].length + occurrences[index(-best)].length) {
+                    best = literal;
+                }
+            }
+            if (best == 0 || occurrences[index(best)].length + occurrences[index(-best)].length > MAX_CANDIDATES) {
+                continue;
+            }
+
+            int mark = c + 1;
+            for (int literal : clause) {
+                marks[index(literal)] = mark;
+            }
+            for (int[] candidates : new int[][] {occurrences[index(best)], occurrences[index(-best)]}) {
+                for (int d : candidates) {
+                    int[] other = clauses.get(d);
+                    if (d == c || other == null || other.length < clause.length
+                            || other.length == clause.length && d < c) {
+                        continue;
+                    }
+
+                    int matched = 0;
+                    int flipped = 0;
+                    for (int literal : other) {
+                        if (marks[index(literal)] == mark) {
+                            matched++;
+                        } else if (marks[index(-literal)] == mark) {
+                            flipped = flipped == 0 ? literal : Integer.MAX_VALUE;
+                        }
+                    }
+                    if (matched == clause.length) {
+                        result.add(new int[] {c, d, 0});
+                    } else if (matched == clause.length - 1 && flipped != 0 && flipped != Integer.MAX_VALUE) {
+                        result.add(new int[] {c, d, flipped});
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applies a candidate of {@link #findSubsumptions(int[][], int, int)}, if it is still valid for the current
+     * clauses.
+     * 
+     * @param c The subsuming clause.
+     * @param d The other clause.
+     * @param literal The literal to remove from the other clause; 0 to remove the other clause.
+     * 
+     * @return Whether the candidate was applied.
+     */
+    private boolean apply(int c, int d, int literal) {
+        int[] clause = clauses.get(c);
+        int[] other = clauses.get(d);
+        boolean applied = false;
+        if (clause != null && other != null) {
+            if (literal == 0) {
+                if (containsAll(other, clause, 0)) {
+                    clauses.set(d, null);
+                    numSubsumed++;
+                    applied = true;
+                }
+
+            } else if (Arrays.binarySearch(clause, -literal) >= 0 && Arrays.binarySearch(other, literal) >= 0
+                    && containsAll(other, clause, -literal)) {
+                // the resolvent of both clauses is the other clause without the literal
+                int[] strengthened = new int[other.length - 1];
+                int size = 0;
+                for (int current : other) {
+                    if (current != literal) {
+                        strengthened[size++] = current;
+                    }
+                }
+                clauses.set(d, strengthened);
+                numStrengthened++;
+                applied = true;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Checks whether a sorted clause contains all literals of another clause.
+     * 
+     * @param sorted The sorted clause.
+     * @param literals The literals to look for.
+     * @param except A literal that is not looked for; 0 for none.
+     * 
+     * @return Whether all literals are contained.
+     */
+    private static boolean containsAll(int @NonNull [] sorted, int @NonNull [] literals, int except) {
+        for (int literal : literals) {
+            if (literal != except && Arrays.binarySearch(sorted, literal) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Eliminates pure variables, including those that only become pure by earlier eliminations.
+     * 
+     * @param eliminated Receives the eliminated clauses, grouped by variable in the order of the variable numbers.
+     * 
+     * @return For each variable, the index of its first eliminated clause; one more entry marks the end.
+     */
+    private int @NonNull [] eliminatePure(@NonNull List<int @NonNull []> eliminated) {
+        int[][] occurrences = buildOccurrences();
+        int[] counts = new int[occurrences.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = occurrences[i].length;
+        }
+
+        List<int @NonNull []> removed = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        int[] stack = new int[numVariables];
+        int stackSize = 0;
+        boolean[] queued = new boolean[numVariables + 1];
+        boolean[] done = new boolean[numVariables + 1];
+        for (int variable = 1; variable <= numVariables; variable++) {
+            if (isPure(variable, counts)) {
+                stack[stackSize++] = variable;
+                queued[variable] = true;
+            }
+        }
+
+        while (stackSize > 0) {
+            int variable = stack[--stackSize];
+            queued[variable] = false;
+            if (done[variable] || !isPure(variable, counts)) {
+                continue;
+            }
+            done[variable] = true;
+            numPure++;
+
+            int literal = counts[index(variable)] > 0 ? variable : -variable;
+            for (int c : occurrences[index(literal)]) {
+                int[] clause = clauses.get(c);
+                if (clause == null) {
+                    continue;
+                }
+                clauses.set(c, null);
+                removed.add(clause);
+                owners.add(variable);
+                for (int other : clause) {
+                    counts[index(other)]--;
+                    int otherVariable = Math.abs(other);
+                    if (!done[otherVariable] && !queued[otherVariable] && isPure(otherVariable, counts)) {
+                        stack[stackSize++] = otherVariable;
+                        queued[otherVariable] = true;
+                    }
+                }
+            }
+        }
+
+        int[] ranges = new int[numVariables + 2];
+        for (int owner : owners) {
+            ranges[owner + 1]++;
+        }
+        for (int variable = 1; variable <= numVariables; variable++) {
+            ranges[variable + 1] += ranges[variable];
+        }
+        int[][] grouped = new int[removed.size()][];
+        int[] next = Arrays.copyOf(ranges, ranges.length);
+        for (int i = 0; i < removed.size(); i++) {
+            grouped[next[owners.get(i)]++] = removed.get(i);
+        }
+        eliminated.addAll(Arrays.asList(grouped));
+        return ranges;
+    }
+
+    /**
+     * Checks whether a variable occurs in only one polarity.
+     * 
+     * @param variable The variable.
+     * @param counts The number of occurrences of each literal.
+     * 
+     * @return Whether the variable is pure.
+     */
+    private static boolean isPure(int variable, int @NonNull [] counts) {
+        return (counts[index(variable)] > 0) != (counts[index(-variable)] > 0);
+    }
+
+    /**
+     * Creates the result for a satisfiable (or undecided) CNF.
+     * 
+     * @return The simplified CNF.
+     */
+    private @NonNull BinaryCnf createResult() {
+        List<int @NonNull []> eliminated = new ArrayList<>();
+        int[] ranges = eliminatePure(eliminated);
+
+        List<int @NonNull []> result = new ArrayList<>(clauses.size());
+        for (int[] clause : clauses) {
+            if (clause != null) {
+                result.add(clause);
+            }
+        }
+        for (int variable = 1; variable <= numVariables; variable++) {
+            if (values[variable] != 0) {
+                result.add(new int[] {values[variable] * variable});
+            }
+        }
+
+        // variables may have been replaced by representatives that were replaced in a later round
+        int[] resolved = new int[numVariables + 1];
+        for (int variable = 1; variable <= numVariables; variable++) {
+            int literal = substitutions[variable];
+            while (literal != 0 && substitutions[Math.abs(literal)] != 0) {
+                int next = substitutions[Math.abs(literal)];
+                literal = literal > 0 ? next : -next;
+            }
+            resolved[variable] = literal;
+        }
+
+        return BinaryCnf.fromClauses(names, result, resolved, eliminated, ranges);
+    }
+
+    /**
+     * Creates the result for an unsatisfiable CNF: a single empty clause.
+     * 
+     * @return The unsatisfiable CNF.
+     */
+    private @NonNull BinaryCnf createUnsat() {
+        List<int @NonNull []> result = new ArrayList<>(1);
+        result.add(new int[0]);
+        return BinaryCnf.fromClauses(names, result, new int[numVariables + 1], new ArrayList<>(),
+                new int[numVariables + 2]);
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.io.File;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.undead_analyzer.MissingVariable.Category;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * Runs both types of the {@link MissingVariablesFinder} analysis in one pass over the build and code model. The used
+ * variables are collected only once; both result sets are computed from them and tagged with their
+ * {@link Category}. The used variables are extracted with the number of threads configured by
+ * {@link ThreadedMissingVariablesFinder#NUMBER_OF_OF_THREADS}.
+ * 
+ * @author Adam
+ */
+public class CombinedMissingVariablesFinder extends AnalysisComponent<MissingVariable> {
+
+    private @NonNull AnalysisComponent<VariabilityModel> vmComponent;
+
+    private @NonNull AnalysisComponent<BuildModel> bmComponent;
+
+    private @NonNull AnalysisComponent<SourceFile<?>> cmComponent;
+
+    private int numThreads;
+
+    private @Nullable File usageIndexFile;
+
+    /**
+     * Creates this analysis.
+     * 
+     * @param config The user configuration. Never <code>null</code>.
+     * @param vmComponent The component to provide the variability model.
+     * @param bmComponent The component to provide the build model.
+     * @param cmComponent The component to provide the code model.
+     * 
+     * @throws SetUpException If analysis.missing.threads is wrong.
+     */
+    public CombinedMissingVariablesFinder(@NonNull Configuration config,
+            @NonNull AnalysisComponent<VariabilityModel> vmComponent,
+            @NonNull AnalysisComponent<BuildModel> bmComponent, @NonNull AnalysisComponent<SourceFile<?>> cmComponent)
+            throws SetUpException {
+        super(config);
+
+        config.registerSetting(ThreadedMissingVariablesFinder.NUMBER_OF_OF_THREADS);
+        numThreads = config.getValue(ThreadedMissingVariablesFinder.NUMBER_OF_OF_THREADS);
+        if (numThreads < 1) {
+            throw new SetUpException(ThreadedMissingVariablesFinder.NUMBER_OF_OF_THREADS.getKey() + " is lower than 1");
+        }
+
+        config.registerSetting(MissingVariablesFinder.USAGE_INDEX_SETTING);
+        usageIndexFile = config.getValue(MissingVariablesFinder.USAGE_INDEX_SETTING);
+
+        this.vmComponent = vmComponent;
+        this.bmComponent = bmComponent;
+        this.cmComponent = cmComponent;
+    }
+
+    @Override
+    protected void execute() {
+        VariabilityModel vm = vmComponent.getNextResult();
+        BuildModel bm = bmComponent.getNextResult();
+
+        if (bm == null || vm == null) {
+            LOGGER.logError("Couldn't get models");
+            return;
+        }
+
+        Set<@NonNull String> usedVariables = VariableUsageCollector.collect(bm, cmComponent, numThreads,
+                usageIndexFile);
+        if (usedVariables == null) {
+            return;
+        }
+
+        for (String variable : MissingVariablesFinder.definedButUnused(vm, usedVariables)) {
+            addResult(new MissingVariable(variable, Category.DEFINED_BUT_NOT_USED));
+        }
+        for (String variable : MissingVariablesFinder.usedButNotDefined(vm, usedVariables)) {
+            addResult(new MissingVariable(variable, Category.USED_BUT_NOT_DEFINED));
+        }
+    }
+
+    @Override
+    public @NonNull String getResultName() {
+        return "Missing Variables";
+    }
+
+}
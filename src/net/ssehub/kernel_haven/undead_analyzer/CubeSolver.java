@@ -0,0 +1,247 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.undead_analyzer.SolverRace.Outcome;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.Logger.Level;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Splits queries with a large top-level disjunction into independent cubes that are solved in parallel. A query
+ * <code>rest &and; (d<sub>1</sub> &or; ... &or; d<sub>n</sub>)</code> is satisfiable iff one of the cubes
+ * <code>rest &and; (d<sub>i</sub> &or; ... &or; d<sub>j</sub>)</code> is; the disjuncts are distributed over at most
+ * as many cubes as there are worker threads. The first satisfiable cube answers the query and the remaining cubes are
+ * cancelled; the query is only unsatisfiable if all cubes are.
+ * <p>
+ * One instance is shared by all {@link SatUtilities} of a {@link DeadCodeContext} and is thread-safe: the solvers for
+ * the cubes (each loaded with the variability model) are kept in a pool and borrowed for each query. The number of
+ * cubes that are solved at the same time is limited by a fixed number of permits; a query for which not enough
+ * permits are free is not split, so that the caller solves it with its own solver. Since a solver is only created
+ * while holding a permit, this also limits the number of solvers in the pool and the number of threads of the
+ * executor that are used for cubes.
+ * </p>
+ * 
+ * @author Adam
+ */
+class CubeSolver {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    private @NonNull BinaryCnf base;
+
+    private @NonNull VariableIdTable ids;
+
+    private @NonNull CnfStrategy cnfStrategy;
+
+    private int distributiveLimit;
+
+    private @NonNull EncodingStatistics statistics;
+
+    private @NonNull ExecutorService executor;
+
+    private int minDisjuncts;
+
+    private int maxCubes;
+
+    private @NonNull Semaphore permits;
+
+    private @NonNull ConcurrentLinkedQueue<@NonNull IntSatSolver> idleSolvers;
+
+    private @NonNull LongAdder numSplitQueries;
+
+    /**
+     * Creates a cube solver.
+     * 
+     * @param base The CNF that is part of every query, usually the variability model.
+     * @param ids The variable IDs for formula queries.
+     * @param cnfStrategy The configured CNF strategy.
+     * @param distributiveLimit The maximum number of clauses of a formula that is multiplied out by the adaptive
+     *      strategy.
+     * @param statistics The statistics to record the CNF encodings in.
+     * @param executor The executor to run the cubes in. Must be able to run all cubes of a query at the same time.
+     * @param minDisjuncts The minimum number of top-level disjuncts of a query to split it.
+     * @param maxCubes The maximum number of cubes per query; usually the number of available processors.
+     * @param maxSolvers The maximum number of cubes that are solved at the same time, over all queries; usually the
+     *      number of available processors.
+     */
+    CubeSolver(@NonNull BinaryCnf base, @NonNull VariableIdTable ids, @NonNull CnfStrategy cnfStrategy,
+            int distributiveLimit, @NonNull EncodingStatistics statistics, @NonNull ExecutorService executor,
+            int minDisjuncts, int maxCubes, int maxSolvers) {
+        this.base = base;
+        this.ids = ids;
+        this.cnfStrategy = cnfStrategy;
+        this.distributiveLimit = distributiveLimit;
+        this.statistics = statistics;
+        this.executor = executor;
+        this.minDisjuncts = Math.max(minDisjuncts, 2);
+        this.maxCubes = Math.max(maxCubes, 2);
+        this.permits = new Semaphore(maxSolvers);
+        this.idleSolvers = new ConcurrentLinkedQueue<>();
+        this.numSplitQueries = new LongAdder();
+    }
+
+    /**
+     * Returns whether the executor of this solver was shut down, i.e. whether no more cubes can be solved.
+     * 
+     * @return Whether this solver is stopped.
+     */
+    boolean isStopped() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Checks whether the base CNF and the given formula are satisfiable together, if the formula is large enough to be
+     * split into cubes.
+     * 
+     * @param formula The formula to check.
+     * 
+     * @return Whether the base CNF and the formula are satisfiable; <code>null</code> if the formula is not split
+     *      (because it is too small or not enough solvers are free), in which case the caller has to check it itself.
+     * 
+     * @throws SolverException If a cube could not be solved.
+     */
+    @Nullable Boolean trySatisfiable(@NonNull Formula formula) throws SolverException {
+        List<@NonNull Formula> cubes = split(formula);
+        if (cubes == null || !permits.tryAcquire(cubes.size())) {
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        Outcome outcome;
+        List<@NonNull IntSatSolver> solvers = new ArrayList<>(cubes.size());
+        try {
+            for (int i = 0; i < cubes.size(); i++) {
+                IntSatSolver solver = idleSolvers.poll();
+                if (solver == null) {
+                    solver = new IntSatSolver(base, ids, cnfStrategy, distributiveLimit, statistics);
+                }
+                solvers.add(solver);
+            }
+
+            outcome = SolverRace.race(executor, solvers, cubes, true);
+        } finally {
+            idleSolvers.addAll(solvers);
+            permits.release(cubes.size());
+        }
+        numSplitQueries.increment();
+
+        if (LOGGER.getLevel().shouldLog(Level.DEBUG)) {
+            LOGGER.logDebug("Solved query split into " + cubes.size() + " cubes in "
+                    + (System.currentTimeMillis() - start) + " ms; deciding cube: " + outcome.getIndex());
+        }
+        return outcome.isSatisfiable();
+    }
+
+    /**
+     * Returns how many queries were split into cubes so far.
+     * 
+     * @return The number of split queries.
+     */
+    long getNumSplitQueries() {
+        return numSplitQueries.sum();
+    }
+
+    /**
+     * Splits the given formula into cubes.
+     * 
+     * @param formula The formula to split.
+     * 
+     * @return The cubes, whose disjunction is equivalent to the formula; <code>null</code> if the formula has no
+     *      top-level disjunction with at least {@link #minDisjuncts} disjuncts.
+     */
+    @Nullable List<@NonNull Formula> split(@NonNull Formula formula) {
+        List<@NonNull Formula> conjuncts = new ArrayList<>();
+        collect(formula, true, true, conjuncts);
+
+        int splitIndex = -1;
+        List<@NonNull Formula> disjuncts = null;
+        for (int i = 0; i < conjuncts.size(); i++) {
+            List<@NonNull Formula> candidate = new ArrayList<>();
+            collect(conjuncts.get(i), true, false, candidate);
+            if (candidate.size() >= minDisjuncts && (disjuncts == null || candidate.size() > disjuncts.size())) {
+                splitIndex = i;
+                disjuncts = candidate;
+            }
+        }
+        if (disjuncts == null) {
+            return null;
+        }
+
+        Formula rest = null;
+        for (int i = 0; i < conjuncts.size(); i++) {
+            if (i != splitIndex) {
+                rest = rest == null ? conjuncts.get(i) : new Conjunction(rest, conjuncts.get(i));
+            }
+        }
+
+        int numCubes = Math.min(disjuncts.size(), maxCubes);
+        List<@NonNull Formula> cubes = new ArrayList<>(numCubes);
+        for (int cube = 0; cube < numCubes; cube++) {
+            int from = cube * disjuncts.size() / numCubes;
+            int to = (cube + 1) * disjuncts.size() / numCubes;
+            Formula part = disjuncts.get(from);
+            for (int i = from + 1; i < to; i++) {
+                part = new Disjunction(part, disjuncts.get(i));
+            }
+            cubes.add(rest == null ? part : new Conjunction(rest, part));
+        }
+        return cubes;
+    }
+
+    /**
+     * Collects the top-level conjuncts or disjuncts of a formula, pushing negations inwards.
+     * 
+     * @param formula The formula.
+     * @param positive Whether the formula occurs positively, i.e. under an even number of negations.
+     * @param conjuncts Whether to collect the conjuncts (<code>true</code>) or the disjuncts (<code>false</code>).
+     * @param result The list to add the operands to; negatively occurring operands are wrapped in a
+     *      {@link Negation}.
+     */
+    private static void collect(@NonNull Formula formula, boolean positive, boolean conjuncts,
+            @NonNull List<@NonNull Formula> result) {
+
+        if (formula instanceof Negation) {
+            collect(((Negation) formula).getFormula(), !positive, conjuncts, result);
+
+        } else if (formula instanceof Conjunction && positive == conjuncts) {
+            collect(((Conjunction) formula).getLeft(), positive, conjuncts, result);
+            collect(((Conjunction) formula).getRight(), positive, conjuncts, result);
+
+        } else if (formula instanceof Disjunction && positive != conjuncts) {
+            collect(((Disjunction) formula).getLeft(), positive, conjuncts, result);
+            collect(((Disjunction) formula).getRight(), positive, conjuncts, result);
+
+        } else {
+            result.add(positive ? formula : new Negation(formula));
+        }
+    }
+
+}
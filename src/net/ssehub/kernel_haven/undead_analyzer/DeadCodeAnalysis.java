@@ -17,6 +17,7 @@ package net.ssehub.kernel_haven.undead_analyzer;
 
 import net.ssehub.kernel_haven.SetUpException;
 import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.analysis.JoinComponent;
 import net.ssehub.kernel_haven.analysis.PipelineAnalysis;
 import net.ssehub.kernel_haven.config.Configuration;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
@@ -39,7 +40,11 @@ public class DeadCodeAnalysis extends PipelineAnalysis {
 
     @Override
     protected @NonNull AnalysisComponent<?> createPipeline() throws SetUpException {
-        return new DeadCodeFinder(config, getVmComponent(), getBmComponent(), getCmComponent());
+        DeadCodeFinder finder = new DeadCodeFinder(config, getVmComponent(), getBmComponent(), getCmComponent());
+        if (config.getValue(DeadCodeFinder.FILE_STATISTICS_SETTING)) {
+            return new JoinComponent(config, finder, finder.getFileStatisticsOutput());
+        }
+        return finder;
     }
 
 }
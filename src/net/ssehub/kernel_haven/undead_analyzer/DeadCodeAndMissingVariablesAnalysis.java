@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.analysis.JoinComponent;
+import net.ssehub.kernel_haven.analysis.PipelineAnalysis;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Creates a pipeline that finds dead code blocks and missing variables in one pass over the code model, see
+ * {@link DeadCodeAndMissingVariablesFinder}. Both are written as separate result tables, and optionally the file
+ * statistics as a third one (see {@link DeadCodeFinder#FILE_STATISTICS_SETTING}).
+ *
+ * @author Adam
+ */
+public class DeadCodeAndMissingVariablesAnalysis extends PipelineAnalysis {
+
+    /**
+     * Creates this analysis.
+     * 
+     * @param config The global configuration.
+     */
+    public DeadCodeAndMissingVariablesAnalysis(@NonNull Configuration config) {
+        super(config);
+    }
+
+    @Override
+    protected @NonNull AnalysisComponent<?> createPipeline() throws SetUpException {
+        DeadCodeAndMissingVariablesFinder finder = new DeadCodeAndMissingVariablesFinder(config, getVmComponent(),
+                getBmComponent(), getCmComponent());
+        if (config.getValue(DeadCodeFinder.FILE_STATISTICS_SETTING)) {
+            return new JoinComponent(config, finder, finder.getMissingVariablesOutput(),
+                    finder.getFileStatisticsOutput());
+        }
+        return new JoinComponent(config, finder, finder.getMissingVariablesOutput());
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeContext.BlockUsage;
+import net.ssehub.kernel_haven.undead_analyzer.MissingVariable.Category;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * A {@link DeadCodeFinder} that also runs the missing variables analyses in the same traversal of each source file:
+ * while the presence conditions of the elements are checked, the variables used in them are collected, separated by
+ * whether the element is dead. The dead code blocks are the results of this component; the missing variables are the
+ * results of {@link #getMissingVariablesOutput()}. Besides the two categories of the
+ * {@link CombinedMissingVariablesFinder}, this finds the variables that are only used in dead code.
+ * 
+ * @author Adam
+ */
+public class DeadCodeAndMissingVariablesFinder extends DeadCodeFinder {
+
+    /**
+     * The second output of this analysis, which provides the missing variables after the dead code analysis is done.
+     */
+    private class MissingVariablesOutput extends AnalysisComponent<MissingVariable> {
+
+        /**
+         * Creates this output component.
+         * 
+         * @param config The pipeline configuration.
+         */
+        MissingVariablesOutput(@NonNull Configuration config) {
+            super(config);
+        }
+
+        @Override
+        protected void execute() {
+            try {
+                for (MissingVariable variable : missingVariables.get()) {
+                    addResult(variable);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.logException("Interrupted while waiting for the missing variables", e);
+            } catch (ExecutionException e) {
+                LOGGER.logException("Couldn't find missing variables", e.getCause());
+            }
+        }
+
+        @Override
+        public @NonNull String getResultName() {
+            return "Missing Variables";
+        }
+
+    }
+
+    private @NonNull Set<@NonNull String> liveVariables;
+
+    private @NonNull Set<@NonNull String> deadVariables;
+
+    private @NonNull CompletableFuture<@NonNull List<@NonNull MissingVariable>> missingVariables;
+
+    private @NonNull MissingVariablesOutput missingVariablesOutput;
+
+    /**
+     * Creates this analysis.
+     * 
+     * @param config      The pipeline configuration.
+     * @param vmComponent The component to provide the variability model.
+     * @param bmComponent The component to provide the build model.
+     * @param cmComponent The component to provide the code model.
+     * 
+     * @throws SetUpException If reading the configuration fails.
+     */
+    public DeadCodeAndMissingVariablesFinder(@NonNull Configuration config,
+            @NonNull AnalysisComponent<VariabilityModel> vmComponent,
+            @NonNull AnalysisComponent<BuildModel> bmComponent, @NonNull AnalysisComponent<SourceFile<?>> cmComponent)
+            throws SetUpException {
+        super(config, vmComponent, bmComponent, cmComponent);
+
+        this.liveVariables = new HashSet<>();
+        this.deadVariables = new HashSet<>();
+        this.missingVariables = new CompletableFuture<>();
+        this.missingVariablesOutput = new MissingVariablesOutput(config);
+    }
+
+    /**
+     * Returns the component that provides the missing variables. Its results are available after all results of
+     * this component are.
+     * 
+     * @return The component for the missing variables.
+     */
+    public @NonNull AnalysisComponent<MissingVariable> getMissingVariablesOutput() {
+        return missingVariablesOutput;
+    }
+
+    @Override
+    protected @NonNull List<@NonNull DeadCodeBlock> findDeadCodeBlocks(@NonNull SourceFile<?> sourceFile) {
+        BlockUsage usage = new BlockUsage();
+        List<@NonNull DeadCodeBlock> result = analyzeFile(sourceFile, usage);
+        synchronized (this) {
+            liveVariables.addAll(usage.getLiveVariables());
+            deadVariables.addAll(usage.getDeadVariables());
+        }
+        return result;
+    }
+
+    @Override
+    protected void execute() {
+        List<@NonNull MissingVariable> result = new ArrayList<>();
+        try {
+            super.execute();
+
+            VariabilityModel vm = this.vm;
+            BuildModel bm = this.bm;
+            if (vm != null && bm != null && context != null) {
+                findMissingVariables(vm, bm, result);
+            } else {
+                LOGGER.logError("Can't find missing variables, since the dead code analysis failed");
+            }
+        } finally {
+            missingVariables.complete(result);
+        }
+    }
+
+    /**
+     * Computes the missing variables from the variables collected during the dead code analysis.
+     * 
+     * @param vm The variability model.
+     * @param bm The build model.
+     * @param result The list to add the missing variables to.
+     */
+    private synchronized void findMissingVariables(@NonNull VariabilityModel vm, @NonNull BuildModel bm,
+            @NonNull List<@NonNull MissingVariable> result) {
+
+        // the file presence conditions are not part of the dead code blocks
+        VariableUsageCollector.addVariablesInBuildModel(bm, liveVariables);
+
+        Set<@NonNull String> usedVariables = new HashSet<>(liveVariables);
+        usedVariables.addAll(deadVariables);
+
+        for (String variable : MissingVariablesFinder.definedButUnused(vm, usedVariables)) {
+            result.add(new MissingVariable(variable, Category.DEFINED_BUT_NOT_USED));
+        }
+        for (String variable : MissingVariablesFinder.usedButNotDefined(vm, usedVariables)) {
+            result.add(new MissingVariable(variable, Category.USED_BUT_NOT_DEFINED));
+        }
+
+        List<@NonNull String> onlyDead = new ArrayList<>(deadVariables);
+        onlyDead.removeAll(liveVariables);
+        Collections.sort(onlyDead);
+        for (String variable : onlyDead) {
+            result.add(new MissingVariable(variable, Category.USED_ONLY_IN_DEAD_CODE));
+        }
+    }
+
+}
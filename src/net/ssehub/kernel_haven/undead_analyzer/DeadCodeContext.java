@@ -0,0 +1,747 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.code_model.CodeElement;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DeadCodeBlock;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DetailedDeadCodeBlock;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.Reason;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.Logger.Level;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * A reusable context for dead code checks. This is built once from a {@link VariabilityModel} and a
+ * {@link BuildModel}; it holds the variability model as CNF, the relevancy checker and a pool of warm solvers with
+ * their verdict caches. The CNF is kept in a compact {@link BinaryCnf} from which all solvers of the pool are
+ * loaded, and all solvers share one {@link VariableIdTable}. Afterwards, arbitrary many
+ * {@link #analyze(SourceFile)} and {@link #isDead(Formula, Formula)} calls can be done without paying the setup
+ * costs again.
+ * <p>
+ * This class is thread-safe: each call borrows a solver from the pool (or creates a new one, if all are in use) and
+ * returns it afterwards. Thus, at most one solver per concurrently calling thread is created.
+ * </p>
+ * 
+ * @author Adam
+ */
+public class DeadCodeContext {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * The variables used in live and in dead code elements, see
+     * {@link DeadCodeContext#analyze(SourceFile, BlockUsage, FileStatistics)}. Not thread-safe; each thread should
+     * use its own instance.
+     */
+    static final class BlockUsage {
+
+        private final @NonNull Set<@NonNull String> liveVariables = new HashSet<>();
+
+        private final @NonNull Set<@NonNull String> deadVariables = new HashSet<>();
+
+        /**
+         * Returns the variables used in the presence condition of at least one live element.
+         * 
+         * @return The names of the variables.
+         */
+        @NonNull Set<@NonNull String> getLiveVariables() {
+            return liveVariables;
+        }
+
+        /**
+         * Returns the variables used in the presence condition of at least one dead element.
+         * 
+         * @return The names of the variables.
+         */
+        @NonNull Set<@NonNull String> getDeadVariables() {
+            return deadVariables;
+        }
+
+    }
+
+    private @Nullable Cnf vmCnf;
+
+    /**
+     * The CNF of the variability model that this context was created with, i.e. before {@link #preprocessVm(int)}.
+     * Used for {@link #getVmCnf()}.
+     */
+    private @NonNull BinaryCnf originalVmBinaryCnf;
+
+    private @NonNull BinaryCnf vmBinaryCnf;
+
+    private @NonNull VariableIdTable ids;
+
+    private @NonNull BuildModel bm;
+
+    private @Nullable FormulaRelevancyChecker relevancyChecker;
+
+    private boolean detailedAnalysis;
+
+    private volatile boolean findUndead;
+
+    private @NonNull ConcurrentLinkedQueue<@NonNull SatUtilities> idleSatUtils;
+
+    private @NonNull CnfStrategy cnfStrategy;
+
+    private int distributiveLimit;
+
+    private @NonNull EncodingStatistics encodingStatistics;
+
+    private @NonNull DeadCodeMetrics metrics;
+
+    private int portfolioThreshold;
+
+    private int cubeThreshold;
+
+    private @Nullable CubeSolver cubeSolver;
+
+    private @Nullable ExecutorService solverExecutor;
+
+    private @Nullable List<@NonNull String> externalSolverCommand;
+
+    private boolean externalSolverIncremental;
+
+    private int slowQueryThreshold;
+
+    private int maxSlowQueries;
+
+    private @Nullable File slowQueryDimacsDir;
+
+    private boolean slowQueryDimacsWithVm;
+
+    private @Nullable SlowQueryLog slowQueryLog;
+
+    /**
+     * Creates a context by converting the given variability model to CNF. DIMACS constraint models are parsed in
+     * parallel (see {@link ParallelVmConverter}).
+     * 
+     * @param vm The variability model.
+     * @param bm The build model, used to look up the presence conditions of the analyzed files.
+     * @param considerVmVarsOnly Whether only blocks that contain at least one variable of the variability model
+     *      should be considered by {@link #analyze(SourceFile)}.
+     * @param detailedAnalysis Whether {@link #analyze(SourceFile)} should do a detailed analysis why a block is
+     *      dead. See {@link DeadCodeFinder#DETAILED_SETTING}.
+     * 
+     * @throws FormatException If the variability model can not be converted to CNF.
+     */
+    public DeadCodeContext(@NonNull VariabilityModel vm, @NonNull BuildModel bm, boolean considerVmVarsOnly,
+            boolean detailedAnalysis) throws FormatException {
+        this(ParallelVmConverter.convert(vm), vm, bm, considerVmVarsOnly, detailedAnalysis);
+    }
+
+    /**
+     * Creates a context for an already converted variability model.
+     * 
+     * @param vmCnf The variability model as CNF.
+     * @param vm The variability model; only used to find the relevant variables if considerVmVarsOnly is
+     *      <code>true</code>, in which case it must not be <code>null</code>.
+     * @param bm The build model, used to look up the presence conditions of the analyzed files.
+     * @param considerVmVarsOnly Whether only blocks that contain at least one variable of the variability model
+     *      should be considered by {@link #analyze(SourceFile)}.
+     * @param detailedAnalysis Whether {@link #analyze(SourceFile)} should do a detailed analysis why a block is
+     *      dead. See {@link DeadCodeFinder#DETAILED_SETTING}.
+     * 
+     * @throws IllegalArgumentException If considerVmVarsOnly is <code>true</code>, but no variability model is given.
+     */
+    public DeadCodeContext(@NonNull Cnf vmCnf, @Nullable VariabilityModel vm, @NonNull BuildModel bm,
+            boolean considerVmVarsOnly, boolean detailedAnalysis) {
+        this(BinaryCnf.fromCnf(vmCnf), vm, bm, considerVmVarsOnly, detailedAnalysis);
+        this.vmCnf = vmCnf;
+    }
+
+    /**
+     * Creates a context for a variability model in the binary CNF format, e.g. one that is memory-mapped from a
+     * file shared with other processes.
+     * 
+     * @param vmBinaryCnf The variability model as binary CNF.
+     * @param vm The variability model; only used to find the relevant variables if considerVmVarsOnly is
+     *      <code>true</code>, in which case it must not be <code>null</code>.
+     * @param bm The build model, used to look up the presence conditions of the analyzed files.
+     * @param considerVmVarsOnly Whether only blocks that contain at least one variable of the variability model
+     *      should be considered by {@link #analyze(SourceFile)}.
+     * @param detailedAnalysis Whether {@link #analyze(SourceFile)} should do a detailed analysis why a block is
+     *      dead. See {@link DeadCodeFinder#DETAILED_SETTING}.
+     * 
+     * @throws IllegalArgumentException If considerVmVarsOnly is <code>true</code>, but no variability model is given.
+     */
+    DeadCodeContext(@NonNull BinaryCnf vmBinaryCnf, @Nullable VariabilityModel vm, @NonNull BuildModel bm,
+            boolean considerVmVarsOnly, boolean detailedAnalysis) {
+        if (considerVmVarsOnly && vm == null) {
+            // the relevancy checker would consider no block at all
+            throw new IllegalArgumentException("considerVmVarsOnly requires a variability model");
+        }
+        this.originalVmBinaryCnf = vmBinaryCnf;
+        this.vmBinaryCnf = vmBinaryCnf;
+        this.ids = new VariableIdTable(vmBinaryCnf, vm);
+        this.bm = bm;
+        this.detailedAnalysis = detailedAnalysis;
+        this.idleSatUtils = new ConcurrentLinkedQueue<>();
+        this.cnfStrategy = CnfStrategy.ADAPTIVE;
+        this.distributiveLimit = DeadCodeFinder.DEFAULT_DISTRIBUTIVE_LIMIT;
+        this.encodingStatistics = new EncodingStatistics();
+        this.metrics = new DeadCodeMetrics(encodingStatistics);
+
+        if (considerVmVarsOnly) {
+            this.relevancyChecker = new FormulaRelevancyChecker(vm, true);
+        }
+    }
+
+    /**
+     * Returns the variability model as CNF. This is always the CNF that this context was created with, not the one
+     * simplified by {@link #preprocessVm(int)}. If this context was created from a {@link BinaryCnf}, the
+     * {@link Cnf} is created on the first call; if that binary CNF is preprocessed already (e.g. mapped from a file
+     * written by {@link #writeVmCnf(File)}), the result also contains its eliminated clauses and substitutions (see
+     * {@link BinaryCnf#toCnf()}).
+     * 
+     * @return The CNF of the variability model.
+     */
+    public synchronized @NonNull Cnf getVmCnf() {
+        Cnf vmCnf = this.vmCnf;
+        if (vmCnf == null) {
+            vmCnf = originalVmBinaryCnf.toCnf();
+            this.vmCnf = vmCnf;
+        }
+        return vmCnf;
+    }
+
+    /**
+     * Returns the build model that is used to look up the presence conditions of files.
+     * 
+     * @return The build model.
+     */
+    public @NonNull BuildModel getBuildModel() {
+        return bm;
+    }
+
+    /**
+     * Returns the relevancy checker that decides which blocks are considered.
+     * 
+     * @return The relevancy checker, or <code>null</code> if all blocks are considered.
+     */
+    public @Nullable FormulaRelevancyChecker getRelevancyChecker() {
+        return relevancyChecker;
+    }
+
+    /**
+     * Sets how presence conditions are converted to CNF. Solvers that were already created keep their previous
+     * strategy, so this should be called before the first check. The default is {@link CnfStrategy#ADAPTIVE}.
+     * 
+     * @param cnfStrategy The strategy. See {@link DeadCodeFinder#CNF_STRATEGY_SETTING}.
+     * @param distributiveLimit The maximum number of clauses of a formula that is multiplied out by the adaptive
+     *      strategy. See {@link DeadCodeFinder#CNF_DISTRIBUTIVE_LIMIT_SETTING}.
+     */
+    public synchronized void setCnfStrategy(@NonNull CnfStrategy cnfStrategy, int distributiveLimit) {
+        this.cnfStrategy = cnfStrategy;
+        this.distributiveLimit = distributiveLimit;
+    }
+
+    /**
+     * Sets after how many conflicts a query is considered hard and handed to a portfolio of differently configured
+     * solvers, which race against each other. Solvers that were already created keep their previous setting, so this
+     * should be called before the first check. By default, no portfolio is used.
+     * 
+     * @param conflicts The number of conflicts; 0 disables portfolio solving. See
+     *      {@link DeadCodeFinder#PORTFOLIO_THRESHOLD_SETTING}.
+     */
+    public synchronized void setPortfolioThreshold(int conflicts) {
+        this.portfolioThreshold = conflicts;
+    }
+
+    /**
+     * Sets the number of top-level disjuncts from which on a query is split into cubes that are solved in parallel.
+     * Solvers that were already created keep their previous setting, so this should be called before the first
+     * check. By default, no queries are split.
+     * 
+     * @param minDisjuncts The minimum number of top-level disjuncts; 0 disables splitting. See
+     *      {@link DeadCodeFinder#CUBE_THRESHOLD_SETTING}.
+     */
+    public synchronized void setCubeThreshold(int minDisjuncts) {
+        this.cubeThreshold = minDisjuncts;
+    }
+
+    /**
+     * Sets an external solver process to solve all queries with the variability model, instead of the in-JVM solvers.
+     * Each thread that analyzes files gets its own long-lived process; these are stopped by {@link #close()}. Portfolio
+     * and cube solving are not used with an external solver. Solvers that were already created keep their previous
+     * setting, so this should be called before the first check. By default, no external solver is used.
+     * 
+     * @param command The command line of the solver; <code>null</code> to use the in-JVM solvers. See
+     *      {@link DeadCodeFinder#EXTERNAL_SOLVER_SETTING}.
+     * @param incremental Whether the solver supports the incremental iCNF format. See
+     *      {@link DeadCodeFinder#EXTERNAL_SOLVER_INCREMENTAL_SETTING}.
+     */
+    public synchronized void setExternalSolver(@Nullable List<@NonNull String> command, boolean incremental) {
+        this.externalSolverCommand = command;
+        this.externalSolverIncremental = incremental;
+    }
+
+    /**
+     * Enables keeping the slowest solved queries (see {@link #getSlowQueryLog()}), and optionally writing them as
+     * DIMACS files. Solvers that were already created keep their previous setting, so this should be called before the
+     * first check. By default, no queries are kept.
+     * 
+     * @param thresholdMillis The minimum solving time of a kept query, in milliseconds. See
+     *      {@link DeadCodeFinder#SLOW_QUERY_THRESHOLD_SETTING}.
+     * @param maxQueries The number of slowest queries to keep; 0 disables this. See
+     *      {@link DeadCodeFinder#SLOW_QUERY_COUNT_SETTING}.
+     * @param dimacsDir The directory to write the kept queries to; <code>null</code> if they should not be written.
+     *      See {@link DeadCodeFinder#SLOW_QUERY_DIMACS_DIR_SETTING}.
+     * @param dimacsWithVm Whether the written queries with the variability model contain its clauses. See
+     *      {@link DeadCodeFinder#SLOW_QUERY_DIMACS_VM_SETTING}.
+     */
+    public synchronized void setSlowQueryLog(int thresholdMillis, int maxQueries, @Nullable File dimacsDir,
+            boolean dimacsWithVm) {
+        this.slowQueryThreshold = thresholdMillis;
+        this.maxSlowQueries = maxQueries;
+        this.slowQueryDimacsDir = dimacsDir;
+        this.slowQueryDimacsWithVm = dimacsWithVm;
+    }
+
+    /**
+     * Sets whether {@link #analyze(SourceFile)} also reports undead blocks, i.e. blocks that are always present if
+     * their parent block is present. Only used in the detailed analysis, since the results are distinguished by their
+     * {@link Reason}. By default, no undead blocks are searched.
+     * 
+     * @param findUndead Whether to search for undead blocks. See {@link DeadCodeFinder#UNDEAD_SETTING}.
+     */
+    public void setFindUndead(boolean findUndead) {
+        this.findUndead = findUndead;
+    }
+
+    /**
+     * Simplifies the CNF of the variability model that the solvers are loaded with (see {@link CnfPreprocessor}).
+     * This does not change the results of any check. Solvers that were already created keep the previous CNF, so this
+     * should be called before the first check. Does nothing if the CNF is already preprocessed, e.g. because it was
+     * mapped from a file written by {@link #writeVmCnf(File)}.
+     * 
+     * @param numThreads The number of threads to use. See {@link DeadCodeFinder#PREPROCESS_VM_SETTING}.
+     */
+    public synchronized void preprocessVm(int numThreads) {
+        vmBinaryCnf = CnfPreprocessor.preprocess(vmBinaryCnf, numThreads);
+    }
+
+    /**
+     * Writes the CNF of the variability model that the solvers are loaded with, including the preprocessing, to a
+     * file that can be {@link BinaryCnf#map(File) mapped} by other processes.
+     * 
+     * @param file The file to write to.
+     * 
+     * @throws IOException If writing the file fails.
+     */
+    synchronized void writeVmCnf(@NonNull File file) throws IOException {
+        vmBinaryCnf.write(file);
+    }
+
+    /**
+     * Returns the fingerprint of the CNF of the variability model that the solvers are loaded with, including the
+     * preprocessing. See {@link BinaryCnf#getFingerprint()}.
+     * 
+     * @return The fingerprint of the variability model CNF.
+     */
+    synchronized long getVmFingerprint() {
+        return vmBinaryCnf.getFingerprint();
+    }
+
+    /**
+     * Stops the external solver processes and the threads for parallel solving. Should be called once all analyses
+     * are done; checks that run at the same time may fail if they need the parallel solvers. Solvers that are still
+     * borrowed are not put back into the pool if their parallel solvers were stopped. Later checks start new
+     * processes and threads.
+     */
+    public void close() {
+        SatUtilities satUtils;
+        while ((satUtils = idleSatUtils.poll()) != null) {
+            satUtils.close();
+        }
+        synchronized (this) {
+            ExecutorService executor = solverExecutor;
+            if (executor != null) {
+                executor.shutdownNow();
+                solverExecutor = null;
+            }
+            // the cube solver is bound to the stopped executor
+            cubeSolver = null;
+        }
+    }
+
+    /**
+     * Returns the executor for solvers that run in parallel to a query, i.e. for portfolios and cubes. Must be called
+     * while holding the lock on this.
+     * 
+     * @return The executor, which uses daemon threads. It is not bounded itself; the number of threads is limited by
+     *      its users, i.e. the portfolios of the pooled {@link SatUtilities} and the permits of the
+     *      {@link CubeSolver}.
+     */
+    private @NonNull ExecutorService getSolverExecutor() {
+        ExecutorService executor = solverExecutor;
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool((runnable) -> {
+                Thread thread = new Thread(runnable, "ParallelSolver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            solverExecutor = executor;
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the statistics about the CNF encodings of all checks done so far.
+     * 
+     * @return The encoding statistics.
+     */
+    @NonNull EncodingStatistics getEncodingStatistics() {
+        return encodingStatistics;
+    }
+
+    /**
+     * Returns the metrics of all checks done so far.
+     * 
+     * @return The metrics.
+     */
+    @NonNull DeadCodeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the slowest queries kept so far (see {@link #setSlowQueryLog(int, int, File, boolean)}).
+     * 
+     * @return The slow query log; <code>null</code> if no queries are kept or no check was done yet.
+     */
+    synchronized @Nullable SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * Borrows a solver from the pool. It must be given back via {@link #release(SatUtilities)}.
+     * 
+     * @return A solver that is not used by any other thread.
+     */
+    @NonNull SatUtilities acquire() {
+        SatUtilities satUtils = idleSatUtils.poll();
+        if (satUtils == null) {
+            synchronized (this) {
+                List<@NonNull String> externalSolverCommand = this.externalSolverCommand;
+                if (externalSolverCommand != null) {
+                    satUtils = new SatUtilities(new ExternalSolver(vmBinaryCnf, ids, cnfStrategy, distributiveLimit,
+                            encodingStatistics, externalSolverCommand, externalSolverIncremental), ids, cnfStrategy,
+                            distributiveLimit, encodingStatistics, metrics);
+                } else {
+                    satUtils = new SatUtilities(vmBinaryCnf, ids, cnfStrategy, distributiveLimit, encodingStatistics,
+                            metrics);
+                }
+                if (portfolioThreshold > 0) {
+                    satUtils.setPortfolio(portfolioThreshold, new PortfolioSolver(vmBinaryCnf, ids, cnfStrategy,
+                            distributiveLimit, encodingStatistics, getSolverExecutor()));
+                }
+                if (cubeThreshold > 0) {
+                    CubeSolver cubeSolver = this.cubeSolver;
+                    if (cubeSolver == null) {
+                        int numProcessors = Runtime.getRuntime().availableProcessors();
+                        cubeSolver = new CubeSolver(vmBinaryCnf, ids, cnfStrategy, distributiveLimit,
+                                encodingStatistics, getSolverExecutor(), cubeThreshold, numProcessors, numProcessors);
+                        this.cubeSolver = cubeSolver;
+                    }
+                    satUtils.setCubeSolver(cubeSolver);
+                }
+                if (maxSlowQueries > 0) {
+                    SlowQueryLog slowQueryLog = this.slowQueryLog;
+                    if (slowQueryLog == null) {
+                        slowQueryLog = new SlowQueryLog(slowQueryThreshold * 1000000L, maxSlowQueries,
+                                slowQueryDimacsDir, slowQueryDimacsWithVm, vmBinaryCnf, ids, cnfStrategy,
+                                distributiveLimit);
+                        this.slowQueryLog = slowQueryLog;
+                    }
+                    satUtils.setSlowQueryLog(slowQueryLog);
+                }
+            }
+        }
+        return satUtils;
+    }
+
+    /**
+     * Returns a solver that was borrowed via {@link #acquire()} to the pool. Solvers whose parallel solvers were
+     * stopped by {@link #close()} in the meantime are closed instead.
+     * 
+     * @param satUtils The solver to return.
+     */
+    void release(@NonNull SatUtilities satUtils) {
+        if (satUtils.isParallelSolvingStopped()) {
+            // borrowed while close() was called; later checks create a new solver with new threads
+            satUtils.close();
+        } else {
+            idleSatUtils.add(satUtils);
+        }
+    }
+
+    /**
+     * Checks whether a block with the given presence condition in a file with the given presence condition is dead,
+     * i.e. <code>VM &and; filePc &and; pc</code> is not satisfiable. This ignores the relevancy checker.
+     * 
+     * @param filePc The presence condition of the file.
+     * @param pc The presence condition of the block.
+     * 
+     * @return Whether the block is dead.
+     * 
+     * @throws ConverterException If converting the formula to CNF fails.
+     * @throws SolverException If solving the CNF fails.
+     */
+    public boolean isDead(@NonNull Formula filePc, @NonNull Formula pc) throws ConverterException, SolverException {
+        SatUtilities satUtils = acquire();
+        try {
+            return !satUtils.isVmSat(pc, filePc);
+        } finally {
+            release(satUtils);
+        }
+    }
+
+    /**
+     * Finds the dead code blocks of the given source file.
+     * 
+     * @param sourceFile The source file to search in.
+     * 
+     * @return The list of dead code blocks.
+     */
+    public @NonNull List<@NonNull DeadCodeBlock> analyze(@NonNull SourceFile<?> sourceFile) {
+        return analyze(sourceFile, null, null);
+    }
+
+    /**
+     * Finds the dead code blocks of the given source file, and collects the variables used in the presence conditions
+     * of its elements in the same traversal.
+     * 
+     * @param sourceFile The source file to search in.
+     * @param usage Receives the names of the variables (starting with CONFIG_) in the presence conditions of live and
+     *      dead elements; <code>null</code> if they should not be collected. Elements of files that are not checked
+     *      count as live.
+     * @param statistics Receives the numbers of checked and dead blocks, SAT calls and cache hits, the time spent and
+     *      the worker thread; <code>null</code> if they should not be collected.
+     * 
+     * @return The list of dead code blocks.
+     */
+    @NonNull List<@NonNull DeadCodeBlock> analyze(@NonNull SourceFile<?> sourceFile, @Nullable BlockUsage usage,
+            @Nullable FileStatistics statistics) {
+        long start = System.nanoTime();
+        long numQueries = 0;
+        long numCacheHits = 0;
+        List<@NonNull DeadCodeBlock> result = new ArrayList<>();
+
+        Formula filePc = bm.getPc(sourceFile.getPath());
+
+        if (filePc == null) {
+            LOGGER.logInfo("Skipping " + sourceFile.getPath() + " because it has no build PC");
+            if (usage != null) {
+                VariableUsageCollector.addVariablesInFile(sourceFile, usage.liveVariables);
+            }
+        } else {
+            LOGGER.logInfo("Running for file " + sourceFile.getPath());
+            if (LOGGER.getLevel().shouldLog(Level.DEBUG)) {
+                LOGGER.logDebug("File PC: " + filePc);
+            }
+
+            SatUtilities satUtils = acquire();
+            long queriesBefore = satUtils.getNumQueries();
+            long cacheHitsBefore = satUtils.getNumCacheHits();
+            satUtils.setCurrentFile(sourceFile.getPath());
+            try {
+                boolean foundResult = false;
+
+                if (this.detailedAnalysis) {
+                    try {
+                        if (!satUtils.isSat(filePc)) { // check filePC alone
+                            foundResult = true;
+                            DetailedDeadCodeBlock block = new DetailedDeadCodeBlock(sourceFile.getPath(), 0,
+                                    Reason.FILE_PC_NOT_SATISFIABLE);
+                            block.setFilePc(filePc);
+                            result.add(block);
+                        } else if (!satUtils.isVmSat(filePc)) { // check filePC and VM
+                            foundResult = true;
+                            DetailedDeadCodeBlock block = new DetailedDeadCodeBlock(sourceFile.getPath(), 0,
+                                    Reason.FILE_PC_AND_VM_NOT_SATISFIABLE);
+                            block.setFilePc(filePc);
+                            result.add(block);
+                        }
+                    } catch (SolverException | ConverterException e) {
+                        LOGGER.logException("Exception while trying to check file PC", e);
+                    }
+                    if (foundResult && statistics != null) {
+                        statistics.addDeadFile();
+                    }
+                }
+
+                if (!foundResult) {
+                    // index-based iteration, so that no iterators are allocated
+                    for (int i = 0; i < sourceFile.getTopElementCount(); i++) {
+                        try {
+                            checkElement(sourceFile.getElement(i), True.INSTANCE, filePc, satUtils, result,
+                                    usage, statistics);
+                        } catch (SolverException | ConverterException e) {
+                            LOGGER.logException("Exception while trying to check element", e);
+                        }
+                    }
+                } else if (usage != null) {
+                    // the whole file is dead
+                    VariableUsageCollector.addVariablesInFile(sourceFile, usage.deadVariables);
+                }
+            } finally {
+                numQueries = satUtils.getNumQueries() - queriesBefore;
+                numCacheHits = satUtils.getNumCacheHits() - cacheHitsBefore;
+                satUtils.setCurrentFile(null);
+                release(satUtils);
+            }
+        }
+
+        long end = System.nanoTime();
+        metrics.recordFile(start, end, numQueries);
+        if (statistics != null) {
+            statistics.finish(numQueries, numCacheHits, end - start, notNull(Thread.currentThread().getName()));
+        }
+        return result;
+    }
+
+    /**
+     * Checks if a given element is dead. Recursively walks over each child element,
+     * too.
+     * 
+     * @param element    The element to check.
+     * @param parentPc   The presence condition of the parent element; {@link True} for top-level elements.
+     * @param filePc     The presence condition of the file.
+     * @param satUtils   The SAT utils to use.
+     * @param result     The list to add result {@link DeadCodeBlock}s to.
+     * @param usage      Receives the variables of live and dead elements; <code>null</code> if they should not be
+     *                   collected.
+     * @param statistics Counts the checked and dead elements; <code>null</code> if they should not be counted.
+     * 
+     * @throws ConverterException If converting the formula to CNF fails.
+     * @throws SolverException    If solving the CNF fails.
+     */
+    private void checkElement(@NonNull CodeElement<?> element, @NonNull Formula parentPc, @NonNull Formula filePc,
+            @NonNull SatUtilities satUtils, @NonNull List<@NonNull DeadCodeBlock> result, @Nullable BlockUsage usage,
+            @Nullable FileStatistics statistics) throws ConverterException, SolverException {
+
+        int numResults = result.size();
+        satUtils.setCurrentLine(element.getLineStart());
+
+        Formula pc = element.getPresenceCondition();
+        FormulaRelevancyChecker checker = this.relevancyChecker;
+        boolean considerBlock = checker != null ? checker.visit(pc) : true;
+
+        if (this.detailedAnalysis) {
+            if (!satUtils.isVmSat(pc, filePc)) {
+                if (!satUtils.isSat(pc)) { // check CPP alone
+                    result.add(new DetailedDeadCodeBlock(element, filePc, Reason.CPP_NOT_SATISFIABLE));
+                } else if (!satUtils.isSat(pc, filePc)) { // check CPP and filePC
+                    result.add(new DetailedDeadCodeBlock(element, filePc, Reason.CPP_AND_FILE_PC_NOT_SATISFIABLE));
+                } else if (!satUtils.isVmSat(pc)) { // check CPP and VM
+                    result.add(new DetailedDeadCodeBlock(element, filePc, Reason.CPP_AND_VM_NOT_SATISFIABLE));
+                } else { // check CPP and filePC and VM
+                    result.add(new DetailedDeadCodeBlock(element, filePc,
+                            Reason.CPP_AND_FILE_PC_AND_VM_NOT_SATISFIABLE));
+                }
+            }
+        } else {
+            if (considerBlock && !satUtils.isVmSat(pc, filePc)) {
+                DeadCodeBlock deadBlock = new DeadCodeBlock(element, filePc);
+                LOGGER.logInfo("Found dead block: " + deadBlock);
+                result.add(deadBlock);
+            }
+        }
+
+        boolean dead = result.size() > numResults;
+        if (statistics != null && (considerBlock || this.detailedAnalysis)) {
+            statistics.addBlock(dead);
+        }
+        if (usage != null) {
+            VariableUsageCollector.addVariablesInFormula(pc, dead ? usage.deadVariables : usage.liveVariables);
+        }
+
+        // like the detailed dead check, the undead check does not depend on the relevancy of the block
+        if (!dead && this.detailedAnalysis && this.findUndead) {
+            checkUndead(element, parentPc, filePc, satUtils, result);
+        }
+
+        for (int i = 0; i < element.getNestedElementCount(); i++) {
+            checkElement(element.getNestedElement(i), pc, filePc, satUtils, result, usage, statistics);
+        }
+    }
+
+    /**
+     * Checks if a given element, which is not dead, is undead: the element is always present if its parent is, i.e.
+     * <code>parentPc &and; &not;pc</code> is not satisfiable (with the file PC and the variability model). The same
+     * solver and verdict caches as for the dead code checks are used. Elements without an own condition are skipped.
+     * 
+     * @param element    The element to check.
+     * @param parentPc   The presence condition of the parent element; {@link True} for top-level elements.
+     * @param filePc     The presence condition of the file.
+     * @param satUtils   The SAT utils to use.
+     * @param result     The list to add an undead {@link DetailedDeadCodeBlock} to.
+     * 
+     * @throws ConverterException If converting the formula to CNF fails.
+     * @throws SolverException    If solving the CNF fails.
+     */
+    private void checkUndead(@NonNull CodeElement<?> element, @NonNull Formula parentPc, @NonNull Formula filePc,
+            @NonNull SatUtilities satUtils, @NonNull List<@NonNull DeadCodeBlock> result)
+            throws ConverterException, SolverException {
+
+        Formula pc = element.getPresenceCondition();
+        if (element.getCondition() instanceof True || pc instanceof True || pc.equals(parentPc)) {
+            return;
+        }
+
+        Formula absent = parentPc instanceof True ? new Negation(pc) : new Conjunction(parentPc, new Negation(pc));
+        if (!satUtils.isVmSat(absent, filePc)) {
+            Reason reason;
+            if (!satUtils.isSat(absent)) { // check CPP alone
+                reason = Reason.CPP_UNDEAD;
+            } else if (!satUtils.isSat(absent, filePc)) { // check CPP and filePC
+                reason = Reason.CPP_AND_FILE_PC_UNDEAD;
+            } else if (!satUtils.isVmSat(absent)) { // check CPP and VM
+                reason = Reason.CPP_AND_VM_UNDEAD;
+            } else { // check CPP and filePC and VM
+                reason = Reason.CPP_AND_FILE_PC_AND_VM_UNDEAD;
+            }
+            DetailedDeadCodeBlock undeadBlock = new DetailedDeadCodeBlock(element, filePc, reason);
+            LOGGER.logInfo("Found undead block: " + undeadBlock);
+            result.add(undeadBlock);
+        }
+    }
+
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.config.DefaultSettings;
+import net.ssehub.kernel_haven.config.Setting;
+import net.ssehub.kernel_haven.config.Setting.Type;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeDaemon.ServedRequest;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.io.TableElement;
+import net.ssehub.kernel_haven.util.io.TableRow;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.parser.CStyleBooleanGrammar;
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.logic.parser.Parser;
+import net.ssehub.kernel_haven.util.logic.parser.VariableCache;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * A long-running dead code analysis that loads the variability and build model once and then answers queries with
+ * warm solvers and caches. Queries are read line by line from a local TCP socket (bound to the loopback address
+ * only); stdin and stdout are not used, since the log may be written to stdout. The following commands are understood:
+ * <ul>
+ *  <li><code>PC &lt;file&gt; &lt;presence condition&gt;</code>: checks whether a block with the given (C-style)
+ *      presence condition in the given file is dead. The answer is <code>DEAD</code>, <code>ALIVE</code>,
+ *      <code>IGNORED</code> (block contains no variability model variables, see
+ *      {@link DefaultSettings#ANALYSIS_USE_VARMODEL_VARIABLES_ONLY}) or <code>NO_BUILD_PC</code>.</li>
+ *  <li><code>FILE &lt;file&gt;</code>, followed by lines <code>BLOCK &lt;start&gt; &lt;end&gt; &lt;presence
+ *      condition&gt;</code> and a final <code>END</code>: checks all blocks of a whole source file. The answer is one
+ *      line <code>DEAD &lt;start&gt; &lt;end&gt;</code> per dead block, followed by <code>DONE &lt;number of dead
+ *      blocks&gt;</code>. If any block is invalid or can not be checked, all lines up to <code>END</code> are still
+ *      consumed and only a single <code>ERROR</code> line is answered.</li>
+ *  <li><code>QUIT</code>: closes the current connection.</li>
+ *  <li><code>SHUTDOWN</code>: stops the daemon.</li>
+ * </ul>
+ * The last answer line of each request ends with the time that was needed to answer the request, e.g.
+ * <code>DEAD time=153us</code>. Errors are answered with <code>ERROR &lt;message&gt;</code>. Each served request is
+ * also added as a result of this component, so that the latencies can be inspected afterwards.
+ * 
+ * @author Adam
+ */
+public class DeadCodeDaemon extends AnalysisComponent<ServedRequest> {
+
+    public static final @NonNull Setting<@NonNull Integer> PORT_SETTING = new Setting<>(
+            "analysis.undead.daemon.port", Type.INTEGER, true, null, "The local TCP port that the "
+                    + DeadCodeDaemon.class.getSimpleName() + " listens on (only on the loopback address).");
+
+    private @NonNull AnalysisComponent<VariabilityModel> vmComponent;
+
+    private @NonNull AnalysisComponent<BuildModel> bmComponent;
+
+    private boolean considerVmVarsOnly;
+
+    private int port;
+
+    private @Nullable DeadCodeContext context;
+
+    private @NonNull Parser<@NonNull Formula> parser;
+
+    private boolean shutdown;
+
+    /**
+     * A request that was served by the daemon.
+     */
+    @TableRow
+    public static class ServedRequest {
+
+        private @NonNull String request;
+
+        private @NonNull String response;
+
+        private long latencyMicros;
+
+        /**
+         * Creates a served request.
+         * 
+         * @param request The command of the request.
+         * @param response The response that was sent (without the latency).
+         * @param latencyMicros The time that was needed to answer the request, in microseconds.
+         */
+        public ServedRequest(@NonNull String request, @NonNull String response, long latencyMicros) {
+            this.request = request;
+            this.response = response;
+            this.latencyMicros = latencyMicros;
+        }
+
+        /**
+         * Returns the command of the request.
+         * 
+         * @return The request.
+         */
+        @TableElement(name = "Request", index = 0)
+        public @NonNull String getRequest() {
+            return request;
+        }
+
+        /**
+         * Returns the response that was sent.
+         * 
+         * @return The response.
+         */
+        @TableElement(name = "Response", index = 1)
+        public @NonNull String getResponse() {
+            return response;
+        }
+
+        /**
+         * Returns the time that was needed to answer the request.
+         * 
+         * @return The latency in microseconds.
+         */
+        @TableElement(name = "Latency (us)", index = 2)
+        public long getLatencyMicros() {
+            return latencyMicros;
+        }
+
+    }
+
+    /**
+     * Creates a dead code daemon.
+     * 
+     * @param config The pipeline configuration.
+     * @param vmComponent The component to provide the variability model.
+     * @param bmComponent The component to provide the build model.
+     * 
+     * @throws SetUpException If reading the configuration fails.
+     */
+    public DeadCodeDaemon(@NonNull Configuration config, @NonNull AnalysisComponent<VariabilityModel> vmComponent,
+            @NonNull AnalysisComponent<BuildModel> bmComponent) throws SetUpException {
+        super(config);
+
+        config.registerSetting(PORT_SETTING);
+        this.port = config.getValue(PORT_SETTING);
+        if (port < 1 || port > 65535) {
+            throw new SetUpException(PORT_SETTING.getKey() + " is not a valid port number: " + port);
+        }
+
+        this.vmComponent = vmComponent;
+        this.bmComponent = bmComponent;
+        this.considerVmVarsOnly = config.getValue(DefaultSettings.ANALYSIS_USE_VARMODEL_VARIABLES_ONLY);
+
+        this.parser = new Parser<>(new CStyleBooleanGrammar(new VariableCache()));
+    }
+
+    /**
+     * Loads the models and warms up the solvers.
+     * 
+     * @return Whether the models could be loaded.
+     */
+    boolean loadModels() {
+        VariabilityModel vm = vmComponent.getNextResult();
+        BuildModel bm = bmComponent.getNextResult();
+
+        boolean success = false;
+        if (vm == null || bm == null) {
+            LOGGER.logError("Couldn't get models");
+        } else {
+            try {
+                long t0 = System.currentTimeMillis();
+                context = new DeadCodeContext(vm, bm, considerVmVarsOnly, false);
+                LOGGER.logInfo("Loaded models in " + (System.currentTimeMillis() - t0) + " ms");
+                success = true;
+            } catch (FormatException e) {
+                LOGGER.logException("Invalid variability model", e);
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Checks whether the block with the given presence condition in the given file is dead.
+     * 
+     * @param path The path of the source file.
+     * @param pc The presence condition of the block.
+     * 
+     * @return The verdict; one of <code>DEAD</code>, <code>ALIVE</code>, <code>IGNORED</code> and
+     *      <code>NO_BUILD_PC</code>.
+     * 
+     * @throws ConverterException If converting the formula to CNF fails.
+     * @throws SolverException If solving the CNF fails.
+     */
+    private @NonNull String check(@NonNull File path, @NonNull Formula pc)
+            throws ConverterException, SolverException {
+
+        String result;
+        DeadCodeContext context = notNull(this.context);
+        Formula filePc = context.getBuildModel().getPc(path);
+        FormulaRelevancyChecker checker = context.getRelevancyChecker();
+
+        if (filePc == null) {
+            result = "NO_BUILD_PC";
+        } else if (checker != null && !checker.visit(pc)) {
+            result = "IGNORED";
+        } else {
+            result = context.isDead(filePc, pc) ? "DEAD" : "ALIVE";
+        }
+        return result;
+    }
+
+    /**
+     * Answers a single <code>PC</code> request.
+     * 
+     * @param arguments The arguments of the request: the file and the presence condition, separated by a space.
+     * 
+     * @return The response.
+     * 
+     * @throws ExpressionFormatException If the presence condition can not be parsed.
+     * @throws ConverterException If converting the formula to CNF fails.
+     * @throws SolverException If solving the CNF fails.
+     */
+    private @NonNull String answerPc(@NonNull String arguments)
+            throws ExpressionFormatException, ConverterException, SolverException {
+
+        int split = arguments.indexOf(' ');
+        if (split == -1) {
+            throw new ExpressionFormatException("Expected file and presence condition");
+        }
+        return check(new File(arguments.substring(0, split)), parser.parse(notNull(arguments.substring(split + 1))));
+    }
+
+    /**
+     * Checks whether a single <code>BLOCK</code> line of a <code>FILE</code> request is dead.
+     * 
+     * @param path The path of the source file.
+     * @param line The <code>BLOCK</code> line.
+     * 
+     * @return The answer line for the dead block, or <code>null</code> if the block is not dead.
+     * 
+     * @throws ExpressionFormatException If the format of the block is invalid.
+     * @throws ConverterException If converting the formula to CNF fails.
+     * @throws SolverException If solving the CNF fails.
+     */
+    private @Nullable String answerBlock(@NonNull File path, @NonNull String line)
+            throws ExpressionFormatException, ConverterException, SolverException {
+
+        String[] parts = line.trim().split(" ", 4);
+        if (parts.length != 4 || !parts[0].equals("BLOCK")) {
+            throw new ExpressionFormatException("Expected BLOCK <start> <end> <pc>, got: " + line);
+        }
+
+        int start;
+        int end;
+        try {
+            start = Integer.parseInt(parts[1]);
+            end = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            throw new ExpressionFormatException("Invalid line numbers in: " + line);
+        }
+
+        String result = null;
+        if (check(path, parser.parse(notNull(parts[3]))).equals("DEAD")) {
+            result = "DEAD " + start + " " + end;
+        }
+        return result;
+    }
+
+    /**
+     * Answers a <code>FILE</code> request, by reading the following <code>BLOCK</code> lines until <code>END</code>.
+     * All lines up to <code>END</code> are consumed even if a block fails, so that the next request starts at the
+     * right line; in that case, only a single <code>ERROR</code> is answered for the whole request.
+     * 
+     * @param path The path of the source file.
+     * @param in The reader to read the blocks from.
+     * @param out The writer to write the dead blocks to.
+     * 
+     * @return The final response line.
+     * 
+     * @throws IOException If reading the blocks fails.
+     */
+    private @NonNull String answerFile(@NonNull File path, @NonNull BufferedReader in, @NonNull PrintWriter out)
+            throws IOException {
+
+        boolean hasBuildPc = notNull(context).getBuildModel().getPc(path) != null;
+
+        List<@NonNull String> deadBlocks = new ArrayList<>();
+        String error = null;
+        String line;
+        while ((line = in.readLine()) != null && !line.trim().equals("END")) {
+            // the remaining blocks are only read after an error, or if there is no build PC
+            if (hasBuildPc && error == null) {
+                try {
+                    String dead = answerBlock(path, line);
+                    if (dead != null) {
+                        deadBlocks.add(dead);
+                    }
+                } catch (ExpressionFormatException | ConverterException | SolverException e) {
+                    error = "ERROR " + e.getMessage();
+                }
+            }
+        }
+
+        String result;
+        if (!hasBuildPc) {
+            result = "NO_BUILD_PC";
+        } else if (error != null) {
+            result = error;
+        } else {
+            for (String dead : deadBlocks) {
+                out.println(dead);
+            }
+            result = "DONE " + deadBlocks.size();
+        }
+        return result;
+    }
+
+    /**
+     * Serves all requests from the given reader until it is exhausted or a <code>QUIT</code> or
+     * <code>SHUTDOWN</code> command is read.
+     * 
+     * @param in The reader to read requests from.
+     * @param writer The writer to write the responses to.
+     * 
+     * @throws IOException If reading or writing fails.
+     */
+    void serve(@NonNull BufferedReader in, @NonNull Writer writer) throws IOException {
+        PrintWriter out = new PrintWriter(writer);
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            int split = line.indexOf(' ');
+            String command = split == -1 ? line : line.substring(0, split);
+            String arguments = split == -1 ? "" : notNull(line.substring(split + 1).trim());
+
+            if (command.equals("QUIT")) {
+                break;
+            }
+            if (command.equals("SHUTDOWN")) {
+                shutdown = true;
+                break;
+            }
+
+            long t0 = System.nanoTime();
+            String response;
+            try {
+                switch (command) {
+                case "PC":
+                    response = answerPc(arguments);
+                    break;
+
+                case "FILE":
+                    response = answerFile(new File(arguments), in, out);
+                    break;
+
+                default:
+                    response = "ERROR Unknown command: " + command;
+                    break;
+                }
+            } catch (ExpressionFormatException | ConverterException | SolverException e) {
+                response = "ERROR " + e.getMessage();
+            }
+            long latencyMicros = (System.nanoTime() - t0) / 1000;
+
+            out.println(response + " time=" + latencyMicros + "us");
+            out.flush();
+
+            addResult(new ServedRequest(line, response, latencyMicros));
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Accepts connections on the local socket until a <code>SHUTDOWN</code> command is received. Connections are
+     * served one after another.
+     * 
+     * @throws IOException If opening the socket fails.
+     */
+    private void serveSocket() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            LOGGER.logInfo("Listening on " + serverSocket.getLocalSocketAddress());
+
+            while (!shutdown) {
+                try (Socket socket = serverSocket.accept()) {
+                    BufferedReader in = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                    serve(in, out);
+                } catch (IOException e) {
+                    LOGGER.logException("Exception while serving client", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void execute() {
+        if (!loadModels()) {
+            return;
+        }
+
+        try {
+            serveSocket();
+        } catch (IOException e) {
+            LOGGER.logException("Exception while serving requests", e);
+        } finally {
+            notNull(context).close();
+            context = null;
+        }
+    }
+
+    @Override
+    public @NonNull String getResultName() {
+        return "Served Requests";
+    }
+
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.code_model.CodeElement;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.config.DefaultSettings;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeDiffFinder.DeadCodeStatusChange;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DeadCodeBlock;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.ProgressLogger;
+import net.ssehub.kernel_haven.util.io.TableElement;
+import net.ssehub.kernel_haven.util.io.TableRow;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * Compares the dead code blocks of two versions of the variability model. Only blocks that changed their status
+ * (dead to alive or alive to dead) are reported.
+ * <p>
+ * Instead of running two full dead code analyses, this component computes the symmetric difference of the clauses
+ * of both variability models. All variables that are (transitively) connected to a changed clause via the clauses of
+ * either model are considered affected. A block whose presence condition (including the file PC) does not mention an
+ * affected variable cannot change its status and is thus not solved at all. If only one of the two models is
+ * satisfiable at all, every block is re-checked.
+ * </p>
+ * 
+ * @author Adam
+ */
+public class DeadCodeDiffFinder extends AnalysisComponent<DeadCodeStatusChange> {
+
+    private @NonNull AnalysisComponent<VariabilityModel> oldVmComponent;
+
+    private @NonNull AnalysisComponent<VariabilityModel> newVmComponent;
+
+    private @NonNull AnalysisComponent<BuildModel> bmComponent;
+
+    private @NonNull AnalysisComponent<SourceFile<?>> cmComponent;
+
+    private boolean considerVmVarsOnly;
+
+    private @Nullable DeadCodeContext oldContext;
+
+    private @Nullable DeadCodeContext newContext;
+
+    /**
+     * Maps each variable to its parent in the union-find structure of the variable interaction graph.
+     */
+    private @NonNull Map<String, String> components;
+
+    /**
+     * The roots of all components that contain at least one variable of a changed clause. <code>null</code> if all
+     * blocks should be considered affected.
+     */
+    private @Nullable Set<String> affectedComponents;
+
+    private int numSolved;
+
+    private int numSkipped;
+
+    /**
+     * Creates a differential dead code analysis.
+     * 
+     * @param config The pipeline configuration.
+     * @param oldVmComponent The component to provide the old version of the variability model.
+     * @param newVmComponent The component to provide the new version of the variability model.
+     * @param bmComponent The component to provide the build model.
+     * @param cmComponent The component to provide the code model.
+     */
+    public DeadCodeDiffFinder(@NonNull Configuration config,
+            @NonNull AnalysisComponent<VariabilityModel> oldVmComponent,
+            @NonNull AnalysisComponent<VariabilityModel> newVmComponent,
+            @NonNull AnalysisComponent<BuildModel> bmComponent, @NonNull AnalysisComponent<SourceFile<?>> cmComponent) {
+        super(config);
+
+        this.oldVmComponent = oldVmComponent;
+        this.newVmComponent = newVmComponent;
+        this.bmComponent = bmComponent;
+        this.cmComponent = cmComponent;
+
+        this.considerVmVarsOnly = config.getValue(DefaultSettings.ANALYSIS_USE_VARMODEL_VARIABLES_ONLY);
+        this.components = new HashMap<>();
+    }
+
+    /**
+     * A code block that changed its status between the two versions of the variability model.
+     */
+    @TableRow
+    public static class DeadCodeStatusChange extends DeadCodeBlock {
+
+        private boolean deadInNewVersion;
+
+        /**
+         * Creates a status change for the given element.
+         * 
+         * @param element The element that changed its status.
+         * @param filePc The presence condition of the file.
+         * @param deadInNewVersion Whether the block is dead in the new version of the variability model (and thus
+         *      alive in the old one).
+         */
+        public DeadCodeStatusChange(@NonNull CodeElement<?> element, @Nullable Formula filePc,
+                boolean deadInNewVersion) {
+            super(element, filePc);
+            this.deadInNewVersion = deadInNewVersion;
+        }
+
+        /**
+         * Returns whether the block is dead in the new version of the variability model. If this is
+         * <code>false</code>, then the block was dead in the old version and is alive in the new one.
+         * 
+         * @return Whether this block became dead.
+         */
+        public boolean isDeadInNewVersion() {
+            return deadInNewVersion;
+        }
+
+        /**
+         * Returns a description of the status change.
+         * 
+         * @return A description of the change.
+         */
+        @TableElement(name = "Change", index = 5)
+        public @NonNull String getChange() {
+            return deadInNewVersion ? "alive -> dead" : "dead -> alive";
+        }
+
+    }
+
+    /**
+     * Creates a canonical representation of a clause, which is independent of the order of its literals.
+     * 
+     * @param clause The clause.
+     * 
+     * @return A canonical representation of the clause.
+     */
+    private static @NonNull List<String> canonicalClause(@NonNull List<CnfVariable> clause) {
+        List<String> result = new ArrayList<>(clause.size());
+        for (CnfVariable literal : clause) {
+            result.add((literal.isNegation() ? "!" : "") + literal.getName());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Reads all clauses of the given CNF into a set of canonical clauses.
+     * 
+     * @param cnf The CNF to read.
+     * 
+     * @return The set of canonical clauses.
+     */
+    private static @NonNull Set<List<String>> toClauseSet(@NonNull Cnf cnf) {
+        Set<List<String>> result = new HashSet<>(cnf.getRowCount());
+        for (int i = 0; i < cnf.getRowCount(); i++) {
+            result.add(canonicalClause(notNull(cnf.getRow(i))));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the root of the component of the given variable in the union-find structure.
+     * 
+     * @param variable The variable to find the component of.
+     * 
+     * @return The root of the component, or <code>null</code> if the variable does not appear in any clause.
+     */
+    private @Nullable String findComponent(@NonNull String variable) {
+        String current = variable;
+        String parent = components.get(current);
+        if (parent == null) {
+            return null;
+        }
+        while (!parent.equals(current)) {
+            String grandParent = notNull(components.get(parent));
+            components.put(current, grandParent); // path halving
+            current = parent;
+            parent = grandParent;
+        }
+        return current;
+    }
+
+    /**
+     * Merges the components of all variables of the given clause.
+     * 
+     * @param clause The clause to add to the union-find structure.
+     */
+    private void addToComponents(@NonNull List<CnfVariable> clause) {
+        String first = null;
+        for (CnfVariable literal : clause) {
+            String name = literal.getName();
+            components.putIfAbsent(name, name);
+            String root = notNull(findComponent(name));
+            if (first == null) {
+                first = root;
+            } else if (!first.equals(root)) {
+                components.put(root, first);
+            }
+        }
+    }
+
+    /**
+     * Computes the affected components from the symmetric difference of the two CNFs.
+     * 
+     * @param oldCnf The CNF of the old variability model.
+     * @param newCnf The CNF of the new variability model.
+     */
+    private void computeAffectedComponents(@NonNull Cnf oldCnf, @NonNull Cnf newCnf) {
+        for (Cnf cnf : new Cnf[] {oldCnf, newCnf}) {
+            for (int i = 0; i < cnf.getRowCount(); i++) {
+                addToComponents(notNull(cnf.getRow(i)));
+            }
+        }
+
+        Set<List<String>> oldClauses = toClauseSet(oldCnf);
+        Set<List<String>> newClauses = toClauseSet(newCnf);
+
+        Set<String> affected = new HashSet<>();
+        int numChangedClauses = addChangedClauses(oldClauses, newClauses, affected);
+        numChangedClauses += addChangedClauses(newClauses, oldClauses, affected);
+
+        LOGGER.logInfo("Found " + numChangedClauses + " changed clauses, affecting " + affected.size()
+                + " independent parts of the variability model");
+        this.affectedComponents = affected;
+    }
+
+    /**
+     * Adds the components of all clauses that are contained in the first set, but not in the second set.
+     * 
+     * @param clauses The set of clauses to search for changed clauses.
+     * @param other The set of clauses of the other variability model.
+     * @param affected The set to add the roots of the affected components to.
+     * 
+     * @return The number of clauses that are only contained in the first set.
+     */
+    private int addChangedClauses(@NonNull Set<List<String>> clauses, @NonNull Set<List<String>> other,
+            @NonNull Set<String> affected) {
+
+        int numChangedClauses = 0;
+        for (List<String> clause : clauses) {
+            if (!other.contains(clause)) {
+                numChangedClauses++;
+                for (String literal : clause) {
+                    String name = literal.startsWith("!") ? literal.substring(1) : literal;
+                    affected.add(findComponent(notNull(name)));
+                }
+            }
+        }
+        return numChangedClauses;
+    }
+
+    /**
+     * Checks whether the given presence condition mentions at least one variable of an affected component.
+     * 
+     * @param pc The presence condition to check.
+     * 
+     * @return Whether the presence condition needs to be solved again.
+     */
+    private boolean isAffected(@NonNull Formula pc) {
+        Set<String> affected = this.affectedComponents;
+        return affected == null || mentionsAffected(pc, affected);
+    }
+
+    /**
+     * Recursively checks whether the given formula mentions a variable of an affected component. Stops at the first
+     * such variable and does not allocate anything.
+     * 
+     * @param formula The formula to check.
+     * @param affected The roots of the affected components.
+     * 
+     * @return Whether a variable of the formula belongs to an affected component.
+     */
+    private boolean mentionsAffected(@NonNull Formula formula, @NonNull Set<String> affected) {
+        boolean result;
+        if (formula instanceof Variable) {
+            String root = findComponent(((Variable) formula).getName());
+            result = root != null && affected.contains(root);
+        } else if (formula instanceof Negation) {
+            result = mentionsAffected(((Negation) formula).getFormula(), affected);
+        } else if (formula instanceof Conjunction) {
+            result = mentionsAffected(((Conjunction) formula).getLeft(), affected)
+                    || mentionsAffected(((Conjunction) formula).getRight(), affected);
+        } else if (formula instanceof Disjunction) {
+            result = mentionsAffected(((Disjunction) formula).getLeft(), affected)
+                    || mentionsAffected(((Disjunction) formula).getRight(), affected);
+        } else {
+            result = false;
+        }
+        return result;
+    }
+
+    /**
+     * Checks the given element and all its child elements for status changes.
+     * 
+     * @param element The element to check.
+     * @param filePc The presence condition of the file.
+     * @param fileAffected Whether the file presence condition is affected by the changes (see
+     *      {@link #isAffected(Formula)}); if so, all blocks of the file are solved again.
+     * 
+     * @throws ConverterException If converting the formula to CNF fails.
+     * @throws SolverException If solving the CNF fails.
+     */
+    private void checkElement(@NonNull CodeElement<?> element, @NonNull Formula filePc, boolean fileAffected)
+            throws ConverterException, SolverException {
+
+        FormulaRelevancyChecker checker = notNull(newContext).getRelevancyChecker();
+        boolean considerBlock = checker != null ? checker.visit(element.getPresenceCondition()) : true;
+
+        if (considerBlock) {
+            if (fileAffected || isAffected(element.getPresenceCondition())) {
+                numSolved++;
+                boolean oldDead = notNull(oldContext).isDead(filePc, element.getPresenceCondition());
+                boolean newDead = notNull(newContext).isDead(filePc, element.getPresenceCondition());
+
+                if (oldDead != newDead) {
+                    DeadCodeStatusChange change = new DeadCodeStatusChange(element, filePc, newDead);
+                    LOGGER.logInfo("Found block with changed status: " + change);
+                    addResult(change);
+                }
+            } else {
+                numSkipped++;
+            }
+        }
+
+        for (CodeElement<?> child : element) {
+            checkElement(child, filePc, fileAffected);
+        }
+    }
+
+    @Override
+    protected void execute() {
+        VariabilityModel oldVm = oldVmComponent.getNextResult();
+        VariabilityModel newVm = newVmComponent.getNextResult();
+        BuildModel bm = bmComponent.getNextResult();
+
+        if (oldVm == null || newVm == null || bm == null) {
+            LOGGER.logError("Couldn't get models");
+            return;
+        }
+
+        DeadCodeContext oldContext = null;
+        DeadCodeContext newContext = null;
+        try {
+            oldContext = new DeadCodeContext(oldVm, bm, considerVmVarsOnly, false);
+            newContext = new DeadCodeContext(newVm, bm, considerVmVarsOnly, false);
+            this.oldContext = oldContext;
+            this.newContext = newContext;
+
+            // checking "true" against the models checks the satisfiability of the models alone
+            boolean oldVmDead = oldContext.isDead(True.INSTANCE, True.INSTANCE);
+            boolean newVmDead = newContext.isDead(True.INSTANCE, True.INSTANCE);
+            if (oldVmDead != newVmDead) {
+                LOGGER.logWarning("Only one of the two variability models is satisfiable; checking all blocks");
+                affectedComponents = null;
+            } else {
+                computeAffectedComponents(oldContext.getVmCnf(), newContext.getVmCnf());
+            }
+
+            ProgressLogger progress = new ProgressLogger(notNull(getClass().getSimpleName()));
+
+            SourceFile<?> file;
+            while ((file = cmComponent.getNextResult()) != null) {
+                Formula filePc = bm.getPc(file.getPath());
+                if (filePc == null) {
+                    LOGGER.logInfo("Skipping " + file.getPath() + " because it has no build PC");
+                } else {
+                    boolean fileAffected = isAffected(filePc);
+                    for (CodeElement<?> element : file) {
+                        try {
+                            checkElement(element, filePc, fileAffected);
+                        } catch (SolverException | ConverterException e) {
+                            LOGGER.logException("Exception while trying to check element", e);
+                        }
+                    }
+                }
+
+                progress.processedOne();
+            }
+
+            progress.close();
+
+            LOGGER.logInfo("Solved " + numSolved + " blocks, skipped " + numSkipped
+                    + " blocks not affected by the changes of the variability model");
+
+        } catch (FormatException e) {
+            LOGGER.logException("Invalid variability model", e);
+        } catch (SolverException | ConverterException e) {
+            LOGGER.logException("Exception while trying to check the variability models", e);
+        } finally {
+            if (oldContext != null) {
+                oldContext.close();
+            }
+            if (newContext != null) {
+                newContext.close();
+            }
+        }
+    }
+
+    @Override
+    public @NonNull String getResultName() {
+        return "Dead Code Status Changes";
+    }
+
+}
@@ -19,34 +19,28 @@ import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javax.management.ObjectName;
 
 import net.ssehub.kernel_haven.SetUpException;
 import net.ssehub.kernel_haven.analysis.AnalysisComponent;
 import net.ssehub.kernel_haven.build_model.BuildModel;
-import net.ssehub.kernel_haven.cnf.Cnf;
-import net.ssehub.kernel_haven.cnf.ConverterException;
-import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
-import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
-import net.ssehub.kernel_haven.cnf.IFormulaToCnfConverter;
-import net.ssehub.kernel_haven.cnf.ISatSolver;
-import net.ssehub.kernel_haven.cnf.SatSolverFactory;
-import net.ssehub.kernel_haven.cnf.SolverException;
-import net.ssehub.kernel_haven.cnf.VmToCnfConverter;
 import net.ssehub.kernel_haven.code_model.CodeElement;
 import net.ssehub.kernel_haven.code_model.SourceFile;
 import net.ssehub.kernel_haven.config.Configuration;
 import net.ssehub.kernel_haven.config.DefaultSettings;
+import net.ssehub.kernel_haven.config.EnumSetting;
 import net.ssehub.kernel_haven.config.Setting;
 import net.ssehub.kernel_haven.config.Setting.Type;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeContext.BlockUsage;
 import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DeadCodeBlock;
 import net.ssehub.kernel_haven.util.FormatException;
 import net.ssehub.kernel_haven.util.ProgressLogger;
 import net.ssehub.kernel_haven.util.io.TableElement;
 import net.ssehub.kernel_haven.util.io.TableRow;
-import net.ssehub.kernel_haven.util.logic.Conjunction;
 import net.ssehub.kernel_haven.util.logic.Formula;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
 import net.ssehub.kernel_haven.util.null_checks.Nullable;
@@ -63,6 +57,146 @@ public class DeadCodeFinder extends AnalysisComponent<DeadCodeBlock> {
             "analysis.undead.detailed_checks", Type.BOOLEAN, true, "false", "Whether the DeadCodeFinder should do"
                     + " a detailed analysis why a block is dead or not.");
 
+    public static final @NonNull Setting<@NonNull Boolean> UNDEAD_SETTING = new Setting<>(
+            "analysis.undead.find_undead", Type.BOOLEAN, true, "false", "Whether the DeadCodeFinder should also"
+                    + " report undead blocks, i.e. blocks that are always present if their parent block is present"
+                    + " (with the file PC and the variability model). They are checked with the same solvers as the"
+                    + " dead blocks and reported with their own reasons. Requires " + DETAILED_SETTING.getKey() + ";"
+                    + " like the detailed dead code check, all blocks are checked, even if "
+                    + DefaultSettings.ANALYSIS_USE_VARMODEL_VARIABLES_ONLY.getKey() + " is set.");
+
+    /**
+     * The default for {@link #CNF_DISTRIBUTIVE_LIMIT_SETTING}.
+     */
+    static final int DEFAULT_DISTRIBUTIVE_LIMIT = 16;
+
+    public static final @NonNull Setting<@NonNull CnfStrategy> CNF_STRATEGY_SETTING = new EnumSetting<>(
+            "analysis.undead.cnf_strategy", CnfStrategy.class, true, CnfStrategy.ADAPTIVE, "How presence conditions"
+                    + " are converted to CNF before they are passed to the SAT solver. ADAPTIVE chooses per formula:"
+                    + " formulas that already are in CNF are passed directly, small ones are multiplied out, and"
+                    + " large ones are encoded with auxiliary variables (Tseitin-style). DISTRIBUTIVE and TSEITIN"
+                    + " force one of the latter two for all formulas that are not in CNF already.");
+
+    public static final @NonNull Setting<@NonNull Integer> CNF_DISTRIBUTIVE_LIMIT_SETTING = new Setting<>(
+            "analysis.undead.cnf_distributive_limit", Type.INTEGER, true, String.valueOf(DEFAULT_DISTRIBUTIVE_LIMIT),
+            "The maximum number of clauses that multiplying out a presence condition may create, if "
+                    + CNF_STRATEGY_SETTING.getKey() + " is ADAPTIVE. Larger formulas are encoded Tseitin-style.");
+
+    public static final @NonNull Setting<@NonNull Integer> PORTFOLIO_THRESHOLD_SETTING = new Setting<>(
+            "analysis.undead.portfolio_threshold", Type.INTEGER, true, "0", "The number of SAT solver conflicts"
+                    + " after which a query is considered hard. Hard queries are solved by several differently"
+                    + " configured solvers in parallel; the first answer is used and the other solvers are cancelled."
+                    + " 0 disables this.");
+
+    public static final @NonNull Setting<@NonNull Integer> CUBE_THRESHOLD_SETTING = new Setting<>(
+            "analysis.undead.cube_min_disjuncts", Type.INTEGER, true, "0", "The minimum number of top-level"
+                    + " disjuncts of a query to split it into independent cubes that are solved in parallel, one per"
+                    + " available processor. The query is answered as soon as one cube is satisfiable. 0 disables"
+                    + " this.");
+
+    public static final @NonNull Setting<@Nullable List<@NonNull String>> EXTERNAL_SOLVER_SETTING = new Setting<>(
+            "analysis.undead.external_solver", Type.STRING_LIST, false, null, "The command line of an external SAT"
+                    + " solver that reads DIMACS CNF from its standard input and answers with a result line"
+                    + " (\"s SATISFIABLE\" or \"s UNSATISFIABLE\") or the exit code 10 or 20. The executable is"
+                    + " looked up on the PATH. If set, all queries with the variability model are solved by such"
+                    + " processes (one per analysis thread) instead of in the JVM.");
+
+    public static final @NonNull Setting<@NonNull Boolean> EXTERNAL_SOLVER_INCREMENTAL_SETTING = new Setting<>(
+            "analysis.undead.external_solver_incremental", Type.BOOLEAN, true, "false", "Whether the "
+                    + EXTERNAL_SOLVER_SETTING.getKey() + " supports the incremental iCNF format (header \"p inccnf\","
+                    + " queries as assumption lines \"a <literals> 0\"). If so, each process is long-lived and reads"
+                    + " the variability model only once; otherwise, a new process is started for each query.");
+
+    public static final @NonNull Setting<@NonNull Boolean> PREPROCESS_VM_SETTING = new Setting<>(
+            "analysis.undead.preprocess_vm", Type.BOOLEAN, true, "false", "Whether the CNF of the variability model"
+                    + " is simplified once (unit propagation, equivalent-literal substitution, subsumption,"
+                    + " self-subsuming resolution and pure-literal elimination) before the solvers are loaded with it."
+                    + " This does not change the results.");
+
+    public static final @NonNull Setting<@NonNull Integer> SLOW_QUERY_THRESHOLD_SETTING = new Setting<>(
+            "analysis.undead.slow_query_threshold", Type.INTEGER, true, "0", "The solving time in milliseconds from"
+                    + " which on a SAT query is considered slow. The slowest queries are logged at the end of the"
+                    + " analysis with their source file, line, formula, number of clauses and solving time. 0 disables"
+                    + " this.");
+
+    public static final @NonNull Setting<@NonNull Integer> SLOW_QUERY_COUNT_SETTING = new Setting<>(
+            "analysis.undead.slow_query_count", Type.INTEGER, true, "20", "How many of the slowest queries are kept"
+                    + " if " + SLOW_QUERY_THRESHOLD_SETTING.getKey() + " is set.");
+
+    public static final @NonNull Setting<@Nullable File> SLOW_QUERY_DIMACS_DIR_SETTING = new Setting<>(
+            "analysis.undead.slow_query_dimacs_dir", Type.PATH, false, null, "If set, the slowest queries (see "
+                    + SLOW_QUERY_THRESHOLD_SETTING.getKey() + ") are also written as DIMACS CNF files to this"
+                    + " directory, so that they can be replayed with other solvers.");
+
+    public static final @NonNull Setting<@NonNull Boolean> SLOW_QUERY_DIMACS_VM_SETTING = new Setting<>(
+            "analysis.undead.slow_query_dimacs_with_vm", Type.BOOLEAN, true, "true", "Whether the DIMACS files of"
+                    + " slow queries with the variability model (see " + SLOW_QUERY_DIMACS_DIR_SETTING.getKey()
+                    + ") contain the clauses of the variability model. Otherwise, they only contain the query.");
+
+    public static final @NonNull Setting<@NonNull Boolean> FILE_STATISTICS_SETTING = new Setting<>(
+            "analysis.undead.file_statistics", Type.BOOLEAN, true, "false", "Whether the dead code analyses should"
+                    + " write a second result table with one row per analyzed source file: the number of checked and"
+                    + " dead blocks, SAT calls, verdict cache hits, the time spent and the worker thread. The numbers"
+                    + " are collected in the same traversal as the dead code blocks.");
+
+    /**
+     * The second output of this analysis, which provides the statistics of the analyzed files after the dead code
+     * analysis is done.
+     */
+    private class FileStatisticsOutput extends AnalysisComponent<FileStatistics> {
+
+        /**
+         * Creates this output component.
+         * 
+         * @param config The pipeline configuration.
+         */
+        FileStatisticsOutput(@NonNull Configuration config) {
+            super(config);
+        }
+
+        @Override
+        protected void execute() {
+            try {
+                for (FileStatistics statistics : fileStatistics.get()) {
+                    addResult(statistics);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.logException("Interrupted while waiting for the file statistics", e);
+            } catch (ExecutionException e) {
+                LOGGER.logException("Couldn't collect file statistics", e.getCause());
+            }
+        }
+
+        @Override
+        public @NonNull String getResultName() {
+            return "Dead Code File Statistics";
+        }
+
+    }
+
+    /**
+     * The strategies to convert presence conditions to CNF.
+     */
+    public enum CnfStrategy {
+
+        /**
+         * Chooses the conversion per formula, based on its shape and size.
+         */
+        ADAPTIVE,
+
+        /**
+         * Multiplies out all formulas. This may grow exponentially for large formulas.
+         */
+        DISTRIBUTIVE,
+
+        /**
+         * Encodes all nested formulas with auxiliary variables.
+         */
+        TSEITIN,
+
+    }
+
     protected @NonNull AnalysisComponent<VariabilityModel> vmComponent;
 
     protected @NonNull AnalysisComponent<BuildModel> bmComponent;
@@ -75,11 +209,46 @@ public class DeadCodeFinder extends AnalysisComponent<DeadCodeBlock> {
 
     protected VariabilityModel vm;
 
-    protected Cnf vmCnf;
-
     protected BuildModel bm;
+
+    protected @Nullable DeadCodeContext context;
     
-    private boolean detailedAnalysis;
+    protected boolean detailedAnalysis;
+
+    protected boolean findUndead;
+
+    protected @NonNull CnfStrategy cnfStrategy;
+
+    protected int distributiveLimit;
+
+    protected int portfolioThreshold;
+
+    protected int cubeThreshold;
+
+    protected @Nullable List<@NonNull String> externalSolver;
+
+    protected boolean externalSolverIncremental;
+
+    protected boolean preprocessVm;
+
+    protected int slowQueryThreshold;
+
+    protected int slowQueryCount;
+
+    protected @Nullable File slowQueryDimacsDir;
+
+    protected boolean slowQueryDimacsWithVm;
+
+    protected boolean collectFileStatistics;
+
+    /**
+     * The statistics of the analyzed files so far; only filled if {@link #collectFileStatistics} is set.
+     */
+    private @NonNull List<@NonNull FileStatistics> collectedFileStatistics;
+
+    private @NonNull CompletableFuture<@NonNull List<@NonNull FileStatistics>> fileStatistics;
+
+    private @NonNull FileStatisticsOutput fileStatisticsOutput;
 
     /**
      * Creates a dead code analysis.
@@ -98,6 +267,72 @@ public class DeadCodeFinder extends AnalysisComponent<DeadCodeBlock> {
 
         config.registerSetting(DETAILED_SETTING);
         detailedAnalysis = config.getValue(DETAILED_SETTING);
+
+        config.registerSetting(UNDEAD_SETTING);
+        findUndead = config.getValue(UNDEAD_SETTING);
+        if (findUndead && !detailedAnalysis) {
+            throw new SetUpException(UNDEAD_SETTING.getKey() + " requires " + DETAILED_SETTING.getKey());
+        }
+
+        config.registerSetting(CNF_STRATEGY_SETTING);
+        config.registerSetting(CNF_DISTRIBUTIVE_LIMIT_SETTING);
+        cnfStrategy = config.getValue(CNF_STRATEGY_SETTING);
+        distributiveLimit = config.getValue(CNF_DISTRIBUTIVE_LIMIT_SETTING);
+        if (distributiveLimit < 0) {
+            throw new SetUpException(CNF_DISTRIBUTIVE_LIMIT_SETTING.getKey() + " must not be negative");
+        }
+
+        config.registerSetting(PORTFOLIO_THRESHOLD_SETTING);
+        portfolioThreshold = config.getValue(PORTFOLIO_THRESHOLD_SETTING);
+        if (portfolioThreshold < 0) {
+            throw new SetUpException(PORTFOLIO_THRESHOLD_SETTING.getKey() + " must not be negative");
+        }
+
+        config.registerSetting(CUBE_THRESHOLD_SETTING);
+        cubeThreshold = config.getValue(CUBE_THRESHOLD_SETTING);
+        if (cubeThreshold < 0) {
+            throw new SetUpException(CUBE_THRESHOLD_SETTING.getKey() + " must not be negative");
+        }
+
+        config.registerSetting(PREPROCESS_VM_SETTING);
+        preprocessVm = config.getValue(PREPROCESS_VM_SETTING);
+
+        config.registerSetting(SLOW_QUERY_THRESHOLD_SETTING);
+        config.registerSetting(SLOW_QUERY_COUNT_SETTING);
+        config.registerSetting(SLOW_QUERY_DIMACS_DIR_SETTING);
+        config.registerSetting(SLOW_QUERY_DIMACS_VM_SETTING);
+        slowQueryThreshold = config.getValue(SLOW_QUERY_THRESHOLD_SETTING);
+        slowQueryCount = config.getValue(SLOW_QUERY_COUNT_SETTING);
+        slowQueryDimacsDir = config.getValue(SLOW_QUERY_DIMACS_DIR_SETTING);
+        slowQueryDimacsWithVm = config.getValue(SLOW_QUERY_DIMACS_VM_SETTING);
+        if (slowQueryThreshold < 0) {
+            throw new SetUpException(SLOW_QUERY_THRESHOLD_SETTING.getKey() + " must not be negative");
+        }
+        if (slowQueryCount < 0) {
+            throw new SetUpException(SLOW_QUERY_COUNT_SETTING.getKey() + " must not be negative");
+        }
+        File dimacsDir = slowQueryDimacsDir;
+        if (dimacsDir != null && dimacsDir.exists() && !dimacsDir.isDirectory()) {
+            throw new SetUpException(SLOW_QUERY_DIMACS_DIR_SETTING.getKey() + " is not a directory: " + dimacsDir);
+        }
+
+        config.registerSetting(FILE_STATISTICS_SETTING);
+        collectFileStatistics = config.getValue(FILE_STATISTICS_SETTING);
+        this.collectedFileStatistics = new ArrayList<>();
+        this.fileStatistics = new CompletableFuture<>();
+        this.fileStatisticsOutput = new FileStatisticsOutput(config);
+
+        config.registerSetting(EXTERNAL_SOLVER_SETTING);
+        config.registerSetting(EXTERNAL_SOLVER_INCREMENTAL_SETTING);
+        externalSolver = config.getValue(EXTERNAL_SOLVER_SETTING);
+        externalSolverIncremental = config.getValue(EXTERNAL_SOLVER_INCREMENTAL_SETTING);
+        if (externalSolver != null) {
+            if (externalSolver.isEmpty()) {
+                externalSolver = null;
+            } else if (ExternalSolver.findExecutable(notNull(externalSolver.get(0))) == null) {
+                throw new SetUpException("External solver " + externalSolver.get(0) + " not found");
+            }
+        }
         
         this.vmComponent = vmComponent;
         this.bmComponent = bmComponent;
@@ -108,99 +343,78 @@ public class DeadCodeFinder extends AnalysisComponent<DeadCodeBlock> {
     }
 
     /**
-     * A class that holds all variables relevant for solving SAT. This is created
-     * once per {@link DeadCodeFinder#findDeadCodeBlocks(SourceFile))}, so that this
-     * method is thread-safe.
+     * Creates the {@link DeadCodeContext} for the variability and build model, which have to be read already. This
+     * also sets {@link #relevancyChecker}, and logs how long the steps of the setup took.
+     * 
+     * @throws FormatException If the variability model can not be converted to CNF.
      */
-    private static class SatUtilities {
-
-        private @NonNull IFormulaToCnfConverter converter;
-
-        private @NonNull ISatSolver vmSolver;
-        
-        private @NonNull ISatSolver plainSolver;
-
-        private @NonNull Map<Formula, Boolean> vmSatCache;
-        
-        private @NonNull Map<Formula, Boolean> plainSatCache;
-
-        /**
-         * Creates this instances.
-         * 
-         * @param vmCnf The variability model as CNF:
-         */
-        SatUtilities(@NonNull Cnf vmCnf) {
-            this.converter = FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING);
-            this.vmSolver = SatSolverFactory.createSolver(vmCnf, false);
-            this.plainSolver = SatSolverFactory.createSolver();
-            this.vmSatCache = new HashMap<>(10000);
-            this.plainSatCache = new HashMap<>(10000);
+    protected void createContext() throws FormatException {
+        long start = System.currentTimeMillis();
+        SolverEvents.Event conversionEvent = SolverEvents.beginVmConversion();
+        BinaryCnf vmBinaryCnf = ParallelVmConverter.convert(notNull(vm));
+        if (conversionEvent != null) {
+            conversionEvent.commitVmConversion(notNull(vm).getConstraintModel(), vmBinaryCnf);
         }
-        
-        /**
-         * Checks whether the given formula is satisfiable with the variability model.
-         * Internally, this method has a cache to speed up when the same formula is
-         * passed to it several times.
-         * 
-         * @param pc The formula to check.
-         * 
-         * @return Whether the formula is satisfiable with the variability model.
-         * 
-         * @throws ConverterException If the conversion to CNF fails.
-         * @throws SolverException If the SAT-solver fails.
-         */
-        public boolean isVmSat(@NonNull Formula pc) throws SolverException, ConverterException {
-            Boolean sat = this.vmSatCache.get(pc);
+        long converted = System.currentTimeMillis();
+
+        DeadCodeContext context = new DeadCodeContext(vmBinaryCnf, vm, notNull(bm), considerVmVarsOnly,
+                detailedAnalysis);
+        context.setCnfStrategy(cnfStrategy, distributiveLimit);
+        context.setFindUndead(findUndead);
+        context.setPortfolioThreshold(portfolioThreshold);
+        context.setCubeThreshold(cubeThreshold);
+        context.setExternalSolver(externalSolver, externalSolverIncremental);
+        if (slowQueryThreshold > 0) {
+            context.setSlowQueryLog(slowQueryThreshold, slowQueryCount, slowQueryDimacsDir, slowQueryDimacsWithVm);
+        }
+        long created = System.currentTimeMillis();
+        if (preprocessVm) {
+            context.preprocessVm(Runtime.getRuntime().availableProcessors());
+        }
+        long preprocessed = System.currentTimeMillis();
 
-            if (sat == null) {
-                Cnf pcCnf = this.converter.convert(pc);
+        this.context = context;
+        this.relevancyChecker = context.getRelevancyChecker();
+        LOGGER.logInfo("Startup times: variability model to CNF: " + (converted - start) + " ms, context: "
+                + (created - converted) + " ms, preprocessing: " + (preprocessed - created) + " ms");
+    }
 
-                String[] cnfLines = pcCnf.toString().split("\n");
-                String[] output = new String[cnfLines.length + 1];
-                System.arraycopy(cnfLines, 0, output, 1, cnfLines.length);
-                output[0] = "PcCnf: ";
-                LOGGER.logDebug(output);
+    /**
+     * Logs the statistics of the {@link #context} at the end of the analysis: the CNF encodings, the metrics and the
+     * slowest queries, if these are kept.
+     */
+    protected void logStatistics() {
+        DeadCodeContext context = notNull(this.context);
+        LOGGER.logInfo(context.getEncodingStatistics().toString());
+        LOGGER.logInfo(context.getMetrics().toTable());
+        SlowQueryLog slowQueryLog = context.getSlowQueryLog();
+        if (slowQueryLog != null) {
+            LOGGER.logInfo(slowQueryLog.toTable());
+        }
+    }
 
-                sat = this.vmSolver.isSatisfiable(pcCnf);
-                this.vmSatCache.put(pc, sat);
-                LOGGER.logDebug("sat(" + pc + ") = " + sat);
-            }
+    /**
+     * Returns the component that provides the statistics of the analyzed files (see
+     * {@link #FILE_STATISTICS_SETTING}). Its results are available after all results of this component are; it has no
+     * results if the setting is disabled.
+     * 
+     * @return The component for the file statistics.
+     */
+    public @NonNull AnalysisComponent<FileStatistics> getFileStatisticsOutput() {
+        return fileStatisticsOutput;
+    }
 
-            return sat;
-        }
-        
-        /**
-         * Checks whether the given formula is satisfiable (without the variability model).
-         * Internally, this method has a cache to speed up when the same formula is
-         * passed to it several times.
-         * 
-         * @param pc The formula to check.
-         * 
-         * @return Whether the formula is satisfiable.
-         * 
-         * @throws ConverterException If the conversion to CNF fails.
-         * @throws SolverException If the SAT-solver fails.
-         */
-        public boolean isSat(@NonNull Formula pc) throws SolverException, ConverterException {
-            Boolean sat = this.plainSatCache.get(pc);
-            
-            if (sat == null) {
-                Cnf pcCnf = this.converter.convert(pc);
-                
-                String[] cnfLines = pcCnf.toString().split("\n");
-                String[] output = new String[cnfLines.length + 1];
-                System.arraycopy(cnfLines, 0, output, 1, cnfLines.length);
-                output[0] = "PcCnf: ";
-                LOGGER.logDebug(output);
-                
-                sat = this.plainSolver.isSatisfiable(pcCnf);
-                this.plainSatCache.put(pc, sat);
-                LOGGER.logDebug("sat(" + pc + ") = " + sat);
-            }
-            
-            return sat;
+    /**
+     * Passes the statistics collected so far to the {@link #getFileStatisticsOutput()}, sorted by source file. Must
+     * be called once at the end of {@link #execute()}, also if the analysis failed.
+     */
+    protected void completeFileStatistics() {
+        List<@NonNull FileStatistics> result;
+        synchronized (collectedFileStatistics) {
+            result = new ArrayList<>(collectedFileStatistics);
         }
-        
+        result.sort((s1, s2) -> s1.getSourceFile().getPath().compareTo(s2.getSourceFile().getPath()));
+        fileStatistics.complete(result);
     }
 
     /**
@@ -210,107 +424,30 @@ public class DeadCodeFinder extends AnalysisComponent<DeadCodeBlock> {
      * @return The list of dead code blocks.
      */
     protected @NonNull List<@NonNull DeadCodeBlock> findDeadCodeBlocks(@NonNull SourceFile<?> sourceFile) {
-
-        List<@NonNull DeadCodeBlock> result = new ArrayList<>();
-        
-        // satUtils gets initialized lazily.
-        SatUtilities satUtils = null;
-
-        Formula filePc = bm.getPc(sourceFile.getPath());
-
-        if (filePc == null) {
-            LOGGER.logInfo("Skipping " + sourceFile.getPath() + " because it has no build PC");
-        } else {
-            LOGGER.logInfo("Running for file " + sourceFile.getPath());
-            LOGGER.logDebug("File PC: " + filePc);
-            
-            boolean foundResult = false;
-            
-            if (this.detailedAnalysis) {
-                satUtils = new SatUtilities(notNull(vmCnf));
-                
-                try {
-                    if (!satUtils.isSat(filePc)) { // check filePC alone
-                        foundResult = true;
-                        DetailedDeadCodeBlock block = new DetailedDeadCodeBlock(sourceFile.getPath(), 0,
-                                Reason.FILE_PC_NOT_SATISFIABLE);
-                        block.setFilePc(filePc);
-                        result.add(block);
-                    } else if (!satUtils.isVmSat(filePc)) { // check filePC and VM
-                        foundResult = true;
-                        DetailedDeadCodeBlock block = new DetailedDeadCodeBlock(sourceFile.getPath(), 0,
-                                Reason.FILE_PC_AND_VM_NOT_SATISFIABLE);
-                        block.setFilePc(filePc);
-                        result.add(block);
-                    }
-                } catch (SolverException | ConverterException e) {
-                    LOGGER.logException("Exception while trying to check file PC", e);
-                }
-            }
-
-            if (!foundResult) {
-                for (CodeElement<?> element : sourceFile) {
-                    // initialize satUtils lazily here, so that files with no block don't create one (if detailed=false)
-                    if (satUtils == null) {
-                        satUtils = new SatUtilities(notNull(vmCnf));
-                    }
-                    try {
-                        checkElement(element, filePc, sourceFile, satUtils, result);
-                    } catch (SolverException | ConverterException e) {
-                        LOGGER.logException("Exception while trying to check element", e);
-                    }
-                }
-            }
-        }
-
-        return result;
+        return analyzeFile(sourceFile, null);
     }
 
     /**
-     * Checks if a given element is dead. Recursively walks over each child element,
-     * too.
+     * Finds the dead code blocks of a source file with the {@link #context}, and records the statistics of the file if
+     * {@link #collectFileStatistics} is set. This method is thread-safe.
      * 
-     * @param element    The element to check.
-     * @param filePc     The presence condition of the file.
-     * @param sourceFile The source file; used for creating the result.
-     * @param satUtils   The SAT utils to use.
-     * @param result     The list to add result {@link DeadCodeBlock}s to.
+     * @param sourceFile The source file to search in.
+     * @param usage Receives the variables used in live and dead elements; <code>null</code> if they should not be
+     *      collected.
      * 
-     * @throws ConverterException If converting the formula to CNF fails.
-     * @throws SolverException    If solving the CNF fails.
+     * @return The list of dead code blocks.
      */
-    private void checkElement(@NonNull CodeElement<?> element, @NonNull Formula filePc,
-            @NonNull SourceFile<?> sourceFile, @NonNull SatUtilities satUtils,
-            @NonNull List<@NonNull DeadCodeBlock> result) throws ConverterException, SolverException {
-
-        Formula pc = new Conjunction(element.getPresenceCondition(), filePc);
-        FormulaRelevancyChecker checker = this.relevancyChecker;
-        boolean considerBlock = checker != null ? checker.visit(element.getPresenceCondition()) : true;
-
-        if (this.detailedAnalysis) {
-            if (!satUtils.isVmSat(pc)) {
-                if (!satUtils.isSat(element.getPresenceCondition())) { // check CPP alone
-                    result.add(new DetailedDeadCodeBlock(element, filePc, Reason.CPP_NOT_SATISFIABLE));
-                } else if (!satUtils.isSat(pc)) { // check CPP and filePC
-                    result.add(new DetailedDeadCodeBlock(element, filePc, Reason.CPP_AND_FILE_PC_NOT_SATISFIABLE));
-                } else if (!satUtils.isVmSat(element.getPresenceCondition())) { // check CPP and VM
-                    result.add(new DetailedDeadCodeBlock(element, filePc, Reason.CPP_AND_VM_NOT_SATISFIABLE));
-                } else { // check CPP and filePC and VM
-                    result.add(new DetailedDeadCodeBlock(element, filePc,
-                            Reason.CPP_AND_FILE_PC_AND_VM_NOT_SATISFIABLE));
-                }
-            }
-        } else {
-            if (considerBlock && !satUtils.isVmSat(pc)) {
-                DeadCodeBlock deadBlock = new DeadCodeBlock(element, filePc);
-                LOGGER.logInfo("Found dead block: " + deadBlock);
-                result.add(deadBlock);
+    protected @NonNull List<@NonNull DeadCodeBlock> analyzeFile(@NonNull SourceFile<?> sourceFile,
+            @Nullable BlockUsage usage) {
+
+        FileStatistics statistics = collectFileStatistics ? new FileStatistics(sourceFile.getPath()) : null;
+        List<@NonNull DeadCodeBlock> result = notNull(context).analyze(sourceFile, usage, statistics);
+        if (statistics != null) {
+            synchronized (collectedFileStatistics) {
+                collectedFileStatistics.add(statistics);
             }
         }
-
-        for (CodeElement<?> child : element) {
-            checkElement(child, filePc, sourceFile, satUtils, result);
-        }
+        return result;
     }
 
     /**
@@ -343,6 +480,23 @@ public class DeadCodeFinder extends AnalysisComponent<DeadCodeBlock> {
             this.filePc = null;
         }
 
+        /**
+         * Creates a dead code block with all information.
+         * 
+         * @param sourceFile        The source file.
+         * @param startLine         The starting line of the block.
+         * @param endLine           The end line of the block.
+         * @param filePc            The presence condition for the complete file.
+         * @param presenceCondition The presence condition of the block.
+         */
+        public DeadCodeBlock(@NonNull File sourceFile, int startLine, int endLine, @Nullable Formula filePc,
+                @Nullable Formula presenceCondition) {
+            this(sourceFile, startLine);
+            this.endLine = endLine;
+            this.presenceCondition = presenceCondition;
+            this.filePc = filePc;
+        }
+
         /**
          * Converts a {@link CodeElement} into a {@link DeadCodeBlock}. This constructor
          * stores more information.
@@ -442,7 +596,7 @@ public class DeadCodeFinder extends AnalysisComponent<DeadCodeBlock> {
     }
     
     /**
-     * Possible reasons why a code block is dead.
+     * Possible reasons why a code block is dead, or undead (see {@link DeadCodeFinder#UNDEAD_SETTING}).
      */
     public enum Reason {
         
@@ -455,7 +609,15 @@ public class DeadCodeFinder extends AnalysisComponent<DeadCodeBlock> {
         CPP_AND_FILE_PC_NOT_SATISFIABLE("C-preprocessor condition combined with file PC is not satisfiable"),
         
         CPP_AND_FILE_PC_AND_VM_NOT_SATISFIABLE("C-preprocessor condition combined with file PC and VM is"
-                + " not satisfiable");
+                + " not satisfiable"),
+        
+        CPP_UNDEAD("C-preprocessor condition alone is always true within the parent block"),
+        CPP_AND_FILE_PC_UNDEAD("C-preprocessor condition combined with file PC is always true within the parent"
+                + " block"),
+        CPP_AND_VM_UNDEAD("C-preprocessor condition combined with VM is always true within the parent block"),
+        
+        CPP_AND_FILE_PC_AND_VM_UNDEAD("C-preprocessor condition combined with file PC and VM is always true within"
+                + " the parent block");
         
         private @NonNull String description;
         
@@ -500,6 +662,23 @@ public class DeadCodeFinder extends AnalysisComponent<DeadCodeBlock> {
             this.reason = reason;
         }
 
+        /**
+         * Creates a dead code block with all information.
+         * 
+         * @param sourceFile The source file.
+         * @param startLine The starting line of the block.
+         * @param endLine The end line of the block.
+         * @param filePc The presence condition for the complete file.
+         * @param presenceCondition The presence condition of the block.
+         * @param reason The reason why this block is dead.
+         */
+        public DetailedDeadCodeBlock(@NonNull File sourceFile, int startLine, int endLine, @Nullable Formula filePc,
+                @Nullable Formula presenceCondition, @NonNull Reason reason) {
+            super(sourceFile, startLine, endLine, filePc, presenceCondition);
+            
+            this.reason = reason;
+        }
+
         /**
          * Converts a {@link CodeElement} into a {@link DeadCodeBlock}. This constructor
          * stores more information.
@@ -543,15 +722,14 @@ public class DeadCodeFinder extends AnalysisComponent<DeadCodeBlock> {
 
         if (vm == null || bm == null) {
             LOGGER.logError("Couldn't get models");
+            completeFileStatistics();
             return;
         }
 
+        ObjectName metricsName = null;
         try {
-            vmCnf = new VmToCnfConverter().convertVmToCnf(notNull(vm)); // vm was initialized in execute()
-
-            if (considerVmVarsOnly) {
-                relevancyChecker = new FormulaRelevancyChecker(vm, true);
-            }
+            createContext();
+            metricsName = notNull(context).getMetrics().register(notNull(getClass().getSimpleName()));
 
             ProgressLogger progress = new ProgressLogger(notNull(getClass().getSimpleName()));
 
@@ -566,9 +744,17 @@ public class DeadCodeFinder extends AnalysisComponent<DeadCodeBlock> {
             }
 
             progress.close();
+            logStatistics();
 
         } catch (FormatException e) {
             LOGGER.logException("Invalid variability model", e);
+        } finally {
+            DeadCodeMetrics.unregister(metricsName);
+            DeadCodeContext context = this.context;
+            if (context != null) {
+                context.close();
+            }
+            completeFileStatistics();
         }
     }
 
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Low-overhead metrics of the hot path of a {@link DeadCodeContext}: verdict cache hits and misses per cache, the
+ * time spent on CNF conversion and on solved queries, the solved queries per file, and how busy the worker threads
+ * were. All counters are striped ({@link LongAdder}, {@link Histogram}) or thread-local, so that recording does not
+ * allocate anything and threads rarely contend. This class is thread-safe.
+ * 
+ * @author Adam
+ */
+class DeadCodeMetrics implements DeadCodeMetricsMXBean {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    private static final @NonNull String DOMAIN = "net.ssehub.kernel_haven.undead_analyzer";
+
+    /**
+     * The verdict caches of a {@link SatUtilities}.
+     */
+    enum Cache {
+
+        /**
+         * Queries with the variability model.
+         */
+        VM,
+
+        /**
+         * Queries without the variability model.
+         */
+        PLAIN,
+
+        /**
+         * Block queries with the file presence condition and the variability model, per file.
+         */
+        FILE_VM,
+
+        /**
+         * Block queries with the file presence condition, without the variability model, per file.
+         */
+        FILE_PLAIN,
+
+    }
+
+    /**
+     * The busy time and the number of analyzed files of one worker thread.
+     */
+    private static final class Worker {
+
+        private final @NonNull String name;
+
+        private final @NonNull LongAdder busyNanos = new LongAdder();
+
+        private final @NonNull LongAdder files = new LongAdder();
+
+        /**
+         * Creates a worker for the current thread.
+         */
+        Worker() {
+            this.name = notNull(Thread.currentThread().getName());
+        }
+
+    }
+
+    private @NonNull EncodingStatistics encodingStatistics;
+
+    private @NonNull LongAdder @NonNull [] hits;
+
+    private @NonNull LongAdder @NonNull [] misses;
+
+    private @NonNull Histogram queryTimes;
+
+    private @NonNull Histogram queriesPerFile;
+
+    private @NonNull ConcurrentLinkedQueue<@NonNull Worker> workers;
+
+    private @NonNull ThreadLocal<@NonNull Worker> currentWorker;
+
+    private @NonNull LongAccumulator firstFileStart;
+
+    private @NonNull LongAccumulator lastFileEnd;
+
+    /**
+     * Creates empty metrics.
+     * 
+     * @param encodingStatistics The statistics of the CNF encodings, which contain the conversion times.
+     */
+    DeadCodeMetrics(@NonNull EncodingStatistics encodingStatistics) {
+        this.encodingStatistics = encodingStatistics;
+        this.hits = new @NonNull LongAdder[Cache.values().length];
+        this.misses = new @NonNull LongAdder[Cache.values().length];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = new LongAdder();
+            misses[i] = new LongAdder();
+        }
+        this.queryTimes = new Histogram();
+        this.queriesPerFile = new Histogram();
+        this.workers = new ConcurrentLinkedQueue<>();
+        this.currentWorker = notNull(ThreadLocal.withInitial(() -> {
+            Worker worker = new Worker();
+            workers.add(worker);
+            return worker;
+        }));
+        this.firstFileStart = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        this.lastFileEnd = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    }
+
+    /**
+     * Records a lookup in a verdict cache.
+     * 
+     * @param cache The cache.
+     * @param hit Whether the verdict was cached.
+     */
+    void recordLookup(@NonNull Cache cache, boolean hit) {
+        (hit ? hits : misses)[cache.ordinal()].increment();
+    }
+
+    /**
+     * Records a solved query.
+     * 
+     * @param nanos The time spent on the query, including its CNF conversion, in nanoseconds.
+     */
+    void recordQuery(long nanos) {
+        queryTimes.record(nanos);
+    }
+
+    /**
+     * Records an analyzed file, for the current (worker) thread.
+     * 
+     * @param start The {@link System#nanoTime()} when the analysis of the file started.
+     * @param end The {@link System#nanoTime()} when the analysis of the file ended.
+     * @param numQueries The number of solved queries for the file.
+     */
+    void recordFile(long start, long end, long numQueries) {
+        queriesPerFile.record(numQueries);
+        Worker worker = currentWorker.get();
+        worker.busyNanos.add(end - start);
+        worker.files.increment();
+        firstFileStart.accumulate(start);
+        lastFileEnd.accumulate(end);
+    }
+
+    /**
+     * Returns the number of hits of the given cache.
+     * 
+     * @param cache The cache.
+     * 
+     * @return The number of cache hits.
+     */
+    long getHits(@NonNull Cache cache) {
+        return hits[cache.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of misses of the given cache.
+     * 
+     * @param cache The cache.
+     * 
+     * @return The number of cache misses.
+     */
+    long getMisses(@NonNull Cache cache) {
+        return misses[cache.ordinal()].sum();
+    }
+
+    @Override
+    public long getAnalyzedFiles() {
+        return queriesPerFile.getCount();
+    }
+
+    @Override
+    public long getSolvedQueries() {
+        return queryTimes.getCount();
+    }
+
+    @Override
+    public long getVmCacheHits() {
+        return getHits(Cache.VM);
+    }
+
+    @Override
+    public long getVmCacheMisses() {
+        return getMisses(Cache.VM);
+    }
+
+    @Override
+    public long getPlainCacheHits() {
+        return getHits(Cache.PLAIN);
+    }
+
+    @Override
+    public long getPlainCacheMisses() {
+        return getMisses(Cache.PLAIN);
+    }
+
+    @Override
+    public long getFileVmCacheHits() {
+        return getHits(Cache.FILE_VM);
+    }
+
+    @Override
+    public long getFileVmCacheMisses() {
+        return getMisses(Cache.FILE_VM);
+    }
+
+    @Override
+    public long getFilePlainCacheHits() {
+        return getHits(Cache.FILE_PLAIN);
+    }
+
+    @Override
+    public long getFilePlainCacheMisses() {
+        return getMisses(Cache.FILE_PLAIN);
+    }
+
+    @Override
+    public long getConversionMillis() {
+        return encodingStatistics.getTimes().getSum() / 1000000;
+    }
+
+    @Override
+    public long getConversionP99Micros() {
+        return encodingStatistics.getTimes().getPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getQueryMillis() {
+        return queryTimes.getSum() / 1000000;
+    }
+
+    @Override
+    public long getQueryP99Micros() {
+        return queryTimes.getPercentile(99) / 1000;
+    }
+
+    @Override
+    public double getMeanQueriesPerFile() {
+        return queriesPerFile.getMean();
+    }
+
+    @Override
+    public int getWorkers() {
+        return workers.size();
+    }
+
+    @Override
+    public double getWorkerUtilization() {
+        long elapsed = lastFileEnd.get() - firstFileStart.get();
+        double result = 0;
+        if (elapsed > 0 && !workers.isEmpty()) {
+            long busy = 0;
+            for (Worker worker : workers) {
+                busy += worker.busyNanos.sum();
+            }
+            result = Math.min((double) busy / elapsed / workers.size(), 1);
+        }
+        return result;
+    }
+
+    /**
+     * Registers these metrics as an MXBean at the platform MBean server. Failures are only logged, since the metrics
+     * are not required for the analysis.
+     * 
+     * @param name The name of the analysis, used as the <code>name</code> key of the object name.
+     * 
+     * @return The object name to {@link #unregister(ObjectName)} the MXBean with; <code>null</code> if the
+     *      registration failed.
+     */
+    @Nullable ObjectName register(@NonNull String name) {
+        ObjectName result = null;
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=DeadCodeMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(this, DeadCodeMetricsMXBean.class, true), objectName);
+            result = objectName;
+        } catch (JMException e) {
+            LOGGER.logWarning("Can't register dead code metrics for JMX: " + e);
+        }
+        return result;
+    }
+
+    /**
+     * Unregisters an MXBean that was registered by {@link #register(String)}.
+     * 
+     * @param objectName The object name of the MXBean; <code>null</code> if it was not registered.
+     */
+    static void unregister(@Nullable ObjectName objectName) {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                LOGGER.logWarning("Can't unregister dead code metrics from JMX: " + e);
+            }
+        }
+    }
+
+    /**
+     * Creates a summary table of all metrics, e.g. for the log at the end of the analysis.
+     * 
+     * @return The lines of the table.
+     */
+    @NonNull String @NonNull [] toTable() {
+        List<@NonNull String> lines = new ArrayList<>();
+        lines.add("Dead code metrics:");
+        lines.add(notNull(String.format("%-22s %12s %12s %12s %12s %12s %12s", "Distribution", "Count", "Total",
+                "Mean", "p50", "p99", "Max")));
+        lines.add(formatTimes("CNF conversion (us)", encodingStatistics.getTimes()));
+        lines.add(formatTimes("Solved query (us)", queryTimes));
+        lines.add(notNull(String.format("%-22s %12d %12d %12.1f %12d %12d %12d", "Queries per file",
+                queriesPerFile.getCount(), queriesPerFile.getSum(), queriesPerFile.getMean(),
+                queriesPerFile.getPercentile(50), queriesPerFile.getPercentile(99), queriesPerFile.getMax())));
+
+        lines.add(notNull(String.format("%-22s %12s %12s %12s", "Verdict cache", "Hits", "Misses", "Hit rate")));
+        for (Cache cache : Cache.values()) {
+            long hits = getHits(cache);
+            long misses = getMisses(cache);
+            lines.add(notNull(String.format("%-22s %12d %12d %11.1f%%", cache, hits, misses,
+                    hits + misses == 0 ? 0.0 : 100.0 * hits / (hits + misses))));
+        }
+
+        lines.add(notNull(String.format("%-22s %12s %12s", "Worker", "Busy (ms)", "Files")));
+        for (Worker worker : workers) {
+            lines.add(notNull(String.format("%-22s %12d %12d", worker.name, worker.busyNanos.sum() / 1000000,
+                    worker.files.sum())));
+        }
+        lines.add(notNull(String.format("%-22s %11.1f%%", "Worker utilization", 100 * getWorkerUtilization())));
+
+        return notNull(lines.toArray(new @NonNull String[lines.size()]));
+    }
+
+    /**
+     * Formats a row of the summary table for a histogram of nanoseconds.
+     * 
+     * @param label The label of the row.
+     * @param times The histogram.
+     * 
+     * @return The formatted row, with all times in microseconds.
+     */
+    private static @NonNull String formatTimes(@NonNull String label, @NonNull Histogram times) {
+        return notNull(String.format("%-22s %12d %12d %12.1f %12d %12d %12d", label, times.getCount(),
+                times.getSum() / 1000, times.getMean() / 1000, times.getPercentile(50) / 1000,
+                times.getPercentile(99) / 1000, times.getMax() / 1000));
+    }
+
+}
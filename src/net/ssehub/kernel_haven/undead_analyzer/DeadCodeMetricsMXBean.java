@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+/**
+ * The metrics of a running dead code analysis, as exposed over JMX. The dead code finders register one instance per
+ * run under the name <code>net.ssehub.kernel_haven.undead_analyzer:type=DeadCodeMetrics,name=&lt;finder&gt;</code>
+ * and unregister it when the run is done. All values are totals since the start of the run.
+ * 
+ * @author Adam
+ */
+public interface DeadCodeMetricsMXBean {
+
+    /**
+     * Returns the number of analyzed source files.
+     * 
+     * @return The number of files.
+     */
+    long getAnalyzedFiles();
+
+    /**
+     * Returns the number of SAT queries that were not answered by a verdict cache, i.e. that were solved.
+     * 
+     * @return The number of solved queries.
+     */
+    long getSolvedQueries();
+
+    /**
+     * Returns the number of hits in the verdict cache for queries with the variability model.
+     * 
+     * @return The number of cache hits.
+     */
+    long getVmCacheHits();
+
+    /**
+     * Returns the number of misses in the verdict cache for queries with the variability model.
+     * 
+     * @return The number of cache misses.
+     */
+    long getVmCacheMisses();
+
+    /**
+     * Returns the number of hits in the verdict cache for queries without the variability model.
+     * 
+     * @return The number of cache hits.
+     */
+    long getPlainCacheHits();
+
+    /**
+     * Returns the number of misses in the verdict cache for queries without the variability model.
+     * 
+     * @return The number of cache misses.
+     */
+    long getPlainCacheMisses();
+
+    /**
+     * Returns the number of hits in the per-file verdict cache for block queries with the variability model.
+     * 
+     * @return The number of cache hits.
+     */
+    long getFileVmCacheHits();
+
+    /**
+     * Returns the number of misses in the per-file verdict cache for block queries with the variability model.
+     * 
+     * @return The number of cache misses.
+     */
+    long getFileVmCacheMisses();
+
+    /**
+     * Returns the number of hits in the per-file verdict cache for block queries without the variability model.
+     * 
+     * @return The number of cache hits.
+     */
+    long getFilePlainCacheHits();
+
+    /**
+     * Returns the number of misses in the per-file verdict cache for block queries without the variability model.
+     * 
+     * @return The number of cache misses.
+     */
+    long getFilePlainCacheMisses();
+
+    /**
+     * Returns the total time spent on converting formulas to CNF.
+     * 
+     * @return The time in milliseconds.
+     */
+    long getConversionMillis();
+
+    /**
+     * Returns the 99th percentile of the time spent on converting one formula to CNF.
+     * 
+     * @return The approximated percentile in microseconds.
+     */
+    long getConversionP99Micros();
+
+    /**
+     * Returns the total time spent on solved queries, including their CNF conversion.
+     * 
+     * @return The time in milliseconds.
+     */
+    long getQueryMillis();
+
+    /**
+     * Returns the 99th percentile of the time spent on one solved query, including its CNF conversion.
+     * 
+     * @return The approximated percentile in microseconds.
+     */
+    long getQueryP99Micros();
+
+    /**
+     * Returns the mean number of solved queries per analyzed file.
+     * 
+     * @return The mean number of queries.
+     */
+    double getMeanQueriesPerFile();
+
+    /**
+     * Returns the number of threads that analyzed files.
+     * 
+     * @return The number of worker threads.
+     */
+    int getWorkers();
+
+    /**
+     * Returns how much of the time since the first file was started the worker threads spent on analyzing files.
+     * 
+     * @return The utilization of all workers, between 0 and 1.
+     */
+    double getWorkerUtilization();
+
+}
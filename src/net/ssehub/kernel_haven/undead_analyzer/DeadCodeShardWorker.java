@@ -0,0 +1,357 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.CodeElement;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DeadCodeBlock;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.OrderPreservingParallelizer;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * The main class of a worker process started by the {@link ShardedDeadCodeFinder}. A worker analyzes the source
+ * files of one shard and writes its results in the format of the {@link CheckpointStore}.
+ * <p>
+ * The work directory contains the following files, created by the {@link ShardedDeadCodeFinder}:
+ * </p>
+ * <ul>
+ *     <li><code>vm.cnf</code>: The CNF of the variability model as {@link BinaryCnf}, memory-mapped by all workers.
+ *     </li>
+ *     <li><code>vm_variables.txt</code>: The names of the variability variables; only present if only blocks with
+ *     variables of the variability model should be considered.</li>
+ *     <li><code>shard-&lt;index&gt;.in</code>: The source files of the shard with their build presence conditions.
+ *     </li>
+ * </ul>
+ * <p>
+ * The results are written to the <code>shard-&lt;index&gt;</code> directory.
+ * </p>
+ * 
+ * @author Adam
+ */
+public class DeadCodeShardWorker {
+
+    static final @NonNull String VM_CNF_FILE = "vm.cnf";
+
+    static final @NonNull String VM_VARIABLES_FILE = "vm_variables.txt";
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * Don't allow any instances.
+     */
+    private DeadCodeShardWorker() {
+    }
+
+    /**
+     * Returns the input file of a shard.
+     * 
+     * @param workDir The work directory.
+     * @param shard The index of the shard.
+     * 
+     * @return The input file of the shard.
+     */
+    static @NonNull File getInputFile(@NonNull File workDir, int shard) {
+        return new File(workDir, "shard-" + shard + ".in");
+    }
+
+    /**
+     * Returns the result directory of a shard.
+     * 
+     * @param workDir The work directory.
+     * @param shard The index of the shard.
+     * 
+     * @return The result directory of the shard, to be read with a {@link CheckpointStore}.
+     */
+    static @NonNull File getResultDir(@NonNull File workDir, int shard) {
+        return new File(workDir, "shard-" + shard);
+    }
+
+    /**
+     * Writes a source file with its build presence condition as a record to a shard input file.
+     * 
+     * @param out The writer of the shard input file.
+     * @param sourceFile The source file to write.
+     * @param filePc The presence condition of the file; <code>null</code> if it has none.
+     * 
+     * @throws IOException If writing fails.
+     */
+    static void writeSourceFile(@NonNull Writer out, @NonNull SourceFile<?> sourceFile, @Nullable Formula filePc)
+            throws IOException {
+
+        StringBuilder text = new StringBuilder();
+        text.append("FILE\t").append(CheckpointStore.encode(sourceFile.getPath().getPath()))
+            .append('\t').append(CheckpointStore.serializeFormula(filePc)).append('\n');
+        for (CodeElement<?> element : sourceFile) {
+            writeElement(element, 0, text);
+        }
+        text.append("END\n");
+        out.write(text.toString());
+    }
+
+    /**
+     * Writes an element and its nested elements as <code>ELEMENT</code> lines, with their condition and presence
+     * condition.
+     * 
+     * @param element The element to write.
+     * @param depth The nesting depth of the element.
+     * @param text The string builder to append to.
+     */
+    private static void writeElement(@NonNull CodeElement<?> element, int depth, @NonNull StringBuilder text) {
+        text.append("ELEMENT\t").append(depth)
+            .append('\t').append(element.getLineStart())
+            .append('\t').append(element.getLineEnd())
+            .append('\t').append(CheckpointStore.serializeFormula(element.getCondition()))
+            .append('\t').append(CheckpointStore.serializeFormula(element.getPresenceCondition()))
+            .append('\n');
+
+        for (CodeElement<?> nested : element) {
+            writeElement(nested, depth + 1, text);
+        }
+    }
+
+    /**
+     * Reads the next source file record from a shard input file.
+     * 
+     * @param in The reader of the shard input file.
+     * @param bm If not <code>null</code>, the presence condition of the file is added to this build model.
+     * @param readElements Whether the elements of the file should be read; if <code>false</code>, they are skipped.
+     * 
+     * @return The read source file, or <code>null</code> if the end of the input is reached.
+     * 
+     * @throws IOException If reading fails.
+     * @throws FormatException If the input is malformed.
+     */
+    static @Nullable SourceFile<CodeBlock> readSourceFile(@NonNull BufferedReader in, @Nullable BuildModel bm,
+            boolean readElements) throws IOException, FormatException {
+
+        String line = in.readLine();
+        if (line == null) {
+            return null;
+        }
+
+        String[] parts = line.split("\t", -1);
+        if (parts.length != 3 || !parts[0].equals("FILE")) {
+            throw new FormatException("Expected FILE line, got: " + line);
+        }
+        File path = new File(CheckpointStore.decode(notNull(parts[1])));
+        if (bm != null && !parts[2].isEmpty()) {
+            bm.add(path, CheckpointStore.parseFormula(notNull(parts[2])));
+        }
+
+        SourceFile<CodeBlock> result = new SourceFile<>(path);
+        Deque<CodeBlock> parents = new ArrayDeque<>();
+        while ((line = in.readLine()) != null && !line.equals("END")) {
+            if (!readElements) {
+                continue;
+            }
+
+            parts = line.split("\t", -1);
+            if (parts.length != 6 || !parts[0].equals("ELEMENT")) {
+                throw new FormatException("Expected ELEMENT line, got: " + line);
+            }
+
+            try {
+                int depth = Integer.parseInt(parts[1]);
+                Formula condition = parts[4].isEmpty() ? null : CheckpointStore.parseFormula(notNull(parts[4]));
+                Formula pc = CheckpointStore.parseFormula(notNull(parts[5]));
+                CodeBlock block = new CodeBlock(Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), path,
+                        condition, pc);
+
+                while (parents.size() > depth) {
+                    parents.pop();
+                }
+                if (parents.isEmpty()) {
+                    result.addElement(block);
+                } else {
+                    notNull(parents.peek()).addNestedElement(block);
+                }
+                parents.push(block);
+
+            } catch (NumberFormatException e) {
+                throw new FormatException(e);
+            }
+        }
+
+        if (line == null) {
+            throw new FormatException("Unexpected end of input in record for " + path);
+        }
+
+        return result;
+    }
+
+    /**
+     * Analyzes one shard.
+     * 
+     * @param workDir The work directory.
+     * @param shard The index of the shard.
+     * @param numThreads The number of threads to use.
+     * @param detailedAnalysis Whether a detailed analysis should be done.
+     * @param findUndead Whether undead blocks should be searched, too.
+     * @param considerVmVarsOnly Whether only blocks with variables of the variability model should be considered.
+     * @param cnfStrategy How presence conditions are converted to CNF.
+     * @param distributiveLimit The maximum number of clauses of a formula that is multiplied out by the adaptive
+     *      strategy.
+     * @param portfolioThreshold The number of conflicts after which a query is solved by a portfolio; 0 to disable.
+     * @param cubeThreshold The minimum number of top-level disjuncts of a query to split it into cubes; 0 to disable.
+     * @param externalSolverIncremental Whether the external solver supports the incremental iCNF format.
+     * @param externalSolver The command line of an external solver; <code>null</code> to use the in-JVM solvers.
+     * 
+     * @throws IOException If reading or writing the files in the work directory fails.
+     * @throws FormatException If an input file is malformed.
+     */
+    static void analyzeShard(@NonNull File workDir, int shard, int numThreads, boolean detailedAnalysis,
+            boolean findUndead, boolean considerVmVarsOnly, @NonNull CnfStrategy cnfStrategy, int distributiveLimit,
+            int portfolioThreshold, int cubeThreshold, boolean externalSolverIncremental,
+            @Nullable List<@NonNull String> externalSolver) throws IOException, FormatException {
+
+        BinaryCnf vmCnf = BinaryCnf.map(new File(workDir, VM_CNF_FILE));
+
+        VariabilityModel vm = null;
+        if (considerVmVarsOnly) {
+            Set<VariabilityVariable> variables = new HashSet<>();
+            for (String name : Files.readAllLines(new File(workDir, VM_VARIABLES_FILE).toPath(),
+                    StandardCharsets.UTF_8)) {
+                variables.add(new VariabilityVariable(CheckpointStore.decode(notNull(name)), "bool"));
+            }
+            vm = new VariabilityModel(new File(workDir, VM_CNF_FILE), variables);
+        }
+
+        File inputFile = getInputFile(workDir, shard);
+
+        // first pass: only read the file presence conditions
+        BuildModel bm = new BuildModel();
+        try (BufferedReader in = open(inputFile)) {
+            while (readSourceFile(in, bm, false) != null) {
+                // only fill bm
+            }
+        }
+
+        DeadCodeContext context = new DeadCodeContext(vmCnf, vm, bm, considerVmVarsOnly, detailedAnalysis);
+        context.setCnfStrategy(cnfStrategy, distributiveLimit);
+        context.setFindUndead(findUndead);
+        context.setPortfolioThreshold(portfolioThreshold);
+        context.setCubeThreshold(cubeThreshold);
+        context.setExternalSolver(externalSolver, externalSolverIncremental);
+
+        CheckpointStore store = new CheckpointStore(getResultDir(workDir, shard),
+                CheckpointStore.describeConfiguration(detailedAnalysis, findUndead, considerVmVarsOnly,
+                        context.getVmFingerprint(), CheckpointStore.fingerprint(bm)));
+        store.start(10);
+        try {
+            OrderPreservingParallelizer<SourceFile<CodeBlock>, List<@NonNull DeadCodeBlock>> parallelizer =
+                    new OrderPreservingParallelizer<>((sourceFile) -> {
+                        List<@NonNull DeadCodeBlock> result = context.analyze(sourceFile);
+                        store.record(sourceFile.getPath(), result);
+                        return result;
+                    }, (result) -> { }, numThreads);
+
+            // second pass: analyze the files that are not already done in an earlier run
+            try (BufferedReader in = open(inputFile)) {
+                SourceFile<CodeBlock> sourceFile;
+                while ((sourceFile = readSourceFile(in, null, true)) != null) {
+                    if (store.getCompleted(sourceFile.getPath()) == null) {
+                        parallelizer.add(sourceFile);
+                    }
+                }
+            } finally {
+                parallelizer.end();
+                parallelizer.join();
+            }
+            LOGGER.logInfo(context.getEncodingStatistics().toString());
+
+        } finally {
+            store.close(false);
+            context.close();
+        }
+    }
+
+    /**
+     * Opens a UTF-8 file for reading.
+     * 
+     * @param file The file to open.
+     * 
+     * @return A reader for the file.
+     * 
+     * @throws IOException If opening the file fails.
+     */
+    private static @NonNull BufferedReader open(@NonNull File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Main method of a worker process.
+     * 
+     * @param args <code>&lt;workDir&gt; &lt;shard&gt; &lt;numThreads&gt; &lt;detailedAnalysis&gt;
+     *      &lt;findUndead&gt; &lt;considerVmVarsOnly&gt; &lt;cnfStrategy&gt; &lt;distributiveLimit&gt;
+     *      &lt;portfolioThreshold&gt; &lt;cubeThreshold&gt; &lt;externalSolverIncremental&gt;
+     *      [&lt;externalSolver&gt;...]</code>; the external solver command line is omitted if the in-JVM solvers are
+     *      used.
+     */
+    public static void main(String[] args) {
+        if (args.length < 11) {
+            LOGGER.logError("Usage: " + DeadCodeShardWorker.class.getName() + " <workDir> <shard> <numThreads>"
+                    + " <detailedAnalysis> <findUndead> <considerVmVarsOnly> <cnfStrategy> <distributiveLimit>"
+                    + " <portfolioThreshold> <cubeThreshold> <externalSolverIncremental> [<externalSolver>...]");
+            System.exit(2);
+        }
+
+        int exitCode = 0;
+        try {
+            long start = System.currentTimeMillis();
+            List<@NonNull String> externalSolver = null;
+            if (args.length > 11) {
+                externalSolver = notNull(Arrays.asList(Arrays.copyOfRange(args, 11, args.length)));
+            }
+            analyzeShard(new File(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    Boolean.parseBoolean(args[3]), Boolean.parseBoolean(args[4]), Boolean.parseBoolean(args[5]),
+                    CnfStrategy.valueOf(args[6]), Integer.parseInt(args[7]), Integer.parseInt(args[8]),
+                    Integer.parseInt(args[9]), Boolean.parseBoolean(args[10]), externalSolver);
+            LOGGER.logInfo("Shard " + args[1] + " finished in " + (System.currentTimeMillis() - start) + " ms");
+
+        } catch (IOException | FormatException | IllegalArgumentException e) {
+            LOGGER.logException("Shard " + args[1] + " failed", e);
+            exitCode = 1;
+        }
+        System.exit(exitCode);
+    }
+
+}
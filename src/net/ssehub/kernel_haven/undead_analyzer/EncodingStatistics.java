@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Counts how the {@link IntCnfEncoder}s of one {@link DeadCodeContext} encoded the formulas: which encoding was
+ * chosen how often, how many clauses and auxiliary variables were created, and how much time was spent. This class
+ * is thread-safe.
+ * 
+ * @author Adam
+ */
+class EncodingStatistics {
+
+    /**
+     * The encodings that an {@link IntCnfEncoder} chooses from.
+     */
+    enum Encoding {
+
+        /**
+         * The formula already is a conjunction of clauses; these are added as they are.
+         */
+        DIRECT,
+
+        /**
+         * The formula is multiplied out into clauses, without auxiliary variables.
+         */
+        DISTRIBUTIVE,
+
+        /**
+         * Nested sub-formulas are replaced by auxiliary variables (Plaisted-Greenbaum).
+         */
+        TSEITIN,
+
+    }
+
+    private @NonNull LongAdder @NonNull [] formulas;
+
+    private @NonNull LongAdder clauses;
+
+    private @NonNull LongAdder auxiliaryVariables;
+
+    private @NonNull LongAdder nanos;
+
+    private @NonNull Histogram times;
+
+    /**
+     * Creates empty statistics.
+     */
+    EncodingStatistics() {
+        this.formulas = new @NonNull LongAdder[Encoding.values().length];
+        for (int i = 0; i < formulas.length; i++) {
+            formulas[i] = new LongAdder();
+        }
+        this.clauses = new LongAdder();
+        this.auxiliaryVariables = new LongAdder();
+        this.nanos = new LongAdder();
+        this.times = new Histogram();
+    }
+
+    /**
+     * Records the encoding of one formula.
+     * 
+     * @param encoding The chosen encoding.
+     * @param numClauses The number of clauses that were created.
+     * @param numAuxiliaryVariables The number of auxiliary variables that were created.
+     * @param time The time spent on encoding, in nanoseconds.
+     */
+    void record(@NonNull Encoding encoding, int numClauses, int numAuxiliaryVariables, long time) {
+        formulas[encoding.ordinal()].increment();
+        clauses.add(numClauses);
+        auxiliaryVariables.add(numAuxiliaryVariables);
+        nanos.add(time);
+        times.record(time);
+    }
+
+    /**
+     * Returns how many formulas were encoded with the given encoding.
+     * 
+     * @param encoding The encoding.
+     * 
+     * @return The number of formulas.
+     */
+    long getNumFormulas(@NonNull Encoding encoding) {
+        return formulas[encoding.ordinal()].sum();
+    }
+
+    /**
+     * Returns the total number of clauses that were created.
+     * 
+     * @return The number of clauses.
+     */
+    long getNumClauses() {
+        return clauses.sum();
+    }
+
+    /**
+     * Returns the total number of auxiliary variables that were created.
+     * 
+     * @return The number of auxiliary variables.
+     */
+    long getNumAuxiliaryVariables() {
+        return auxiliaryVariables.sum();
+    }
+
+    /**
+     * Returns the total time spent on encoding.
+     * 
+     * @return The time in nanoseconds.
+     */
+    long getNanos() {
+        return nanos.sum();
+    }
+
+    /**
+     * Returns the distribution of the time spent on encoding single formulas.
+     * 
+     * @return The histogram of the encoding times, in nanoseconds.
+     */
+    @NonNull Histogram getTimes() {
+        return times;
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return "CNF encoding: " + getNumFormulas(Encoding.DIRECT) + " direct, "
+                + getNumFormulas(Encoding.DISTRIBUTIVE) + " distributive, " + getNumFormulas(Encoding.TSEITIN)
+                + " Tseitin; " + getNumClauses() + " clauses, " + getNumAuxiliaryVariables()
+                + " auxiliary variables, " + (getNanos() / 1000000) + " ms";
+    }
+
+}
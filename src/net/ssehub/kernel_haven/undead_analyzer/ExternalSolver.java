@@ -0,0 +1,546 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Solves queries with an external SAT solver process that speaks DIMACS over its standard input and output. This
+ * keeps the variability model and the learned clauses of hard queries out of the JVM heap.
+ * <p>
+ * In incremental mode, one long-lived process is used, which reads the iCNF format: the header
+ * <code>p inccnf</code>, the clauses of the base CNF, and then for each query its clauses and an assumption line
+ * <code>a &lt;activation&gt; 0</code>, which the process answers with a line <code>s SATISFIABLE</code> or
+ * <code>s UNSATISFIABLE</code>. As in {@link IntSatSolver}, each query has a fresh activation literal, which is
+ * disabled by a unit clause afterwards. Otherwise, a new process is started for each query, which gets the base CNF
+ * and the query as plain DIMACS CNF and answers with the result line or the exit code 10 or 20 once its input is
+ * closed.
+ * </p>
+ * <p>
+ * The output of each process is read by a separate thread while the input is written, so that a solver that prints a
+ * lot (e.g. comments while it parses a large base CNF) can't fill the pipe and block both sides.
+ * </p>
+ * <p>
+ * Instances are not thread-safe; the {@link DeadCodeContext} gives each {@link SatUtilities} its own, so that the
+ * processes form a pool with one process per analysis thread.
+ * </p>
+ * 
+ * @author Adam
+ */
+class ExternalSolver implements IntCnfEncoder.ClauseSink {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * The minimum number of additional variables that may accumulate before the incremental process is restarted.
+     */
+    private static final int MIN_ADDITIONAL_VARIABLES = 100000;
+
+    private @NonNull List<@NonNull String> command;
+
+    private boolean incremental;
+
+    private @NonNull BinaryCnf base;
+
+    private @NonNull VariableIdTable ids;
+
+    private @NonNull IntCnfEncoder encoder;
+
+    private @Nullable Process process;
+
+    private @Nullable Writer input;
+
+    /**
+     * The result lines of the running process, as read by its output thread; an empty string marks the end of the
+     * output.
+     */
+    private @Nullable BlockingQueue<@NonNull String> results;
+
+    private int nextVariable;
+
+    /**
+     * Maps IDs of the {@link VariableIdTable} that are larger than the number of base variables to solver variables;
+     * the index is the ID minus the number of base variables. 0 means not mapped yet.
+     */
+    private int @NonNull [] additionalVariables;
+
+    /**
+     * The clauses of the current query, in DIMACS format.
+     */
+    private @NonNull StringBuilder query;
+
+    private int numQueryClauses;
+
+    /**
+     * Which variables of the base CNF had their eliminated clauses restored for the current process;
+     * <code>null</code> if the base CNF has no eliminated clauses.
+     */
+    private boolean @Nullable [] restored;
+
+    /**
+     * Creates an external solver. The process is only started for the first query.
+     * 
+     * @param base The CNF that is part of every query, usually the variability model.
+     * @param ids The variable IDs for formula queries. IDs up to {@link BinaryCnf#getNumVariables()} of the base
+     *      must be the variables of the base.
+     * @param cnfStrategy How formula queries are converted to CNF.
+     * @param distributiveLimit The maximum number of clauses of a formula that is multiplied out by the adaptive
+     *      strategy.
+     * @param statistics The statistics to record the CNF encodings in.
+     * @param command The command line of the solver. The executable is looked up on the <code>PATH</code> if it
+     *      is not a path. May be empty if only {@link #writeDimacs(Formula, Writer)} is used.
+     * @param incremental Whether the solver supports the incremental iCNF format.
+     */
+    ExternalSolver(@NonNull BinaryCnf base, @NonNull VariableIdTable ids, @NonNull CnfStrategy cnfStrategy,
+            int distributiveLimit, @NonNull EncodingStatistics statistics, @NonNull List<@NonNull String> command,
+            boolean incremental) {
+        if (ids.getNumBaseVariables() < base.getNumVariables()) {
+            throw new IllegalArgumentException("Variable IDs don't match the base CNF");
+        }
+        this.base = base;
+        this.ids = ids;
+        this.encoder = new IntCnfEncoder(this, cnfStrategy, distributiveLimit, statistics);
+        this.command = command;
+        this.incremental = incremental;
+        this.additionalVariables = new int[0];
+        this.query = new StringBuilder();
+        resetVariables();
+    }
+
+    /**
+     * Finds the executable of an external solver.
+     * 
+     * @param name The name or path of the executable.
+     * 
+     * @return The executable file; <code>null</code> if it can't be found or is not executable.
+     */
+    static @Nullable File findExecutable(@NonNull String name) {
+        File result = null;
+        if (name.indexOf('/') != -1 || name.indexOf(File.separatorChar) != -1) {
+            File file = new File(name);
+            if (file.isFile() && file.canExecute()) {
+                result = file;
+            }
+
+        } else {
+            String path = System.getenv("PATH");
+            if (path != null) {
+                for (String directory : path.split(File.pathSeparator)) {
+                    File file = new File(directory, name);
+                    if (file.isFile() && file.canExecute()) {
+                        result = file;
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Forgets all variables except the ones of the base CNF.
+     */
+    private void resetVariables() {
+        nextVariable = base.getNumVariables() + 1;
+        Arrays.fill(additionalVariables, 0);
+        restored = base.hasEliminatedClauses() ? new boolean[base.getNumVariables() + 1] : null;
+    }
+
+    /**
+     * Starts a solver process.
+     * 
+     * @return The process.
+     * 
+     * @throws IOException If starting the process fails.
+     */
+    private @NonNull Process startProcess() throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        // only the result line is interpreted; everything else, including error messages, is skipped
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        this.input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.US_ASCII));
+
+        BlockingQueue<@NonNull String> results = new LinkedBlockingQueue<>();
+        BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII));
+        Thread reader = new Thread(() -> readOutput(output, results), "ExternalSolverOutput");
+        reader.setDaemon(true);
+        reader.start();
+        this.results = results;
+
+        return process;
+    }
+
+    /**
+     * Reads the output of a process until it ends, and passes on its result lines. Runs in a separate thread for each
+     * process.
+     * 
+     * @param output The output of the process.
+     * @param results The queue to add the result lines to; an empty string is added at the end of the output.
+     */
+    private static void readOutput(@NonNull BufferedReader output, @NonNull BlockingQueue<@NonNull String> results) {
+        try {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.startsWith("s ")) {
+                    results.add(line);
+                }
+            }
+        } catch (IOException e) {
+            // the process was stopped; the end of the output is marked below
+        } finally {
+            results.add("");
+            try {
+                output.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+        }
+    }
+
+    /**
+     * Writes the clauses of the base CNF in DIMACS format.
+     * 
+     * @param input The writer to write to, usually the input of the process.
+     * 
+     * @throws IOException If writing fails.
+     */
+    private void writeBase(@NonNull Writer input) throws IOException {
+        int[] literals = new int[base.getMaxClauseSize()];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < base.getNumClauses(); i++) {
+            int size = base.getClause(i, literals);
+            line.setLength(0);
+            for (int j = 0; j < size; j++) {
+                line.append(literals[j]).append(' ');
+            }
+            line.append("0\n");
+            input.append(line);
+        }
+    }
+
+    /**
+     * Waits for the next result line of the running process.
+     * 
+     * @return Whether the query is satisfiable; <code>null</code> if the output ended without a result line.
+     * 
+     * @throws SolverException If the solver answered something else than satisfiable or unsatisfiable, or the
+     *      current thread is interrupted while waiting.
+     */
+    private @Nullable Boolean readResult() throws SolverException {
+        BlockingQueue<@NonNull String> results = this.results;
+        if (results == null) {
+            throw new IllegalStateException("No external solver running");
+        }
+
+        String line;
+        try {
+            line = results.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolverException(e);
+        }
+
+        Boolean result = null;
+        if (line.isEmpty()) {
+            // keep the end marker for further calls
+            results.add(line);
+        } else {
+            String status = line.substring(2).trim();
+            if (status.equals("SATISFIABLE")) {
+                result = true;
+            } else if (status.equals("UNSATISFIABLE")) {
+                result = false;
+            } else {
+                throw new SolverException("External solver answered " + status);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of clauses that the formula of the last query was encoded to.
+     * 
+     * @return The number of clauses.
+     */
+    int getNumQueryClauses() {
+        return encoder.getNumClauses();
+    }
+
+    /**
+     * Checks whether the base CNF and the given formula are satisfiable together.
+     * 
+     * @param formula The formula to check.
+     * 
+     * @return Whether the base CNF and the formula are satisfiable.
+     * 
+     * @throws SolverException If the external solver can't be started or fails.
+     */
+    boolean isSatisfiable(@NonNull Formula formula) throws SolverException {
+        try {
+            return incremental ? solveIncremental(formula) : solveOnce(formula);
+
+        } catch (IOException e) {
+            close();
+            throw new SolverException(e);
+        }
+    }
+
+    /**
+     * Solves a query with the long-lived process, which is (re-)started if necessary.
+     * 
+     * @param formula The formula to check.
+     * 
+     * @return Whether the base CNF and the formula are satisfiable.
+     * 
+     * @throws IOException If communicating with the process fails.
+     * @throws SolverException If the solver fails.
+     */
+    private boolean solveIncremental(@NonNull Formula formula) throws IOException, SolverException {
+        if (process != null
+                && nextVariable - base.getNumVariables() > Math.max(MIN_ADDITIONAL_VARIABLES, base.getNumVariables())) {
+            close();
+        }
+        if (process == null) {
+            resetVariables();
+            process = startProcess();
+            notNullInput().append("p inccnf\n");
+            writeBase(notNullInput());
+        }
+        Writer input = notNullInput();
+
+        int activation = newVariable();
+        query.setLength(0);
+        try {
+            encoder.encode(formula, activation);
+        } catch (SolverException | RuntimeException e) {
+            // getVariable() may already have marked eliminated clauses as restored, but they are never sent
+            close();
+            throw e;
+        }
+        query.append("a ").append(activation).append(" 0\n");
+        input.append(query);
+        input.flush();
+
+        Boolean result = readResult();
+        if (result == null) {
+            throw new SolverException("External solver terminated without a result");
+        }
+
+        // disable the clauses of this query for all further queries; sent together with the next query
+        input.append(String.valueOf(-activation)).append(" 0\n");
+        return result;
+    }
+
+    /**
+     * Solves a query with a new process that reads the base CNF and the query as one DIMACS CNF.
+     * 
+     * @param formula The formula to check.
+     * 
+     * @return Whether the base CNF and the formula are satisfiable.
+     * 
+     * @throws IOException If communicating with the process fails.
+     * @throws SolverException If the solver fails.
+     */
+    private boolean solveOnce(@NonNull Formula formula) throws IOException, SolverException {
+        encodeOnce(formula);
+
+        process = startProcess();
+        try {
+            Writer input = notNullInput();
+            writeOnce(input);
+            input.close();
+
+            Boolean result = readResult();
+            if (result == null) {
+                int exitCode = notNullProcess().waitFor();
+                if (exitCode == 10) {
+                    result = true;
+                } else if (exitCode == 20) {
+                    result = false;
+                } else {
+                    throw new SolverException("External solver terminated with exit code " + exitCode
+                            + " and without a result");
+                }
+            }
+            return result;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolverException(e);
+
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Writes the base CNF and the given formula as one DIMACS CNF, as it is given to a new process if the solver is
+     * not incremental. No process is started; this can be used to export queries for offline analysis.
+     * 
+     * @param formula The formula of the query.
+     * @param out The writer to write the CNF to. Is not closed.
+     * 
+     * @throws IOException If writing fails.
+     * @throws SolverException If encoding the formula fails.
+     */
+    void writeDimacs(@NonNull Formula formula, @NonNull Writer out) throws IOException, SolverException {
+        encodeOnce(formula);
+        writeOnce(out);
+    }
+
+    /**
+     * Encodes the given formula into the {@link #query}, with fresh variables and an activation literal that is
+     * enabled by a unit clause.
+     * 
+     * @param formula The formula of the query.
+     * 
+     * @throws SolverException If encoding the formula fails.
+     */
+    private void encodeOnce(@NonNull Formula formula) throws SolverException {
+        resetVariables();
+        query.setLength(0);
+        numQueryClauses = 0;
+        int activation = newVariable();
+        encoder.encode(formula, activation);
+        query.append(activation).append(" 0\n");
+        numQueryClauses++;
+    }
+
+    /**
+     * Writes the header, the base CNF and the {@link #query} encoded by {@link #encodeOnce(Formula)} as one DIMACS
+     * CNF.
+     * 
+     * @param out The writer to write to.
+     * 
+     * @throws IOException If writing fails.
+     */
+    private void writeOnce(@NonNull Writer out) throws IOException {
+        out.append("p cnf ").append(String.valueOf(nextVariable - 1)).append(' ')
+                .append(String.valueOf(base.getNumClauses() + numQueryClauses)).append('\n');
+        writeBase(out);
+        out.append(query);
+    }
+
+    /**
+     * Returns the {@link #input} of the running process.
+     * 
+     * @return The input.
+     */
+    private @NonNull Writer notNullInput() {
+        Writer input = this.input;
+        if (input == null) {
+            throw new IllegalStateException("No external solver running");
+        }
+        return input;
+    }
+
+    /**
+     * Returns the running process.
+     * 
+     * @return The process.
+     */
+    private @NonNull Process notNullProcess() {
+        Process process = this.process;
+        if (process == null) {
+            throw new IllegalStateException("No external solver running");
+        }
+        return process;
+    }
+
+    /**
+     * Stops the process, if it is running. A later query starts a new one.
+     */
+    void close() {
+        Process process = this.process;
+        if (process != null) {
+            try {
+                Writer input = this.input;
+                if (input != null) {
+                    // solvers terminate at the end of their input
+                    input.close();
+                }
+            } catch (IOException e) {
+                LOGGER.logException("Can't close input of external solver", e);
+            }
+            process.destroy();
+            this.process = null;
+            this.input = null;
+            this.results = null;
+        }
+    }
+
+    @Override
+    public int getVariable(@NonNull Variable variable) {
+        int id = ids.getId(variable.getName());
+        int result;
+        if (id <= base.getNumVariables()) {
+            result = base.getLiteral(id);
+            boolean[] restored = this.restored;
+            if (restored != null) {
+                // the eliminated clauses belong to the base, so they are not guarded by the activation literal
+                base.restoreEliminatedClauses(Math.abs(result), restored,
+                        (literals, size) -> addClause(literals, 0, size));
+            }
+        } else {
+            int index = id - base.getNumVariables();
+            if (index >= additionalVariables.length) {
+                additionalVariables = Arrays.copyOf(additionalVariables,
+                        Math.max(index + 1, additionalVariables.length * 2));
+            }
+            result = additionalVariables[index];
+            if (result == 0) {
+                result = newVariable();
+                additionalVariables[index] = result;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int newVariable() {
+        return nextVariable++;
+    }
+
+    @Override
+    public void addClause(int @NonNull [] literals, int start, int end) {
+        for (int i = start; i < end; i++) {
+            query.append(literals[i]).append(' ');
+        }
+        query.append("0\n");
+        numQueryClauses++;
+    }
+
+}
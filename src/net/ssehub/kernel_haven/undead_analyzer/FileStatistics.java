@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.io.File;
+
+import net.ssehub.kernel_haven.util.io.TableElement;
+import net.ssehub.kernel_haven.util.io.TableRow;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * The statistics of the dead code analysis of one source file: how many blocks were checked and found dead, how many
+ * SAT queries were solved and answered from the verdict caches, how long it took, and which worker thread analyzed the
+ * file. These are collected by {@link DeadCodeContext#analyze(net.ssehub.kernel_haven.code_model.SourceFile,
+ * DeadCodeContext.BlockUsage, FileStatistics)} in the same traversal as the dead code blocks.
+ * 
+ * @author Adam
+ */
+@TableRow
+public class FileStatistics {
+
+    private @NonNull File sourceFile;
+
+    private int blocksChecked;
+
+    private int blocksDead;
+
+    private long satCalls;
+
+    private long cacheHits;
+
+    private long timeMicros;
+
+    private @NonNull String thread;
+
+    /**
+     * Creates the statistics of a source file.
+     * 
+     * @param sourceFile The source file.
+     * @param blocksChecked The number of code blocks whose presence condition was checked.
+     * @param blocksDead The number of dead code blocks found (including the file itself, if it is dead).
+     * @param satCalls The number of solved SAT queries.
+     * @param cacheHits The number of queries that were answered by a verdict cache.
+     * @param timeMicros The time spent on the file, in microseconds.
+     * @param thread The name of the worker thread that analyzed the file.
+     */
+    public FileStatistics(@NonNull File sourceFile, int blocksChecked, int blocksDead, long satCalls, long cacheHits,
+            long timeMicros, @NonNull String thread) {
+        this.sourceFile = sourceFile;
+        this.blocksChecked = blocksChecked;
+        this.blocksDead = blocksDead;
+        this.satCalls = satCalls;
+        this.cacheHits = cacheHits;
+        this.timeMicros = timeMicros;
+        this.thread = thread;
+    }
+
+    /**
+     * Creates empty statistics for a source file, which are filled while it is analyzed.
+     * 
+     * @param sourceFile The source file.
+     */
+    FileStatistics(@NonNull File sourceFile) {
+        this(sourceFile, 0, 0, 0, 0, 0, "");
+    }
+
+    /**
+     * Counts a checked code block.
+     * 
+     * @param dead Whether the block is dead.
+     */
+    void addBlock(boolean dead) {
+        blocksChecked++;
+        if (dead) {
+            blocksDead++;
+        }
+    }
+
+    /**
+     * Counts a dead file, i.e. a file whose presence condition is not satisfiable.
+     */
+    void addDeadFile() {
+        blocksDead++;
+    }
+
+    /**
+     * Sets the resources spent on the file, after its analysis is done.
+     * 
+     * @param satCalls The number of solved SAT queries.
+     * @param cacheHits The number of queries that were answered by a verdict cache.
+     * @param nanos The time spent on the file, in nanoseconds.
+     * @param thread The name of the worker thread that analyzed the file.
+     */
+    void finish(long satCalls, long cacheHits, long nanos, @NonNull String thread) {
+        this.satCalls = satCalls;
+        this.cacheHits = cacheHits;
+        this.timeMicros = nanos / 1000;
+        this.thread = thread;
+    }
+
+    /**
+     * Returns the source file.
+     * 
+     * @return The source file.
+     */
+    @TableElement(name = "Source File", index = 0)
+    public @NonNull File getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * Returns the number of code blocks whose presence condition was checked.
+     * 
+     * @return The number of checked blocks.
+     */
+    @TableElement(name = "Blocks Checked", index = 1)
+    public int getBlocksChecked() {
+        return blocksChecked;
+    }
+
+    /**
+     * Returns the number of dead code blocks found, including the file itself if it is dead. Undead blocks are not
+     * counted.
+     * 
+     * @return The number of dead blocks.
+     */
+    @TableElement(name = "Blocks Dead", index = 2)
+    public int getBlocksDead() {
+        return blocksDead;
+    }
+
+    /**
+     * Returns the number of solved SAT queries, i.e. the queries that were not answered by a verdict cache.
+     * 
+     * @return The number of SAT calls.
+     */
+    @TableElement(name = "SAT Calls", index = 3)
+    public long getSatCalls() {
+        return satCalls;
+    }
+
+    /**
+     * Returns the number of queries that were answered by a verdict cache.
+     * 
+     * @return The number of cache hits.
+     */
+    @TableElement(name = "Cache Hits", index = 4)
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Returns the time spent on the file, including the time waiting for a solver.
+     * 
+     * @return The time in microseconds.
+     */
+    @TableElement(name = "Time (us)", index = 5)
+    public long getTimeMicros() {
+        return timeMicros;
+    }
+
+    /**
+     * Returns the name of the worker thread that analyzed the file.
+     * 
+     * @return The name of the thread.
+     */
+    @TableElement(name = "Thread", index = 6)
+    public @NonNull String getThread() {
+        return thread;
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return sourceFile + ": " + blocksChecked + " blocks checked, " + blocksDead + " dead, " + satCalls
+                + " SAT calls, " + cacheHits + " cache hits, " + timeMicros + " us on " + thread;
+    }
+
+}
@@ -15,31 +15,77 @@
  */
 package net.ssehub.kernel_haven.undead_analyzer;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import net.ssehub.kernel_haven.util.logic.Conjunction;
 import net.ssehub.kernel_haven.util.logic.Disjunction;
 import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
 import net.ssehub.kernel_haven.util.logic.IFormulaVisitor;
 import net.ssehub.kernel_haven.util.logic.Negation;
 import net.ssehub.kernel_haven.util.logic.True;
 import net.ssehub.kernel_haven.util.logic.Variable;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
 
 /**
  * Checks whether a formula contains at least one variable defined in the
  * {@link VariabilityModel}.
+ * <p>
+ * The relevant variable names (including the <code>_MODULE</code> variants of the defined variables) are computed
+ * once, so checking a variable is a single set lookup. Formulas are traversed with an explicit stack, so that very
+ * deep presence conditions can't overflow the call stack. The verdicts of checked formulas are kept in a lossy
+ * identity cache; since the presence conditions of nested blocks share the formula objects of their parents, these
+ * are not traversed again.
+ * </p>
+ * <p>
+ * This class is thread-safe, so one instance can be shared by all analysis threads.
+ * </p>
  * 
  * @author El-Sharkawy
  *
  */
 public class FormulaRelevancyChecker implements IFormulaVisitor<Boolean> {
 
-    private Set<String> definedVariables;
+    /**
+     * The number of entries of the verdict cache; a power of two.
+     */
+    private static final int CACHE_SIZE = 1 << 14;
+
+    /**
+     * One entry of the verdict cache.
+     */
+    private static final class CacheEntry {
+
+        private final @NonNull Formula formula;
+
+        private final boolean relevant;
+
+        /**
+         * Creates a cache entry.
+         * 
+         * @param formula The checked formula.
+         * @param relevant Whether the formula is relevant.
+         */
+        CacheEntry(@NonNull Formula formula, boolean relevant) {
+            this.formula = formula;
+            this.relevant = relevant;
+        }
+
+    }
+
+    private Set<String> relevantVariables;
     private boolean considerVmVarsOnly;
 
+    /**
+     * Direct-mapped by the identity hash code of the formula; a colliding entry replaces the previous one.
+     */
+    private @NonNull AtomicReferenceArray<CacheEntry> cache;
+
     /**
      * Sole constructor of this class.
      * 
@@ -63,9 +109,15 @@ public class FormulaRelevancyChecker implements IFormulaVisitor<Boolean> {
     public FormulaRelevancyChecker(VariabilityModel varModel, boolean considerVmVarsOnly) {
 
         this.considerVmVarsOnly = considerVmVarsOnly;
+        this.cache = new AtomicReferenceArray<>(CACHE_SIZE);
+        this.relevantVariables = new HashSet<>();
 
         if (varModel != null && considerVmVarsOnly) {
-            definedVariables = new HashSet<>(varModel.getVariableMap().keySet());
+            for (String variable : varModel.getVariableMap().keySet()) {
+                relevantVariables.add(variable);
+                // Consider MODULE-variables heuristically
+                relevantVariables.add(variable + "_MODULE");
+            }
         }
     }
 
@@ -76,20 +128,103 @@ public class FormulaRelevancyChecker implements IFormulaVisitor<Boolean> {
      * @return <tt>true</tt> if the variable is relevant, <tt>false</tt> otherwise.
      */
     private boolean isRelevant(@NonNull String variable) {
-        boolean isRelevant;
-        if (considerVmVarsOnly) {
-            isRelevant = definedVariables.contains(variable);
-
-            // Consider MODULE-variables heuristically
-            if (!isRelevant && variable.endsWith("_MODULE")) {
-                int endIndex = variable.length() - "_MODULE".length();
-                isRelevant = definedVariables.contains(variable.substring(0, endIndex));
-            }
+        return !considerVmVarsOnly || relevantVariables.contains(variable);
+    }
+
+    /**
+     * Checks whether the given formula is relevant, i.e. contains a relevant variable. This is the same as
+     * {@link #visit(Formula)}.
+     * 
+     * @param formula The formula to check.
+     * @return <tt>true</tt> if the formula is relevant, <tt>false</tt> otherwise.
+     */
+    public boolean isRelevant(@NonNull Formula formula) {
+        if (!considerVmVarsOnly) {
+            return true;
+        }
+        if (formula instanceof Variable) {
+            return isRelevant(((Variable) formula).getName());
+        }
+
+        Boolean cached = getCached(formula);
+        boolean result;
+        if (cached != null) {
+            result = cached;
         } else {
-            isRelevant = true;
+            result = traverse(formula);
+            cache.set(slot(formula), new CacheEntry(formula, result));
         }
+        return result;
+    }
 
-        return isRelevant;
+    /**
+     * Searches a relevant variable in the formula, with an explicit stack. Subformulas with a cached verdict are not
+     * traversed.
+     * 
+     * @param formula The formula to search in.
+     * @return Whether the formula contains a relevant variable.
+     */
+    private boolean traverse(@NonNull Formula formula) {
+        Formula[] stack = new Formula[16];
+        int size = 0;
+        stack[size++] = formula;
+
+        boolean result = false;
+        while (size > 0 && !result) {
+            Formula current = stack[--size];
+            stack[size] = null;
+
+            if (current instanceof Variable) {
+                result = isRelevant(((Variable) current).getName());
+
+            } else if (current instanceof Negation) {
+                stack[size++] = ((Negation) current).getFormula();
+
+            } else if (current instanceof Conjunction || current instanceof Disjunction) {
+                Boolean cached = current != formula ? getCached(current) : null;
+                if (cached != null) {
+                    result = cached;
+                } else {
+                    if (size + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    boolean conjunction = current instanceof Conjunction;
+                    stack[size++] = conjunction ? ((Conjunction) current).getRight()
+                            : ((Disjunction) current).getRight();
+                    stack[size++] = conjunction ? ((Conjunction) current).getLeft()
+                            : ((Disjunction) current).getLeft();
+                }
+            }
+            // True and False are not relevant
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cache slot of a formula.
+     * 
+     * @param formula The formula.
+     * @return The index in the cache.
+     */
+    private static int slot(@NonNull Formula formula) {
+        int hash = System.identityHashCode(formula);
+        return (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+    }
+
+    /**
+     * Looks up the cached verdict for exactly this formula object.
+     * 
+     * @param formula The formula.
+     * @return The cached verdict, or <code>null</code> if there is none.
+     */
+    private @Nullable Boolean getCached(@NonNull Formula formula) {
+        CacheEntry entry = cache.get(slot(formula));
+        return entry != null && entry.formula == formula ? entry.relevant : null;
+    }
+
+    @Override
+    public Boolean visit(@NonNull Formula formula) {
+        return isRelevant(formula);
     }
 
     @Override
@@ -112,30 +247,19 @@ public class FormulaRelevancyChecker implements IFormulaVisitor<Boolean> {
 
     @Override
     public Boolean visitNegation(@NonNull Negation formula) {
-        return !considerVmVarsOnly || this.visit(formula.getFormula());
+        return isRelevant(formula);
     }
 
     @Override
     public Boolean visitDisjunction(@NonNull Disjunction formula) {
-
         // Formula is relevant if either RHS or LHS is dependent on a variable
-        boolean isRelevant = !considerVmVarsOnly || this.visit(formula.getLeft());
-        if (!isRelevant) {
-            isRelevant = this.visit(formula.getRight());
-        }
-
-        return isRelevant;
+        return isRelevant(formula);
     }
 
     @Override
     public Boolean visitConjunction(@NonNull Conjunction formula) {
         // Formula is relevant if either RHS or LHS is dependent on a variable
-        boolean isRelevant = !considerVmVarsOnly || this.visit(formula.getLeft());
-        if (!isRelevant) {
-            isRelevant = this.visit(formula.getRight());
-        }
-
-        return isRelevant;
+        return isRelevant(formula);
     }
 
 }
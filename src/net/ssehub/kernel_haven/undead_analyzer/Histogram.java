@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A histogram of non-negative values, e.g. latencies in nanoseconds, with one bucket per power of two. Recording a
+ * value only increments striped counters ({@link LongAdder}s), so this class is thread-safe and cheap enough for hot
+ * paths: it does not allocate anything and threads rarely contend. Percentiles are approximated by the upper bound
+ * of their bucket, i.e. they are at most twice the exact value.
+ * 
+ * @author Adam
+ */
+class Histogram {
+
+    private static final int NUM_BUCKETS = 64;
+
+    private @NonNull LongAdder @NonNull [] buckets;
+
+    private @NonNull LongAdder count;
+
+    private @NonNull LongAdder sum;
+
+    private @NonNull LongAccumulator max;
+
+    /**
+     * Creates an empty histogram.
+     */
+    Histogram() {
+        this.buckets = new @NonNull LongAdder[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Records a value.
+     * 
+     * @param value The value; negative values are recorded as 0.
+     */
+    void record(long value) {
+        long positive = Math.max(value, 0);
+        buckets[getBucket(positive)].increment();
+        count.increment();
+        sum.add(positive);
+        max.accumulate(positive);
+    }
+
+    /**
+     * Returns the bucket of the given value.
+     * 
+     * @param value The non-negative value.
+     * 
+     * @return The index of the bucket: 0 for 0 and 1, otherwise the floor of the binary logarithm.
+     */
+    private static int getBucket(long value) {
+        return value == 0 ? 0 : 63 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Returns how many values were recorded.
+     * 
+     * @return The number of values.
+     */
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of all recorded values.
+     * 
+     * @return The sum.
+     */
+    long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     * 
+     * @return The maximum; 0 if no value was recorded.
+     */
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     * 
+     * @return The mean; 0 if no value was recorded.
+     */
+    double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * Approximates a percentile of the recorded values. Values recorded concurrently may or may not be considered.
+     * 
+     * @param percentile The percentile, between 0 and 100.
+     * 
+     * @return The upper bound of the bucket that contains the percentile, but at most the maximum; 0 if no value was
+     *      recorded.
+     */
+    long getPercentile(double percentile) {
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+
+        long result = 0;
+        if (total > 0) {
+            long rank = Math.max((long) Math.ceil(total * percentile / 100), 1);
+            long seen = 0;
+            int bucket = 0;
+            while (bucket < NUM_BUCKETS - 1 && seen + counts[bucket] < rank) {
+                seen += counts[bucket];
+                bucket++;
+            }
+            long upperBound = bucket == NUM_BUCKETS - 1 ? Long.MAX_VALUE : (2L << bucket) - 1;
+            result = Math.min(upperBound, getMax());
+        }
+        return result;
+    }
+
+}
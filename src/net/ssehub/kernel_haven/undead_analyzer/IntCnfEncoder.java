@@ -0,0 +1,508 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.undead_analyzer.EncodingStatistics.Encoding;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Encodes a {@link Formula} into primitive <code>int</code> clauses and passes them directly to a
+ * {@link ClauseSink}, without creating an intermediate {@link net.ssehub.kernel_haven.cnf.Cnf}.
+ * <p>
+ * The encoding is chosen per formula, based on its shape and size (see {@link CnfStrategy}). Negations are always
+ * pushed inwards, so formulas that already are a conjunction of clauses are added directly. Small formulas are
+ * multiplied out (distributive encoding); larger ones get fresh variables for their nested sub-formulas with
+ * one-sided (Plaisted-Greenbaum) definitions, which keeps the encoding linear in the size of the formula. All
+ * clauses contain a guard literal, so that they can be disabled after the query.
+ * </p>
+ * <p>
+ * Instances are not thread-safe, since they re-use one literal buffer for all clauses.
+ * </p>
+ * 
+ * @author Adam
+ */
+class IntCnfEncoder {
+
+    /**
+     * Receives the clauses created by an {@link IntCnfEncoder}.
+     */
+    interface ClauseSink {
+
+        /**
+         * Returns the solver literal for the given formula variable.
+         * 
+         * @param variable The formula variable.
+         * 
+         * @return The solver literal; negative if the variable is represented by the negation of a solver variable
+         *      (e.g. after preprocessing replaced it by an equivalent literal).
+         */
+        int getVariable(@NonNull Variable variable);
+
+        /**
+         * Creates a new auxiliary solver variable.
+         * 
+         * @return The new variable; always positive.
+         */
+        int newVariable();
+
+        /**
+         * Adds a clause.
+         * 
+         * @param literals The buffer that contains the literals of the clause. Must not be stored, since it is
+         *      re-used.
+         * @param start The index of the first literal in the buffer.
+         * @param end The index after the last literal in the buffer.
+         * 
+         * @throws SolverException If the solver can not add the clause.
+         */
+        void addClause(int @NonNull [] literals, int start, int end) throws SolverException;
+
+    }
+
+    private int @NonNull [] stack;
+
+    private int top;
+
+    private @NonNull ClauseSink sink;
+
+    private int guard;
+
+    private @NonNull CnfStrategy strategy;
+
+    private int distributiveLimit;
+
+    private @NonNull EncodingStatistics statistics;
+
+    private int numClauses;
+
+    private int numAuxiliaryVariables;
+
+    /**
+     * Creates an encoder.
+     * 
+     * @param sink The sink to pass the clauses to.
+     * @param strategy The strategy to choose the encoding of each formula.
+     * @param distributiveLimit The maximum number of clauses of a distributive encoding for
+     *      {@link CnfStrategy#ADAPTIVE}.
+     * @param statistics The statistics to record the encodings in.
+     */
+    IntCnfEncoder(@NonNull ClauseSink sink, @NonNull CnfStrategy strategy, int distributiveLimit,
+            @NonNull EncodingStatistics statistics) {
+        this.sink = sink;
+        this.stack = new int[64];
+        this.strategy = strategy;
+        this.distributiveLimit = distributiveLimit;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Creates an encoder with the {@link CnfStrategy#ADAPTIVE} strategy and the default limit.
+     * 
+     * @param sink The sink to pass the clauses to.
+     */
+    IntCnfEncoder(@NonNull ClauseSink sink) {
+        this(sink, CnfStrategy.ADAPTIVE, DeadCodeFinder.DEFAULT_DISTRIBUTIVE_LIMIT, new EncodingStatistics());
+    }
+
+    /**
+     * Encodes the given formula. The resulting clauses are satisfiable together with <code>guard</code> if and only
+     * if the formula is satisfiable.
+     * 
+     * @param formula The formula to encode.
+     * @param guard The guard literal; each clause contains its negation.
+     * 
+     * @return The encoding that was chosen for the formula.
+     * 
+     * @throws SolverException If the sink fails to add a clause.
+     */
+    @NonNull Encoding encode(@NonNull Formula formula, int guard) throws SolverException {
+        long start = System.nanoTime();
+        this.guard = guard;
+        this.top = 0;
+        this.numClauses = 0;
+        this.numAuxiliaryVariables = 0;
+
+        Encoding encoding = chooseEncoding(formula);
+        if (encoding == Encoding.DISTRIBUTIVE) {
+            for (int[] clause : distribute(formula, true)) {
+                push(-guard);
+                for (int literal : clause) {
+                    push(literal);
+                }
+                addClause(0);
+                top = 0;
+            }
+        } else {
+            // for direct formulas, this creates no auxiliary variables
+            assertFormula(formula, true);
+        }
+
+        statistics.record(encoding, numClauses, numAuxiliaryVariables, System.nanoTime() - start);
+        return encoding;
+    }
+
+    /**
+     * Returns the number of clauses that the last {@link #encode(Formula, int)} created.
+     * 
+     * @return The number of clauses.
+     */
+    int getNumClauses() {
+        return numClauses;
+    }
+
+    /**
+     * Chooses the encoding for the given formula, based on the {@link CnfStrategy}.
+     * 
+     * @param formula The formula to encode.
+     * 
+     * @return The encoding to use.
+     */
+    private @NonNull Encoding chooseEncoding(@NonNull Formula formula) {
+        Encoding result;
+        if (isDirect(formula, true)) {
+            result = Encoding.DIRECT;
+        } else if (strategy == CnfStrategy.DISTRIBUTIVE
+                || strategy == CnfStrategy.ADAPTIVE && countClauses(formula, true) <= distributiveLimit) {
+            result = Encoding.DISTRIBUTIVE;
+        } else {
+            result = Encoding.TSEITIN;
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given formula (or its negation) is a conjunction of clauses, once negations are pushed
+     * inwards.
+     * 
+     * @param formula The formula.
+     * @param positive <code>false</code> if the negation of the formula should be checked.
+     * 
+     * @return Whether the formula is a conjunction of clauses.
+     */
+    private static boolean isDirect(@NonNull Formula formula, boolean positive) {
+        boolean result;
+        if (formula instanceof Negation) {
+            result = isDirect(((Negation) formula).getFormula(), !positive);
+        } else if (positive ? formula instanceof Conjunction : formula instanceof Disjunction) {
+            result = isDirect(getLeft(formula), positive) && isDirect(getRight(formula), positive);
+        } else {
+            result = isClause(formula, positive);
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given formula (or its negation) is a disjunction of literals and constants, once negations
+     * are pushed inwards.
+     * 
+     * @param formula The formula.
+     * @param positive <code>false</code> if the negation of the formula should be checked.
+     * 
+     * @return Whether the formula is a clause.
+     */
+    private static boolean isClause(@NonNull Formula formula, boolean positive) {
+        boolean result;
+        if (formula instanceof Negation) {
+            result = isClause(((Negation) formula).getFormula(), !positive);
+        } else if (positive ? formula instanceof Disjunction : formula instanceof Conjunction) {
+            result = isClause(getLeft(formula), positive) && isClause(getRight(formula), positive);
+        } else {
+            result = !(formula instanceof Conjunction || formula instanceof Disjunction);
+        }
+        return result;
+    }
+
+    /**
+     * Counts the clauses of the distributive encoding of the given formula (or its negation). Counting stops as soon
+     * as the {@link #distributiveLimit} is exceeded.
+     * 
+     * @param formula The formula.
+     * @param positive <code>false</code> if the clauses of the negation of the formula should be counted.
+     * 
+     * @return The number of clauses; any number larger than the limit if the limit is exceeded.
+     */
+    private long countClauses(@NonNull Formula formula, boolean positive) {
+        long result;
+        if (formula instanceof Negation) {
+            result = countClauses(((Negation) formula).getFormula(), !positive);
+
+        } else if (positive ? formula instanceof Conjunction : formula instanceof Disjunction) {
+            result = countClauses(getLeft(formula), positive);
+            if (result <= distributiveLimit) {
+                result += countClauses(getRight(formula), positive);
+            }
+
+        } else if (formula instanceof Conjunction || formula instanceof Disjunction) {
+            result = countClauses(getLeft(formula), positive);
+            if (result != 0 && result <= distributiveLimit) {
+                result *= countClauses(getRight(formula), positive);
+            }
+
+        } else if (formula instanceof True || formula instanceof False) {
+            // true is no clause at all, false is the empty clause
+            result = (formula instanceof False) == positive ? 1 : 0;
+
+        } else {
+            result = 1;
+        }
+        return result;
+    }
+
+    /**
+     * Multiplies the given formula (or its negation) out into clauses. Tautological clauses are left out.
+     * 
+     * @param formula The formula.
+     * @param positive <code>false</code> if the negation of the formula should be multiplied out.
+     * 
+     * @return The clauses, as arrays of literals.
+     */
+    private @NonNull List<int @NonNull []> distribute(@NonNull Formula formula, boolean positive) {
+        List<int @NonNull []> result;
+        if (formula instanceof Negation) {
+            result = distribute(((Negation) formula).getFormula(), !positive);
+
+        } else if (positive ? formula instanceof Conjunction : formula instanceof Disjunction) {
+            result = distribute(getLeft(formula), positive);
+            result.addAll(distribute(getRight(formula), positive));
+
+        } else if (formula instanceof Conjunction || formula instanceof Disjunction) {
+            List<int @NonNull []> left = distribute(getLeft(formula), positive);
+            List<int @NonNull []> right = distribute(getRight(formula), positive);
+            result = new ArrayList<>(left.size() * right.size());
+            for (int[] leftClause : left) {
+                for (int[] rightClause : right) {
+                    int[] clause = merge(leftClause, rightClause);
+                    if (clause != null) {
+                        result.add(clause);
+                    }
+                }
+            }
+
+        } else if (formula instanceof True || formula instanceof False) {
+            result = new ArrayList<>();
+            if ((formula instanceof False) == positive) {
+                result.add(new int[0]);
+            }
+
+        } else {
+            int variable = sink.getVariable((Variable) formula);
+            result = new ArrayList<>();
+            result.add(new int[] {positive ? variable : -variable});
+        }
+        return result;
+    }
+
+    /**
+     * Merges two clauses into their disjunction, leaving out duplicate literals.
+     * 
+     * @param left The first clause.
+     * @param right The second clause.
+     * 
+     * @return The merged clause; <code>null</code> if it is a tautology.
+     */
+    private static int @Nullable [] merge(int @NonNull [] left, int @NonNull [] right) {
+        int[] result = Arrays.copyOf(left, left.length + right.length);
+        int size = left.length;
+        for (int literal : right) {
+            boolean duplicate = false;
+            for (int i = 0; i < left.length; i++) {
+                if (left[i] == -literal) {
+                    return null;
+                }
+                duplicate |= left[i] == literal;
+            }
+            if (!duplicate) {
+                result[size++] = literal;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Returns the left operand of a {@link Conjunction} or {@link Disjunction}.
+     * 
+     * @param formula The conjunction or disjunction.
+     * 
+     * @return The left operand.
+     */
+    private static @NonNull Formula getLeft(@NonNull Formula formula) {
+        return formula instanceof Conjunction ? ((Conjunction) formula).getLeft() : ((Disjunction) formula).getLeft();
+    }
+
+    /**
+     * Returns the right operand of a {@link Conjunction} or {@link Disjunction}.
+     * 
+     * @param formula The conjunction or disjunction.
+     * 
+     * @return The right operand.
+     */
+    private static @NonNull Formula getRight(@NonNull Formula formula) {
+        return formula instanceof Conjunction ? ((Conjunction) formula).getRight()
+                : ((Disjunction) formula).getRight();
+    }
+
+    /**
+     * Passes the literals on the stack from the given index to the top as a clause to the sink.
+     * 
+     * @param start The index of the first literal of the clause.
+     * 
+     * @throws SolverException If the sink fails to add the clause.
+     */
+    private void addClause(int start) throws SolverException {
+        sink.addClause(stack, start, top);
+        numClauses++;
+    }
+
+    /**
+     * Adds clauses that require the given formula (or its negation) to be true.
+     * 
+     * @param formula The formula.
+     * @param positive <code>false</code> if the negation of the formula should be asserted.
+     * 
+     * @throws SolverException If the sink fails to add a clause.
+     */
+    private void assertFormula(@NonNull Formula formula, boolean positive) throws SolverException {
+        if (formula instanceof Negation) {
+            assertFormula(((Negation) formula).getFormula(), !positive);
+
+        } else if (positive ? formula instanceof Conjunction : formula instanceof Disjunction) {
+            // a conjunction of asserted formulas: assert both sides separately
+            assertFormula(getLeft(formula), positive);
+            assertFormula(getRight(formula), positive);
+
+        } else {
+            int start = top;
+            push(-guard);
+            if (addDisjuncts(formula, positive)) {
+                addClause(start);
+            }
+            top = start;
+        }
+    }
+
+    /**
+     * Pushes the literals of the disjuncts of the given formula (or its negation) on the literal stack.
+     * 
+     * @param formula The formula.
+     * @param positive <code>false</code> if the disjuncts of the negation of the formula should be added.
+     * 
+     * @return <code>false</code> if the disjunction is trivially true, i.e. no clause is needed.
+     * 
+     * @throws SolverException If the sink fails to add a clause.
+     */
+    private boolean addDisjuncts(@NonNull Formula formula, boolean positive) throws SolverException {
+        boolean needed = true;
+
+        if (formula instanceof Negation) {
+            needed = addDisjuncts(((Negation) formula).getFormula(), !positive);
+
+        } else if (positive ? formula instanceof Disjunction : formula instanceof Conjunction) {
+            needed = addDisjuncts(getLeft(formula), positive) && addDisjuncts(getRight(formula), positive);
+
+        } else if (formula instanceof True || formula instanceof False) {
+            // a true disjunct makes the whole clause true; a false one is simply left out
+            needed = (formula instanceof False) == positive;
+
+        } else {
+            int literal = getLiteral(formula, positive);
+            push(literal);
+        }
+
+        return needed;
+    }
+
+    /**
+     * Returns a literal that implies the given formula (or its negation). For anything but variables, this creates a
+     * fresh variable and adds the clauses that define it.
+     * 
+     * @param formula The formula; not a constant.
+     * @param positive <code>false</code> if the literal should imply the negation of the formula.
+     * 
+     * @return The literal.
+     * 
+     * @throws SolverException If the sink fails to add a clause.
+     */
+    private int getLiteral(@NonNull Formula formula, boolean positive) throws SolverException {
+        int result;
+        if (formula instanceof Variable) {
+            int variable = sink.getVariable((Variable) formula);
+            result = positive ? variable : -variable;
+
+        } else {
+            // a conjunction of positive formulas (or the negation of a disjunction): x -> left, x -> right
+            result = sink.newVariable();
+            numAuxiliaryVariables++;
+            defineImplied(result, getLeft(formula), positive);
+            defineImplied(result, getRight(formula), positive);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the clause <code>!guard || !variable || formula</code>.
+     * 
+     * @param variable The variable that implies the formula.
+     * @param formula The implied formula.
+     * @param positive <code>false</code> if the variable should imply the negation of the formula.
+     * 
+     * @throws SolverException If the sink fails to add a clause.
+     */
+    private void defineImplied(int variable, @NonNull Formula formula, boolean positive) throws SolverException {
+        if (formula instanceof Negation) {
+            defineImplied(variable, ((Negation) formula).getFormula(), !positive);
+
+        } else if (positive ? formula instanceof Conjunction : formula instanceof Disjunction) {
+            defineImplied(variable, getLeft(formula), positive);
+            defineImplied(variable, getRight(formula), positive);
+
+        } else {
+            int start = top;
+            push(-guard);
+            push(-variable);
+            if (addDisjuncts(formula, positive)) {
+                addClause(start);
+            }
+            top = start;
+        }
+    }
+
+    /**
+     * Pushes a literal on the literal stack.
+     * 
+     * @param literal The literal to push.
+     */
+    private void push(int literal) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = literal;
+    }
+
+}
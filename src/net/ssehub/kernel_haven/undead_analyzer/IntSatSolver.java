@@ -0,0 +1,501 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ISatSolver;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * An incremental SAT solver that is loaded directly from the <code>int</code> clauses of a {@link BinaryCnf}. The
+ * clauses of the base CNF are added only once; each query is added with a fresh activation literal, solved under
+ * the assumption of that literal, and afterwards disabled permanently. Thus, learned clauses are kept between
+ * queries.
+ * <p>
+ * Queries are usually {@link Formula}s, which are encoded by an {@link IntCnfEncoder} straight into the solver. The
+ * variables are numbered by a shared {@link VariableIdTable}; IDs of the base CNF are used as they are, other IDs
+ * are mapped to solver variables through an array. Auxiliary variables of the encoding are fresh for each query.
+ * Since these accumulate, the solver is re-loaded from the {@link BinaryCnf} after a while; this is cheap since no
+ * clause objects need to be created.
+ * </p>
+ * <p>
+ * If the base CNF was simplified by the {@link CnfPreprocessor}, variables of the base are mapped to the literals
+ * that replace them, and the clauses that pure-literal elimination removed for a variable are added permanently
+ * once a query uses it.
+ * </p>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ * 
+ * @author Adam
+ */
+class IntSatSolver implements ISatSolver, IntCnfEncoder.ClauseSink {
+
+    /**
+     * The Sat4j solver configurations that can be used.
+     */
+    enum SolverVariant {
+
+        /**
+         * The default Sat4j solver.
+         */
+        DEFAULT,
+
+        /**
+         * The Glucose 2.1 configuration of Sat4j, which uses different restart and clause deletion heuristics.
+         */
+        GLUCOSE;
+
+        /**
+         * Creates a new, empty Sat4j solver of this configuration.
+         * 
+         * @return The new solver.
+         */
+        @NonNull ISolver create() {
+            ISolver result;
+            switch (this) {
+            case GLUCOSE:
+                result = SolverFactory.newGlucose21();
+                break;
+            default:
+                result = SolverFactory.newDefault();
+                break;
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * The minimum number of additional variables that may accumulate before the solver is re-loaded.
+     */
+    private static final int MIN_ADDITIONAL_VARIABLES = 100000;
+
+    private @NonNull BinaryCnf base;
+
+    private @NonNull VariableIdTable ids;
+
+    private @NonNull IntCnfEncoder encoder;
+
+    private @NonNull SolverVariant variant;
+
+    /**
+     * The maximum number of conflicts per query; 0 means unlimited.
+     */
+    private int conflictLimit;
+
+    private volatile ISolver solver;
+
+    private volatile boolean cancelled;
+
+    private boolean baseUnsat;
+
+    private int nextVariable;
+
+    private int declaredVariables;
+
+    /**
+     * Maps IDs of the {@link VariableIdTable} that are larger than the number of base variables to solver variables;
+     * the index is the ID minus the number of base variables. 0 means not mapped yet.
+     */
+    private int @NonNull [] additionalVariables;
+
+    private @NonNull VecInt clause;
+
+    private @NonNull VecInt assumption;
+
+    private @NonNull VecInt restoredClause;
+
+    /**
+     * Which variables of the base CNF had their eliminated clauses restored since the last load; <code>null</code>
+     * if the base CNF has no eliminated clauses.
+     */
+    private boolean @Nullable [] restored;
+
+    /**
+     * Creates a solver for the given base CNF.
+     * 
+     * @param base The CNF that is part of every query, usually the variability model.
+     * @param ids The variable IDs for formula queries. IDs up to {@link BinaryCnf#getNumVariables()} of the base
+     *      must be the variables of the base.
+     * @param cnfStrategy How formula queries are converted to CNF.
+     * @param distributiveLimit The maximum number of clauses of a formula that is multiplied out by the adaptive
+     *      strategy.
+     * @param statistics The statistics to record the CNF encodings in.
+     * @param variant The Sat4j solver configuration to use.
+     */
+    IntSatSolver(@NonNull BinaryCnf base, @NonNull VariableIdTable ids, @NonNull CnfStrategy cnfStrategy,
+            int distributiveLimit, @NonNull EncodingStatistics statistics, @NonNull SolverVariant variant) {
+        if (ids.getNumBaseVariables() < base.getNumVariables()) {
+            throw new IllegalArgumentException("Variable IDs don't match the base CNF");
+        }
+        this.base = base;
+        this.ids = ids;
+        this.variant = variant;
+        this.encoder = new IntCnfEncoder(this, cnfStrategy, distributiveLimit, statistics);
+        this.clause = new VecInt();
+        this.assumption = new VecInt(1);
+        this.restoredClause = new VecInt();
+        this.additionalVariables = new int[0];
+        load();
+    }
+
+    /**
+     * Creates a solver for the given base CNF, with the default Sat4j solver.
+     * 
+     * @param base The CNF that is part of every query, usually the variability model.
+     * @param ids The variable IDs for formula queries. IDs up to {@link BinaryCnf#getNumVariables()} of the base
+     *      must be the variables of the base.
+     * @param cnfStrategy How formula queries are converted to CNF.
+     * @param distributiveLimit The maximum number of clauses of a formula that is multiplied out by the adaptive
+     *      strategy.
+     * @param statistics The statistics to record the CNF encodings in.
+     */
+    IntSatSolver(@NonNull BinaryCnf base, @NonNull VariableIdTable ids, @NonNull CnfStrategy cnfStrategy,
+            int distributiveLimit, @NonNull EncodingStatistics statistics) {
+        this(base, ids, cnfStrategy, distributiveLimit, statistics, SolverVariant.DEFAULT);
+    }
+
+    /**
+     * Creates a solver for the given base CNF, with the {@link CnfStrategy#ADAPTIVE} strategy.
+     * 
+     * @param base The CNF that is part of every query, usually the variability model.
+     * @param ids The variable IDs for formula queries. IDs up to {@link BinaryCnf#getNumVariables()} of the base
+     *      must be the variables of the base.
+     */
+    IntSatSolver(@NonNull BinaryCnf base, @NonNull VariableIdTable ids) {
+        this(base, ids, CnfStrategy.ADAPTIVE, DeadCodeFinder.DEFAULT_DISTRIBUTIVE_LIMIT, new EncodingStatistics());
+    }
+
+    /**
+     * Creates a solver for the given base CNF, with its own {@link VariableIdTable}.
+     * 
+     * @param base The CNF that is part of every query, usually the variability model.
+     */
+    IntSatSolver(@NonNull BinaryCnf base) {
+        this(base, new VariableIdTable(base, null));
+    }
+
+    /**
+     * (Re-)creates the solver and adds the base clauses.
+     */
+    private void load() {
+        ISolver solver = variant.create();
+        solver.newVar(base.getNumVariables());
+        if (conflictLimit > 0) {
+            // Sat4j fixes the conflict limit with the first query; such solvers must not be cancelled, since
+            // expireTimeout() is not safe during a conflict-limited search
+            solver.setTimeoutOnConflicts(conflictLimit);
+        }
+
+        baseUnsat = false;
+        restored = base.hasEliminatedClauses() ? new boolean[base.getNumVariables() + 1] : null;
+        int[] literals = new int[base.getMaxClauseSize()];
+        try {
+            for (int i = 0; i < base.getNumClauses(); i++) {
+                int size = base.getClause(i, literals);
+                clause.clear();
+                for (int j = 0; j < size; j++) {
+                    clause.push(literals[j]);
+                }
+                solver.addClause(clause);
+            }
+        } catch (ContradictionException e) {
+            baseUnsat = true;
+        }
+
+        this.solver = solver;
+        this.nextVariable = base.getNumVariables() + 1;
+        this.declaredVariables = base.getNumVariables();
+        Arrays.fill(additionalVariables, 0);
+    }
+
+    /**
+     * Sets the maximum number of conflicts per query. If a query reaches it, {@link #trySatisfiable(Formula)} returns
+     * <code>null</code>. This re-loads the solver, so it should be called before the first query.
+     * 
+     * @param conflictLimit The maximum number of conflicts per query; 0 for unlimited.
+     */
+    void setConflictLimit(int conflictLimit) {
+        this.conflictLimit = conflictLimit;
+        load();
+    }
+
+    /**
+     * Cancels the query that currently runs in another thread, and all queries until {@link #resetCancelled()} is
+     * called. Cancelled queries return <code>null</code> from {@link #trySatisfiable(Formula)}. This method is
+     * thread-safe, but must not be used together with a {@link #setConflictLimit(int) conflict limit}. Sat4j only
+     * notices the cancellation while it is searching, so a caller that waits for the query to end should call this
+     * repeatedly.
+     */
+    void cancel() {
+        cancelled = true;
+        solver.expireTimeout();
+    }
+
+    /**
+     * Allows queries again after {@link #cancel()}.
+     */
+    void resetCancelled() {
+        cancelled = false;
+    }
+
+    /**
+     * Re-loads the solver if too many additional variables have accumulated, and returns a new activation literal.
+     * 
+     * @return The activation literal for the next query.
+     */
+    private int startQuery() {
+        if (nextVariable - base.getNumVariables() > Math.max(MIN_ADDITIONAL_VARIABLES, base.getNumVariables())) {
+            load();
+        }
+        return newVariable();
+    }
+
+    /**
+     * Solves under the assumption of the activation literal, and disables the clauses of the query afterwards.
+     * 
+     * @param activation The activation literal of the query.
+     * 
+     * @return Whether the base and the query are satisfiable; <code>null</code> if the query reached the conflict
+     *      limit or was cancelled.
+     * 
+     * @throws ContradictionException Can't happen, since each clause contains the fresh activation literal.
+     */
+    private @Nullable Boolean finishQuery(int activation) throws ContradictionException {
+        declareVariables();
+        assumption.clear();
+        assumption.push(activation);
+        Boolean result;
+        if (baseUnsat) {
+            // a restored clause contradicted the base
+            result = false;
+        } else if (cancelled) {
+            result = null;
+        } else {
+            try {
+                result = solver.isSatisfiable(assumption);
+            } catch (TimeoutException e) {
+                result = null;
+            }
+        }
+
+        // disable the clauses of this query for all further queries
+        clause.clear();
+        clause.push(-activation);
+        solver.addClause(clause);
+
+        return result;
+    }
+
+    /**
+     * Declares all variables that were created so far to the solver.
+     */
+    private void declareVariables() {
+        if (declaredVariables < nextVariable - 1) {
+            declaredVariables = nextVariable - 1;
+            solver.newVar(declaredVariables);
+        }
+    }
+
+    /**
+     * Returns the number of clauses that the formula of the last query was encoded to.
+     * 
+     * @return The number of clauses.
+     */
+    int getNumQueryClauses() {
+        return encoder.getNumClauses();
+    }
+
+    /**
+     * Checks whether the base CNF and the given formula are satisfiable together.
+     * 
+     * @param formula The formula to check.
+     * 
+     * @return Whether the base CNF and the formula are satisfiable.
+     * 
+     * @throws SolverException If the solver fails.
+     */
+    boolean isSatisfiable(@NonNull Formula formula) throws SolverException {
+        Boolean result = trySatisfiable(formula);
+        if (result == null) {
+            throw new SolverException("Query reached the conflict limit or was cancelled");
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the base CNF and the given formula are satisfiable together, within the conflict limit.
+     * 
+     * @param formula The formula to check.
+     * 
+     * @return Whether the base CNF and the formula are satisfiable; <code>null</code> if the query reached the
+     *      conflict limit or was cancelled.
+     * 
+     * @throws SolverException If the solver fails.
+     */
+    @Nullable Boolean trySatisfiable(@NonNull Formula formula) throws SolverException {
+        if (baseUnsat) {
+            return false;
+        }
+
+        int activation = startQuery();
+        try {
+            encoder.encode(formula, activation);
+            return finishQuery(activation);
+
+        } catch (ContradictionException e) {
+            load();
+            throw new SolverException(e);
+        }
+    }
+
+    @Override
+    public boolean isSatisfiable(@NonNull Cnf cnf) throws SolverException {
+        if (baseUnsat) {
+            return false;
+        }
+
+        int activation = startQuery();
+        // variables of a Cnf that are not in the base (e.g. auxiliary variables of the converter) are local to it
+        Map<String, Integer> localVariables = new HashMap<>();
+
+        try {
+            for (int i = 0; i < cnf.getRowCount(); i++) {
+                List<CnfVariable> row = cnf.getRow(i);
+                clause.clear();
+                clause.push(-activation);
+                for (CnfVariable variable : row) {
+                    Integer number = base.getVariableNumber(variable.getName());
+                    if (number != null) {
+                        number = getBaseLiteral(number);
+                    } else {
+                        number = localVariables.get(variable.getName());
+                        if (number == null) {
+                            number = newVariable();
+                            localVariables.put(variable.getName(), number);
+                        }
+                    }
+                    clause.push(variable.isNegation() ? -number : number);
+                }
+                declareVariables();
+                solver.addClause(clause);
+            }
+            Boolean result = finishQuery(activation);
+            if (result == null) {
+                throw new SolverException("Query reached the conflict limit or was cancelled");
+            }
+            return result;
+
+        } catch (ContradictionException e) {
+            load();
+            throw new SolverException(e);
+        }
+    }
+
+    @Override
+    public int getVariable(@NonNull Variable variable) {
+        int id = ids.getId(variable.getName());
+        int result;
+        if (id <= base.getNumVariables()) {
+            result = getBaseLiteral(id);
+        } else {
+            int index = id - base.getNumVariables();
+            if (index >= additionalVariables.length) {
+                additionalVariables = Arrays.copyOf(additionalVariables,
+                        Math.max(index + 1, additionalVariables.length * 2));
+            }
+            result = additionalVariables[index];
+            if (result == 0) {
+                result = newVariable();
+                additionalVariables[index] = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the literal for a variable of the base CNF, and restores the clauses that were eliminated for it.
+     * 
+     * @param variable The number of the variable in the base CNF.
+     * 
+     * @return The literal that represents the variable in the solver.
+     */
+    private int getBaseLiteral(int variable) {
+        int result = base.getLiteral(variable);
+        boolean[] restored = this.restored;
+        if (restored != null) {
+            base.restoreEliminatedClauses(Math.abs(result), restored, this::addRestoredClause);
+        }
+        return result;
+    }
+
+    /**
+     * Permanently adds a clause that was eliminated from the base CNF.
+     * 
+     * @param literals The literals of the clause.
+     * @param size The number of literals.
+     */
+    private void addRestoredClause(int @NonNull [] literals, int size) {
+        restoredClause.clear();
+        for (int i = 0; i < size; i++) {
+            restoredClause.push(literals[i]);
+        }
+        try {
+            solver.addClause(restoredClause);
+        } catch (ContradictionException e) {
+            baseUnsat = true;
+        }
+    }
+
+    @Override
+    public int newVariable() {
+        return nextVariable++;
+    }
+
+    @Override
+    public void addClause(int @NonNull [] literals, int start, int end) throws SolverException {
+        declareVariables();
+        clause.clear();
+        for (int i = start; i < end; i++) {
+            clause.push(literals[i]);
+        }
+        try {
+            solver.addClause(clause);
+        } catch (ContradictionException e) {
+            // can't happen, since each clause contains the fresh activation literal
+            throw new SolverException(e);
+        }
+    }
+
+}
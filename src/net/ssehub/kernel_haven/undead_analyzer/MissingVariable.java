@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import net.ssehub.kernel_haven.util.io.TableElement;
+import net.ssehub.kernel_haven.util.io.TableRow;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A variable found by one of the missing variables analyses, tagged with the category of the finding.
+ * 
+ * @author Adam
+ */
+@TableRow
+public class MissingVariable {
+
+    /**
+     * The categories of missing variables.
+     */
+    public enum Category {
+        DEFINED_BUT_NOT_USED, USED_BUT_NOT_DEFINED, USED_ONLY_IN_DEAD_CODE,
+    }
+
+    private @NonNull String variable;
+
+    private @NonNull Category category;
+
+    /**
+     * Creates a missing variable.
+     * 
+     * @param variable The name of the variable.
+     * @param category The category of the finding.
+     */
+    public MissingVariable(@NonNull String variable, @NonNull Category category) {
+        this.variable = variable;
+        this.category = category;
+    }
+
+    /**
+     * Returns the name of the variable.
+     * 
+     * @return The name of the variable.
+     */
+    @TableElement(name = "Variable", index = 0)
+    public @NonNull String getVariable() {
+        return variable;
+    }
+
+    /**
+     * Returns the category of the finding.
+     * 
+     * @return The category.
+     */
+    @TableElement(name = "Category", index = 1)
+    public @NonNull Category getCategory() {
+        return category;
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return category + " " + variable;
+    }
+
+}
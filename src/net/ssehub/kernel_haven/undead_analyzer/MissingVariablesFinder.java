@@ -20,7 +20,6 @@ import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
 import java.io.File;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,23 +27,23 @@ import java.util.Set;
 import net.ssehub.kernel_haven.SetUpException;
 import net.ssehub.kernel_haven.analysis.AnalysisComponent;
 import net.ssehub.kernel_haven.build_model.BuildModel;
-import net.ssehub.kernel_haven.code_model.CodeElement;
 import net.ssehub.kernel_haven.code_model.SourceFile;
 import net.ssehub.kernel_haven.config.Configuration;
 import net.ssehub.kernel_haven.config.EnumSetting;
 import net.ssehub.kernel_haven.config.Setting;
-import net.ssehub.kernel_haven.util.logic.Conjunction;
-import net.ssehub.kernel_haven.util.logic.Disjunction;
-import net.ssehub.kernel_haven.util.logic.Formula;
-import net.ssehub.kernel_haven.util.logic.Negation;
-import net.ssehub.kernel_haven.util.logic.Variable;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
 import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
 
 /**
  * This Analysis uses a VariabilityVariable an looks in the code and build model to see if it is used. If it is not used
  * it will write the unused variables in a file.
+ * <p>
+ * The code model is streamed: the names of the used variables are extracted from each {@link SourceFile} as soon as
+ * it arrives, and the file itself is not kept. Thus, only the set of used variable names has to fit into memory, not
+ * the whole code model.
+ * </p>
  * 
  * @author Johannes
  * @author Manu
@@ -55,12 +54,17 @@ public class MissingVariablesFinder extends AnalysisComponent<String> {
     public static final @NonNull Setting<@NonNull Analysis> MISSING_TYPE =
             new EnumSetting<>("analysis.missing.type", Analysis.class, true, Analysis.DEFINED_BUT_NOT_USED, "Defines "
                     + "the type of missing analysis to execute.");
+
+    public static final @NonNull Setting<@Nullable File> USAGE_INDEX_SETTING = new Setting<>(
+            "analysis.missing.usage_index", Setting.Type.PATH, false, null, "If set, the missing variables analyses "
+            + "write an index of the locations (source file and line) where each variable is used to this file. It "
+            + "can be queried with " + VariableUsageIndex.class.getName() + ".");
     
     private @NonNull AnalysisComponent<VariabilityModel> vmComponent;
 
     private @NonNull AnalysisComponent<BuildModel> bmComponent;
 
-    private @NonNull AnalysisComponent<SourceFile<?>> cmComponent;
+    protected @NonNull AnalysisComponent<SourceFile<?>> cmComponent;
 
     /**
      * The different types of missing analyzes.
@@ -71,6 +75,8 @@ public class MissingVariablesFinder extends AnalysisComponent<String> {
 
     private @NonNull Analysis analyse;
 
+    protected @Nullable File usageIndexFile;
+
     /**
      * Default Constructor.
      * 
@@ -94,6 +100,8 @@ public class MissingVariablesFinder extends AnalysisComponent<String> {
         
         config.registerSetting(MISSING_TYPE);
         analyse = config.getValue(MISSING_TYPE);
+        config.registerSetting(USAGE_INDEX_SETTING);
+        usageIndexFile = config.getValue(USAGE_INDEX_SETTING);
         this.vmComponent = vmComponent;
         this.bmComponent = bmComponent;
         this.cmComponent = cmComponent;
@@ -109,22 +117,21 @@ public class MissingVariablesFinder extends AnalysisComponent<String> {
             return;
         }
         
-        List<@NonNull SourceFile<?>> cm = new LinkedList<>();
-        SourceFile<?> file;
-        while ((file = cmComponent.getNextResult()) != null) {
-            cm.add(file);
+        Set<@NonNull String> usedVariables = collectUsedVariables(bm);
+        if (usedVariables == null) {
+            return;
         }
 
         Set<@NonNull String> variables = null;
         switch (analyse) {
         case DEFINED_BUT_NOT_USED:
             LOGGER.logInfo("Defined but unused analysis");
-            variables = definedButUnused(vm, bm, cm);
+            variables = definedButUnused(vm, usedVariables);
             break;
 
         case USED_BUT_NOT_DEFINED:
             LOGGER.logInfo("Used but not defined analysis");
-            variables = usedButNotDefined(vm, bm, cm);
+            variables = usedButNotDefined(vm, usedVariables);
             break;
 
         default:
@@ -139,6 +146,18 @@ public class MissingVariablesFinder extends AnalysisComponent<String> {
         }
     }
 
+    /**
+     * Collects the names of the variables used in the build model and in all source files of the code model
+     * component. Each source file is dropped as soon as its variables are collected.
+     * 
+     * @param bm
+     *            The build model to search in. Never <code>null</code>.
+     * @return The names of the used variables; <code>null</code> if they could not be collected.
+     */
+    protected @Nullable Set<@NonNull String> collectUsedVariables(@NonNull BuildModel bm) {
+        return VariableUsageCollector.collect(bm, cmComponent, 1, usageIndexFile);
+    }
+
     /**
      * Searching for defined but unused Variables.
      * 
@@ -152,45 +171,35 @@ public class MissingVariablesFinder extends AnalysisComponent<String> {
      */
     public @NonNull Set<@NonNull String> definedButUnused(@NonNull VariabilityModel vm, @NonNull BuildModel bm,
             @NonNull List<@NonNull SourceFile<?>> files) {
+        return definedButUnused(vm, getUsedVariables(bm, files));
+    }
+
+    /**
+     * Searching for defined but unused Variables.
+     * 
+     * @param vm
+     *            The model to search with. Never <code>null</code>.
+     * @param usedVariables
+     *            The names of the variables used in the build and code model, see
+     *            {@link #collectUsedVariables(BuildModel)}. Never <code>null</code>.
+     * @return The set of variables that are defined in the variability model, but not used.
+     */
+    public static @NonNull Set<@NonNull String> definedButUnused(@NonNull VariabilityModel vm,
+            @NonNull Set<@NonNull String> usedVariables) {
         // Fill a map
         Map<@NonNull String, Boolean> variables = new HashMap<>();
         for (VariabilityVariable variabilityVariable : vm.getVariables()) {
             variables.put(variabilityVariable.getName(), false);
         }
-        // Check in build model
-        for (File file : bm) {
-            Set<@NonNull String> names = new HashSet<>();
-            getVariableNamesInFormula(names, notNull(bm.getPc(file)));
-            for (String var : names) {
-                if (var.endsWith("_MODULE")) {
-                    variables.put(notNull(var.substring(0, var.length() - "_MODULE".length())), true);
-                } else {
-                    variables.put(var, true);
-                }
-            }
-        }
-        // Check in code model
-        for (SourceFile<?> file : files) {
-            for (CodeElement<?> element : file) {
-                Set<@NonNull String> names = new HashSet<>();
-                getVariableNamesInElement(element, names);
-
-                for (String var : names) {
-                    if (var.endsWith("_MODULE")) {
-                        variables.put(notNull(var.substring(0, var.length() - "_MODULE".length())), true);
-                    } else {
-                        variables.put(var, true);
-                    }
-                }
-            }
-        }
-        Set<@NonNull String> definedButUnused = new HashSet<>();
-        for (Map.Entry<@NonNull String, Boolean> entry : variables.entrySet()) {
-            if (!entry.getValue()) {
-                definedButUnused.add(entry.getKey());
+        // Check in build and code model
+        for (String var : usedVariables) {
+            if (var.endsWith("_MODULE")) {
+                variables.put(notNull(var.substring(0, var.length() - "_MODULE".length())), true);
+            } else {
+                variables.put(var, true);
             }
         }
-        return definedButUnused;
+        return getUnflagged(variables);
     }
 
     /**
@@ -206,24 +215,25 @@ public class MissingVariablesFinder extends AnalysisComponent<String> {
      */
     public @NonNull Set<@NonNull String> usedButNotDefined(@NonNull VariabilityModel vm, @NonNull BuildModel bm,
             @NonNull List<@NonNull SourceFile<?>> files) {
+        return usedButNotDefined(vm, getUsedVariables(bm, files));
+    }
+
+    /**
+     * Searching for used but not defined Variables.
+     * 
+     * @param vm
+     *            The model to search with. Never <code>null</code>.
+     * @param usedVariables
+     *            The names of the variables used in the build and code model, see
+     *            {@link #collectUsedVariables(BuildModel)}. Never <code>null</code>.
+     * @return The set of variables that are used, but not defined in the variability model.
+     */
+    public static @NonNull Set<@NonNull String> usedButNotDefined(@NonNull VariabilityModel vm,
+            @NonNull Set<@NonNull String> usedVariables) {
         Map<@NonNull String, Boolean> variables = new HashMap<>();
-        // Fill a map with build model
-        for (File file : bm) {
-            Set<@NonNull String> names = new HashSet<>();
-            getVariableNamesInFormula(names, notNull(bm.getPc(file)));
-            for (String var : names) {
-                variables.put(var, false);
-            }
-        }
-        // Fill same map with code model
-        for (SourceFile<?> file : files) {
-            for (CodeElement<?> element : file) {
-                Set<@NonNull String> names = new HashSet<>();
-                getVariableNamesInElement(element, names);
-                for (String var : names) {
-                    variables.put(var, false);
-                }
-            }
+        // Fill a map with build and code model
+        for (String var : usedVariables) {
+            variables.put(var, false);
         }
         // Check with variability model
         for (VariabilityVariable variabilityVariable : vm.getVariables()) {
@@ -233,59 +243,43 @@ public class MissingVariablesFinder extends AnalysisComponent<String> {
             }
         }
         // Set results
-        Set<@NonNull String> definedButUnused = new HashSet<>();
-        for (Map.Entry<@NonNull String, Boolean> entry : variables.entrySet()) {
-            if (!entry.getValue()) {
-                definedButUnused.add(entry.getKey());
-            }
-        }
-        return definedButUnused;
+        return getUnflagged(variables);
     }
 
     /**
-     * Recursively finds all variable names that start with CONFIG_ in the presence conditions of an element and all
-     * child elements.
+     * Returns the variables that are flagged with <code>false</code>.
      * 
-     * @param element
-     *            The element to search in.
-     * @param result
-     *            The resulting set of variable names
+     * @param variables
+     *            The variables, flagged with <code>true</code> or <code>false</code>. Never <code>null</code>.
+     * @return The set of variables that are flagged with <code>false</code>.
      */
-    private void getVariableNamesInElement(@NonNull CodeElement<?> element, @NonNull Set<@NonNull String> result) {
-        getVariableNamesInFormula(result, element.getPresenceCondition());
-
-        for (CodeElement<?> child : element) {
-            getVariableNamesInElement(child, result);
+    private static @NonNull Set<@NonNull String> getUnflagged(@NonNull Map<@NonNull String, Boolean> variables) {
+        Set<@NonNull String> unflagged = new HashSet<>();
+        for (Map.Entry<@NonNull String, Boolean> entry : variables.entrySet()) {
+            if (!entry.getValue()) {
+                unflagged.add(entry.getKey());
+            }
         }
+        return unflagged;
     }
 
     /**
-     * Recursively fills a set with strings with names of variables from a Formula. Only variables that start with
-     * CONFIG_ are considered.
+     * Collects the names of the variables used in the build model and the given source files.
      * 
-     * @param formular
-     *            The Formula to check. Never <code>null</code>.
-     * @param names
-     *            A set to fill with call by reference. Never <code>null</code>.
+     * @param bm
+     *            The build model to search in. Never <code>null</code>.
+     * @param files
+     *            The files to search in. Never <code>null</code>.
+     * @return The names of the used variables.
      */
-    private void getVariableNamesInFormula(@NonNull Set<@NonNull String> names, @NonNull Formula formular) {
-        if (formular instanceof Variable) {
-            Variable var = (Variable) formular;
-            if (var.getName().startsWith("CONFIG_")) {
-                names.add(var.getName());
-            }
-        } else if (formular instanceof Disjunction) {
-            Disjunction dis = (Disjunction) formular;
-            getVariableNamesInFormula(names, dis.getLeft());
-            getVariableNamesInFormula(names, dis.getRight());
-        } else if (formular instanceof Conjunction) {
-            Conjunction con = (Conjunction) formular;
-            getVariableNamesInFormula(names, con.getLeft());
-            getVariableNamesInFormula(names, con.getRight());
-        } else if (formular instanceof Negation) {
-            Negation neg = (Negation) formular;
-            getVariableNamesInFormula(names, neg.getFormula());
+    private static @NonNull Set<@NonNull String> getUsedVariables(@NonNull BuildModel bm,
+            @NonNull List<@NonNull SourceFile<?>> files) {
+        Set<@NonNull String> result = new HashSet<>();
+        VariableUsageCollector.addVariablesInBuildModel(bm, result);
+        for (SourceFile<?> file : files) {
+            VariableUsageCollector.addVariablesInFile(file, result);
         }
+        return result;
     }
 
     @Override
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import net.ssehub.kernel_haven.cnf.VmToCnfConverter;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+
+/**
+ * Converts the DIMACS constraint model of a {@link VariabilityModel} to a {@link BinaryCnf} in parallel. The file is
+ * split at line boundaries into chunks that are parsed by a fork-join pool; the results are merged in file order.
+ * Each chunk only keeps the DIMACS numbers, which are global, so merging needs no coordination. Afterwards, the
+ * variables are numbered in one pass in the order in which their names first appear in the clauses, so that the
+ * result is the same as the one of {@link BinaryCnf#fromCnf(net.ssehub.kernel_haven.cnf.Cnf)} for the
+ * {@link VmToCnfConverter}.
+ * <p>
+ * Only the common layout is parsed in parallel: name comments (<code>c &lt;number&gt; &lt;name&gt;</code>) before
+ * all clauses, and a name for each variable. Other files (and other constraint file types) are converted
+ * sequentially by the {@link VmToCnfConverter}, as before.
+ * </p>
+ * 
+ * @author Adam
+ */
+final class ParallelVmConverter {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * The number of bytes up to which a chunk is parsed without splitting it further.
+     */
+    private static final int CHUNK_SIZE = 1 << 18;
+
+    /**
+     * Signals that a file does not have the layout that is parsed in parallel.
+     */
+    private static class UnsupportedLayoutException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates an exception.
+         * 
+         * @param message The reason.
+         */
+        UnsupportedLayoutException(@NonNull String message) {
+            super(message);
+        }
+
+    }
+
+    /**
+     * The parse result of a part of the file.
+     */
+    private static class Chunk {
+
+        /**
+         * The clauses; each literal is a DIMACS number, negative if negated.
+         */
+        private @NonNull List<int @NonNull []> clauses = new ArrayList<>();
+
+        private @NonNull Map<Integer, String> names = new HashMap<>();
+
+        /**
+         * Appends the result of the following part of the file.
+         * 
+         * @param next The result of the following part.
+         */
+        void append(@NonNull Chunk next) {
+            if (!clauses.isEmpty() && !next.names.isEmpty()) {
+                throw new UnsupportedLayoutException("Name comment after a clause");
+            }
+            clauses.addAll(next.clauses);
+            // later comments overwrite earlier ones, as in the sequential conversion
+            names.putAll(next.names);
+        }
+
+    }
+
+    /**
+     * Parses the lines of a part of the file, splitting it for the fork-join pool if it is large.
+     */
+    private static class ParseTask extends RecursiveTask<@NonNull Chunk> {
+
+        private static final long serialVersionUID = 1L;
+
+        private byte @NonNull [] data;
+
+        private int start;
+
+        private int end;
+
+        /**
+         * Creates a task.
+         * 
+         * @param data The content of the file.
+         * @param start The start of the part; at the beginning of a line.
+         * @param end The end of the part (exclusive); at the end of a line.
+         */
+        ParseTask(byte @NonNull [] data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected @NonNull Chunk compute() {
+            Chunk result;
+            int middle = end - start > CHUNK_SIZE ? nextLine(data, start + (end - start) / 2, end) : end;
+            if (middle >= end) {
+                result = new Chunk();
+                int lineStart = start;
+                while (lineStart < end) {
+                    int lineEnd = nextLine(data, lineStart, end);
+                    parseLine(data, lineStart, lineEnd, result);
+                    lineStart = lineEnd;
+                }
+
+            } else {
+                ParseTask left = new ParseTask(data, start, middle);
+                left.fork();
+                Chunk right = new ParseTask(data, middle, end).compute();
+                result = left.join();
+                result.append(right);
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Don't allow any instances.
+     */
+    private ParallelVmConverter() {
+    }
+
+    /**
+     * Converts the constraint model of the given variability model.
+     * 
+     * @param vm The variability model.
+     * 
+     * @return The CNF of the variability model.
+     * 
+     * @throws FormatException If the constraint model can not be read or converted.
+     */
+    static @NonNull BinaryCnf convert(@NonNull VariabilityModel vm) throws FormatException {
+        BinaryCnf result = null;
+        if (vm.getDescriptor().getConstraintFileType() == ConstraintFileType.DIMACS) {
+            try {
+                result = convert(notNull(vm.getConstraintModel()), ForkJoinPool.commonPool());
+            } catch (UnsupportedLayoutException e) {
+                LOGGER.logDebug("Converting variability model sequentially: " + e.getMessage());
+            }
+        }
+        if (result == null) {
+            result = BinaryCnf.fromCnf(notNull(new VmToCnfConverter().convertVmToCnf(vm)));
+        }
+        return result;
+    }
+
+    /**
+     * Converts a DIMACS file.
+     * 
+     * @param file The DIMACS file.
+     * @param pool The pool to parse the chunks in.
+     * 
+     * @return The CNF.
+     * 
+     * @throws FormatException If the file can not be read.
+     * @throws UnsupportedLayoutException If the file does not have the layout that is parsed in parallel.
+     */
+    static @NonNull BinaryCnf convert(@NonNull File file, @NonNull ForkJoinPool pool) throws FormatException {
+        byte[] data;
+        try {
+            data = notNull(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            throw new FormatException(e);
+        }
+        Chunk chunk = pool.invoke(new ParseTask(data, 0, data.length));
+
+        // number the variables by the first appearance of their name, as BinaryCnf.fromCnf() does
+        int[] numbers = new int[0];
+        Map<String, Integer> byName = new HashMap<>();
+        List<@NonNull String> names = new ArrayList<>();
+        names.add("");
+        for (int[] clause : chunk.clauses) {
+            for (int i = 0; i < clause.length; i++) {
+                int dimacs = Math.abs(clause[i]);
+                if (dimacs >= numbers.length) {
+                    numbers = Arrays.copyOf(numbers, Math.max(dimacs + 1, numbers.length * 2));
+                }
+                if (numbers[dimacs] == 0) {
+                    String name = chunk.names.get(dimacs);
+                    if (name == null) {
+                        throw new UnsupportedLayoutException("No name for variable " + dimacs);
+                    }
+                    Integer number = byName.get(name);
+                    if (number == null) {
+                        number = names.size();
+                        names.add(name);
+                        byName.put(name, number);
+                    }
+                    numbers[dimacs] = number;
+                }
+                clause[i] = clause[i] > 0 ? numbers[dimacs] : -numbers[dimacs];
+            }
+        }
+
+        return BinaryCnf.fromClauses(notNull(names.toArray(new @NonNull String[names.size()])), chunk.clauses);
+    }
+
+    /**
+     * Finds the start of the next line.
+     * 
+     * @param data The content of the file.
+     * @param position The position to search from.
+     * @param end The end of the part that is searched.
+     * 
+     * @return The position after the next line break; <code>end</code> if there is none.
+     */
+    private static int nextLine(byte @NonNull [] data, int position, int end) {
+        int result = position;
+        while (result < end && data[result] != '\n') {
+            result++;
+        }
+        return result < end ? result + 1 : end;
+    }
+
+    /**
+     * Checks whether a byte is white space within a line.
+     * 
+     * @param value The byte.
+     * 
+     * @return Whether the byte is white space.
+     */
+    private static boolean isSpace(byte value) {
+        return value == ' ' || value == '\t' || value == '\r' || value == '\n';
+    }
+
+    /**
+     * Parses one line: a clause, a name comment, or a header line.
+     * 
+     * @param data The content of the file.
+     * @param start The start of the line.
+     * @param end The end of the line.
+     * @param result The result to add the clause or name to.
+     */
+    private static void parseLine(byte @NonNull [] data, int start, int end, @NonNull Chunk result) {
+        int position = start;
+        while (position < end && isSpace(data[position])) {
+            position++;
+        }
+        if (position == end || data[position] == 'p') {
+            return;
+        }
+
+        if (data[position] == 'c' && (position + 1 == end || isSpace(data[position + 1]))) {
+            String[] parts = new String(data, position, end - position, StandardCharsets.UTF_8).trim().split("\\s+");
+            if (parts.length < 3) {
+                throw new UnsupportedLayoutException("Comment without name");
+            }
+            if (!result.clauses.isEmpty()) {
+                throw new UnsupportedLayoutException("Name comment after a clause");
+            }
+            try {
+                result.names.put(Integer.parseInt(parts[1]), parts[2]);
+            } catch (NumberFormatException e) {
+                throw new UnsupportedLayoutException("Comment without variable number");
+            }
+            return;
+        }
+
+        int[] literals = new int[8];
+        int size = 0;
+        boolean terminated = false;
+        while (position < end && !terminated) {
+            boolean negated = data[position] == '-';
+            if (negated) {
+                position++;
+            }
+            long value = 0;
+            int digits = 0;
+            while (position < end && data[position] >= '0' && data[position] <= '9' && value <= Integer.MAX_VALUE) {
+                value = value * 10 + data[position] - '0';
+                position++;
+                digits++;
+            }
+            if (digits == 0 || value > Integer.MAX_VALUE || position < end && !isSpace(data[position])) {
+                throw new UnsupportedLayoutException("Invalid literal");
+            }
+
+            if (value == 0) {
+                terminated = true;
+            } else {
+                if (size == literals.length) {
+                    literals = Arrays.copyOf(literals, size * 2);
+                }
+                literals[size++] = negated ? (int) -value : (int) value;
+            }
+            while (position < end && isSpace(data[position])) {
+                position++;
+            }
+        }
+        result.clauses.add(Arrays.copyOf(literals, size));
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.undead_analyzer.IntSatSolver.SolverVariant;
+import net.ssehub.kernel_haven.undead_analyzer.SolverRace.Outcome;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Solves hard queries by racing several differently configured solvers against each other: the configured CNF
+ * strategy with the default and the Glucose solver, and a different CNF strategy with the default solver. The first
+ * answer wins (see {@link SolverRace}); the other solvers are cancelled and can be re-used for the next race.
+ * <p>
+ * The solvers are only created (and loaded with the variability model) for the first race. Instances are not
+ * thread-safe; each {@link SatUtilities} has its own, but all share one executor.
+ * </p>
+ * 
+ * @author Adam
+ */
+class PortfolioSolver {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * One solver of the portfolio.
+     */
+    private static class Member {
+
+        private @NonNull String name;
+
+        private @NonNull IntSatSolver solver;
+
+        /**
+         * Creates a member.
+         * 
+         * @param name A description of the configuration, for logging.
+         * @param solver The solver.
+         */
+        Member(@NonNull String name, @NonNull IntSatSolver solver) {
+            this.name = name;
+            this.solver = solver;
+        }
+
+    }
+
+    private @NonNull BinaryCnf base;
+
+    private @NonNull VariableIdTable ids;
+
+    private @NonNull CnfStrategy cnfStrategy;
+
+    private int distributiveLimit;
+
+    private @NonNull EncodingStatistics statistics;
+
+    private @NonNull ExecutorService executor;
+
+    private @Nullable List<@NonNull Member> members;
+
+    /**
+     * Creates a portfolio.
+     * 
+     * @param base The CNF that is part of every query, usually the variability model.
+     * @param ids The variable IDs for formula queries.
+     * @param cnfStrategy The configured CNF strategy.
+     * @param distributiveLimit The maximum number of clauses of a formula that is multiplied out by the adaptive
+     *      strategy.
+     * @param statistics The statistics to record the CNF encodings in.
+     * @param executor The executor to run the solvers in. Must be able to run all solvers of the portfolio at the
+     *      same time, i.e. must not be bounded.
+     */
+    PortfolioSolver(@NonNull BinaryCnf base, @NonNull VariableIdTable ids, @NonNull CnfStrategy cnfStrategy,
+            int distributiveLimit, @NonNull EncodingStatistics statistics, @NonNull ExecutorService executor) {
+        this.base = base;
+        this.ids = ids;
+        this.cnfStrategy = cnfStrategy;
+        this.distributiveLimit = distributiveLimit;
+        this.statistics = statistics;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates the solvers of the portfolio.
+     * 
+     * @return The solvers.
+     */
+    private @NonNull List<@NonNull Member> createMembers() {
+        CnfStrategy otherStrategy = cnfStrategy == CnfStrategy.TSEITIN ? CnfStrategy.ADAPTIVE : CnfStrategy.TSEITIN;
+
+        List<@NonNull Member> result = new ArrayList<>(3);
+        result.add(createMember(cnfStrategy, SolverVariant.DEFAULT));
+        result.add(createMember(cnfStrategy, SolverVariant.GLUCOSE));
+        result.add(createMember(otherStrategy, SolverVariant.DEFAULT));
+        return result;
+    }
+
+    /**
+     * Creates one solver of the portfolio.
+     * 
+     * @param strategy The CNF strategy of the solver.
+     * @param variant The Sat4j configuration of the solver.
+     * 
+     * @return The solver.
+     */
+    private @NonNull Member createMember(@NonNull CnfStrategy strategy, @NonNull SolverVariant variant) {
+        return new Member(strategy + "/" + variant,
+                new IntSatSolver(base, ids, strategy, distributiveLimit, statistics, variant));
+    }
+
+    /**
+     * Returns whether the executor of this portfolio was shut down, i.e. whether no more races can be run.
+     * 
+     * @return Whether this portfolio is stopped.
+     */
+    boolean isStopped() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Checks whether the base CNF and the given formula are satisfiable together, by racing all solvers of the
+     * portfolio.
+     * 
+     * @param formula The formula to check.
+     * 
+     * @return Whether the base CNF and the formula are satisfiable.
+     * 
+     * @throws SolverException If all solvers fail.
+     */
+    boolean isSatisfiable(@NonNull Formula formula) throws SolverException {
+        List<@NonNull Member> members = this.members;
+        if (members == null) {
+            members = createMembers();
+            this.members = members;
+        }
+
+        List<@NonNull IntSatSolver> solvers = new ArrayList<>(members.size());
+        List<@NonNull Formula> formulas = new ArrayList<>(members.size());
+        for (Member member : members) {
+            solvers.add(member.solver);
+            formulas.add(formula);
+        }
+
+        long start = System.currentTimeMillis();
+        Outcome outcome = SolverRace.race(executor, solvers, formulas, false);
+
+        LOGGER.logInfo("Portfolio solved hard query in " + (System.currentTimeMillis() - start) + " ms; winner: "
+                + members.get(outcome.getIndex()).name);
+        return outcome.isSatisfiable();
+    }
+
+}
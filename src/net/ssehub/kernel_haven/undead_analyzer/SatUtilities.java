@@ -0,0 +1,472 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeMetrics.Cache;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.Logger.Level;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A class that holds all variables relevant for solving SAT. Instances are not thread-safe; the
+ * {@link DeadCodeContext} hands each one to only one thread at a time, so that its analysis is thread-safe.
+ * <p>
+ * Checking a block whose verdict is already cached does not allocate any objects: the verdicts for
+ * <code>pc &and; filePc</code> are additionally cached per file, keyed by <code>pc</code> alone, so that the
+ * {@link Conjunction} is only created on a cache miss; debug messages are only rendered if debug logging is enabled.
+ * </p>
+ * 
+ * @author Adam
+ */
+class SatUtilities {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * The maximum number of verdicts per cache. Instances live as long as their {@link DeadCodeContext}, so the caches
+     * are cleared when they grow beyond this size.
+     */
+    private static final int MAX_CACHE_SIZE = 100000;
+
+    /**
+     * The solver for queries with the variability model; <code>null</code> if an {@link #externalSolver} is used.
+     */
+    private @Nullable IntSatSolver vmSolver;
+
+    private @Nullable ExternalSolver externalSolver;
+
+    private @NonNull IntSatSolver plainSolver;
+
+    private @Nullable PortfolioSolver portfolio;
+
+    private @Nullable CubeSolver cubeSolver;
+
+    private @NonNull Map<Formula, Boolean> vmSatCache;
+
+    private @NonNull Map<Formula, Boolean> plainSatCache;
+
+    private @Nullable Formula currentFilePc;
+
+    /**
+     * The verdicts of {@link #isVmSat(Formula, Formula)} for the {@link #currentFilePc}, keyed by the block PC.
+     */
+    private @NonNull Map<Formula, Boolean> fileVmSatCache;
+
+    /**
+     * The verdicts of {@link #isSat(Formula, Formula)} for the {@link #currentFilePc}, keyed by the block PC.
+     */
+    private @NonNull Map<Formula, Boolean> filePlainSatCache;
+
+    private @NonNull DeadCodeMetrics metrics;
+
+    /**
+     * The number of queries solved by this instance; only accessed by the thread that currently uses it.
+     */
+    private long numQueries;
+
+    /**
+     * The number of queries answered by a verdict cache of this instance; only accessed by the thread that currently
+     * uses it.
+     */
+    private long numCacheHits;
+
+    private @Nullable File currentFile;
+
+    private int currentLine;
+
+    private @Nullable SlowQueryLog slowQueryLog;
+
+    /**
+     * The number of clauses of the last solved query; -1 if unknown.
+     */
+    private int lastNumClauses;
+
+    /**
+     * Creates this instances.
+     * 
+     * @param vmCnf The variability model as binary CNF; the solver loads its clauses directly from it.
+     * @param ids The variable IDs, shared by all instances for the same variability model.
+     * @param cnfStrategy How formulas are converted to CNF.
+     * @param distributiveLimit The maximum number of clauses of a formula that is multiplied out by the adaptive
+     *      strategy.
+     * @param statistics The statistics to record the CNF encodings in.
+     * @param metrics The metrics to record the cache lookups and queries in.
+     */
+    SatUtilities(@NonNull BinaryCnf vmCnf, @NonNull VariableIdTable ids, @NonNull CnfStrategy cnfStrategy,
+            int distributiveLimit, @NonNull EncodingStatistics statistics, @NonNull DeadCodeMetrics metrics) {
+        this(ids, cnfStrategy, distributiveLimit, statistics, metrics);
+        this.vmSolver = new IntSatSolver(vmCnf, ids, cnfStrategy, distributiveLimit, statistics);
+    }
+
+    /**
+     * Creates this instances for an external solver process, which solves all queries with the variability model.
+     * 
+     * @param externalSolver The external solver, which has the variability model as base CNF.
+     * @param ids The variable IDs, shared by all instances for the same variability model.
+     * @param cnfStrategy How formulas are converted to CNF.
+     * @param distributiveLimit The maximum number of clauses of a formula that is multiplied out by the adaptive
+     *      strategy.
+     * @param statistics The statistics to record the CNF encodings in.
+     * @param metrics The metrics to record the cache lookups and queries in.
+     */
+    SatUtilities(@NonNull ExternalSolver externalSolver, @NonNull VariableIdTable ids,
+            @NonNull CnfStrategy cnfStrategy, int distributiveLimit, @NonNull EncodingStatistics statistics,
+            @NonNull DeadCodeMetrics metrics) {
+        this(ids, cnfStrategy, distributiveLimit, statistics, metrics);
+        this.externalSolver = externalSolver;
+    }
+
+    /**
+     * Creates this instances without a solver for queries with the variability model.
+     * 
+     * @param ids The variable IDs, shared by all instances for the same variability model.
+     * @param cnfStrategy How formulas are converted to CNF.
+     * @param distributiveLimit The maximum number of clauses of a formula that is multiplied out by the adaptive
+     *      strategy.
+     * @param statistics The statistics to record the CNF encodings in.
+     * @param metrics The metrics to record the cache lookups and queries in.
+     */
+    private SatUtilities(@NonNull VariableIdTable ids, @NonNull CnfStrategy cnfStrategy, int distributiveLimit,
+            @NonNull EncodingStatistics statistics, @NonNull DeadCodeMetrics metrics) {
+        this.plainSolver = new IntSatSolver(BinaryCnf.fromCnf(new Cnf()), ids, cnfStrategy, distributiveLimit,
+                statistics);
+        this.vmSatCache = new HashMap<>(10000);
+        this.plainSatCache = new HashMap<>(10000);
+        this.fileVmSatCache = new HashMap<>();
+        this.filePlainSatCache = new HashMap<>();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Enables portfolio solving for hard queries with the variability model: queries that reach the given number of
+     * conflicts are handed to the portfolio. Should be called before the first query. Has no effect if an external
+     * solver is used.
+     * 
+     * @param conflictLimit The number of conflicts after which a query is considered hard.
+     * @param portfolio The portfolio to solve hard queries with.
+     */
+    void setPortfolio(int conflictLimit, @NonNull PortfolioSolver portfolio) {
+        IntSatSolver vmSolver = this.vmSolver;
+        if (vmSolver != null) {
+            vmSolver.setConflictLimit(conflictLimit);
+            this.portfolio = portfolio;
+        }
+    }
+
+    /**
+     * Enables splitting queries with the variability model that have a large top-level disjunction into cubes that
+     * are solved in parallel. Has no effect if an external solver is used.
+     * 
+     * @param cubeSolver The (shared) solver for the cubes.
+     */
+    void setCubeSolver(@NonNull CubeSolver cubeSolver) {
+        if (this.vmSolver != null) {
+            this.cubeSolver = cubeSolver;
+        }
+    }
+
+    /**
+     * Enables recording slow solved queries. Queries answered by a verdict cache are never recorded.
+     * 
+     * @param slowQueryLog The (shared) log to record slow queries in.
+     */
+    void setSlowQueryLog(@NonNull SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * Returns whether the portfolio or the cube solver of this instance can no longer be used, because the threads
+     * for parallel solving were stopped (see {@link DeadCodeContext#close()}).
+     * 
+     * @return Whether the parallel solvers are stopped.
+     */
+    boolean isParallelSolvingStopped() {
+        PortfolioSolver portfolio = this.portfolio;
+        CubeSolver cubeSolver = this.cubeSolver;
+        return (portfolio != null && portfolio.isStopped()) || (cubeSolver != null && cubeSolver.isStopped());
+    }
+
+    /**
+     * Stops the external solver process, if there is one.
+     */
+    void close() {
+        ExternalSolver externalSolver = this.externalSolver;
+        if (externalSolver != null) {
+            externalSolver.close();
+        }
+    }
+
+    /**
+     * Sets the source file that is currently analyzed with this instance, for the {@link SolverEvents} and the
+     * {@link SlowQueryLog}.
+     * 
+     * @param file The source file; <code>null</code> if the following queries are not for a file.
+     */
+    void setCurrentFile(@Nullable File file) {
+        this.currentFile = file;
+        this.currentLine = 0;
+    }
+
+    /**
+     * Sets the line of the code block that is currently checked with this instance, for the {@link SlowQueryLog}.
+     * 
+     * @param line The line of the block; 0 if the following queries are for the file itself.
+     */
+    void setCurrentLine(int line) {
+        this.currentLine = line;
+    }
+
+    /**
+     * Returns how many queries this instance solved so far, i.e. how many were not answered by a verdict cache.
+     * 
+     * @return The number of solved queries.
+     */
+    long getNumQueries() {
+        return numQueries;
+    }
+
+    /**
+     * Returns how many queries this instance answered from a verdict cache so far.
+     * 
+     * @return The number of cache hits.
+     */
+    long getNumCacheHits() {
+        return numCacheHits;
+    }
+
+    /**
+     * Records a lookup in a verdict cache, in the {@link DeadCodeMetrics} and in the counter of this instance.
+     * 
+     * @param cache The cache that was looked up.
+     * @param hit Whether the verdict was cached.
+     */
+    private void recordLookup(@NonNull Cache cache, boolean hit) {
+        metrics.recordLookup(cache, hit);
+        if (hit) {
+            numCacheHits++;
+        }
+    }
+
+    /**
+     * Clears the per-file caches if the given file presence condition is a different one than before.
+     * 
+     * @param filePc The presence condition of the file that is currently analyzed.
+     */
+    private void switchFile(@NonNull Formula filePc) {
+        if (filePc != currentFilePc && !filePc.equals(currentFilePc)) {
+            currentFilePc = filePc;
+            fileVmSatCache.clear();
+            filePlainSatCache.clear();
+        }
+    }
+
+    /**
+     * Checks whether the given block presence condition is satisfiable together with the given file presence
+     * condition and the variability model. This is the same as {@link #isVmSat(Formula)} for
+     * <code>pc &and; filePc</code>, but does not allocate anything if the verdict is cached.
+     * 
+     * @param pc The presence condition of the block.
+     * @param filePc The presence condition of the file.
+     * 
+     * @return Whether <code>pc &and; filePc</code> is satisfiable with the variability model.
+     * 
+     * @throws ConverterException If the conversion to CNF fails.
+     * @throws SolverException If the SAT-solver fails.
+     */
+    public boolean isVmSat(@NonNull Formula pc, @NonNull Formula filePc) throws SolverException, ConverterException {
+        switchFile(filePc);
+        Boolean sat = this.fileVmSatCache.get(pc);
+        recordLookup(Cache.FILE_VM, sat != null);
+
+        if (sat == null) {
+            sat = isVmSat(new Conjunction(pc, filePc));
+            if (this.fileVmSatCache.size() >= MAX_CACHE_SIZE) {
+                this.fileVmSatCache.clear();
+            }
+            this.fileVmSatCache.put(pc, sat);
+        }
+
+        return sat;
+    }
+
+    /**
+     * Checks whether the given block presence condition is satisfiable together with the given file presence
+     * condition (without the variability model). This is the same as {@link #isSat(Formula)} for
+     * <code>pc &and; filePc</code>, but does not allocate anything if the verdict is cached.
+     * 
+     * @param pc The presence condition of the block.
+     * @param filePc The presence condition of the file.
+     * 
+     * @return Whether <code>pc &and; filePc</code> is satisfiable.
+     * 
+     * @throws ConverterException If the conversion to CNF fails.
+     * @throws SolverException If the SAT-solver fails.
+     */
+    public boolean isSat(@NonNull Formula pc, @NonNull Formula filePc) throws SolverException, ConverterException {
+        switchFile(filePc);
+        Boolean sat = this.filePlainSatCache.get(pc);
+        recordLookup(Cache.FILE_PLAIN, sat != null);
+
+        if (sat == null) {
+            sat = isSat(new Conjunction(pc, filePc));
+            if (this.filePlainSatCache.size() >= MAX_CACHE_SIZE) {
+                this.filePlainSatCache.clear();
+            }
+            this.filePlainSatCache.put(pc, sat);
+        }
+
+        return sat;
+    }
+
+    /**
+     * Checks whether the given formula is satisfiable with the variability model.
+     * Internally, this method has a cache to speed up when the same formula is
+     * passed to it several times.
+     * 
+     * @param pc The formula to check.
+     * 
+     * @return Whether the formula is satisfiable with the variability model.
+     * 
+     * @throws ConverterException If the conversion to CNF fails.
+     * @throws SolverException If the SAT-solver fails.
+     */
+    public boolean isVmSat(@NonNull Formula pc) throws SolverException, ConverterException {
+        Boolean sat = this.vmSatCache.get(pc);
+        recordLookup(Cache.VM, sat != null);
+
+        if (sat == null) {
+            SolverEvents.Event event = SolverEvents.beginQuery();
+            long start = System.nanoTime();
+            sat = solveVm(pc);
+            long time = System.nanoTime() - start;
+            metrics.recordQuery(time);
+            numQueries++;
+            if (event != null) {
+                event.commitQuery(currentFile, pc, lastNumClauses, true, sat);
+            }
+            SlowQueryLog slowQueryLog = this.slowQueryLog;
+            if (slowQueryLog != null && slowQueryLog.isSlow(time)) {
+                slowQueryLog.record(currentFile, currentLine, pc, true, lastNumClauses, time);
+            }
+            if (this.vmSatCache.size() >= MAX_CACHE_SIZE) {
+                this.vmSatCache.clear();
+            }
+            this.vmSatCache.put(pc, sat);
+            if (LOGGER.getLevel().shouldLog(Level.DEBUG)) {
+                LOGGER.logDebug("sat(" + pc + ") = " + sat);
+            }
+        }
+
+        return sat;
+    }
+
+    /**
+     * Solves a query with the variability model, using the external solver, the cube solver, or the in-JVM solver and
+     * the portfolio. Sets {@link #lastNumClauses}.
+     * 
+     * @param pc The formula to check.
+     * 
+     * @return Whether the formula is satisfiable with the variability model.
+     * 
+     * @throws SolverException If the SAT-solver fails.
+     */
+    private boolean solveVm(@NonNull Formula pc) throws SolverException {
+        ExternalSolver externalSolver = this.externalSolver;
+        if (externalSolver != null) {
+            boolean sat = externalSolver.isSatisfiable(pc);
+            lastNumClauses = externalSolver.getNumQueryClauses();
+            return sat;
+        }
+        IntSatSolver vmSolver = notNull(this.vmSolver);
+
+        Boolean sat = null;
+        CubeSolver cubeSolver = this.cubeSolver;
+        if (cubeSolver != null) {
+            sat = cubeSolver.trySatisfiable(pc);
+            lastNumClauses = -1;
+        }
+        if (sat == null) {
+            PortfolioSolver portfolio = this.portfolio;
+            if (portfolio != null) {
+                sat = vmSolver.trySatisfiable(pc);
+                if (sat == null) {
+                    sat = portfolio.isSatisfiable(pc);
+                }
+            } else {
+                sat = vmSolver.isSatisfiable(pc);
+            }
+            // the portfolio is only used after the VM solver encoded the formula, too
+            lastNumClauses = vmSolver.getNumQueryClauses();
+        }
+        return sat;
+    }
+
+    /**
+     * Checks whether the given formula is satisfiable (without the variability model).
+     * Internally, this method has a cache to speed up when the same formula is
+     * passed to it several times.
+     * 
+     * @param pc The formula to check.
+     * 
+     * @return Whether the formula is satisfiable.
+     * 
+     * @throws ConverterException If the conversion to CNF fails.
+     * @throws SolverException If the SAT-solver fails.
+     */
+    public boolean isSat(@NonNull Formula pc) throws SolverException, ConverterException {
+        Boolean sat = this.plainSatCache.get(pc);
+        recordLookup(Cache.PLAIN, sat != null);
+
+        if (sat == null) {
+            SolverEvents.Event event = SolverEvents.beginQuery();
+            long start = System.nanoTime();
+            sat = this.plainSolver.isSatisfiable(pc);
+            long time = System.nanoTime() - start;
+            metrics.recordQuery(time);
+            numQueries++;
+            if (event != null) {
+                event.commitQuery(currentFile, pc, plainSolver.getNumQueryClauses(), false, sat);
+            }
+            SlowQueryLog slowQueryLog = this.slowQueryLog;
+            if (slowQueryLog != null && slowQueryLog.isSlow(time)) {
+                slowQueryLog.record(currentFile, currentLine, pc, false, plainSolver.getNumQueryClauses(), time);
+            }
+            if (this.plainSatCache.size() >= MAX_CACHE_SIZE) {
+                this.plainSatCache.clear();
+            }
+            this.plainSatCache.put(pc, sat);
+            if (LOGGER.getLevel().shouldLog(Level.DEBUG)) {
+                LOGGER.logDebug("sat(" + pc + ") = " + sat);
+            }
+        }
+
+        return sat;
+    }
+
+}
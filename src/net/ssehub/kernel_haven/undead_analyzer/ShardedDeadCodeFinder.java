@@ -0,0 +1,388 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.sat4j.specs.ISolver;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.config.Setting;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.ProgressLogger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * A dead code finder that distributes the source files over several local worker processes
+ * ({@link DeadCodeShardWorker}). Each process has its own heap and garbage collector, which scales better on machines
+ * with many cores than the threads of the {@link ThreadedDeadCodeFinder}.
+ * <p>
+ * The variability model is converted to CNF (and preprocessed) only once, and written to a {@link BinaryCnf}
+ * file that all workers memory-map. The source files are assigned to the shards by a hash of their path. After all
+ * workers are done, the results are merged in the order in which the source files were read from the code model, so
+ * the result is the same as the one of the {@link DeadCodeFinder}. Only local processes and files in a temporary
+ * directory are used.
+ * </p>
+ * 
+ * @author Adam
+ */
+public class ShardedDeadCodeFinder extends DeadCodeFinder {
+
+    public static final @NonNull Setting<@NonNull Integer> NUMBER_OF_SHARDS = new Setting<>(
+            "analysis.undead.shards", Setting.Type.INTEGER, true, "4",
+            "Number of worker processes to use for the " + ShardedDeadCodeFinder.class.getName() + ". Must be >= 1.");
+
+    public static final @NonNull Setting<@NonNull Integer> THREADS_PER_SHARD = new Setting<>(
+            "analysis.undead.shard_threads", Setting.Type.INTEGER, true, "1",
+            "Number of threads that each worker process of the " + ShardedDeadCodeFinder.class.getName()
+            + " uses. Must be >= 1.");
+
+    public static final @NonNull Setting<@Nullable List<@NonNull String>> SHARD_JVM_ARGS = new Setting<>(
+            "analysis.undead.shard_jvm_args", Setting.Type.STRING_LIST, false, null,
+            "Additional JVM arguments for the worker processes of the " + ShardedDeadCodeFinder.class.getName()
+            + ", e.g. -Xmx8g.");
+
+    private int numShards;
+
+    private int threadsPerShard;
+
+    private @NonNull List<@NonNull String> jvmArgs;
+
+    /**
+     * Creates a dead code analysis.
+     * 
+     * @param config      The user configuration.
+     * @param vmComponent The component to provide the variability model.
+     * @param bmComponent The component to provide the build model.
+     * @param cmComponent The component to provide the code model.
+     * 
+     * @throws SetUpException if not configured correctly.
+     */
+    public ShardedDeadCodeFinder(@NonNull Configuration config,
+            @NonNull AnalysisComponent<VariabilityModel> vmComponent,
+            @NonNull AnalysisComponent<BuildModel> bmComponent, @NonNull AnalysisComponent<SourceFile<?>> cmComponent)
+            throws SetUpException {
+
+        super(config, vmComponent, bmComponent, cmComponent);
+        if (collectFileStatistics) {
+            LOGGER.logWarning(FILE_STATISTICS_SETTING.getKey() + " is not supported with shards; no file statistics"
+                    + " are written");
+        }
+
+        config.registerSetting(NUMBER_OF_SHARDS);
+        config.registerSetting(THREADS_PER_SHARD);
+        config.registerSetting(SHARD_JVM_ARGS);
+
+        numShards = config.getValue(NUMBER_OF_SHARDS);
+        if (numShards < 1) {
+            throw new SetUpException(NUMBER_OF_SHARDS.getKey() + " is lower than 1");
+        }
+        threadsPerShard = config.getValue(THREADS_PER_SHARD);
+        if (threadsPerShard < 1) {
+            throw new SetUpException(THREADS_PER_SHARD.getKey() + " is lower than 1");
+        }
+        List<@NonNull String> jvmArgs = config.getValue(SHARD_JVM_ARGS);
+        this.jvmArgs = jvmArgs != null ? jvmArgs : new ArrayList<>();
+    }
+
+    /**
+     * Returns the shard that the given source file is assigned to. This only depends on the path of the file, so it
+     * is the same in every run.
+     * 
+     * @param path The path of the source file.
+     * @param numShards The number of shards.
+     * 
+     * @return The index of the shard, between 0 and numShards - 1.
+     */
+    static int getShard(@NonNull File path, int numShards) {
+        // String.hashCode() is specified, so this is the same in every JVM
+        return Math.floorMod(path.getPath().hashCode(), numShards);
+    }
+
+    @Override
+    protected void execute() {
+        vm = vmComponent.getNextResult();
+        bm = bmComponent.getNextResult();
+
+        if (vm == null || bm == null) {
+            LOGGER.logError("Couldn't get models");
+            completeFileStatistics();
+            return;
+        }
+
+        File workDir = null;
+        boolean success = false;
+        try {
+            createContext();
+            workDir = notNull(Files.createTempDirectory("undead_shards").toFile());
+
+            List<@NonNull File> order = writeInput(workDir);
+            success = runWorkers(workDir);
+            success &= mergeResults(workDir, order);
+
+        } catch (FormatException e) {
+            LOGGER.logException("Invalid variability model", e);
+        } catch (IOException e) {
+            LOGGER.logException("Can't prepare work directory for shards", e);
+        } catch (InterruptedException e) {
+            LOGGER.logException("Interrupted while waiting for shards", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            if (workDir != null) {
+                if (success) {
+                    deleteRecursive(workDir);
+                } else {
+                    LOGGER.logWarning("Keeping work directory " + workDir + " for inspection");
+                }
+            }
+            // the files are analyzed by the worker processes, which don't report statistics
+            completeFileStatistics();
+        }
+    }
+
+    /**
+     * Writes the shared CNF of the variability model and the input files of the shards to the work directory.
+     * 
+     * @param workDir The work directory.
+     * 
+     * @return The source files in the order they were read from the code model.
+     * 
+     * @throws IOException If writing the files fails.
+     */
+    private @NonNull List<@NonNull File> writeInput(@NonNull File workDir) throws IOException {
+        // the workers map the (preprocessed) CNF of the context, so that they don't convert or simplify it again
+        notNull(context).writeVmCnf(new File(workDir, DeadCodeShardWorker.VM_CNF_FILE));
+
+        if (considerVmVarsOnly) {
+            List<String> names = new ArrayList<>();
+            for (String name : notNull(vm).getVariableMap().keySet()) {
+                names.add(CheckpointStore.encode(notNull(name)));
+            }
+            Files.write(new File(workDir, DeadCodeShardWorker.VM_VARIABLES_FILE).toPath(), names,
+                    StandardCharsets.UTF_8);
+        }
+
+        List<@NonNull File> order = new ArrayList<>();
+        Writer[] inputs = new Writer[numShards];
+        try {
+            for (int i = 0; i < numShards; i++) {
+                inputs[i] = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(DeadCodeShardWorker.getInputFile(workDir, i)), StandardCharsets.UTF_8));
+            }
+
+            SourceFile<?> file;
+            while ((file = cmComponent.getNextResult()) != null) {
+                File path = file.getPath();
+                DeadCodeShardWorker.writeSourceFile(notNull(inputs[getShard(path, numShards)]), file,
+                        notNull(bm).getPc(path));
+                order.add(path);
+            }
+
+        } finally {
+            for (Writer input : inputs) {
+                if (input != null) {
+                    input.close();
+                }
+            }
+        }
+
+        return order;
+    }
+
+    /**
+     * Starts one worker process per shard and waits until all of them are done.
+     * 
+     * @param workDir The work directory.
+     * 
+     * @return Whether all workers finished successfully.
+     * 
+     * @throws IOException If starting a process fails.
+     * @throws InterruptedException If interrupted while waiting for the processes.
+     */
+    private boolean runWorkers(@NonNull File workDir) throws IOException, InterruptedException {
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        String classPath = getClassPath();
+
+        List<Process> processes = new ArrayList<>(numShards);
+        try {
+            for (int i = 0; i < numShards; i++) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.addAll(jvmArgs);
+                command.add("-cp");
+                command.add(classPath);
+                command.add(DeadCodeShardWorker.class.getName());
+                command.add(workDir.getPath());
+                command.add(String.valueOf(i));
+                command.add(String.valueOf(threadsPerShard));
+                command.add(String.valueOf(detailedAnalysis));
+                command.add(String.valueOf(findUndead));
+                command.add(String.valueOf(considerVmVarsOnly));
+                command.add(cnfStrategy.name());
+                command.add(String.valueOf(distributiveLimit));
+                command.add(String.valueOf(portfolioThreshold));
+                command.add(String.valueOf(cubeThreshold));
+                command.add(String.valueOf(externalSolverIncremental));
+                List<@NonNull String> externalSolver = this.externalSolver;
+                if (externalSolver != null) {
+                    command.addAll(externalSolver);
+                }
+
+                ProcessBuilder builder = new ProcessBuilder(command);
+                builder.redirectErrorStream(true);
+                builder.redirectOutput(new File(workDir, "shard-" + i + ".log"));
+                processes.add(builder.start());
+            }
+
+            ProgressLogger progress = new ProgressLogger(notNull(getClass().getSimpleName()));
+            boolean success = true;
+            for (int i = 0; i < processes.size(); i++) {
+                int exitCode = processes.get(i).waitFor();
+                if (exitCode != 0) {
+                    LOGGER.logError("Shard " + i + " failed with exit code " + exitCode + ", see "
+                            + new File(workDir, "shard-" + i + ".log"));
+                    success = false;
+                }
+                progress.processedOne();
+            }
+            progress.close();
+
+            return success;
+
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * Reads the results of all shards and adds them as results, in the given order of the source files.
+     * 
+     * @param workDir The work directory.
+     * @param order The source files in the order in which their results should be added.
+     * 
+     * @return Whether results for all source files were found.
+     * 
+     * @throws IOException If reading the results fails.
+     */
+    private boolean mergeResults(@NonNull File workDir, @NonNull List<@NonNull File> order) throws IOException {
+        // each worker only has the presence conditions of the files of its shard in its build model
+        long[] bmFingerprints = new long[numShards];
+        for (File path : order) {
+            Formula pc = notNull(bm).getPc(path);
+            if (pc != null) {
+                bmFingerprints[getShard(path, numShards)] += CheckpointStore.fingerprint(path, pc);
+            }
+        }
+
+        long vmFingerprint = notNull(context).getVmFingerprint();
+        CheckpointStore[] results = new CheckpointStore[numShards];
+        for (int i = 0; i < numShards; i++) {
+            results[i] = new CheckpointStore(DeadCodeShardWorker.getResultDir(workDir, i),
+                    CheckpointStore.describeConfiguration(detailedAnalysis, findUndead, considerVmVarsOnly,
+                            vmFingerprint, bmFingerprints[i]));
+        }
+
+        boolean complete = true;
+        for (File path : order) {
+            int shard = getShard(path, numShards);
+            List<@NonNull DeadCodeBlock> blocks = notNull(results[shard]).getCompleted(path);
+            if (blocks != null) {
+                for (DeadCodeBlock block : blocks) {
+                    addResult(block);
+                }
+            } else {
+                LOGGER.logError("No result for " + path + " from shard " + shard);
+                complete = false;
+            }
+        }
+
+        return complete;
+    }
+
+    /**
+     * Creates the class path for the worker processes. This contains the locations of this plugin, the CnfUtils, Sat4j
+     * and KernelHaven (which may be loaded by a plugin class loader), and the class path of this JVM.
+     * 
+     * @return The class path.
+     */
+    private static @NonNull String getClassPath() {
+        Set<String> entries = new LinkedHashSet<>();
+        for (Class<?> cls : new Class<?>[] {DeadCodeShardWorker.class, Cnf.class, ISolver.class, Logger.class}) {
+            CodeSource source = cls.getProtectionDomain().getCodeSource();
+            if (source != null) {
+                try {
+                    entries.add(new File(source.getLocation().toURI()).getPath());
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    LOGGER.logExceptionDebug("Can't determine location of " + cls.getName(), e);
+                }
+            }
+        }
+        String classPath = System.getProperty("java.class.path");
+        if (classPath != null && !classPath.isEmpty()) {
+            entries.add(classPath);
+        }
+        return notNull(String.join(File.pathSeparator, entries));
+    }
+
+    /**
+     * Deletes a directory and all of its contents.
+     * 
+     * @param file The file or directory to delete.
+     */
+    private static void deleteRecursive(@NonNull File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursive(notNull(child));
+            }
+        }
+        if (!file.delete()) {
+            LOGGER.logWarning("Can't delete " + file);
+        }
+    }
+
+    @Override
+    public @NonNull String getResultName() {
+        return "Dead Code Blocks";
+    }
+
+}
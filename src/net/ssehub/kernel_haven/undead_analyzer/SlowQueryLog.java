@@ -0,0 +1,420 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Keeps the slowest solved queries of a {@link DeadCodeContext}, i.e. the queries whose solving time reached a
+ * threshold, for triage after a slow run. Only the given number of slowest queries is kept. Optionally, each kept query
+ * is also written as a DIMACS CNF file (see {@link ExternalSolver#writeDimacs(Formula, Writer)}), with or without the
+ * variability model, so that exactly these instances can be replayed with other solvers; the file of a query is
+ * deleted again if it is pushed out by slower ones.
+ * <p>
+ * This class is thread-safe. Only queries that reach the threshold synchronize, so fast queries only pay for the
+ * comparison in {@link #isSlow(long)}. The kept queries are only chosen under the lock; the DIMACS files are written
+ * and deleted outside of it, so that the file I/O of one slow query does not block the other analysis threads.
+ * </p>
+ * 
+ * @author Adam
+ */
+class SlowQueryLog {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * A slow query.
+     */
+    static final class Query {
+
+        private @Nullable File sourceFile;
+
+        private int line;
+
+        private @NonNull Formula formula;
+
+        private boolean withVm;
+
+        private int numClauses;
+
+        private long nanos;
+
+        private @Nullable File dimacsFile;
+
+        /**
+         * Whether the query was pushed out by slower ones, so that its DIMACS file is not needed anymore.
+         */
+        private boolean discarded;
+
+        /**
+         * Creates a slow query.
+         * 
+         * @param sourceFile The source file that the query was made for; <code>null</code> if unknown.
+         * @param line The line of the code block that the query was made for; 0 for queries of the file itself.
+         * @param formula The formula of the query.
+         * @param withVm Whether the query was solved with the variability model.
+         * @param numClauses The number of clauses that the formula was encoded to; -1 if unknown.
+         * @param nanos The solving time in nanoseconds.
+         */
+        private Query(@Nullable File sourceFile, int line, @NonNull Formula formula, boolean withVm, int numClauses,
+                long nanos) {
+            this.sourceFile = sourceFile;
+            this.line = line;
+            this.formula = formula;
+            this.withVm = withVm;
+            this.numClauses = numClauses;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Returns the source file that the query was made for.
+         * 
+         * @return The source file; <code>null</code> if unknown.
+         */
+        @Nullable File getSourceFile() {
+            return sourceFile;
+        }
+
+        /**
+         * Returns the line of the code block that the query was made for.
+         * 
+         * @return The line; 0 for queries of the file itself.
+         */
+        int getLine() {
+            return line;
+        }
+
+        /**
+         * Returns the formula of the query, i.e. the presence condition of the block (conjoined with the file presence
+         * condition, if the query was made with it).
+         * 
+         * @return The formula.
+         */
+        @NonNull Formula getFormula() {
+            return formula;
+        }
+
+        /**
+         * Returns whether the query was solved with the variability model.
+         * 
+         * @return Whether the variability model was part of the query.
+         */
+        boolean isWithVm() {
+            return withVm;
+        }
+
+        /**
+         * Returns the number of clauses that the formula was encoded to, without the variability model.
+         * 
+         * @return The number of clauses; -1 if unknown (e.g. because the query was split into cubes).
+         */
+        int getNumClauses() {
+            return numClauses;
+        }
+
+        /**
+         * Returns the solving time.
+         * 
+         * @return The solving time in nanoseconds.
+         */
+        long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Returns the DIMACS file that the query was written to.
+         * 
+         * @return The DIMACS file; <code>null</code> if the query was not written.
+         */
+        synchronized @Nullable File getDimacsFile() {
+            return dimacsFile;
+        }
+
+        /**
+         * Sets the DIMACS file that the query was written to. If the query was pushed out in the meantime, the file is
+         * deleted instead.
+         * 
+         * @param file The written DIMACS file.
+         */
+        synchronized void setDimacsFile(@NonNull File file) {
+            if (discarded) {
+                delete(file);
+            } else {
+                dimacsFile = file;
+            }
+        }
+
+        /**
+         * Marks this query as pushed out by slower ones, and deletes its DIMACS file if it was already written.
+         */
+        synchronized void discard() {
+            discarded = true;
+            File dimacsFile = this.dimacsFile;
+            if (dimacsFile != null) {
+                delete(dimacsFile);
+                this.dimacsFile = null;
+            }
+        }
+
+    }
+
+    private long thresholdNanos;
+
+    private int maxQueries;
+
+    private @Nullable File dimacsDir;
+
+    private boolean dimacsWithVm;
+
+    private @NonNull BinaryCnf vm;
+
+    private @NonNull VariableIdTable ids;
+
+    private @NonNull CnfStrategy cnfStrategy;
+
+    private int distributiveLimit;
+
+    /**
+     * The kept queries, the fastest first.
+     */
+    private @NonNull PriorityQueue<@NonNull Query> queries;
+
+    private int numSlowQueries;
+
+    /**
+     * Guards the {@link #vmWriter} and {@link #plainWriter}, which are not thread-safe; not the lock on this, so that
+     * writing a DIMACS file does not block {@link #record(File, int, Formula, boolean, int, long)}.
+     */
+    private @NonNull Object writerLock;
+
+    private @Nullable ExternalSolver vmWriter;
+
+    private @Nullable ExternalSolver plainWriter;
+
+    /**
+     * Creates a slow query log.
+     * 
+     * @param thresholdNanos The minimum solving time of a slow query, in nanoseconds.
+     * @param maxQueries The number of slowest queries to keep.
+     * @param dimacsDir The directory to write the kept queries to as DIMACS files; <code>null</code> if they should
+     *      not be written. Is created if it does not exist.
+     * @param dimacsWithVm Whether the DIMACS files of queries with the variability model should contain the clauses
+     *      of the variability model.
+     * @param vm The variability model as binary CNF, which was used for the queries.
+     * @param ids The variable IDs of the queries.
+     * @param cnfStrategy How the formulas of the queries are converted to CNF.
+     * @param distributiveLimit The maximum number of clauses of a formula that is multiplied out by the adaptive
+     *      strategy.
+     */
+    SlowQueryLog(long thresholdNanos, int maxQueries, @Nullable File dimacsDir, boolean dimacsWithVm,
+            @NonNull BinaryCnf vm, @NonNull VariableIdTable ids, @NonNull CnfStrategy cnfStrategy,
+            int distributiveLimit) {
+        this.thresholdNanos = thresholdNanos;
+        this.maxQueries = maxQueries;
+        this.dimacsDir = dimacsDir;
+        this.dimacsWithVm = dimacsWithVm;
+        this.vm = vm;
+        this.ids = ids;
+        this.cnfStrategy = cnfStrategy;
+        this.distributiveLimit = distributiveLimit;
+        this.queries = new PriorityQueue<>((q1, q2) -> Long.compare(q1.nanos, q2.nanos));
+        this.writerLock = new Object();
+    }
+
+    /**
+     * Checks whether a query with the given solving time is slow, i.e. whether it should be passed to
+     * {@link #record(File, int, Formula, boolean, int, long)}.
+     * 
+     * @param nanos The solving time in nanoseconds.
+     * 
+     * @return Whether the solving time reaches the threshold.
+     */
+    boolean isSlow(long nanos) {
+        return nanos >= thresholdNanos;
+    }
+
+    /**
+     * Records a slow query. It is kept (and written as DIMACS file) if it is among the slowest queries so far.
+     * 
+     * @param sourceFile The source file that the query was made for; <code>null</code> if unknown.
+     * @param line The line of the code block that the query was made for; 0 for queries of the file itself.
+     * @param formula The formula of the query.
+     * @param withVm Whether the query was solved with the variability model.
+     * @param numClauses The number of clauses that the formula was encoded to; -1 if unknown.
+     * @param nanos The solving time in nanoseconds.
+     */
+    void record(@Nullable File sourceFile, int line, @NonNull Formula formula, boolean withVm, int numClauses,
+            long nanos) {
+
+        Query query = new Query(sourceFile, line, formula, withVm, numClauses, nanos);
+        Query pushedOut = null;
+        int number;
+        synchronized (this) {
+            numSlowQueries++;
+            if (queries.size() >= maxQueries) {
+                Query fastest = queries.peek();
+                if (fastest == null || fastest.nanos >= nanos) {
+                    return;
+                }
+                pushedOut = queries.poll();
+            }
+            queries.add(query);
+            number = numSlowQueries;
+        }
+
+        if (pushedOut != null) {
+            pushedOut.discard();
+        }
+        if (dimacsDir != null) {
+            File file = writeDimacs(query, number);
+            if (file != null) {
+                query.setDimacsFile(file);
+            }
+        }
+    }
+
+    /**
+     * Deletes a DIMACS file that is not needed anymore.
+     * 
+     * @param file The file to delete.
+     */
+    private static void delete(@NonNull File file) {
+        if (!file.delete()) {
+            LOGGER.logWarning("Can't delete " + file);
+        }
+    }
+
+    /**
+     * Writes a query as DIMACS file into the {@link #dimacsDir}. The header contains the source location and the
+     * formula as comments.
+     * 
+     * @param query The query to write.
+     * @param number The number of the query, for the file name.
+     * 
+     * @return The written file; <code>null</code> if writing failed.
+     */
+    private @Nullable File writeDimacs(@NonNull Query query, int number) {
+        File dir = notNull(dimacsDir);
+        File file = new File(dir, "slow-query-" + number + ".cnf");
+        boolean withVm = query.withVm && dimacsWithVm;
+
+        dir.mkdirs();
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8))) {
+            out.append("c file ").append(String.valueOf(query.sourceFile)).append(" line ")
+                    .append(String.valueOf(query.line)).append('\n');
+            out.append("c solved in ").append(String.valueOf(query.nanos / 1000000)).append(" ms, with variability "
+                    + "model: ").append(String.valueOf(query.withVm)).append(", variability model included: ")
+                    .append(String.valueOf(withVm)).append('\n');
+            out.append("c query ").append(query.formula.toString().replace('\n', ' ')).append('\n');
+            synchronized (writerLock) {
+                getWriter(withVm).writeDimacs(query.formula, out);
+            }
+            return file;
+
+        } catch (IOException | SolverException e) {
+            LOGGER.logException("Can't write slow query to " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the solver that is used to write DIMACS files. No solver process is started. Must be called while
+     * holding the {@link #writerLock}.
+     * 
+     * @param withVm Whether the DIMACS files should contain the variability model.
+     * 
+     * @return The solver, which has either the variability model or nothing as base CNF.
+     */
+    private @NonNull ExternalSolver getWriter(boolean withVm) {
+        ExternalSolver writer = withVm ? vmWriter : plainWriter;
+        if (writer == null) {
+            BinaryCnf base = withVm ? vm : BinaryCnf.fromCnf(new Cnf());
+            // the statistics are not reported, the encodings are only repeated for the export
+            writer = new ExternalSolver(base, ids, cnfStrategy, distributiveLimit, new EncodingStatistics(),
+                    notNull(Collections.emptyList()), false);
+            if (withVm) {
+                vmWriter = writer;
+            } else {
+                plainWriter = writer;
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Returns the number of slow queries recorded so far, including those that are not kept.
+     * 
+     * @return The number of queries that reached the threshold.
+     */
+    synchronized int getNumSlowQueries() {
+        return numSlowQueries;
+    }
+
+    /**
+     * Returns the kept queries.
+     * 
+     * @return The slowest queries, the slowest first.
+     */
+    synchronized @NonNull List<@NonNull Query> getQueries() {
+        List<@NonNull Query> result = new ArrayList<>(queries);
+        result.sort((q1, q2) -> Long.compare(q2.nanos, q1.nanos));
+        return result;
+    }
+
+    /**
+     * Creates a human-readable table of the kept queries, for logging at the end of an analysis.
+     * 
+     * @return The lines of the table.
+     */
+    @NonNull String @NonNull [] toTable() {
+        List<@NonNull Query> queries = getQueries();
+        List<@NonNull String> lines = new ArrayList<>(queries.size() + 2);
+        lines.add("Slowest queries (" + queries.size() + " of " + getNumSlowQueries() + " queries that took at least "
+                + (thresholdNanos / 1000000) + " ms):");
+        lines.add(notNull(String.format("%12s %10s %3s %-40s %-24s %s", "Time (ms)", "Clauses", "VM", "Location",
+                "DIMACS", "Formula")));
+        for (Query query : queries) {
+            File dimacsFile = query.getDimacsFile();
+            lines.add(notNull(String.format("%12d %10d %3s %-40s %-24s %s", query.nanos / 1000000, query.numClauses,
+                    query.withVm ? "yes" : "no", query.sourceFile + ":" + query.line,
+                    dimacsFile != null ? dimacsFile.getName() : "-", query.formula)));
+        }
+        return notNull(lines.toArray(new @NonNull String[lines.size()]));
+    }
+
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Emits Java Flight Recorder events for solved SAT queries and for the conversion of the variability model to CNF.
+ * The events are defined at runtime via <code>jdk.jfr.EventFactory</code> and accessed reflectively, since this plugin
+ * is built for Java 8, which may not contain the <code>jdk.jfr</code> API; on such JVMs, no events are emitted.
+ * <p>
+ * If no recording has the events enabled, {@link #beginQuery()} and {@link #beginVmConversion()} only check a flag
+ * and return <code>null</code>; nothing is measured or allocated. The events appear in recordings as
+ * <code>net.ssehub.kernel_haven.undead_analyzer.SatQuery</code> and
+ * <code>net.ssehub.kernel_haven.undead_analyzer.VmConversion</code>, with the duration of the query or conversion.
+ * </p>
+ * 
+ * @author Adam
+ */
+final class SolverEvents {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    private static final @NonNull String PREFIX = "net.ssehub.kernel_haven.undead_analyzer.";
+
+    private static final @Nullable EventKind SAT_QUERY;
+
+    private static final @Nullable EventKind VM_CONVERSION;
+
+    static {
+        EventKind satQuery = null;
+        EventKind vmConversion = null;
+        try {
+            satQuery = new EventKind("SatQuery", "SAT Query", "A SAT query that was not answered by a verdict cache",
+                    new Field(String.class, "file", "File"), new Field(int.class, "formulaSize", "Formula Size"),
+                    new Field(int.class, "clauses", "Clauses"), new Field(boolean.class, "withVm", "With VM"),
+                    new Field(boolean.class, "satisfiable", "Satisfiable"));
+            vmConversion = new EventKind("VmConversion", "Variability Model Conversion",
+                    "The conversion of the variability model to CNF", new Field(String.class, "file", "File"),
+                    new Field(int.class, "variables", "Variables"), new Field(int.class, "clauses", "Clauses"));
+
+        } catch (ClassNotFoundException e) {
+            // no JFR in this JVM; no events
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.logWarning("Can't define Flight Recorder events: " + e);
+        }
+        SAT_QUERY = satQuery;
+        VM_CONVERSION = vmConversion;
+    }
+
+    /**
+     * A field of a dynamically defined event.
+     */
+    private static final class Field {
+
+        private @NonNull Class<?> type;
+
+        private @NonNull String name;
+
+        private @NonNull String label;
+
+        /**
+         * Creates a field.
+         * 
+         * @param type The type of the field.
+         * @param name The name of the field.
+         * @param label The human-readable label of the field.
+         */
+        Field(@NonNull Class<?> type, @NonNull String name, @NonNull String label) {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+        }
+
+    }
+
+    /**
+     * A dynamically defined event type, with method handles to create and use its events.
+     */
+    private static final class EventKind {
+
+        private @NonNull MethodHandle isEnabled;
+
+        private @NonNull MethodHandle newEvent;
+
+        private @NonNull MethodHandle begin;
+
+        private @NonNull MethodHandle end;
+
+        private @NonNull MethodHandle shouldCommit;
+
+        private @NonNull MethodHandle commit;
+
+        private @NonNull MethodHandle set;
+
+        /**
+         * Defines an event type via <code>jdk.jfr.EventFactory</code>.
+         * 
+         * @param name The name of the event, without the package prefix.
+         * @param label The human-readable label of the event.
+         * @param description The description of the event.
+         * @param fields The fields of the event, in the order of their indices.
+         * 
+         * @throws ReflectiveOperationException If the <code>jdk.jfr</code> API is not available or not as expected.
+         */
+        EventKind(@NonNull String name, @NonNull String label, @NonNull String description, @NonNull Field... fields)
+                throws ReflectiveOperationException {
+
+            Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+            Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+
+            List<Object> eventAnnotations = new ArrayList<>();
+            eventAnnotations.add(createAnnotation("jdk.jfr.Name", PREFIX + name));
+            eventAnnotations.add(createAnnotation("jdk.jfr.Label", label));
+            eventAnnotations.add(createAnnotation("jdk.jfr.Description", description));
+            eventAnnotations.add(createAnnotation("jdk.jfr.Category", new String[] {"KernelHaven", "UnDeadAnalyzer"}));
+
+            List<Object> descriptors = new ArrayList<>();
+            for (Field field : fields) {
+                descriptors.add(valueDescriptorClass.getConstructor(Class.class, String.class, List.class)
+                        .newInstance(field.type, field.name,
+                                Arrays.asList(createAnnotation("jdk.jfr.Label", field.label))));
+            }
+
+            Object factory = factoryClass.getMethod("create", List.class, List.class)
+                    .invoke(null, eventAnnotations, descriptors);
+            Object eventType = factoryClass.getMethod("getEventType").invoke(factory);
+
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            this.isEnabled = lookup.findVirtual(eventTypeClass, "isEnabled", MethodType.methodType(boolean.class))
+                    .bindTo(eventType);
+            this.newEvent = lookup.findVirtual(factoryClass, "newEvent", MethodType.methodType(eventClass))
+                    .bindTo(factory);
+            this.begin = lookup.findVirtual(eventClass, "begin", MethodType.methodType(void.class));
+            this.end = lookup.findVirtual(eventClass, "end", MethodType.methodType(void.class));
+            this.shouldCommit = lookup.findVirtual(eventClass, "shouldCommit", MethodType.methodType(boolean.class));
+            this.commit = lookup.findVirtual(eventClass, "commit", MethodType.methodType(void.class));
+            this.set = lookup.findVirtual(eventClass, "set",
+                    MethodType.methodType(void.class, int.class, Object.class));
+        }
+
+        /**
+         * Creates a <code>jdk.jfr.AnnotationElement</code>.
+         * 
+         * @param annotation The name of the annotation class.
+         * @param value The value of the annotation.
+         * 
+         * @return The annotation element.
+         * 
+         * @throws ReflectiveOperationException If the <code>jdk.jfr</code> API is not available or not as expected.
+         */
+        private static @NonNull Object createAnnotation(@NonNull String annotation, @NonNull Object value)
+                throws ReflectiveOperationException {
+            Class<? extends Annotation> annotationClass = Class.forName(annotation).asSubclass(Annotation.class);
+            return Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class)
+                    .newInstance(annotationClass, value);
+        }
+
+        /**
+         * Starts an event, if events of this type are enabled in a recording.
+         * 
+         * @return The started event; <code>null</code> if not enabled.
+         */
+        @Nullable Event begin() {
+            Event result = null;
+            try {
+                if ((boolean) isEnabled.invoke()) {
+                    Object event = newEvent.invoke();
+                    begin.invoke(event);
+                    result = new Event(this, event);
+                }
+            } catch (Throwable e) {
+                // events are optional; don't disturb the analysis
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * A started event. Must be finished by one of the <code>commit</code> methods.
+     */
+    static final class Event {
+
+        private @NonNull EventKind kind;
+
+        private @NonNull Object event;
+
+        /**
+         * Creates an event.
+         * 
+         * @param kind The type of the event.
+         * @param event The started <code>jdk.jfr.Event</code>.
+         */
+        private Event(@NonNull EventKind kind, @NonNull Object event) {
+            this.kind = kind;
+            this.event = event;
+        }
+
+        /**
+         * Ends this event, and commits it with the given field values if the recording's thresholds are met.
+         * 
+         * @param values The values of the fields, in the order of their definition.
+         */
+        private void commit(@Nullable Object... values) {
+            try {
+                kind.end.invoke(event);
+                if ((boolean) kind.shouldCommit.invoke(event)) {
+                    for (int i = 0; i < values.length; i++) {
+                        kind.set.invoke(event, i, values[i]);
+                    }
+                    kind.commit.invoke(event);
+                }
+            } catch (Throwable e) {
+                // events are optional; don't disturb the analysis
+            }
+        }
+
+        /**
+         * Commits a SAT query event started by {@link SolverEvents#beginQuery()}.
+         * 
+         * @param file The source file that is analyzed; <code>null</code> if the query is not for a file.
+         * @param formula The formula that was checked.
+         * @param numClauses The number of clauses the formula was encoded to; -1 if unknown.
+         * @param withVm Whether the formula was checked together with the variability model.
+         * @param satisfiable The verdict.
+         */
+        void commitQuery(@Nullable File file, @NonNull Formula formula, int numClauses, boolean withVm,
+                boolean satisfiable) {
+            commit(file != null ? file.getPath() : null, getSize(formula), numClauses, withVm, satisfiable);
+        }
+
+        /**
+         * Commits a variability model conversion event started by {@link SolverEvents#beginVmConversion()}.
+         * 
+         * @param file The constraint model file of the variability model; <code>null</code> if unknown.
+         * @param cnf The converted variability model.
+         */
+        void commitVmConversion(@Nullable File file, @NonNull BinaryCnf cnf) {
+            commit(file != null ? file.getPath() : null, cnf.getNumVariables(), cnf.getNumClauses());
+        }
+
+    }
+
+    /**
+     * Don't allow any instances.
+     */
+    private SolverEvents() {
+    }
+
+    /**
+     * Starts a SAT query event, if enabled. Finish it with {@link Event#commitQuery(File, Formula, int, boolean,
+     * boolean)}.
+     * 
+     * @return The started event; <code>null</code> if not enabled.
+     */
+    static @Nullable Event beginQuery() {
+        EventKind kind = SAT_QUERY;
+        return kind != null ? kind.begin() : null;
+    }
+
+    /**
+     * Starts a variability model conversion event, if enabled. Finish it with
+     * {@link Event#commitVmConversion(File, BinaryCnf)}.
+     * 
+     * @return The started event; <code>null</code> if not enabled.
+     */
+    static @Nullable Event beginVmConversion() {
+        EventKind kind = VM_CONVERSION;
+        return kind != null ? kind.begin() : null;
+    }
+
+    /**
+     * Counts the nodes of a formula, without recursion.
+     * 
+     * @param formula The formula.
+     * 
+     * @return The number of operators and variables.
+     */
+    static int getSize(@NonNull Formula formula) {
+        int size = 0;
+        Deque<@NonNull Formula> stack = new ArrayDeque<>();
+        stack.push(formula);
+        while (!stack.isEmpty()) {
+            Formula current = stack.pop();
+            size++;
+            if (current instanceof Negation) {
+                stack.push(((Negation) current).getFormula());
+            } else if (current instanceof Conjunction) {
+                stack.push(((Conjunction) current).getLeft());
+                stack.push(((Conjunction) current).getRight());
+            } else if (current instanceof Disjunction) {
+                stack.push(((Disjunction) current).getLeft());
+                stack.push(((Disjunction) current).getRight());
+            }
+        }
+        return size;
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Runs several {@link IntSatSolver} queries in parallel until one of them decides the overall answer. The other
+ * queries are then cancelled cooperatively; this only returns after all solvers have stopped, so that they can be
+ * used again afterwards.
+ * 
+ * @author Adam
+ */
+final class SolverRace {
+
+    /**
+     * How long to wait for a cancelled solver before cancelling it again, in milliseconds.
+     */
+    private static final long CANCEL_INTERVAL = 10;
+
+    /**
+     * The outcome of a race.
+     */
+    static final class Outcome {
+
+        private int index;
+
+        private boolean satisfiable;
+
+        /**
+         * Creates an outcome.
+         * 
+         * @param index The index of the query that decided the race; -1 if all queries had to be answered.
+         * @param satisfiable The overall answer.
+         */
+        private Outcome(int index, boolean satisfiable) {
+            this.index = index;
+            this.satisfiable = satisfiable;
+        }
+
+        /**
+         * Returns the index of the query that decided the race.
+         * 
+         * @return The index of the query; -1 if all queries had to be answered.
+         */
+        int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the overall answer.
+         * 
+         * @return Whether the formula is satisfiable.
+         */
+        boolean isSatisfiable() {
+            return satisfiable;
+        }
+
+    }
+
+    /**
+     * Don't allow any instances.
+     */
+    private SolverRace() {
+    }
+
+    /**
+     * Runs the given queries in parallel. Each solver gets the formula with the same index; each solver must only
+     * appear once.
+     * 
+     * @param executor The executor to run the queries in. Must be able to run all queries at the same time.
+     * @param solvers The solvers. Must not have a conflict limit, since they are cancelled.
+     * @param formulas The formula to check for each solver.
+     * @param onlySatisfiableDecides If <code>false</code>, the first answer decides (all queries are equivalent). If
+     *      <code>true</code>, the first satisfiable query decides; otherwise, all queries must be unsatisfiable (the
+     *      queries are a case split).
+     * 
+     * @return The outcome of the race.
+     * 
+     * @throws SolverException If no decision could be made since solvers failed.
+     */
+    static @NonNull Outcome race(@NonNull ExecutorService executor, @NonNull List<@NonNull IntSatSolver> solvers,
+            @NonNull List<@NonNull Formula> formulas, boolean onlySatisfiableDecides) throws SolverException {
+
+        CompletionService<@Nullable Boolean> completion = new ExecutorCompletionService<>(executor);
+        List<Future<@Nullable Boolean>> futures = new ArrayList<>(solvers.size());
+        for (int i = 0; i < solvers.size(); i++) {
+            IntSatSolver solver = solvers.get(i);
+            Formula formula = formulas.get(i);
+            solver.resetCancelled();
+            futures.add(completion.submit(() -> solver.trySatisfiable(formula)));
+        }
+
+        Outcome outcome = null;
+        SolverException error = null;
+        int numUnsatisfiable = 0;
+        try {
+            for (int i = 0; i < solvers.size() && outcome == null; i++) {
+                Future<@Nullable Boolean> done = completion.take();
+                try {
+                    Boolean result = done.get();
+                    if (result != null) {
+                        if (result || !onlySatisfiableDecides) {
+                            outcome = new Outcome(futures.indexOf(done), result);
+                        } else {
+                            numUnsatisfiable++;
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    error = new SolverException(e.getCause());
+                }
+            }
+            if (outcome == null && onlySatisfiableDecides && numUnsatisfiable == solvers.size()) {
+                outcome = new Outcome(-1, false);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = new SolverException(e);
+
+        } finally {
+            cancelAll(solvers, futures);
+        }
+
+        if (outcome == null) {
+            throw error != null ? error : new SolverException("All solvers of the race were cancelled");
+        }
+        return outcome;
+    }
+
+    /**
+     * Cancels all solvers and waits until they have stopped.
+     * 
+     * @param solvers The solvers.
+     * @param futures The futures of the solvers, in the same order.
+     */
+    private static void cancelAll(@NonNull List<@NonNull IntSatSolver> solvers,
+            @NonNull List<Future<@Nullable Boolean>> futures) {
+
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<@Nullable Boolean> future = futures.get(i);
+            while (!future.isDone()) {
+                // Sat4j ignores the cancellation if it arrives before the search starts, so repeat it
+                solvers.get(i).cancel();
+                try {
+                    future.get(CANCEL_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException | ExecutionException e) {
+                    // check again
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -17,6 +17,7 @@ package net.ssehub.kernel_haven.undead_analyzer;
 
 import net.ssehub.kernel_haven.SetUpException;
 import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.analysis.JoinComponent;
 import net.ssehub.kernel_haven.analysis.PipelineAnalysis;
 import net.ssehub.kernel_haven.config.Configuration;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
@@ -40,7 +41,12 @@ public class ThreadedDeadCodeAnalysis extends PipelineAnalysis {
 
     @Override
     protected @NonNull AnalysisComponent<?> createPipeline() throws SetUpException {
-        return new ThreadedDeadCodeFinder(config, getVmComponent(), getBmComponent(), getCmComponent());
+        ThreadedDeadCodeFinder finder = new ThreadedDeadCodeFinder(config, getVmComponent(), getBmComponent(),
+                getCmComponent());
+        if (config.getValue(DeadCodeFinder.FILE_STATISTICS_SETTING)) {
+            return new JoinComponent(config, finder, finder.getFileStatisticsOutput());
+        }
+        return finder;
     }
 
 }
@@ -17,12 +17,15 @@ package net.ssehub.kernel_haven.undead_analyzer;
 
 import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
+import javax.management.ObjectName;
+
 import net.ssehub.kernel_haven.SetUpException;
 import net.ssehub.kernel_haven.analysis.AnalysisComponent;
 import net.ssehub.kernel_haven.build_model.BuildModel;
-import net.ssehub.kernel_haven.cnf.VmToCnfConverter;
 import net.ssehub.kernel_haven.code_model.SourceFile;
 import net.ssehub.kernel_haven.config.Configuration;
 import net.ssehub.kernel_haven.config.Setting;
@@ -30,6 +33,7 @@ import net.ssehub.kernel_haven.util.FormatException;
 import net.ssehub.kernel_haven.util.OrderPreservingParallelizer;
 import net.ssehub.kernel_haven.util.ProgressLogger;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
 
 /**
@@ -43,8 +47,23 @@ public class ThreadedDeadCodeFinder extends DeadCodeFinder {
             "analysis.undead.threads", Setting.Type.INTEGER, true, "2",
             "Number of threads to use for the " + ThreadedDeadCodeFinder.class.getName() + ". Must be >= 1.");
 
+    public static final @NonNull Setting<@Nullable File> CHECKPOINT_DIR_SETTING = new Setting<>(
+            "analysis.undead.checkpoint_dir", Setting.Type.PATH, false, null,
+            "If set, the " + ThreadedDeadCodeFinder.class.getName() + " periodically stores the completed source files "
+            + "and their dead code blocks in this directory. A restarted analysis skips the files that are already "
+            + "completed. The checkpoint is deleted after the analysis finished successfully.");
+
+    public static final @NonNull Setting<@NonNull Integer> CHECKPOINT_INTERVAL_SETTING = new Setting<>(
+            "analysis.undead.checkpoint_interval", Setting.Type.INTEGER, true, "60",
+            "The interval in seconds in which the " + ThreadedDeadCodeFinder.class.getName() + " writes completed "
+            + "files to the checkpoint. Only used if " + CHECKPOINT_DIR_SETTING.getKey() + " is set. Must be >= 1.");
+
     private int numThreads;
 
+    private @Nullable File checkpointDir;
+
+    private int checkpointInterval;
+
     /**
      * Creates a dead code analysis.
      * 
@@ -66,6 +85,14 @@ public class ThreadedDeadCodeFinder extends DeadCodeFinder {
         if (numThreads < 1) {
             throw new SetUpException(NUMBER_OF_OF_THREADS.getKey() + " is lower than 1");
         }
+
+        config.registerSetting(CHECKPOINT_DIR_SETTING);
+        config.registerSetting(CHECKPOINT_INTERVAL_SETTING);
+        checkpointDir = config.getValue(CHECKPOINT_DIR_SETTING);
+        checkpointInterval = config.getValue(CHECKPOINT_INTERVAL_SETTING);
+        if (checkpointInterval < 1) {
+            throw new SetUpException(CHECKPOINT_INTERVAL_SETTING.getKey() + " is lower than 1");
+        }
     }
 
     @Override
@@ -75,21 +102,30 @@ public class ThreadedDeadCodeFinder extends DeadCodeFinder {
 
         if (vm == null || bm == null) {
             LOGGER.logError("Couldn't get models");
+            completeFileStatistics();
             return;
         }
 
+        CheckpointStore checkpoint = null;
+        ObjectName metricsName = null;
         try {
-            vmCnf = new VmToCnfConverter().convertVmToCnf(notNull(vm)); // vm was initialized in execute()
-
-            if (considerVmVarsOnly) {
-                relevancyChecker = new FormulaRelevancyChecker(vm, true);
+            createContext();
+            metricsName = notNull(context).getMetrics().register(notNull(getClass().getSimpleName()));
+
+            File checkpointDir = this.checkpointDir;
+            if (checkpointDir != null) {
+                checkpoint = new CheckpointStore(checkpointDir, CheckpointStore.describeConfiguration(detailedAnalysis,
+                        findUndead, considerVmVarsOnly, notNull(context).getVmFingerprint(),
+                        CheckpointStore.fingerprint(notNull(bm))));
+                checkpoint.start(checkpointInterval);
             }
+            CheckpointStore finalCheckpoint = checkpoint;
 
             ProgressLogger progress = new ProgressLogger(notNull(getClass().getSimpleName()));
 
             OrderPreservingParallelizer<SourceFile<?>, List<@NonNull DeadCodeBlock>> parallelizer = 
                     new OrderPreservingParallelizer<>(
-                    this::findDeadCodeBlocks, (deadBlocks) -> {
+                    (sourceFile) -> findDeadCodeBlocks(sourceFile, finalCheckpoint), (deadBlocks) -> {
                         for (DeadCodeBlock block : deadBlocks) {
                             addResult(block);
                         }
@@ -107,13 +143,60 @@ public class ThreadedDeadCodeFinder extends DeadCodeFinder {
             parallelizer.join();
 
             progress.close();
+            logStatistics();
+
+            if (checkpoint != null) {
+                checkpoint.close(true);
+                checkpoint = null;
+            }
 
         } catch (FormatException e) {
             LOGGER.logException("Invalid variability model", e);
+        } catch (IOException e) {
+            LOGGER.logException("Can't use checkpoint directory", e);
+        } finally {
+            if (checkpoint != null) {
+                // analysis did not finish; keep the checkpoint for the next run
+                checkpoint.close(false);
+            }
+            DeadCodeMetrics.unregister(metricsName);
+            DeadCodeContext context = this.context;
+            if (context != null) {
+                context.close();
+            }
+            completeFileStatistics();
         }
 
     }
 
+    /**
+     * Finds the dead code blocks of the given source file, or restores them from the checkpoint if the file was
+     * completed in an earlier run.
+     * 
+     * @param sourceFile The source file to search in.
+     * @param checkpoint The checkpoint to use; <code>null</code> if checkpointing is disabled.
+     * 
+     * @return The list of dead code blocks.
+     */
+    private @NonNull List<@NonNull DeadCodeBlock> findDeadCodeBlocks(@NonNull SourceFile<?> sourceFile,
+            @Nullable CheckpointStore checkpoint) {
+
+        List<@NonNull DeadCodeBlock> result;
+        if (checkpoint != null) {
+            result = checkpoint.getCompleted(sourceFile.getPath());
+            if (result != null) {
+                LOGGER.logInfo("Skipping " + sourceFile.getPath() + " because it is already completed in the "
+                        + "checkpoint");
+            } else {
+                result = findDeadCodeBlocks(sourceFile);
+                checkpoint.record(sourceFile.getPath(), result);
+            }
+        } else {
+            result = findDeadCodeBlocks(sourceFile);
+        }
+        return result;
+    }
+
     @Override
     public @NonNull String getResultName() {
         return "Dead Code Blocks";
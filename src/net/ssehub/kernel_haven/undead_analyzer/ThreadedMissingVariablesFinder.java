@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.util.Set;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.config.Setting;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * A {@link MissingVariablesFinder} that extracts the used variables of the source files in parallel. Each worker
+ * thread collects the variable names into its own set; the sets are merged at the end. The results are the same as
+ * the ones of the sequential {@link MissingVariablesFinder}.
+ * 
+ * @author Adam
+ */
+public class ThreadedMissingVariablesFinder extends MissingVariablesFinder {
+
+    public static final @NonNull Setting<@NonNull Integer> NUMBER_OF_OF_THREADS = new Setting<>(
+            "analysis.missing.threads", Setting.Type.INTEGER, true, "2",
+            "Number of threads to use for the " + ThreadedMissingVariablesFinder.class.getName() + ". Must be >= 1.");
+
+    private int numThreads;
+
+    /**
+     * Creates this analysis.
+     * 
+     * @param config
+     *            The user configuration. Never <code>null</code>.
+     * @param vmComponent
+     *            The component to provide the variability model.
+     * @param bmComponent
+     *            The component to provide the build model.
+     * @param cmComponent
+     *            The component to provide the code model.
+     * 
+     * @throws SetUpException
+     *             if analysis.missing.type or analysis.missing.threads is wrong.
+     */
+    public ThreadedMissingVariablesFinder(@NonNull Configuration config,
+            @NonNull AnalysisComponent<VariabilityModel> vmComponent,
+            @NonNull AnalysisComponent<BuildModel> bmComponent, @NonNull AnalysisComponent<SourceFile<?>> cmComponent)
+            throws SetUpException {
+
+        super(config, vmComponent, bmComponent, cmComponent);
+
+        config.registerSetting(NUMBER_OF_OF_THREADS);
+        numThreads = config.getValue(NUMBER_OF_OF_THREADS);
+        if (numThreads < 1) {
+            throw new SetUpException(NUMBER_OF_OF_THREADS.getKey() + " is lower than 1");
+        }
+    }
+
+    @Override
+    protected @Nullable Set<@NonNull String> collectUsedVariables(@NonNull BuildModel bm) {
+        return VariableUsageCollector.collect(bm, cmComponent, numThreads, usageIndexFile);
+    }
+
+}
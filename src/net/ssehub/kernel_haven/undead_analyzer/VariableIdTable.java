@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * A global table that assigns a positive <code>int</code> ID to each variable name. It is built once per
+ * {@link DeadCodeContext} and shared by all of its solvers, so that variable names are only hashed when a formula is
+ * encoded, and never mapped again on the way into the solver.
+ * <p>
+ * The IDs <code>1</code> to {@link BinaryCnf#getNumVariables()} are the variable numbers of the {@link BinaryCnf}
+ * of the variability model, so its clauses can be passed to a solver unchanged. The remaining variables of the
+ * {@link VariabilityModel} follow; other variables (e.g. ones that are only used in the code) are added on demand.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * 
+ * @author Adam
+ */
+class VariableIdTable {
+
+    private @NonNull ConcurrentHashMap<String, Integer> ids;
+
+    private int numBaseVariables;
+
+    private int nextId;
+
+    /**
+     * Creates a table for the given variability model.
+     * 
+     * @param vmCnf The variability model as CNF; its variables get the same IDs as in the CNF.
+     * @param vm The variability model; its variables that are not in the CNF get the next IDs. May be
+     *      <code>null</code>.
+     */
+    VariableIdTable(@NonNull BinaryCnf vmCnf, @Nullable VariabilityModel vm) {
+        int size = vmCnf.getNumVariables() + (vm != null ? vm.getVariableMap().size() : 0);
+        this.ids = new ConcurrentHashMap<>(Math.max(16, size * 2));
+
+        for (int i = 1; i <= vmCnf.getNumVariables(); i++) {
+            ids.put(vmCnf.getVariableName(i), i);
+        }
+        this.numBaseVariables = vmCnf.getNumVariables();
+        this.nextId = numBaseVariables + 1;
+
+        if (vm != null) {
+            for (String name : vm.getVariableMap().keySet()) {
+                if (!ids.containsKey(name)) {
+                    ids.put(name, nextId++);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of variables of the {@link BinaryCnf} this table was created for. IDs up to this number
+     * are the variable numbers of the CNF.
+     * 
+     * @return The number of variables of the CNF.
+     */
+    int getNumBaseVariables() {
+        return numBaseVariables;
+    }
+
+    /**
+     * Returns the ID of the given variable. If the variable has no ID yet, a new one is assigned.
+     * 
+     * @param name The name of the variable.
+     * 
+     * @return The ID of the variable; always positive.
+     */
+    int getId(@NonNull String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            synchronized (this) {
+                id = ids.get(name);
+                if (id == null) {
+                    id = nextId++;
+                    ids.put(name, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Returns the number of variables in this table.
+     * 
+     * @return The number of variables.
+     */
+    int size() {
+        return ids.size();
+    }
+
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeElement;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Collects the names of the variables (starting with CONFIG_) that are used in the presence conditions of the build
+ * and code model. The code model is streamed: each source file is dropped as soon as its variables are collected.
+ * 
+ * @author Adam
+ */
+final class VariableUsageCollector {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * The number of source files per thread that may wait in the queue. Limits how many files are kept in memory.
+     */
+    private static final int QUEUED_FILES_PER_THREAD = 4;
+
+    /**
+     * How long to wait for space in the queue before checking whether a worker failed, in milliseconds.
+     */
+    private static final long WAIT_INTERVAL = 100;
+
+    /**
+     * Marks the end of the source files in the queue.
+     */
+    private static final @NonNull SourceFile<?> END = new SourceFile<>(new File(""));
+
+    /**
+     * Don't allow any instances.
+     */
+    private VariableUsageCollector() {
+    }
+
+    /**
+     * Collects the used variables of the build model and of all source files of the code model component. Errors are
+     * logged.
+     * 
+     * @param bm The build model to search in.
+     * @param cmComponent The component to provide the code model.
+     * @param numThreads The number of threads to extract the variables of the source files with. If this is 1, the
+     *      files are processed in the current thread.
+     * @param indexFile If not <code>null</code>, a {@link VariableUsageIndex} of the locations of the used variables
+     *      is written to this file.
+     * 
+     * @return The names of the used variables; <code>null</code> if they could not be collected.
+     */
+    static @Nullable Set<@NonNull String> collect(@NonNull BuildModel bm,
+            @NonNull AnalysisComponent<SourceFile<?>> cmComponent, int numThreads, @Nullable File indexFile) {
+
+        VariableUsageIndex.Builder index = indexFile != null ? new VariableUsageIndex.Builder() : null;
+        Set<@NonNull String> result = null;
+        try {
+            result = collectUsages(bm, cmComponent, numThreads, index);
+
+            if (index != null && indexFile != null) {
+                index.write(indexFile);
+                LOGGER.logInfo("Wrote variable usage index to " + indexFile);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.logException("Interrupted while collecting used variables", e);
+
+        } catch (ExecutionException e) {
+            LOGGER.logException("Couldn't collect used variables", e.getCause());
+
+        } catch (IOException e) {
+            LOGGER.logException("Couldn't write variable usage index", e);
+        }
+        return result;
+    }
+
+    /**
+     * Collects the used variables of the build model and of all source files of the code model component.
+     * 
+     * @param bm The build model to search in.
+     * @param cmComponent The component to provide the code model.
+     * @param numThreads The number of threads to extract the variables of the source files with. If this is 1, the
+     *      files are processed in the current thread.
+     * @param index The index to add the locations of the used variables to; <code>null</code> if no index is built.
+     * 
+     * @return The names of the used variables.
+     * 
+     * @throws InterruptedException If the current thread is interrupted while waiting for the workers.
+     * @throws ExecutionException If a worker failed.
+     */
+    private static @NonNull Set<@NonNull String> collectUsages(@NonNull BuildModel bm,
+            @NonNull AnalysisComponent<SourceFile<?>> cmComponent, int numThreads,
+            VariableUsageIndex.@Nullable Builder index) throws InterruptedException, ExecutionException {
+
+        Set<@NonNull String> usedVariables = new HashSet<>();
+        addVariablesInBuildModel(bm, usedVariables);
+        if (index != null) {
+            index.addBuildModel(bm);
+        }
+
+        int numFiles = 0;
+        if (numThreads <= 1) {
+            SourceFile<?> file;
+            while ((file = cmComponent.getNextResult()) != null) {
+                addVariablesInFile(file, usedVariables);
+                if (index != null) {
+                    index.addFile(file);
+                }
+                numFiles++;
+            }
+        } else {
+            numFiles = collectInParallel(cmComponent, numThreads, index, usedVariables);
+        }
+
+        LOGGER.logInfo("Found " + usedVariables.size() + " used variables in " + numFiles + " source files");
+        return usedVariables;
+    }
+
+    /**
+     * Collects the used variables of all source files of the code model component with several threads. Each worker
+     * thread collects the variable names into its own set; the sets are merged at the end.
+     * 
+     * @param cmComponent The component to provide the code model.
+     * @param numThreads The number of worker threads.
+     * @param index The index to add the locations of the used variables to; <code>null</code> if no index is built.
+     * @param result The set of used variable names to add to.
+     * 
+     * @return The number of processed source files.
+     * 
+     * @throws InterruptedException If the current thread is interrupted while waiting for the workers.
+     * @throws ExecutionException If a worker failed.
+     */
+    private static int collectInParallel(@NonNull AnalysisComponent<SourceFile<?>> cmComponent, int numThreads,
+            VariableUsageIndex.@Nullable Builder index, @NonNull Set<@NonNull String> result)
+            throws InterruptedException, ExecutionException {
+
+        BlockingQueue<@NonNull SourceFile<?>> queue = new ArrayBlockingQueue<>(numThreads * QUEUED_FILES_PER_THREAD);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        int numFiles = 0;
+        try {
+            List<Future<Set<@NonNull String>>> workers = new ArrayList<>(numThreads);
+            for (int i = 0; i < numThreads; i++) {
+                workers.add(executor.submit(() -> {
+                    Set<@NonNull String> usedVariables = new HashSet<>();
+                    SourceFile<?> file;
+                    while ((file = queue.take()) != END) {
+                        addVariablesInFile(file, usedVariables);
+                        if (index != null) {
+                            index.addFile(file);
+                        }
+                    }
+                    return usedVariables;
+                }));
+            }
+
+            SourceFile<?> file;
+            while ((file = cmComponent.getNextResult()) != null) {
+                put(queue, file, workers);
+                numFiles++;
+            }
+            for (int i = 0; i < numThreads; i++) {
+                put(queue, END, workers);
+            }
+
+            for (Future<Set<@NonNull String>> worker : workers) {
+                result.addAll(worker.get());
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+        return numFiles;
+    }
+
+    /**
+     * Adds a source file to the queue of the workers. Waits until there is space in the queue, as long as all workers
+     * are running.
+     * 
+     * @param queue The queue to add to.
+     * @param file The file to add.
+     * @param workers The workers that take the files from the queue.
+     * 
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     * @throws ExecutionException If a worker failed.
+     */
+    private static void put(@NonNull BlockingQueue<@NonNull SourceFile<?>> queue, @NonNull SourceFile<?> file,
+            @NonNull List<Future<Set<@NonNull String>>> workers) throws InterruptedException, ExecutionException {
+
+        while (!queue.offer(file, WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+            for (Future<Set<@NonNull String>> worker : workers) {
+                if (worker.isDone()) {
+                    // workers only finish before the end of the queue if they failed; this throws their exception
+                    worker.get();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the names of all variables that start with CONFIG_ in the presence conditions of the build model to the
+     * given set.
+     * 
+     * @param bm The build model to search in.
+     * @param result The set of used variable names to add to.
+     */
+    static void addVariablesInBuildModel(@NonNull BuildModel bm, @NonNull Set<@NonNull String> result) {
+        for (File file : bm) {
+            getVariableNamesInFormula(result, notNull(bm.getPc(file)));
+        }
+    }
+
+    /**
+     * Adds the names of all variables that start with CONFIG_ in the presence conditions of the elements of the
+     * given source file to the given set.
+     * 
+     * @param file The file to search in.
+     * @param result The set of used variable names to add to.
+     */
+    static void addVariablesInFile(@NonNull SourceFile<?> file, @NonNull Set<@NonNull String> result) {
+        for (CodeElement<?> element : file) {
+            getVariableNamesInElement(element, result);
+        }
+    }
+
+    /**
+     * Adds the names of all variables that start with CONFIG_ in the given formula to the given set.
+     * 
+     * @param formula The formula to search in.
+     * @param result The set of used variable names to add to.
+     */
+    static void addVariablesInFormula(@NonNull Formula formula, @NonNull Set<@NonNull String> result) {
+        getVariableNamesInFormula(result, formula);
+    }
+
+    /**
+     * Recursively finds all variable names that start with CONFIG_ in the presence conditions of an element and all
+     * child elements.
+     * 
+     * @param element
+     *            The element to search in.
+     * @param result
+     *            The resulting set of variable names
+     */
+    private static void getVariableNamesInElement(@NonNull CodeElement<?> element,
+            @NonNull Set<@NonNull String> result) {
+        getVariableNamesInFormula(result, element.getPresenceCondition());
+
+        for (CodeElement<?> child : element) {
+            getVariableNamesInElement(child, result);
+        }
+    }
+
+    /**
+     * Recursively fills a set with strings with names of variables from a Formula. Only variables that start with
+     * CONFIG_ are considered.
+     * 
+     * @param formular
+     *            The Formula to check. Never <code>null</code>.
+     * @param names
+     *            A set to fill with call by reference. Never <code>null</code>.
+     */
+    private static void getVariableNamesInFormula(@NonNull Set<@NonNull String> names, @NonNull Formula formular) {
+        if (formular instanceof Variable) {
+            Variable var = (Variable) formular;
+            if (var.getName().startsWith("CONFIG_")) {
+                names.add(var.getName());
+            }
+        } else if (formular instanceof Disjunction) {
+            Disjunction dis = (Disjunction) formular;
+            getVariableNamesInFormula(names, dis.getLeft());
+            getVariableNamesInFormula(names, dis.getRight());
+        } else if (formular instanceof Conjunction) {
+            Conjunction con = (Conjunction) formular;
+            getVariableNamesInFormula(names, con.getLeft());
+            getVariableNamesInFormula(names, con.getRight());
+        } else if (formular instanceof Negation) {
+            Negation neg = (Negation) formular;
+            getVariableNamesInFormula(names, neg.getFormula());
+        }
+    }
+
+}
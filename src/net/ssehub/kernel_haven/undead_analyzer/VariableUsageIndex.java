@@ -0,0 +1,515 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeElement;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * An inverted index from variable names to the locations (source file and line) where they are used. It is created
+ * by the {@link MissingVariablesFinder} (see {@link MissingVariablesFinder#USAGE_INDEX_SETTING}) and written to a file,
+ * which can be memory-mapped by {@link #map(File)} for fast queries.
+ * <p>
+ * A variable is used at the line of a code element if it appears in the condition of the element (or in its presence
+ * condition, if the element has no condition of its own). Usages in the presence condition of a file in the build
+ * model have the line 0. Like in the rest of the missing variables analysis, only variables that start with CONFIG_
+ * are indexed. The file layout is (all numbers are big-endian 32 bit integers):
+ * </p>
+ * <pre>
+ * magic ("UDVI"), version (1)
+ * numVariables, numFiles, numUsages
+ * usage offsets: numVariables + 1 numbers; the usages of variable i are the entries from offset[i] to offset[i + 1]
+ * usages: numUsages times (file index, line); sorted by file and line for each variable
+ * variable names: numVariables times (length in bytes, UTF-8 bytes); sorted
+ * file paths: numFiles times (length in bytes, UTF-8 bytes); sorted
+ * </pre>
+ * <p>
+ * Instances are immutable and thread-safe.
+ * </p>
+ * 
+ * @author Adam
+ */
+public final class VariableUsageIndex {
+
+    private static final int MAGIC = 0x55445649;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+
+    /**
+     * A location where a variable is used.
+     */
+    public static final class Usage {
+
+        private @NonNull File file;
+
+        private int line;
+
+        /**
+         * Creates a usage.
+         * 
+         * @param file The source file.
+         * @param line The line in the source file; 0 for the presence condition of the file in the build model.
+         */
+        public Usage(@NonNull File file, int line) {
+            this.file = file;
+            this.line = line;
+        }
+
+        /**
+         * Returns the source file.
+         * 
+         * @return The source file.
+         */
+        public @NonNull File getFile() {
+            return file;
+        }
+
+        /**
+         * Returns the line in the source file.
+         * 
+         * @return The line; 0 for the presence condition of the file in the build model.
+         */
+        public int getLine() {
+            return line;
+        }
+
+        @Override
+        public @NonNull String toString() {
+            return file.getPath() + ":" + line;
+        }
+
+    }
+
+    private @NonNull IntBuffer offsets;
+
+    private @NonNull IntBuffer usages;
+
+    private @NonNull List<@NonNull String> variables;
+
+    private @NonNull Map<String, Integer> variableIndices;
+
+    private @NonNull File @NonNull [] files;
+
+    /**
+     * Creates an index from a buffer in the file layout.
+     * 
+     * @param buffer The buffer to read; positioned at the start of the data.
+     * 
+     * @throws FormatException If the buffer does not contain a valid index.
+     */
+    private VariableUsageIndex(@NonNull ByteBuffer buffer) throws FormatException {
+        if (buffer.remaining() < HEADER_SIZE + Integer.BYTES) {
+            throw new FormatException("Variable usage index too short");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new FormatException("Not a variable usage index");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new FormatException("Unsupported variable usage index version: " + version);
+        }
+
+        int numVariables = buffer.getInt();
+        int numFiles = buffer.getInt();
+        int numUsages = buffer.getInt();
+        if (numVariables < 0 || numFiles < 0 || numUsages < 0
+                || buffer.remaining() < ((long) numVariables + 1 + 2L * numUsages) * Integer.BYTES) {
+            throw new FormatException("Invalid variable usage index header");
+        }
+
+        this.offsets = slice(buffer, numVariables + 1);
+        this.usages = slice(buffer, 2 * numUsages);
+        for (int i = 0; i < numVariables; i++) {
+            if (offsets.get(i) > offsets.get(i + 1) || offsets.get(i + 1) > numUsages) {
+                throw new FormatException("Invalid offset of variable " + i + " in variable usage index");
+            }
+        }
+
+        List<@NonNull String> variables = new ArrayList<>(numVariables);
+        this.variableIndices = new HashMap<>(numVariables * 2);
+        this.files = new @NonNull File[numFiles];
+        try {
+            for (int i = 0; i < numVariables; i++) {
+                String name = readString(buffer);
+                variables.add(name);
+                variableIndices.put(name, i);
+            }
+            for (int i = 0; i < numFiles; i++) {
+                files[i] = new File(readString(buffer));
+            }
+        } catch (RuntimeException e) {
+            throw new FormatException("Invalid string table in variable usage index: " + e);
+        }
+        this.variables = notNull(Collections.unmodifiableList(variables));
+    }
+
+    /**
+     * Creates a view of the next numbers of the buffer and advances the buffer after them.
+     * 
+     * @param buffer The buffer.
+     * @param count The number of <code>int</code>s.
+     * 
+     * @return The view of the numbers.
+     */
+    private static @NonNull IntBuffer slice(@NonNull ByteBuffer buffer, int count) {
+        ByteBuffer view = buffer.slice();
+        view.limit(count * Integer.BYTES);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return notNull(view.asIntBuffer());
+    }
+
+    /**
+     * Reads a string (length in bytes, UTF-8 bytes) from the buffer.
+     * 
+     * @param buffer The buffer.
+     * 
+     * @return The string.
+     */
+    private static @NonNull String readString(@NonNull ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Memory-maps an index file written by the {@link MissingVariablesFinder}. The file is only read; it must not be
+     * modified while it is mapped.
+     * 
+     * @param file The file to map.
+     * 
+     * @return The mapped index.
+     * 
+     * @throws IOException If mapping the file fails.
+     * @throws FormatException If the file is not a valid variable usage index.
+     */
+    public static @NonNull VariableUsageIndex map(@NonNull File file) throws IOException, FormatException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new VariableUsageIndex(notNull(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+        }
+    }
+
+    /**
+     * Returns the names of all indexed variables.
+     * 
+     * @return The sorted, unmodifiable list of variable names.
+     */
+    public @NonNull List<@NonNull String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Returns the locations where the given variable is used.
+     * 
+     * @param variable The name of the variable.
+     * 
+     * @return The usages, sorted by file and line; empty if the variable is not used.
+     */
+    public @NonNull List<@NonNull Usage> getUsages(@NonNull String variable) {
+        Integer index = variableIndices.get(variable);
+        List<@NonNull Usage> result;
+        if (index == null) {
+            result = notNull(Collections.emptyList());
+        } else {
+            int from = offsets.get(index);
+            int to = offsets.get(index + 1);
+            result = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                result.add(new Usage(files[usages.get(2 * i)], usages.get(2 * i + 1)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Collects the usages of the variables and writes them as an index file. The variable names and file paths are
+     * interned in tables; the usages of each variable are stored as one primitive array. The methods to add usages
+     * are thread-safe.
+     */
+    static final class Builder {
+
+        private @NonNull Map<String, Integer> variableIds;
+
+        private @NonNull List<@NonNull String> variables;
+
+        /**
+         * The usages of each variable; each usage is encoded as <code>(fileId &lt;&lt; 32) | line</code>.
+         */
+        private long @NonNull [] @NonNull [] usages;
+
+        private int @NonNull [] numUsages;
+
+        private @NonNull Map<String, Integer> fileIds;
+
+        private @NonNull List<@NonNull String> files;
+
+        /**
+         * Creates an empty builder.
+         */
+        Builder() {
+            this.variableIds = new HashMap<>();
+            this.variables = new ArrayList<>();
+            this.usages = new long[16][];
+            this.numUsages = new int[16];
+            this.fileIds = new HashMap<>();
+            this.files = new ArrayList<>();
+        }
+
+        /**
+         * Adds the usages in the presence conditions of the build model, with line 0.
+         * 
+         * @param bm The build model.
+         */
+        synchronized void addBuildModel(@NonNull BuildModel bm) {
+            List<@NonNull String> names = new ArrayList<>();
+            for (File file : bm) {
+                names.clear();
+                getVariableNames(notNull(bm.getPc(file)), names);
+                int fileId = getFileId(notNull(file.getPath()));
+                for (String name : names) {
+                    add(name, fileId, 0);
+                }
+            }
+        }
+
+        /**
+         * Adds the usages in the code elements of the given source file. The usages are collected without holding the
+         * lock, so that several threads can extract their files in parallel.
+         * 
+         * @param file The source file.
+         */
+        void addFile(@NonNull SourceFile<?> file) {
+            List<@NonNull String> names = new ArrayList<>();
+            int[] lines = new int[16];
+            for (CodeElement<?> element : file) {
+                lines = collect(element, names, lines);
+            }
+
+            if (!names.isEmpty()) {
+                synchronized (this) {
+                    int fileId = getFileId(notNull(file.getPath().getPath()));
+                    for (int i = 0; i < names.size(); i++) {
+                        add(notNull(names.get(i)), fileId, lines[i]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Recursively collects the variables used in the condition of an element and all child elements.
+         * 
+         * @param element The element.
+         * @param names The list to add the variable names to.
+         * @param lines The lines of the names; grown as needed.
+         * 
+         * @return The array of lines, which may be a new one.
+         */
+        private static int @NonNull [] collect(@NonNull CodeElement<?> element, @NonNull List<@NonNull String> names,
+                int @NonNull [] lines) {
+
+            int oldSize = names.size();
+            Formula condition = element.getCondition();
+            getVariableNames(condition != null ? condition : element.getPresenceCondition(), names);
+
+            int[] result = lines;
+            if (names.size() > result.length) {
+                result = Arrays.copyOf(result, Math.max(names.size(), result.length * 2));
+            }
+            Arrays.fill(result, oldSize, names.size(), element.getLineStart());
+
+            for (CodeElement<?> child : element) {
+                result = collect(child, names, result);
+            }
+            return result;
+        }
+
+        /**
+         * Collects the names of the variables that start with CONFIG_ in a formula.
+         * 
+         * @param formula The formula.
+         * @param names The list to add the names to.
+         */
+        private static void getVariableNames(@NonNull Formula formula, @NonNull List<@NonNull String> names) {
+            if (formula instanceof Variable) {
+                String name = ((Variable) formula).getName();
+                if (name.startsWith("CONFIG_")) {
+                    names.add(name);
+                }
+            } else if (formula instanceof Disjunction) {
+                getVariableNames(((Disjunction) formula).getLeft(), names);
+                getVariableNames(((Disjunction) formula).getRight(), names);
+            } else if (formula instanceof Conjunction) {
+                getVariableNames(((Conjunction) formula).getLeft(), names);
+                getVariableNames(((Conjunction) formula).getRight(), names);
+            } else if (formula instanceof Negation) {
+                getVariableNames(((Negation) formula).getFormula(), names);
+            }
+        }
+
+        /**
+         * Returns the ID of a file path, adding it to the table if necessary.
+         * 
+         * @param path The path of the file.
+         * 
+         * @return The ID of the file.
+         */
+        private int getFileId(@NonNull String path) {
+            return fileIds.computeIfAbsent(path, (key) -> {
+                files.add(path);
+                return files.size() - 1;
+            });
+        }
+
+        /**
+         * Adds one usage.
+         * 
+         * @param variable The name of the variable.
+         * @param fileId The ID of the file.
+         * @param line The line.
+         */
+        private void add(@NonNull String variable, int fileId, int line) {
+            int id = variableIds.computeIfAbsent(variable, (key) -> {
+                variables.add(variable);
+                return variables.size() - 1;
+            });
+            if (id >= usages.length) {
+                usages = Arrays.copyOf(usages, usages.length * 2);
+                numUsages = Arrays.copyOf(numUsages, numUsages.length * 2);
+            }
+
+            long[] list = usages[id];
+            if (list == null) {
+                list = new long[4];
+            } else if (numUsages[id] == list.length) {
+                list = Arrays.copyOf(list, list.length * 2);
+            }
+            list[numUsages[id]++] = ((long) fileId << 32) | (line & 0xFFFFFFFFL);
+            usages[id] = list;
+        }
+
+        /**
+         * Writes the collected usages as an index file. Variables and files are sorted, and duplicate usages are
+         * removed, so that the result does not depend on the order in which the usages were added.
+         * 
+         * @param file The file to write to.
+         * 
+         * @throws IOException If writing the file fails.
+         */
+        synchronized void write(@NonNull File file) throws IOException {
+            String[] sortedFiles = files.toArray(new String[files.size()]);
+            Arrays.sort(sortedFiles);
+            int[] newFileIds = new int[sortedFiles.length];
+            for (int i = 0; i < sortedFiles.length; i++) {
+                newFileIds[notNull(fileIds.get(sortedFiles[i]))] = i;
+            }
+
+            String[] sortedVariables = variables.toArray(new String[variables.size()]);
+            Arrays.sort(sortedVariables);
+
+            List<long @NonNull []> sortedUsages = new ArrayList<>(sortedVariables.length);
+            int total = 0;
+            for (String variable : sortedVariables) {
+                int id = notNull(variableIds.get(variable));
+                long[] list = new long[numUsages[id]];
+                for (int i = 0; i < list.length; i++) {
+                    long usage = usages[id][i];
+                    list[i] = ((long) newFileIds[(int) (usage >>> 32)] << 32) | (usage & 0xFFFFFFFFL);
+                }
+                Arrays.sort(list);
+                int size = 0;
+                for (int i = 0; i < list.length; i++) {
+                    if (i == 0 || list[i] != list[i - 1]) {
+                        list[size++] = list[i];
+                    }
+                }
+                sortedUsages.add(notNull(Arrays.copyOf(list, size)));
+                total += size;
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sortedVariables.length);
+                out.writeInt(sortedFiles.length);
+                out.writeInt(total);
+
+                int offset = 0;
+                out.writeInt(offset);
+                for (long[] list : sortedUsages) {
+                    offset += list.length;
+                    out.writeInt(offset);
+                }
+                for (long[] list : sortedUsages) {
+                    for (long usage : list) {
+                        out.writeInt((int) (usage >>> 32));
+                        out.writeInt((int) usage);
+                    }
+                }
+                writeStrings(out, sortedVariables);
+                writeStrings(out, sortedFiles);
+            }
+        }
+
+        /**
+         * Writes a table of strings.
+         * 
+         * @param out The stream to write to.
+         * @param strings The strings.
+         * 
+         * @throws IOException If writing fails.
+         */
+        private static void writeStrings(@NonNull DataOutputStream out, @Nullable String @NonNull [] strings)
+                throws IOException {
+            for (String string : strings) {
+                byte[] bytes = notNull(string).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+    }
+
+}
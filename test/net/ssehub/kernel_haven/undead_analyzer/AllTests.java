@@ -26,10 +26,29 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
+    BinaryCnfTest.class,
+    CnfPreprocessorTest.class,
+    CombinedMissingVariablesFinderTest.class,
+    CheckpointStoreTest.class,
+    CubeSolverTest.class,
+    DeadCodeAndMissingVariablesFinderTest.class,
+    DeadCodeContextTest.class,
+    DeadCodeDaemonTest.class,
+    DeadCodeDiffFinderTest.class,
     DeadCodeFinderTest.class,
+    DeadCodeMetricsTest.class,
+    ExternalSolverTest.class,
     FormulaRelevancyCheckerTest.class,
+    IntCnfEncoderTest.class,
     MissingVariablesFinderTest.class,
+    ParallelVmConverterTest.class,
+    PortfolioSolverTest.class,
+    ShardedDeadCodeFinderTest.class,
+    SlowQueryLogTest.class,
+    SolverEventsTest.class,
     ThreadedDeadCodeFinderTest.class,
+    ThreadedMissingVariablesFinderTest.class,
+    VariableUsageIndexTest.class,
     })
 public class AllTests {
     // runs tests defined in SuiteClasses
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.FormatException;
+
+/**
+ * Tests the {@link BinaryCnf} and the {@link IntSatSolver}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class BinaryCnfTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Creates the CNF <code>(!A || B with space) &amp;&amp; !C</code>.
+     * 
+     * @return The CNF.
+     */
+    private static Cnf createCnf() {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable(true, "A"), new CnfVariable("B with space"));
+        cnf.addRow(new CnfVariable(true, "C"));
+        return cnf;
+    }
+
+    /**
+     * Creates a CNF consisting of the given clauses.
+     * 
+     * @param clauses The clauses; each clause is an array of literals, with a leading "!" for negated ones.
+     * 
+     * @return The CNF.
+     */
+    static Cnf cnf(String[]... clauses) {
+        Cnf result = new Cnf();
+        for (String[] clause : clauses) {
+            CnfVariable[] row = new CnfVariable[clause.length];
+            for (int i = 0; i < clause.length; i++) {
+                boolean negated = clause[i].startsWith("!");
+                row[i] = new CnfVariable(negated, negated ? clause[i].substring(1) : clause[i]);
+            }
+            result.addRow(row);
+        }
+        return result;
+    }
+
+    /**
+     * Tests that a CNF is the same after writing and memory-mapping it.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testFileRoundTrip() throws Exception {
+        File file = tempFolder.newFile();
+        BinaryCnf.write(createCnf(), file);
+
+        BinaryCnf binary = BinaryCnf.map(file);
+        assertThat(binary.getNumVariables(), is(3));
+        assertThat(binary.getNumClauses(), is(2));
+        assertThat(binary.getMaxClauseSize(), is(2));
+        assertThat(binary.getVariableName(binary.getVariableNumber("B with space")), is("B with space"));
+        assertThat(binary.getVariableNumber("D"), nullValue());
+        assertThat(binary.toCnf(), is(createCnf()));
+    }
+
+    /**
+     * Tests that an empty CNF can be converted.
+     */
+    @Test
+    public void testEmpty() {
+        BinaryCnf binary = BinaryCnf.fromCnf(new Cnf());
+        assertThat(binary.getNumVariables(), is(0));
+        assertThat(binary.getNumClauses(), is(0));
+        assertThat(binary.toCnf(), is(new Cnf()));
+    }
+
+    /**
+     * Tests that a file that is not a binary CNF is rejected.
+     * 
+     * @throws Exception wanted.
+     */
+    @Test(expected = FormatException.class)
+    public void testInvalidFile() throws Exception {
+        File file = tempFolder.newFile();
+        Files.write(file.toPath(), "p cnf 1 1\n1 0\n".getBytes(StandardCharsets.UTF_8));
+        BinaryCnf.map(file);
+    }
+
+    /**
+     * Tests that the {@link IntSatSolver} answers repeated queries correctly, i.e. that earlier queries don't
+     * influence later ones.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testIncrementalQueries() throws Exception {
+        IntSatSolver solver = new IntSatSolver(BinaryCnf.fromCnf(createCnf()));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(solver.isSatisfiable(cnf(new String[] {"A"})), is(true));
+            assertThat(solver.isSatisfiable(cnf(new String[] {"A"}, new String[] {"!B with space"})), is(false));
+            assertThat(solver.isSatisfiable(cnf(new String[] {"C"})), is(false));
+            assertThat(solver.isSatisfiable(cnf(new String[] {"X", "C"}, new String[] {"!X"})), is(false));
+            assertThat(solver.isSatisfiable(cnf(new String[] {"X", "C"})), is(true));
+            assertThat(solver.isSatisfiable(new Cnf()), is(true));
+            assertThat(solver.isSatisfiable(cnf(new String[] {})), is(false));
+        }
+    }
+
+    /**
+     * Tests that a solver with an unsatisfiable base answers all queries with <code>false</code>.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testUnsatisfiableBase() throws Exception {
+        IntSatSolver solver = new IntSatSolver(BinaryCnf.fromCnf(cnf(new String[] {"A"}, new String[] {"!A"})));
+
+        assertThat(solver.isSatisfiable(new Cnf()), is(false));
+        assertThat(solver.isSatisfiable(cnf(new String[] {"B"})), is(false));
+    }
+
+}
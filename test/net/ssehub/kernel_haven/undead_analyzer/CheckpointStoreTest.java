@@ -0,0 +1,295 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.test_utils.TestAnalysisComponentProvider;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DeadCodeBlock;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DetailedDeadCodeBlock;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.Reason;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link CheckpointStore} and resuming a {@link ThreadedDeadCodeFinder} from it.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class CheckpointStoreTest {
+
+    private static final File TESTDATA_DIR = new File(AllTests.TESTDATA_DIR, "deadCodeAnalysis");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Tests that formulas survive serialization and parsing unchanged.
+     *
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testFormulaRoundTrip() throws Exception {
+        Formula[] formulas = {
+            True.INSTANCE,
+            False.INSTANCE,
+            new Variable("CONFIG_A"),
+            new Variable("weird, (name)\twith spaces"),
+            and(or("A", not("B")), not(and("C", "D"))),
+        };
+
+        for (Formula formula : formulas) {
+            String serialized = CheckpointStore.serializeFormula(formula);
+            assertThat(CheckpointStore.parseFormula(serialized), is(formula));
+        }
+        assertThat(CheckpointStore.serializeFormula(null), is(""));
+    }
+
+    /**
+     * Tests that recorded files are read again by a new store, and that an incomplete last record is ignored.
+     *
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testRecordAndRestore() throws Exception {
+        File dir = tempFolder.newFolder();
+        File file1 = new File("dir/file1.c");
+        File file2 = new File("file2.c");
+
+        CheckpointStore store = new CheckpointStore(dir, "test");
+        store.start(60);
+        store.record(file1, Arrays.asList(
+                new DeadCodeBlock(file1, 3, 5, new Variable("A"), and("A", "B")),
+                new DetailedDeadCodeBlock(file1, 0, 0, not("A"), null, Reason.FILE_PC_NOT_SATISFIABLE)));
+        store.record(file2, Arrays.asList());
+        store.close(false);
+
+        // simulate a crash while writing a record
+        try (FileOutputStream out = new FileOutputStream(new File(dir, CheckpointStore.CHECKPOINT_FILE_NAME), true)) {
+            out.write("FILE\tfile3.c\nBLOCK\tfile3.c\t1".getBytes(StandardCharsets.UTF_8));
+        }
+
+        store = new CheckpointStore(dir, "test");
+        assertThat(store.getNumCompleted(), is(2));
+        assertThat(store.getCompleted(new File("file3.c")), nullValue());
+        assertThat(store.getCompleted(file2).size(), is(0));
+
+        List<DeadCodeBlock> blocks = store.getCompleted(file1);
+        assertThat(blocks, notNullValue());
+        assertThat(blocks.size(), is(2));
+        assertThat(blocks.get(0).getSourceFile(), is(file1));
+        assertThat(blocks.get(0).getStartLine(), is(3));
+        assertThat(blocks.get(0).getEndLine(), is(5));
+        assertThat(blocks.get(0).getFilePc(), is(new Variable("A")));
+        assertThat(blocks.get(0).getPresenceCondition(), is(and("A", "B")));
+        assertThat(blocks.get(1), instanceOf(DetailedDeadCodeBlock.class));
+        assertThat(((DetailedDeadCodeBlock) blocks.get(1)).getReason(), is(Reason.FILE_PC_NOT_SATISFIABLE));
+        assertThat(blocks.get(1).getPresenceCondition(), nullValue());
+    }
+
+    /**
+     * Tests that a damaged record at the end of the checkpoint is cut off when resuming, so that the records
+     * appended by the resumed run are still read by a second resume.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testDamagedTailIsCutOff() throws IOException {
+        File dir = tempFolder.newFolder();
+
+        CheckpointStore store = new CheckpointStore(dir, "test");
+        store.start(60);
+        store.record(new File("file1.c"), Arrays.asList());
+        store.close(false);
+
+        // simulate a crash while writing a record
+        try (FileOutputStream out = new FileOutputStream(new File(dir, CheckpointStore.CHECKPOINT_FILE_NAME), true)) {
+            out.write("FILE\tfile2.c\nBLOCK\tfile2.c\t1".getBytes(StandardCharsets.UTF_8));
+        }
+
+        // first resume
+        store = new CheckpointStore(dir, "test");
+        assertThat(store.getNumCompleted(), is(1));
+        store.start(60);
+        store.record(new File("file2.c"), Arrays.asList(new DeadCodeBlock(new File("file2.c"), 1, 2, null, null)));
+        store.close(false);
+
+        // second resume
+        store = new CheckpointStore(dir, "test");
+        assertThat(store.getNumCompleted(), is(2));
+        assertThat(store.getCompleted(new File("file2.c")).size(), is(1));
+    }
+
+    /**
+     * Tests that new records are not glued to a last <code>END</code> line that lost its line break.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testMissingFinalLineBreak() throws IOException {
+        File dir = tempFolder.newFolder();
+        File checkpointFile = new File(dir, CheckpointStore.CHECKPOINT_FILE_NAME);
+
+        CheckpointStore store = new CheckpointStore(dir, "test");
+        store.start(60);
+        store.record(new File("file1.c"), Arrays.asList());
+        store.close(false);
+        try (FileChannel channel = FileChannel.open(checkpointFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        store = new CheckpointStore(dir, "test");
+        assertThat(store.getNumCompleted(), is(1));
+        store.start(60);
+        store.record(new File("file2.c"), Arrays.asList());
+        store.close(false);
+
+        assertThat(new CheckpointStore(dir, "test").getNumCompleted(), is(2));
+    }
+
+    /**
+     * Tests that a checkpoint with a different configuration is ignored.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testDifferentConfiguration() throws IOException {
+        File dir = tempFolder.newFolder();
+
+        CheckpointStore store = new CheckpointStore(dir, "detailed=false");
+        store.start(60);
+        store.record(new File("file1.c"), Arrays.asList());
+        store.close(false);
+
+        assertThat(new CheckpointStore(dir, "detailed=false").getNumCompleted(), is(1));
+        assertThat(new CheckpointStore(dir, "detailed=true").getNumCompleted(), is(0));
+    }
+
+    /**
+     * Tests that the build model fingerprint changes with the presence conditions, but not with the order of the
+     * files.
+     */
+    @Test
+    public void testBuildModelFingerprint() {
+        BuildModel bm1 = new BuildModel();
+        bm1.add(new File("file1.c"), new Variable("A"));
+        bm1.add(new File("file2.c"), not("B"));
+
+        BuildModel bm2 = new BuildModel();
+        bm2.add(new File("file2.c"), not("B"));
+        bm2.add(new File("file1.c"), new Variable("A"));
+
+        BuildModel bm3 = new BuildModel();
+        bm3.add(new File("file1.c"), new Variable("A"));
+        bm3.add(new File("file2.c"), new Variable("B"));
+
+        assertThat(CheckpointStore.fingerprint(bm1), is(CheckpointStore.fingerprint(bm2)));
+        assertThat(CheckpointStore.fingerprint(bm1) == CheckpointStore.fingerprint(bm3), is(false));
+        assertThat(CheckpointStore.describeConfiguration(false, false, false, 1, CheckpointStore.fingerprint(bm1))
+                .equals(CheckpointStore.describeConfiguration(false, false, false, 1,
+                        CheckpointStore.fingerprint(bm3))), is(false));
+    }
+
+    /**
+     * Tests that the {@link ThreadedDeadCodeFinder} skips files that are completed in the checkpoint, emits their
+     * stored results, and deletes the checkpoint after a successful run.
+     *
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testResume() throws Exception {
+        File dir = tempFolder.newFolder();
+        File file1 = new File(TESTDATA_DIR, "file1.c");
+        File file2 = new File(TESTDATA_DIR, "file2.c");
+
+        VariabilityModel vm = new VariabilityModel(new File(TESTDATA_DIR, "varModel.cnf"),
+                new HashSet<>(Arrays.asList(
+                        new VariabilityVariable("ALPHA", "bool", 1),
+                        new VariabilityVariable("BETA", "bool", 2),
+                        new VariabilityVariable("GAMMA", "bool", 3))));
+        vm.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+
+        BuildModel bm = new BuildModel();
+        bm.add(file1, new Variable("ALPHA"));
+        bm.add(file2, new Variable("ALPHA"));
+
+        // file1.c is "completed" with a block that the real analysis would not find
+        BinaryCnf vmCnf = ParallelVmConverter.convert(vm);
+        CheckpointStore store = new CheckpointStore(dir, CheckpointStore.describeConfiguration(false, false, false,
+                vmCnf.getFingerprint(), CheckpointStore.fingerprint(bm)));
+        store.start(60);
+        store.record(file1, Arrays.asList(new DeadCodeBlock(file1, 42, 43, new Variable("ALPHA"), not("ALPHA"))));
+        store.close(false);
+
+        TestConfiguration config = new TestConfiguration(new Properties());
+        config.registerSetting(DeadCodeFinder.DETAILED_SETTING);
+        config.registerSetting(ThreadedDeadCodeFinder.CHECKPOINT_DIR_SETTING);
+        config.setValue(ThreadedDeadCodeFinder.CHECKPOINT_DIR_SETTING, dir);
+
+        SourceFile<CodeBlock> sourceFile1 = new SourceFile<>(file1);
+        sourceFile1.addElement(new CodeBlock(1, 2, file1, not("BETA"), not("BETA")));
+        SourceFile<CodeBlock> sourceFile2 = new SourceFile<>(file2);
+        sourceFile2.addElement(new CodeBlock(7, 8, file2, not("BETA"), not("BETA")));
+
+        ThreadedDeadCodeFinder finder = new ThreadedDeadCodeFinder(config,
+                new TestAnalysisComponentProvider<>(vm), new TestAnalysisComponentProvider<>(bm),
+                new TestAnalysisComponentProvider<>(sourceFile1, sourceFile2));
+
+        DeadCodeBlock block = finder.getNextResult();
+        assertThat(block.getSourceFile(), is(file1));
+        assertThat(block.getStartLine(), is(42));
+
+        block = finder.getNextResult();
+        assertThat(block.getSourceFile(), is(file2));
+        assertThat(block.getStartLine(), is(7));
+
+        assertThat(finder.getNextResult(), nullValue());
+        assertThat(new File(dir, CheckpointStore.CHECKPOINT_FILE_NAME).exists(), is(false));
+    }
+
+}
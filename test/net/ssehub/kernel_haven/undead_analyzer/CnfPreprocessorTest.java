@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.undead_analyzer.BinaryCnfTest.cnf;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link CnfPreprocessor} and the queries with preprocessed {@link BinaryCnf}s.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class CnfPreprocessorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Creates a solver for the given base CNF.
+     * 
+     * @param base The base CNF.
+     * 
+     * @return The solver.
+     */
+    private static IntSatSolver createSolver(BinaryCnf base) {
+        return new IntSatSolver(base, new VariableIdTable(base, null), CnfStrategy.ADAPTIVE, 16,
+                new EncodingStatistics());
+    }
+
+    /**
+     * Tests that equivalent variables are replaced by one of them.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testEquivalentLiterals() throws Exception {
+        // A <-> B, B <-> !C
+        BinaryCnf original = BinaryCnf.fromCnf(cnf(new String[] {"!A", "B"}, new String[] {"A", "!B"},
+                new String[] {"B", "C"}, new String[] {"!B", "!C"}, new String[] {"A", "C", "D"}));
+        BinaryCnf preprocessed = CnfPreprocessor.preprocess(original, 2);
+
+        assertThat(preprocessed.isPreprocessed(), is(true));
+        assertThat(preprocessed.getNumVariables(), is(4));
+        int a = preprocessed.getVariableNumber("A");
+        assertThat(preprocessed.getLiteral(preprocessed.getVariableNumber("B")), is(a));
+        assertThat(preprocessed.getLiteral(preprocessed.getVariableNumber("C")), is(-a));
+
+        IntSatSolver solver = createSolver(preprocessed);
+        assertThat(solver.isSatisfiable(and("A", "C")), is(false));
+        assertThat(solver.isSatisfiable(and(not("B"), not("C"))), is(false));
+        assertThat(solver.isSatisfiable(and("B", not("C"))), is(true));
+        assertThat(solver.isSatisfiable(and("C", "D")), is(true));
+    }
+
+    /**
+     * Tests that the clauses of pure variables are restored for queries that use them.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testPureLiterals() throws Exception {
+        // A is pure; after removing its clauses, B becomes pure
+        BinaryCnf original = BinaryCnf.fromCnf(cnf(new String[] {"A", "B"}, new String[] {"A", "C"},
+                new String[] {"!B", "D"}, new String[] {"!C", "!D"}, new String[] {"C", "D"}));
+        BinaryCnf preprocessed = CnfPreprocessor.preprocess(original, 1);
+        assertThat(preprocessed.hasEliminatedClauses(), is(true));
+
+        for (int i = 0; i < 2; i++) {
+            IntSatSolver solver = createSolver(preprocessed);
+            // the order of the queries differs, so that clauses are restored at different points
+            if (i == 0) {
+                assertThat(solver.isSatisfiable(new Variable("D")), is(true));
+            }
+            assertThat(solver.isSatisfiable(and(not("A"), not("B"))), is(false));
+            assertThat(solver.isSatisfiable(and(not("A"), "D")), is(false));
+            assertThat(solver.isSatisfiable(and("A", not("C"))), is(true));
+            assertThat(solver.isSatisfiable(and("B", not("D"))), is(false));
+            assertThat(solver.isSatisfiable(and("A", "B")), is(true));
+        }
+    }
+
+    /**
+     * Tests that unit clauses are propagated, and that queries with the assigned variables are still answered.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testUnits() throws Exception {
+        BinaryCnf original = BinaryCnf.fromCnf(cnf(new String[] {"A"}, new String[] {"!A", "B"},
+                new String[] {"!B", "C", "D"}, new String[] {"!C", "D"}, new String[] {"!D", "E", "F"},
+                new String[] {"!E", "!F"}));
+        BinaryCnf preprocessed = CnfPreprocessor.preprocess(original, 1);
+
+        IntSatSolver solver = createSolver(preprocessed);
+        assertThat(solver.isSatisfiable(not("A")), is(false));
+        assertThat(solver.isSatisfiable(not("B")), is(false));
+        assertThat(solver.isSatisfiable(not("D")), is(false));
+        assertThat(solver.isSatisfiable(and("E", "F")), is(false));
+        assertThat(solver.isSatisfiable(or(and("E", not("F")), and("F", not("E")))), is(true));
+    }
+
+    /**
+     * Tests that an unsatisfiable CNF stays unsatisfiable.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testUnsatisfiable() throws Exception {
+        BinaryCnf original = BinaryCnf.fromCnf(cnf(new String[] {"!A", "B"}, new String[] {"!B", "C"},
+                new String[] {"!C", "!A"}, new String[] {"A", "C"}, new String[] {"!C", "A"},
+                new String[] {"C", "!B"}));
+        BinaryCnf preprocessed = CnfPreprocessor.preprocess(original, 1);
+
+        assertThat(createSolver(original).isSatisfiable(new Variable("X")), is(false));
+        assertThat(createSolver(preprocessed).isSatisfiable(new Variable("X")), is(false));
+        assertThat(createSolver(preprocessed).isSatisfiable(new Cnf()), is(false));
+    }
+
+    /**
+     * Tests that a preprocessed CNF can be written and mapped again, and that it converts back to an equivalent
+     * {@link Cnf}.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testFileRoundTrip() throws Exception {
+        BinaryCnf original = BinaryCnf.fromCnf(cnf(new String[] {"!A", "B"}, new String[] {"A", "!B"},
+                new String[] {"A", "C"}, new String[] {"B", "D", "E"}, new String[] {"!D", "!E"}));
+        BinaryCnf preprocessed = CnfPreprocessor.preprocess(original, 1);
+
+        File file = tempFolder.newFile();
+        preprocessed.write(file);
+        BinaryCnf mapped = BinaryCnf.map(file);
+
+        assertThat(mapped.isPreprocessed(), is(true));
+        assertThat(mapped.getNumVariables(), is(5));
+        assertThat(mapped.getNumClauses(), is(preprocessed.getNumClauses()));
+        assertThat(mapped.toCnf(), is(preprocessed.toCnf()));
+        assertThat(CnfPreprocessor.preprocess(mapped, 1), is(mapped));
+        assertThat(original.toCnf().equals(preprocessed.toCnf()), is(false));
+
+        IntSatSolver solver = createSolver(mapped);
+        IntSatSolver converted = createSolver(BinaryCnf.fromCnf(mapped.toCnf()));
+        Formula[] queries = {and(not("A"), not("C")), and(not("B"), not("C")), and("D", "E"),
+            and(not("A"), and(not("D"), not("E"))), and("A", not("B")), and(not("A"), "D")};
+        for (Formula query : queries) {
+            boolean expected = createSolver(original).isSatisfiable(query);
+            assertThat(query.toString(), solver.isSatisfiable(query), is(expected));
+            assertThat(query.toString(), converted.isSatisfiable(query), is(expected));
+        }
+    }
+
+    /**
+     * Tests that an external solver restores the eliminated clauses.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testExternalSolver() throws Exception {
+        BinaryCnf preprocessed = CnfPreprocessor.preprocess(BinaryCnf.fromCnf(cnf(new String[] {"A", "B"},
+                new String[] {"!A", "C"}, new String[] {"!B", "C"}, new String[] {"B", "D"})), 1);
+        ExternalSolver solver = new ExternalSolver(preprocessed, new VariableIdTable(preprocessed, null),
+                CnfStrategy.TSEITIN, 16, new EncodingStatistics(), ExternalSolverTest.stubCommand(), true);
+        try {
+            assertThat(solver.isSatisfiable(not("C")), is(false));
+            assertThat(solver.isSatisfiable(and(not("B"), not("D"))), is(false));
+            assertThat(solver.isSatisfiable(and(not("A"), "C")), is(true));
+        } finally {
+            solver.close();
+        }
+    }
+
+    /**
+     * Compares the answers for random CNFs and queries with those of the original CNF.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testRandom() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            int numVariables = 4 + random.nextInt(8);
+            Cnf cnf = new Cnf();
+            int numClauses = numVariables + random.nextInt(3 * numVariables);
+            for (int i = 0; i < numClauses; i++) {
+                CnfVariable[] row = new CnfVariable[1 + random.nextInt(random.nextInt(10) == 0 ? 1 : 3)];
+                for (int j = 0; j < row.length; j++) {
+                    row[j] = new CnfVariable(random.nextBoolean(), "V" + random.nextInt(numVariables));
+                }
+                cnf.addRow(row);
+            }
+
+            BinaryCnf original = BinaryCnf.fromCnf(cnf);
+            BinaryCnf preprocessed = CnfPreprocessor.preprocess(original, 3);
+            IntSatSolver expected = createSolver(original);
+            IntSatSolver actual = createSolver(preprocessed);
+            for (int i = 0; i < 20; i++) {
+                Formula query = randomLiteral(random, numVariables);
+                for (int j = random.nextInt(3); j > 0; j--) {
+                    query = random.nextBoolean() ? and(query, randomLiteral(random, numVariables))
+                            : or(query, randomLiteral(random, numVariables));
+                }
+                assertThat(cnf + " with " + query, actual.isSatisfiable(query), is(expected.isSatisfiable(query)));
+            }
+        }
+    }
+
+    /**
+     * Creates a random literal; sometimes of a variable that is not in the CNF.
+     * 
+     * @param random The random number generator.
+     * @param numVariables The number of variables of the CNF.
+     * 
+     * @return The literal.
+     */
+    private static Formula randomLiteral(Random random, int numVariables) {
+        Variable variable = new Variable("V" + random.nextInt(numVariables + 1));
+        return random.nextBoolean() ? variable : not(variable);
+    }
+
+}
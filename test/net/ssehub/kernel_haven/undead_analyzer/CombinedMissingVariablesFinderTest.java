@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.test_utils.AnalysisComponentExecuter;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * Tests the {@link CombinedMissingVariablesFinder}.
+ * 
+ * @author Adam
+ */
+public class CombinedMissingVariablesFinderTest {
+
+    /**
+     * Tests that both result sets are created from one pass, and that they are the same as the ones of the
+     * {@link MissingVariablesFinder}.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    public void testBothAnalyses() throws SetUpException {
+        BuildModel bm = new BuildModel();
+        bm.add(new File("test.c"), and("CONFIG_A", "CONFIG_D"));
+
+        CodeBlock cb = new CodeBlock(or("CONFIG_A", "CONFIG_E"));
+        cb.addNestedElement(new CodeBlock(and("CONFIG_D", not("CONFIG_C_MODULE"))));
+        SourceFile<CodeBlock> first = new SourceFile<>(new File("test.c"));
+        first.addElement(cb);
+        SourceFile<CodeBlock> second = new SourceFile<>(new File("other.c"));
+        second.addElement(new CodeBlock(new Variable("CONFIG_F")));
+
+        for (int threads = 1; threads <= 2; threads++) {
+            TestConfiguration config = new TestConfiguration(new Properties());
+            config.registerSetting(ThreadedMissingVariablesFinder.NUMBER_OF_OF_THREADS);
+            config.setValue(ThreadedMissingVariablesFinder.NUMBER_OF_OF_THREADS, threads);
+
+            List<MissingVariable> result = AnalysisComponentExecuter.executeComponent(
+                    CombinedMissingVariablesFinder.class, config,
+                    new VariabilityModel[] {MissingVariablesFinderTest.VAR_MODEL}, new BuildModel[] {bm},
+                    new SourceFile<?>[] {first, second});
+
+            List<String> actual = new ArrayList<>();
+            for (MissingVariable variable : result) {
+                actual.add(variable.toString());
+            }
+            assertThat(actual, is(Arrays.asList("DEFINED_BUT_NOT_USED CONFIG_B", "USED_BUT_NOT_DEFINED CONFIG_D",
+                    "USED_BUT_NOT_DEFINED CONFIG_F", "USED_BUT_NOT_DEFINED CONFIG_E")));
+        }
+    }
+
+    /**
+     * Tests that setting an invalid number of threads throws an exception.
+     * 
+     * @throws SetUpException wanted.
+     */
+    @Test(expected = SetUpException.class)
+    @SuppressWarnings("null")
+    public void testInvalidNumberOfThreads() throws SetUpException {
+        TestConfiguration config = new TestConfiguration(new Properties());
+        config.registerSetting(ThreadedMissingVariablesFinder.NUMBER_OF_OF_THREADS);
+        config.setValue(ThreadedMissingVariablesFinder.NUMBER_OF_OF_THREADS, 0);
+
+        new CombinedMissingVariablesFinder(config, null, null, null);
+    }
+
+}
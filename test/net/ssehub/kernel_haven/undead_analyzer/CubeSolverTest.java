@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link CubeSolver}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class CubeSolverTest {
+
+    /**
+     * Creates a cube solver.
+     * 
+     * @param base The base CNF.
+     * @param executor The executor for the cubes.
+     * @param minDisjuncts The minimum number of disjuncts to split a query.
+     * @param maxCubes The maximum number of cubes.
+     * @param maxSolvers The maximum number of cubes that are solved at the same time.
+     * 
+     * @return The cube solver.
+     */
+    private static CubeSolver createCubeSolver(BinaryCnf base, ExecutorService executor, int minDisjuncts,
+            int maxCubes, int maxSolvers) {
+        return new CubeSolver(base, new VariableIdTable(base, null), CnfStrategy.ADAPTIVE, 16,
+                new EncodingStatistics(), executor, minDisjuncts, maxCubes, maxSolvers);
+    }
+
+    /**
+     * Creates the disjunction of the given formulas.
+     * 
+     * @param disjuncts The disjuncts.
+     * 
+     * @return The disjunction.
+     */
+    private static Formula disjunction(Formula... disjuncts) {
+        Formula result = disjuncts[0];
+        for (int i = 1; i < disjuncts.length; i++) {
+            result = or(result, disjuncts[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Tests how formulas are split into cubes.
+     */
+    @Test
+    public void testSplit() {
+        CubeSolver cubeSolver = createCubeSolver(PortfolioSolverTest.createPigeonhole(3), Executors
+                .newSingleThreadExecutor(), 4, 3, 3);
+
+        // too few disjuncts
+        assertThat(cubeSolver.split(and("R", or("A", or("B", "C")))), nullValue());
+
+        List<Formula> cubes = cubeSolver.split(and(and("R", or("A", or("B", or("C", "D")))), or("S", "T")));
+        assertThat(cubes.size(), is(3));
+        assertThat(cubes.get(0), is(and(and("R", or("S", "T")), "A")));
+        assertThat(cubes.get(1), is(and(and("R", or("S", "T")), "B")));
+        assertThat(cubes.get(2), is(and(and("R", or("S", "T")), or("C", "D"))));
+
+        // negations are pushed inwards
+        cubes = cubeSolver.split(not(or(not("R"), and("A", and("B", and("C", "D"))))));
+        assertThat(cubes.size(), is(3));
+        assertThat(cubes.get(0), is(and("R", not("A"))));
+        assertThat(cubes.get(2), is(and("R", or(not("C"), not("D")))));
+
+        // the largest disjunction is split
+        cubes = cubeSolver.split(and(disjunction(new Variable("A"), new Variable("B"), new Variable("C"),
+                new Variable("D")), disjunction(new Variable("E"), new Variable("F"), new Variable("G"),
+                new Variable("H"), new Variable("I"), new Variable("J"))));
+        assertThat(cubes.get(0), is(and(disjunction(new Variable("A"), new Variable("B"), new Variable("C"),
+                new Variable("D")), or("E", "F"))));
+    }
+
+    /**
+     * Tests that a split query is answered as soon as one cube is satisfiable, even if the other cubes are hard.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test(timeout = 60000)
+    public void testSatisfiableCubeStopsEarly() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            // under !X, the pigeonhole CNF is too hard to be solved within the timeout; one cube per disjunct
+            CubeSolver cubeSolver = createCubeSolver(PortfolioSolverTest.createPigeonhole(14), executor, 4, 8, 8);
+
+            Formula[] disjuncts = new Formula[8];
+            for (int i = 0; i < disjuncts.length - 1; i++) {
+                disjuncts[i] = and(not("X"), "Y" + i);
+            }
+            disjuncts[disjuncts.length - 1] = and("X", "Y");
+            Formula query = disjunction(disjuncts);
+
+            for (int i = 0; i < 3; i++) {
+                assertThat(cubeSolver.trySatisfiable(query), is(true));
+            }
+            assertThat(cubeSolver.getNumSplitQueries(), is(3L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that a split query is unsatisfiable if all cubes are, and that small queries are not split.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testUnsatisfiable() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            CubeSolver cubeSolver = createCubeSolver(PortfolioSolverTest.createPigeonhole(5), executor, 8, 4, 4);
+
+            Formula[] disjuncts = new Formula[10];
+            for (int i = 0; i < disjuncts.length; i++) {
+                disjuncts[i] = and(not("X"), "Y" + i);
+            }
+            assertThat(cubeSolver.trySatisfiable(disjunction(disjuncts)), is(false));
+            assertThat(cubeSolver.trySatisfiable(and("Z", disjunction(disjuncts))), is(false));
+            assertThat(cubeSolver.trySatisfiable(or(disjunction(disjuncts), "X")), is(true));
+            assertThat(cubeSolver.trySatisfiable(and(not("X"), "Y")), nullValue());
+            assertThat(cubeSolver.getNumSplitQueries(), is(3L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that a query is not split if not enough solvers are free, so that the caller solves it itself.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testNotEnoughFreeSolvers() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            CubeSolver cubeSolver = createCubeSolver(PortfolioSolverTest.createPigeonhole(3), executor, 4, 4, 3);
+
+            Formula[] disjuncts = new Formula[4];
+            for (int i = 0; i < disjuncts.length; i++) {
+                disjuncts[i] = and(not("X"), "Y" + i);
+            }
+            assertThat(cubeSolver.trySatisfiable(disjunction(disjuncts)), nullValue());
+            assertThat(cubeSolver.getNumSplitQueries(), is(0L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.config.DefaultSettings;
+import net.ssehub.kernel_haven.test_utils.TestAnalysisComponentProvider;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DeadCodeBlock;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link DeadCodeAndMissingVariablesFinder}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class DeadCodeAndMissingVariablesFinderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Creates a code block.
+     * 
+     * @param line The start line.
+     * @param pc The presence condition.
+     * 
+     * @return The block.
+     */
+    private static @NonNull CodeBlock block(int line, @NonNull Formula pc) {
+        return new CodeBlock(line, line, new File("file.c"), pc, pc);
+    }
+
+    /**
+     * Tests that the dead code blocks and all three categories of missing variables are found.
+     * Variability model: <code>!CONFIG_C &amp;&amp; (CONFIG_D -&gt; CONFIG_A)</code>, with the additional variables
+     * CONFIG_B and CONFIG_U.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testDeadCodeAndMissingVariables() throws Exception {
+        File vmFile = tempFolder.newFile("model.dimacs");
+        Files.write(vmFile.toPath(), ("c 1 CONFIG_A\nc 2 CONFIG_B\nc 3 CONFIG_C\nc 4 CONFIG_D\nc 5 CONFIG_U\n"
+                + "p cnf 5 2\n-3 0\n-4 1 0\n").getBytes(StandardCharsets.UTF_8));
+        Set<VariabilityVariable> variables = new HashSet<>();
+        for (String name : Arrays.asList("CONFIG_A", "CONFIG_B", "CONFIG_C", "CONFIG_D", "CONFIG_U")) {
+            variables.add(new VariabilityVariable(name, "bool"));
+        }
+        VariabilityModel vm = new VariabilityModel(vmFile, variables);
+        vm.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+
+        File path = new File("file.c");
+        BuildModel bm = new BuildModel();
+        bm.add(path, new Variable("CONFIG_B"));
+
+        CodeBlock deadOuter = block(1, new Variable("CONFIG_C"));
+        deadOuter.addNestedElement(block(2, and("CONFIG_C", "CONFIG_X")));
+        SourceFile<CodeBlock> file = new SourceFile<>(path);
+        file.addElement(deadOuter);
+        file.addElement(block(4, or("CONFIG_A", "CONFIG_E")));
+        file.addElement(block(6, and("CONFIG_D", not("CONFIG_A"))));
+
+        TestConfiguration config = new TestConfiguration(new Properties());
+        config.setValue(DefaultSettings.ANALYSIS_USE_VARMODEL_VARIABLES_ONLY, false);
+        DeadCodeAndMissingVariablesFinder finder = new DeadCodeAndMissingVariablesFinder(config,
+                new TestAnalysisComponentProvider<VariabilityModel>(vm),
+                new TestAnalysisComponentProvider<BuildModel>(bm),
+                new TestAnalysisComponentProvider<SourceFile<?>>(file));
+
+        List<Integer> deadLines = new ArrayList<>();
+        DeadCodeBlock block;
+        while ((block = finder.getNextResult()) != null) {
+            deadLines.add(block.getStartLine());
+        }
+        assertThat(deadLines, is(Arrays.asList(1, 2, 6)));
+
+        AnalysisComponent<MissingVariable> output = finder.getMissingVariablesOutput();
+        List<String> missing = new ArrayList<>();
+        MissingVariable variable;
+        while ((variable = output.getNextResult()) != null) {
+            missing.add(variable.toString());
+        }
+        Collections.sort(missing);
+        assertThat(missing, is(Arrays.asList("DEFINED_BUT_NOT_USED CONFIG_U", "USED_BUT_NOT_DEFINED CONFIG_E",
+                "USED_BUT_NOT_DEFINED CONFIG_X", "USED_ONLY_IN_DEAD_CODE CONFIG_C", "USED_ONLY_IN_DEAD_CODE CONFIG_D",
+                "USED_ONLY_IN_DEAD_CODE CONFIG_X")));
+    }
+
+}
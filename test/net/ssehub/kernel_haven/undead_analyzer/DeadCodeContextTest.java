@@ -0,0 +1,452 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DeadCodeBlock;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DetailedDeadCodeBlock;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.Reason;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link DeadCodeContext}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class DeadCodeContextTest {
+
+    private static final File TESTDATA_DIR = new File(AllTests.TESTDATA_DIR, "deadCodeAnalysis");
+
+    private static final File FILE = new File("file1.c");
+
+    /**
+     * Creates a {@link DeadCodeContext}.
+     * Variability Model:
+     * <pre><code>
+     * NOT(ALPHA) OR BETA
+     * NOT(GAMMA)
+     * </code></pre>
+     * Build Model:
+     * <pre>{@code
+     * file1.c -> ALPHA
+     * }</pre>
+     * 
+     * @return The created context.
+     * 
+     * @throws FormatException unwanted.
+     */
+    private static @NonNull DeadCodeContext createContext() throws FormatException {
+        return createContext(false);
+    }
+
+    /**
+     * Creates a {@link DeadCodeContext} with the models described in {@link #createContext()}.
+     * 
+     * @param detailedAnalysis Whether the context should do a detailed analysis.
+     * 
+     * @return The created context.
+     * 
+     * @throws FormatException unwanted.
+     */
+    private static @NonNull DeadCodeContext createContext(boolean detailedAnalysis) throws FormatException {
+        return createContext(detailedAnalysis, false);
+    }
+
+    /**
+     * Creates a {@link DeadCodeContext} with the models described in {@link #createContext()}.
+     * 
+     * @param detailedAnalysis Whether the context should do a detailed analysis.
+     * @param considerVmVarsOnly Whether only blocks with variability model variables should be considered.
+     * 
+     * @return The created context.
+     * 
+     * @throws FormatException unwanted.
+     */
+    private static @NonNull DeadCodeContext createContext(boolean detailedAnalysis, boolean considerVmVarsOnly)
+            throws FormatException {
+        BuildModel bm = new BuildModel();
+        bm.add(FILE, new Variable("ALPHA"));
+
+        return new DeadCodeContext(createVm(), bm, considerVmVarsOnly, detailedAnalysis);
+    }
+
+    /**
+     * Creates the variability model described in {@link #createContext()}.
+     * 
+     * @return The variability model.
+     */
+    private static @NonNull VariabilityModel createVm() {
+        Set<VariabilityVariable> variables = new HashSet<>();
+        variables.add(new VariabilityVariable("ALPHA", "bool", 1));
+        variables.add(new VariabilityVariable("BETA", "bool", 2));
+        variables.add(new VariabilityVariable("GAMMA", "bool", 3));
+        VariabilityModel vm = new VariabilityModel(new File(TESTDATA_DIR, "varModel.cnf"), variables);
+        vm.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+        return vm;
+    }
+
+    /**
+     * Tests {@link DeadCodeContext#isDead(net.ssehub.kernel_haven.util.logic.Formula,
+     * net.ssehub.kernel_haven.util.logic.Formula)}.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testIsDead() throws Exception {
+        DeadCodeContext context = createContext();
+
+        assertThat(context.isDead(new Variable("ALPHA"), new Variable("BETA")), is(false));
+        assertThat(context.isDead(new Variable("ALPHA"), not("BETA")), is(true));
+        assertThat(context.isDead(new Variable("BETA"), not("ALPHA")), is(false));
+        assertThat(context.isDead(new Variable("BETA"), and("ALPHA", "GAMMA")), is(true));
+    }
+
+    /**
+     * Tests {@link DeadCodeContext#isDead(Formula, Formula)} with an external solver process.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testIsDeadWithExternalSolver() throws Exception {
+        DeadCodeContext context = createContext();
+        context.setExternalSolver(ExternalSolverTest.stubCommand(), true);
+        try {
+            assertThat(context.isDead(new Variable("ALPHA"), new Variable("BETA")), is(false));
+            assertThat(context.isDead(new Variable("ALPHA"), not("BETA")), is(true));
+            assertThat(context.isDead(new Variable("BETA"), not("ALPHA")), is(false));
+            assertThat(context.isDead(new Variable("BETA"), and("ALPHA", "GAMMA")), is(true));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Tests that only considering blocks with variables of the variability model requires a variability model.
+     * 
+     * @throws Exception wanted.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testVmVarsOnlyRequiresVm() throws Exception {
+        Cnf cnf = ParallelVmConverter.convert(createVm()).toCnf();
+        new DeadCodeContext(cnf, null, new BuildModel(), true, false);
+    }
+
+    /**
+     * Tests that {@link DeadCodeContext#getVmCnf()} returns the original CNF, not the one simplified by
+     * {@link DeadCodeContext#preprocessVm(int)}.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testVmCnfIsNotPreprocessed() throws Exception {
+        DeadCodeContext context = createContext();
+        context.preprocessVm(1);
+
+        Cnf cnf = context.getVmCnf();
+        assertThat(cnf.getRowCount(), is(2));
+        assertThat(cnf.toString(), is(ParallelVmConverter.convert(createVm()).toCnf().toString()));
+    }
+
+    /**
+     * Tests that solvers created after {@link DeadCodeContext#close()} get new threads for the cubes, and that
+     * solvers borrowed during the close are not pooled again.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testCubesAfterClose() throws Exception {
+        DeadCodeContext context = createContext();
+        context.setCubeThreshold(2);
+
+        assertThat(context.isDead(new Variable("ALPHA"), or("BETA", "GAMMA")), is(false));
+        SatUtilities borrowed = context.acquire();
+        context.close();
+        assertThat(borrowed.isParallelSolvingStopped(), is(true));
+        context.release(borrowed);
+
+        SatUtilities fresh = context.acquire();
+        assertThat(fresh == borrowed, is(false));
+        assertThat(fresh.isParallelSolvingStopped(), is(false));
+        context.release(fresh);
+        assertThat(context.isDead(new Variable("ALPHA"), or(not("BETA"), "GAMMA")), is(true));
+        context.close();
+    }
+
+    /**
+     * Tests that {@link DeadCodeContext#analyze(SourceFile)} can be called repeatedly and concurrently.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testConcurrentAnalyze() throws Exception {
+        DeadCodeContext context = createContext();
+
+        SourceFile<CodeBlock> sourceFile = new SourceFile<>(FILE);
+        sourceFile.addElement(new CodeBlock(1, 2, FILE, new Variable("BETA"), new Variable("BETA")));
+        sourceFile.addElement(new CodeBlock(3, 4, FILE, not("BETA"), not("BETA")));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<@NonNull DeadCodeBlock>>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> context.analyze(sourceFile)));
+            }
+
+            for (Future<List<@NonNull DeadCodeBlock>> future : futures) {
+                List<@NonNull DeadCodeBlock> result = future.get();
+                assertThat(result.size(), is(1));
+                assertThat(result.get(0).getStartLine(), is(3));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that files without a build presence condition are skipped.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testNoBuildPc() throws Exception {
+        DeadCodeContext context = createContext();
+
+        SourceFile<CodeBlock> sourceFile = new SourceFile<>(new File("other.c"));
+        sourceFile.addElement(new CodeBlock(not("BETA")));
+
+        assertThat(context.analyze(sourceFile).size(), is(0));
+    }
+
+    /**
+     * Tests that undead blocks are found, with the reason why they are always present.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testUndead() throws Exception {
+        DeadCodeContext context = createContext(true);
+
+        SourceFile<CodeBlock> sourceFile = new SourceFile<>(FILE);
+        // always present: the file PC ALPHA implies BETA in the VM
+        sourceFile.addElement(new CodeBlock(1, 2, FILE, new Variable("BETA"), new Variable("BETA")));
+        // always present: the VM forbids GAMMA
+        sourceFile.addElement(new CodeBlock(3, 4, FILE, not("GAMMA"), not("GAMMA")));
+        // always present: the file PC is ALPHA
+        sourceFile.addElement(new CodeBlock(5, 6, FILE, new Variable("ALPHA"), new Variable("ALPHA")));
+        // not undead, but the nested block is always present within it
+        CodeBlock parent = new CodeBlock(7, 10, FILE, new Variable("DELTA"), new Variable("DELTA"));
+        parent.addNestedElement(new CodeBlock(8, 9, FILE, or("DELTA", "EPSILON"),
+                and("DELTA", or("DELTA", "EPSILON"))));
+        sourceFile.addElement(parent);
+        // no condition of its own
+        sourceFile.addElement(new CodeBlock(11, 12, FILE, True.INSTANCE, True.INSTANCE));
+        // dead, thus not reported as undead
+        sourceFile.addElement(new CodeBlock(13, 14, FILE, not("BETA"), not("BETA")));
+
+        assertThat(context.analyze(sourceFile).size(), is(1));
+
+        context.setFindUndead(true);
+        List<@NonNull DeadCodeBlock> result = context.analyze(sourceFile);
+
+        assertThat(result.size(), is(5));
+        assertReason(result.get(0), 1, Reason.CPP_AND_FILE_PC_AND_VM_UNDEAD);
+        assertReason(result.get(1), 3, Reason.CPP_AND_VM_UNDEAD);
+        assertReason(result.get(2), 5, Reason.CPP_AND_FILE_PC_UNDEAD);
+        assertReason(result.get(3), 8, Reason.CPP_UNDEAD);
+        assertReason(result.get(4), 13, Reason.CPP_AND_FILE_PC_AND_VM_NOT_SATISFIABLE);
+    }
+
+    /**
+     * Tests that the undead check follows the same rule as the detailed dead check if only blocks with variability
+     * model variables should be considered: both check all blocks.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testUndeadIgnoresRelevancyLikeDetailedDead() throws Exception {
+        DeadCodeContext context = createContext(true, true);
+        context.setFindUndead(true);
+
+        SourceFile<CodeBlock> sourceFile = new SourceFile<>(FILE);
+        // no variability model variables; always present within its parent
+        CodeBlock parent = new CodeBlock(1, 4, FILE, new Variable("DELTA"), new Variable("DELTA"));
+        parent.addNestedElement(new CodeBlock(2, 3, FILE, or("DELTA", "EPSILON"),
+                and("DELTA", or("DELTA", "EPSILON"))));
+        sourceFile.addElement(parent);
+        // no variability model variables; dead
+        sourceFile.addElement(new CodeBlock(5, 6, FILE, and("DELTA", not("DELTA")), and("DELTA", not("DELTA"))));
+
+        List<@NonNull DeadCodeBlock> result = context.analyze(sourceFile);
+        assertThat(result.size(), is(2));
+        assertReason(result.get(0), 2, Reason.CPP_UNDEAD);
+        assertReason(result.get(1), 5, Reason.CPP_NOT_SATISFIABLE);
+    }
+
+    /**
+     * Tests that the file statistics count a dead file, and that undead blocks are not counted as dead.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testFileStatistics() throws Exception {
+        DeadCodeContext context = createContext(true);
+        context.setFindUndead(true);
+
+        SourceFile<CodeBlock> sourceFile = new SourceFile<>(FILE);
+        sourceFile.addElement(new CodeBlock(1, 2, FILE, new Variable("BETA"), new Variable("BETA")));
+        sourceFile.addElement(new CodeBlock(3, 4, FILE, not("BETA"), not("BETA")));
+        sourceFile.addElement(new CodeBlock(5, 6, FILE, new Variable("DELTA"), new Variable("DELTA")));
+
+        FileStatistics statistics = new FileStatistics(FILE);
+        assertThat(context.analyze(sourceFile, null, statistics).size(), is(2));
+        assertThat(statistics.getBlocksChecked(), is(3));
+        assertThat(statistics.getBlocksDead(), is(1));
+        assertThat(statistics.getSatCalls() > 0, is(true));
+        assertThat(statistics.getThread(), is(Thread.currentThread().getName()));
+
+        // the file PC contradicts the variability model, so no block is checked
+        BuildModel bm = context.getBuildModel();
+        File deadFile = new File("file2.c");
+        bm.add(deadFile, and("ALPHA", not("BETA")));
+        SourceFile<CodeBlock> deadSourceFile = new SourceFile<>(deadFile);
+        deadSourceFile.addElement(new CodeBlock(1, 2, deadFile, new Variable("BETA"), new Variable("BETA")));
+
+        statistics = new FileStatistics(deadFile);
+        context.analyze(deadSourceFile, null, statistics);
+        assertThat(statistics.getBlocksChecked(), is(0));
+        assertThat(statistics.getBlocksDead(), is(1));
+    }
+
+    /**
+     * Asserts that a result block of the detailed analysis has the given start line and reason.
+     * 
+     * @param block The result block.
+     * @param startLine The expected start line.
+     * @param reason The expected reason.
+     */
+    private static void assertReason(@NonNull DeadCodeBlock block, int startLine, @NonNull Reason reason) {
+        assertThat(block.getStartLine(), is(startLine));
+        assertThat(((DetailedDeadCodeBlock) block).getReason(), is(reason));
+    }
+
+    /**
+     * Creates a source file with only alive blocks (so that no result objects are created): the given number of top
+     * blocks with 19 nested blocks each.
+     * 
+     * @param numTopBlocks The number of top blocks.
+     * 
+     * @return The source file.
+     */
+    private static @NonNull SourceFile<CodeBlock> createAliveSourceFile(int numTopBlocks) {
+        Formula[] pcs = {new Variable("ALPHA"), new Variable("BETA"), and("ALPHA", "BETA"), not("GAMMA")};
+        SourceFile<CodeBlock> sourceFile = new SourceFile<>(FILE);
+        for (int i = 0; i < numTopBlocks; i++) {
+            CodeBlock block = new CodeBlock(pcs[i % pcs.length]);
+            for (int j = 0; j < 19; j++) {
+                block.addNestedElement(new CodeBlock(pcs[j % pcs.length]));
+            }
+            sourceFile.addElement(block);
+        }
+        return sourceFile;
+    }
+
+    /**
+     * Measures the bytes allocated by the current thread for analyzing the given source file with cached verdicts.
+     * Returns the minimum of a few runs, so that one-off allocations (e.g. class loading or JIT compilation) are not
+     * counted.
+     * 
+     * @param threadBean The bean to read the allocated bytes from.
+     * @param context The context with filled caches.
+     * @param sourceFile The source file to analyze.
+     * 
+     * @return The minimum number of allocated bytes.
+     */
+    private static long measureAllocatedBytes(com.sun.management.@NonNull ThreadMXBean threadBean,
+            @NonNull DeadCodeContext context, @NonNull SourceFile<CodeBlock> sourceFile) {
+        long threadId = Thread.currentThread().getId();
+        long result = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            assertThat(context.analyze(sourceFile).size(), is(0));
+            result = Math.min(result, threadBean.getThreadAllocatedBytes(threadId) - before);
+        }
+        return result;
+    }
+
+    /**
+     * Tests that {@link DeadCodeContext#analyze(SourceFile)} creates no garbage per block when all verdicts are
+     * cached. The allocations for a large file are compared against a measured baseline of a file with a single top
+     * block, which covers the fixed per-file costs. Any allocation per block would cost at least 16 bytes (an object
+     * header), so a margin of one byte per block still detects per-block garbage, while it tolerates sporadic
+     * allocations of the JVM that are not caused by the analysis.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testCachedAnalyzeAllocatesNothingPerBlock() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        DeadCodeContext context = createContext();
+        SourceFile<CodeBlock> smallFile = createAliveSourceFile(1);
+        SourceFile<CodeBlock> largeFile = createAliveSourceFile(1000);
+        int numExtraBlocks = (1000 - 1) * 20;
+
+        // fill the caches; deliberately no long JIT warm-up, since escape analysis could hide allocations that
+        // happen whenever the hot path is not (yet) compiled
+        assertThat(context.analyze(largeFile).size(), is(0));
+
+        long baseline = measureAllocatedBytes(threadBean, context, smallFile);
+        long allocated = measureAllocatedBytes(threadBean, context, largeFile);
+
+        assertThat("Allocated " + allocated + " bytes (baseline: " + baseline + " bytes) for " + numExtraBlocks
+                + " additional blocks", allocated - baseline < numExtraBlocks, is(true));
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.test_utils.TestAnalysisComponentProvider;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeDaemon.ServedRequest;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link DeadCodeDaemon}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class DeadCodeDaemonTest {
+
+    private static final File TESTDATA_DIR = new File(AllTests.TESTDATA_DIR, "deadCodeAnalysis");
+
+    /**
+     * The port for tests that call {@link DeadCodeDaemon#serve(BufferedReader, java.io.Writer)} directly; it is never
+     * opened.
+     */
+    private static final int UNUSED_PORT = 1;
+
+    /**
+     * Creates a {@link DeadCodeDaemon}.
+     * Variability Model:
+     * <pre><code>
+     * NOT(ALPHA) OR BETA
+     * NOT(GAMMA)
+     * </code></pre>
+     * Build Model:
+     * <pre>{@code
+     * file1.c -> ALPHA
+     * }</pre>
+     * 
+     * @param port The port to listen on.
+     * 
+     * @return The created daemon.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    private @NonNull DeadCodeDaemon createDaemon(int port) throws SetUpException {
+        Properties props = new Properties();
+        props.setProperty(DeadCodeDaemon.PORT_SETTING.getKey(), String.valueOf(port));
+        TestConfiguration config = new TestConfiguration(props);
+
+        Set<VariabilityVariable> variables = new HashSet<>();
+        variables.add(new VariabilityVariable("ALPHA", "bool", 1));
+        variables.add(new VariabilityVariable("BETA", "bool", 2));
+        variables.add(new VariabilityVariable("GAMMA", "bool", 3));
+        VariabilityModel vm = new VariabilityModel(new File(TESTDATA_DIR, "varModel.cnf"), variables);
+        vm.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+
+        BuildModel bm = new BuildModel();
+        bm.add(new File("file1.c"), new Variable("ALPHA"));
+
+        return new DeadCodeDaemon(config, new TestAnalysisComponentProvider<>(vm),
+                new TestAnalysisComponentProvider<>(bm));
+    }
+
+    /**
+     * Serves the given requests and returns the responses, without the latencies.
+     * 
+     * @param daemon The daemon to send the requests to.
+     * @param requests The requests.
+     * 
+     * @return The responses, one per line.
+     * 
+     * @throws IOException unwanted.
+     */
+    private static @NonNull String serve(@NonNull DeadCodeDaemon daemon, @NonNull String requests)
+            throws IOException {
+        StringWriter out = new StringWriter();
+        daemon.serve(new BufferedReader(new StringReader(requests)), out);
+        return out.toString().replaceAll(" time=\\d+us", "").replace("\r\n", "\n");
+    }
+
+    /**
+     * Tests single <code>PC</code> queries.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testPcQueries() throws SetUpException, IOException {
+        DeadCodeDaemon daemon = createDaemon(UNUSED_PORT);
+        assertThat(daemon.loadModels(), is(true));
+
+        String responses = serve(daemon, "PC file1.c BETA\n"
+                + "PC file1.c !BETA\n"
+                + "PC file1.c GAMMA && BETA\n"
+                + "PC unknown.c BETA\n"
+                + "PC file1.c (BETA\n"
+                + "UNKNOWN\n");
+
+        String[] lines = responses.split("\n");
+        assertThat(lines.length, is(6));
+        assertThat(lines[0], is("ALIVE"));
+        assertThat(lines[1], is("DEAD"));
+        assertThat(lines[2], is("DEAD"));
+        assertThat(lines[3], is("NO_BUILD_PC"));
+        assertThat(lines[4].startsWith("ERROR"), is(true));
+        assertThat(lines[5], is("ERROR Unknown command: UNKNOWN"));
+    }
+
+    /**
+     * Tests a <code>FILE</code> query and that served requests are reported as results.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testFileQuery() throws SetUpException, IOException {
+        DeadCodeDaemon daemon = createDaemon(UNUSED_PORT);
+        assertThat(daemon.loadModels(), is(true));
+
+        String responses = serve(daemon, "FILE file1.c\n"
+                + "BLOCK 1 3 BETA\n"
+                + "BLOCK 5 8 !BETA\n"
+                + "BLOCK 10 12 GAMMA\n"
+                + "END\n"
+                + "QUIT\n"
+                + "PC file1.c BETA\n");
+
+        assertThat(responses, is("DEAD 5 8\nDEAD 10 12\nDONE 2\n"));
+
+        ServedRequest served = daemon.getNextResult();
+        assertThat(served, notNullValue());
+        assertThat(served.getRequest(), is("FILE file1.c"));
+        assertThat(served.getResponse(), is("DONE 2"));
+    }
+
+    /**
+     * Tests that a malformed <code>BLOCK</code> in the middle of a <code>FILE</code> request is answered with a
+     * single error, and that the following request on the same connection is still answered correctly.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testMalformedBlockKeepsConnectionInSync() throws SetUpException, IOException {
+        DeadCodeDaemon daemon = createDaemon(UNUSED_PORT);
+        assertThat(daemon.loadModels(), is(true));
+
+        String responses = serve(daemon, "FILE file1.c\n"
+                + "BLOCK 1 3 BETA\n"
+                + "BLOCK 5 x !BETA\n"
+                + "BLOCK 10 12 GAMMA\n"
+                + "BLOCK 14 16 (GAMMA\n"
+                + "END\n"
+                + "PC file1.c !BETA\n");
+
+        String[] lines = responses.split("\n");
+        assertThat(lines.length, is(2));
+        assertThat(lines[0], is("ERROR Invalid line numbers in: BLOCK 5 x !BETA"));
+        assertThat(lines[1], is("DEAD"));
+    }
+
+    /**
+     * Tests that a port is required, since stdin and stdout are not used for the protocol.
+     * 
+     * @throws SetUpException wanted.
+     */
+    @Test(expected = SetUpException.class)
+    public void testPortRequired() throws SetUpException {
+        createDaemon(0);
+    }
+
+    /**
+     * Tests the daemon with a local client connecting via a socket.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws IOException unwanted.
+     * @throws InterruptedException unwanted.
+     */
+    @Test(timeout = 10000)
+    public void testSocketClient() throws SetUpException, IOException, InterruptedException {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = probe.getLocalPort();
+        }
+
+        DeadCodeDaemon daemon = createDaemon(port);
+        Thread daemonThread = new Thread(() -> {
+            // drains the results, which starts the daemon in the background
+            while (daemon.getNextResult() != null) {
+                // only wait for the end
+            }
+        });
+        daemonThread.start();
+
+        String response = null;
+        for (int tries = 0; tries < 100 && response == null; tries++) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                PrintWriter out = new PrintWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+                out.println("PC file1.c !BETA");
+                response = in.readLine();
+                out.println("SHUTDOWN");
+            } catch (IOException e) {
+                // daemon not yet listening
+                Thread.sleep(50);
+            }
+        }
+
+        assertThat(response, notNullValue());
+        assertThat(response.matches("DEAD time=\\d+us"), is(true));
+
+        daemonThread.join();
+        assertThat(daemon.getNextResult(), nullValue());
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.CodeElement;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.config.DefaultSettings;
+import net.ssehub.kernel_haven.test_utils.TestAnalysisComponentProvider;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeDiffFinder.DeadCodeStatusChange;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link DeadCodeDiffFinder}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class DeadCodeDiffFinderTest {
+
+    private static final File TESTDATA_DIR = new File(AllTests.TESTDATA_DIR, "deadCodeAnalysis");
+
+    /**
+     * Creates a {@link VariabilityModel} with the variables ALPHA, BETA, GAMMA and DELTA.
+     * 
+     * @param constraintFile The DIMACS file containing the constraints.
+     * 
+     * @return The variability model.
+     */
+    private static @NonNull VariabilityModel createVm(@NonNull File constraintFile) {
+        Set<VariabilityVariable> variables = new HashSet<>();
+        variables.add(new VariabilityVariable("ALPHA", "bool", 1));
+        variables.add(new VariabilityVariable("BETA", "bool", 2));
+        variables.add(new VariabilityVariable("GAMMA", "bool", 3));
+        variables.add(new VariabilityVariable("DELTA", "bool", 4));
+        VariabilityModel vm = new VariabilityModel(constraintFile, variables);
+        vm.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+        return vm;
+    }
+
+    /**
+     * Creates a {@link DeadCodeDiffFinder} that compares the two test variability models.
+     * Old variability model:
+     * <pre><code>
+     * NOT(ALPHA) OR BETA
+     * NOT(GAMMA)
+     * </code></pre>
+     * New variability model:
+     * <pre><code>
+     * NOT(ALPHA) OR BETA
+     * NOT(DELTA)
+     * </code></pre>
+     * Build Model:
+     * <pre>{@code
+     * file1.c -> ALPHA
+     * }</pre>
+     * 
+     * @param elements The code elements to add to the source file.
+     * 
+     * @return The created component.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    private @NonNull DeadCodeDiffFinder createComponent(CodeElement<?>... elements) throws SetUpException {
+        TestConfiguration config = new TestConfiguration(new Properties());
+        config.setValue(DefaultSettings.ANALYSIS_USE_VARMODEL_VARIABLES_ONLY, false);
+
+        File file1 = new File(TESTDATA_DIR, "file1.c");
+        SourceFile<CodeElement<?>> sourceFile = new SourceFile<>(file1);
+        for (CodeElement<?> element : elements) {
+            sourceFile.addElement(element);
+        }
+
+        BuildModel bm = new BuildModel();
+        bm.add(file1, new Variable("ALPHA"));
+
+        return new DeadCodeDiffFinder(config,
+                new TestAnalysisComponentProvider<>(createVm(new File(TESTDATA_DIR, "varModel.cnf"))),
+                new TestAnalysisComponentProvider<>(createVm(new File(TESTDATA_DIR, "varModelChanged.cnf"))),
+                new TestAnalysisComponentProvider<>(bm),
+                new TestAnalysisComponentProvider<SourceFile<?>>(sourceFile));
+    }
+
+    /**
+     * Tests that blocks that are dead (or alive) in both versions are not reported.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    public void testUnchangedBlocks() throws SetUpException {
+        DeadCodeDiffFinder finder = createComponent(
+                new CodeBlock(1, 2, new File("file1.c"), not("BETA"), not("BETA")),
+                new CodeBlock(3, 4, new File("file1.c"), new Variable("BETA"), new Variable("BETA")));
+
+        assertThat(finder.getNextResult(), nullValue());
+    }
+
+    /**
+     * Tests that a block that is only dead in the new version is reported.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    public void testAliveToDead() throws SetUpException {
+        DeadCodeDiffFinder finder = createComponent(
+                new CodeBlock(1, 2, new File("file1.c"), new Variable("DELTA"), new Variable("DELTA")));
+
+        DeadCodeStatusChange change = finder.getNextResult();
+        assertThat(change, notNullValue());
+        assertThat(change.isDeadInNewVersion(), is(true));
+        assertThat(change.getStartLine(), is(1));
+
+        assertThat(finder.getNextResult(), nullValue());
+    }
+
+    /**
+     * Tests that a block that is only dead in the old version is reported.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    public void testDeadToAlive() throws SetUpException {
+        DeadCodeDiffFinder finder = createComponent(
+                new CodeBlock(1, 2, new File("file1.c"), not("BETA"), not("BETA")),
+                new CodeBlock(5, 6, new File("file1.c"), new Variable("GAMMA"), new Variable("GAMMA")));
+
+        DeadCodeStatusChange change = finder.getNextResult();
+        assertThat(change, notNullValue());
+        assertThat(change.isDeadInNewVersion(), is(false));
+        assertThat(change.getStartLine(), is(5));
+
+        assertThat(finder.getNextResult(), nullValue());
+    }
+
+}
@@ -72,29 +72,16 @@ public class DeadCodeFinderTest {
      * file1.c -> filePc
      * }</pre>
      * 
+     * @param tConfig The configuration to create the analysis with.
      * @param element The code element to add to the source file.
      * @param filePc The presence condition of the file the block is in.
-     * @param considerVmVarsOnly Whether to consider variables from the variability model only.
-     * @param detailedAnalysis Whether detailed analysis is configured.
      * 
      * @return The created DeadCodeAnalysis.
      * 
      * @throws SetUpException unwanted.
      */
-    public DeadCodeFinder createComponent(CodeElement<?> element, @NonNull Formula filePc, boolean considerVmVarsOnly,
-            boolean detailedAnalysis) throws SetUpException {
-        // Generate configuration
-        @NonNull TestConfiguration tConfig = null;
-        Properties config = new Properties();
-        try {
-            tConfig = new TestConfiguration(config);
-        } catch (SetUpException e) {
-            Assert.fail("Could not generate test configuration: " + e.getMessage());
-        }
-        tConfig.setValue(DefaultSettings.ANALYSIS_USE_VARMODEL_VARIABLES_ONLY, considerVmVarsOnly);
-        tConfig.registerSetting(DeadCodeFinder.DETAILED_SETTING);
-        tConfig.setValue(DeadCodeFinder.DETAILED_SETTING, detailedAnalysis);
-        
+    public DeadCodeFinder createComponent(@NonNull TestConfiguration tConfig, CodeElement<?> element,
+            @NonNull Formula filePc) throws SetUpException {
         // Load variability model
         Set<VariabilityVariable> variables = new HashSet<>();
         VariabilityVariable alpha = new VariabilityVariable("ALPHA", "bool", 1);
@@ -128,6 +115,58 @@ public class DeadCodeFinderTest {
     }
     
 
+    /**
+     * Creates the configuration for a {@link DeadCodeFinder}.
+     * 
+     * @param considerVmVarsOnly Whether to consider variables from the variability model only.
+     * @param detailedAnalysis Whether detailed analysis is configured.
+     * 
+     * @return The created configuration.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    protected static @NonNull TestConfiguration createConfiguration(boolean considerVmVarsOnly,
+            boolean detailedAnalysis) throws SetUpException {
+        // Generate configuration
+        @NonNull TestConfiguration tConfig = null;
+        Properties config = new Properties();
+        try {
+            tConfig = new TestConfiguration(config);
+        } catch (SetUpException e) {
+            Assert.fail("Could not generate test configuration: " + e.getMessage());
+        }
+        tConfig.setValue(DefaultSettings.ANALYSIS_USE_VARMODEL_VARIABLES_ONLY, considerVmVarsOnly);
+        tConfig.registerSetting(DeadCodeFinder.DETAILED_SETTING);
+        tConfig.setValue(DeadCodeFinder.DETAILED_SETTING, detailedAnalysis);
+        return tConfig;
+    }
+    
+    /**
+     * Initializes a new {@link DeadCodeFinder} and its resources.
+     * Variability Model:
+     * <pre><code>
+     * NOT(ALPHA) OR BETA
+     * NOT(GAMMA)
+     * </code></pre>
+     * Build Model:
+     * <pre>{@code 
+     * file1.c -> filePc
+     * }</pre>
+     * 
+     * @param element The code element to add to the source file.
+     * @param filePc The presence condition of the file the block is in.
+     * @param considerVmVarsOnly Whether to consider variables from the variability model only.
+     * @param detailedAnalysis Whether detailed analysis is configured.
+     * 
+     * @return The created DeadCodeAnalysis.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    public final DeadCodeFinder createComponent(CodeElement<?> element, @NonNull Formula filePc,
+            boolean considerVmVarsOnly, boolean detailedAnalysis) throws SetUpException {
+        return createComponent(createConfiguration(considerVmVarsOnly, detailedAnalysis), element, filePc);
+    }
+
     /**
      * Initializes a new {@link DeadCodeFinder} and its resources.
      * Variability Model:
@@ -354,4 +393,52 @@ public class DeadCodeFinderTest {
         assertThat(finder.getNextResult(), nullValue());
     }
     
+    /**
+     * Tests that the statistics of the analyzed files are provided by the second output, once the dead code blocks
+     * are done.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    public void testFileStatistics() throws SetUpException {
+        CodeBlock outer = new CodeBlock(1, 6, new File("file"), new Variable("BETA"), new Variable("BETA"));
+        outer.addNestedElement(new CodeBlock(2, 3, new File("file"), new Variable("GAMMA"), and("BETA", "GAMMA")));
+        // answered by the verdict cache of the file
+        outer.addNestedElement(new CodeBlock(4, 5, new File("file"), new Variable("BETA"), new Variable("BETA")));
+        TestConfiguration config = createConfiguration(false, false);
+        config.registerSetting(DeadCodeFinder.FILE_STATISTICS_SETTING);
+        config.setValue(DeadCodeFinder.FILE_STATISTICS_SETTING, true);
+        DeadCodeFinder finder = createComponent(config, outer, new Variable("ALPHA"));
+
+        assertThat(finder.getNextResult().getStartLine(), is(2));
+        assertThat(finder.getNextResult(), nullValue());
+
+        AnalysisComponent<FileStatistics> output = finder.getFileStatisticsOutput();
+        FileStatistics statistics = output.getNextResult();
+        assertThat(statistics.getSourceFile(), is(new File(TESTDATA_DIR, "file1.c")));
+        assertThat(statistics.getBlocksChecked(), is(3));
+        assertThat(statistics.getBlocksDead(), is(1));
+        assertThat(statistics.getSatCalls(), is(2L));
+        assertThat(statistics.getCacheHits(), is(1L));
+        assertThat(statistics.getThread().isEmpty(), is(false));
+        assertThat(output.getNextResult(), nullValue());
+    }
+
+    /**
+     * Tests that searching undead blocks is only allowed with the detailed analysis, since the results are
+     * distinguished by their reason.
+     * 
+     * @throws SetUpException wanted.
+     */
+    @Test(expected = SetUpException.class)
+    public void testUndeadRequiresDetailed() throws SetUpException {
+        TestConfiguration config = new TestConfiguration(new Properties());
+        config.registerSetting(DeadCodeFinder.DETAILED_SETTING);
+        config.registerSetting(DeadCodeFinder.UNDEAD_SETTING);
+        config.setValue(DeadCodeFinder.UNDEAD_SETTING, true);
+        
+        new DeadCodeFinder(config, new TestAnalysisComponentProvider<VariabilityModel>(),
+                new TestAnalysisComponentProvider<BuildModel>(), new TestAnalysisComponentProvider<SourceFile<?>>());
+    }
+    
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeMetrics.Cache;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link DeadCodeMetrics} and the {@link Histogram}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class DeadCodeMetricsTest {
+
+    private static final File FILE = new File("file1.c");
+
+    /**
+     * Tests the percentiles and aggregates of a {@link Histogram}.
+     */
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        assertThat(histogram.getPercentile(50), is(0L));
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+
+        assertThat(histogram.getCount(), is(101L));
+        assertThat(histogram.getSum(), is(5050L));
+        assertThat(histogram.getMax(), is(100L));
+        assertThat(histogram.getPercentile(0), is(1L));
+        // the 51st value (50) is in the bucket 32..63
+        assertThat(histogram.getPercentile(50), is(63L));
+        // capped at the maximum
+        assertThat(histogram.getPercentile(99), is(100L));
+    }
+
+    /**
+     * Tests that analyzing files through a {@link DeadCodeContext} records the cache lookups, queries and files.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testContextMetrics() throws Exception {
+        Set<VariabilityVariable> variables = new HashSet<>();
+        variables.add(new VariabilityVariable("ALPHA", "bool", 1));
+        variables.add(new VariabilityVariable("BETA", "bool", 2));
+        variables.add(new VariabilityVariable("GAMMA", "bool", 3));
+        VariabilityModel vm = new VariabilityModel(new File(AllTests.TESTDATA_DIR, "deadCodeAnalysis/varModel.cnf"),
+                variables);
+        vm.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+
+        BuildModel bm = new BuildModel();
+        bm.add(FILE, new Variable("ALPHA"));
+        DeadCodeContext context = new DeadCodeContext(vm, bm, false, false);
+
+        SourceFile<CodeBlock> sourceFile = new SourceFile<>(FILE);
+        sourceFile.addElement(new CodeBlock(new Variable("BETA")));
+        sourceFile.addElement(new CodeBlock(not("BETA")));
+        sourceFile.addElement(new CodeBlock(new Variable("BETA")));
+
+        context.analyze(sourceFile);
+        context.analyze(sourceFile);
+
+        DeadCodeMetrics metrics = context.getMetrics();
+        assertThat(metrics.getAnalyzedFiles(), is(2L));
+        assertThat(metrics.getFileVmCacheMisses(), is(2L));
+        assertThat(metrics.getFileVmCacheHits(), is(4L));
+        assertThat(metrics.getVmCacheMisses(), is(2L));
+        assertThat(metrics.getVmCacheHits(), is(0L));
+        assertThat(metrics.getSolvedQueries(), is(2L));
+        assertThat(metrics.getMeanQueriesPerFile(), is(1.0));
+        assertThat(metrics.getHits(Cache.PLAIN) + metrics.getMisses(Cache.PLAIN), is(0L));
+        assertThat(metrics.getWorkers(), is(1));
+        assertThat(metrics.getWorkerUtilization() > 0, is(true));
+        assertThat(metrics.getWorkerUtilization() <= 1, is(true));
+        assertThat(metrics.toTable().length > 5, is(true));
+    }
+
+    /**
+     * Tests that the metrics can be read over JMX while they are registered.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testJmx() throws Exception {
+        DeadCodeMetrics metrics = new DeadCodeMetrics(new EncodingStatistics());
+        metrics.recordLookup(Cache.VM, true);
+        metrics.recordLookup(Cache.VM, false);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = metrics.register("DeadCodeMetricsTest");
+        assertThat(name, notNullValue());
+        try {
+            assertThat(server.getAttribute(name, "VmCacheHits"), is(1L));
+            assertThat(server.getAttribute(name, "VmCacheMisses"), is(1L));
+            // a second registration with the same name fails gracefully
+            assertThat(new DeadCodeMetrics(new EncodingStatistics()).register("DeadCodeMetricsTest"), nullValue());
+        } finally {
+            DeadCodeMetrics.unregister(name);
+        }
+        assertThat(server.isRegistered(name), is(false));
+    }
+
+}
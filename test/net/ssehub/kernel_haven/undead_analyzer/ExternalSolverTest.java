@@ -0,0 +1,212 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link ExternalSolver}, with the {@link StubDimacsSolver} as external process.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class ExternalSolverTest {
+
+    /**
+     * Returns the command line to run the {@link StubDimacsSolver}.
+     * 
+     * @param options Options for the stub solver.
+     * 
+     * @return The command line.
+     */
+    static List<String> stubCommand(String... options) {
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StubDimacsSolver.class.getName());
+        command.addAll(Arrays.asList(options));
+        return command;
+    }
+
+    /**
+     * Creates the base CNF <code>(!A || B) &amp;&amp; !C</code>.
+     * 
+     * @return The base CNF.
+     */
+    private static BinaryCnf createBase() {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable(true, "A"), new CnfVariable("B"));
+        cnf.addRow(new CnfVariable(true, "C"));
+        return BinaryCnf.fromCnf(cnf);
+    }
+
+    /**
+     * Creates an external solver for the base CNF of {@link #createBase()}.
+     * 
+     * @param incremental Whether the incremental mode is used.
+     * @param options Options for the stub solver.
+     * 
+     * @return The external solver.
+     */
+    private static ExternalSolver createSolver(boolean incremental, String... options) {
+        BinaryCnf base = createBase();
+        return new ExternalSolver(base, new VariableIdTable(base, null), CnfStrategy.TSEITIN, 16,
+                new EncodingStatistics(), stubCommand(options), incremental);
+    }
+
+    /**
+     * The queries for the base CNF of {@link #createBase()}, and whether they are satisfiable. UNSAT queries are
+     * followed by SAT queries, which are only SAT if the clauses of the previous query were disabled.
+     */
+    private static final Object[][] QUERIES = {
+        {and("A", not("B")), false},
+        {new Variable("A"), true},
+        {and(or("A", "C"), or(not("B"), "C")), false},
+        {and(or("A", "D"), or(not("B"), "E")), true},
+        {new Variable("C"), false},
+        {and("D", not("E")), true},
+    };
+
+    /**
+     * Runs all {@link #QUERIES} on the given solver.
+     * 
+     * @param solver The solver.
+     * 
+     * @throws SolverException unwanted.
+     */
+    private static void checkQueries(ExternalSolver solver) throws SolverException {
+        for (Object[] query : QUERIES) {
+            assertThat(query[0].toString(), solver.isSatisfiable((Formula) query[0]), is(query[1]));
+        }
+    }
+
+    /**
+     * Tests the incremental mode with one long-lived process.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testIncremental() throws Exception {
+        ExternalSolver solver = createSolver(true);
+        try {
+            checkQueries(solver);
+            checkQueries(solver);
+        } finally {
+            solver.close();
+        }
+
+        // a closed solver restarts its process
+        try {
+            checkQueries(solver);
+        } finally {
+            solver.close();
+        }
+    }
+
+    /**
+     * Tests the mode with one process per query.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testOneShot() throws Exception {
+        checkQueries(createSolver(false));
+    }
+
+    /**
+     * Tests that a solver that prints a lot while it reads a large base CNF does not block, in both modes.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test(timeout = 60000)
+    public void testVerboseSolverDoesNotBlock() throws Exception {
+        // a chain of implications; the comments of the stub solver are much larger than a pipe buffer
+        Cnf cnf = new Cnf();
+        for (int i = 0; i < 20000; i++) {
+            cnf.addRow(new CnfVariable(true, "X" + i), new CnfVariable("X" + (i + 1)));
+        }
+        BinaryCnf base = BinaryCnf.fromCnf(cnf);
+
+        for (boolean incremental : new boolean[] {true, false}) {
+            ExternalSolver solver = new ExternalSolver(base, new VariableIdTable(base, null), CnfStrategy.TSEITIN,
+                    16, new EncodingStatistics(), stubCommand("--verbose"), incremental);
+            try {
+                assertThat(solver.isSatisfiable(and("X0", not("X20000"))), is(false));
+                assertThat(solver.isSatisfiable(and("X0", "X20000")), is(true));
+            } finally {
+                solver.close();
+            }
+        }
+    }
+
+    /**
+     * Tests that the exit code is used if the solver prints no result line.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testExitCode() throws Exception {
+        ExternalSolver solver = createSolver(false, "--exit-code-only");
+        assertThat(solver.isSatisfiable(and("A", not("B"))), is(false));
+        assertThat(solver.isSatisfiable(new Variable("A")), is(true));
+    }
+
+    /**
+     * Tests that a process that does not answer leads to an exception.
+     * 
+     * @throws Exception wanted.
+     */
+    @Test(expected = SolverException.class)
+    public void testNoAnswer() throws Exception {
+        BinaryCnf base = createBase();
+        ExternalSolver solver = new ExternalSolver(base, new VariableIdTable(base, null), CnfStrategy.TSEITIN, 16,
+                new EncodingStatistics(), Arrays.asList(stubCommand().get(0), "-version"), true);
+        solver.isSatisfiable(new Variable("A"));
+    }
+
+    /**
+     * Tests {@link ExternalSolver#findExecutable(String)}.
+     */
+    @Test
+    public void testFindExecutable() {
+        String java = stubCommand().get(0);
+        assertThat(ExternalSolver.findExecutable(java), notNullValue());
+        assertThat(ExternalSolver.findExecutable(java + "-does-not-exist"), nullValue());
+        assertThat(ExternalSolver.findExecutable("does-not-exist-solver"), nullValue());
+    }
+
+}
@@ -19,8 +19,13 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -113,4 +118,102 @@ public class FormulaRelevancyCheckerTest {
         assertThat(checker.visit(makeFormula("ALPHA", "BETA")), is(true));
     }
 
+    /**
+     * Tests that <code>_MODULE</code> variants of VM variables are relevant, but not of other variables.
+     */
+    @Test
+    public void testModuleVariables() {
+        FormulaRelevancyChecker checker = new FormulaRelevancyChecker(createTestVariabilityModel(), true);
+
+        assertThat(checker.visit(new Variable("ALPHA_MODULE")), is(true));
+        assertThat(checker.visit(new Negation(new Variable("BETA_MODULE"))), is(true));
+        assertThat(checker.visit(new Variable("GAMMA_MODULE")), is(false));
+        assertThat(checker.visit(new Variable("_MODULE")), is(false));
+        assertThat(checker.visit(new Variable("ALPHA_MODULE_MODULE")), is(false));
+    }
+
+    /**
+     * Tests very deep formulas, which must not overflow the stack.
+     */
+    @Test
+    public void testDeepFormula() {
+        FormulaRelevancyChecker checker = new FormulaRelevancyChecker(createTestVariabilityModel(), true);
+
+        Formula irrelevant = new Variable("NON_VM_VAR");
+        for (int i = 0; i < 200000; i++) {
+            irrelevant = i % 2 == 0 ? new Conjunction(new Variable("NON_VM_VAR_" + i), irrelevant)
+                    : new Negation(new Disjunction(irrelevant, True.INSTANCE));
+        }
+        assertThat(checker.visit(irrelevant), is(false));
+        assertThat(checker.visit(new Conjunction(irrelevant, new Variable("BETA"))), is(true));
+        assertThat(checker.visit(new Disjunction(new Variable("BETA"), irrelevant)), is(true));
+    }
+
+    /**
+     * Tests that cached verdicts of shared subformulas are used correctly, when the subformula is checked again and
+     * when it is part of a larger formula.
+     */
+    @Test
+    public void testSharedSubformulas() {
+        FormulaRelevancyChecker checker = new FormulaRelevancyChecker(createTestVariabilityModel(), true);
+
+        Formula relevant = makeFormula("NON_VM_VAR_1", "ALPHA");
+        Formula irrelevant = makeFormula("NON_VM_VAR_1", "NON_VM_VAR_2");
+        for (int i = 0; i < 2; i++) {
+            assertThat(checker.visit(relevant), is(true));
+            assertThat(checker.visit(irrelevant), is(false));
+            assertThat(checker.visit(new Conjunction(irrelevant, irrelevant)), is(false));
+            assertThat(checker.visit(new Conjunction(irrelevant, relevant)), is(true));
+            assertThat(checker.visit(new Negation(new Disjunction(relevant, irrelevant))), is(true));
+        }
+    }
+
+    /**
+     * Tests that one checker can be used by several threads at the same time.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testConcurrentUse() throws Exception {
+        FormulaRelevancyChecker checker = new FormulaRelevancyChecker(createTestVariabilityModel(), true);
+
+        List<@NonNull Formula> formulas = new ArrayList<>();
+        List<Boolean> expected = new ArrayList<>();
+        Formula shared = makeFormula("NON_VM_VAR_1", "NON_VM_VAR_2");
+        for (int i = 0; i < 5000; i++) {
+            boolean relevant = i % 3 == 0;
+            shared = new Conjunction(shared, new Variable("NON_VM_VAR_" + i));
+            formulas.add(relevant ? new Disjunction(shared, new Variable("ALPHA")) : shared);
+            expected.add(relevant);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    boolean correct = true;
+                    for (int i = 0; i < formulas.size(); i++) {
+                        correct &= checker.visit(formulas.get(i)) == expected.get(i);
+                    }
+                    return correct;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that a missing variability model makes all formulas irrelevant, if only VM variables are considered.
+     */
+    @Test
+    public void testWithoutVariabilityModel() {
+        assertThat(new FormulaRelevancyChecker(null, true).visit(makeFormula("ALPHA", "BETA")), is(false));
+        assertThat(new FormulaRelevancyChecker(null, false).visit(makeFormula("ALPHA", "BETA")), is(true));
+    }
+
 }
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.undead_analyzer.EncodingStatistics.Encoding;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link IntCnfEncoder} (through the {@link IntSatSolver}), the {@link EncodingStatistics} and the
+ * {@link VariableIdTable}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class IntCnfEncoderTest {
+
+    private static final String[] VARIABLES = {"A", "B", "C", "D"};
+
+    /**
+     * Evaluates the formula for the given assignment.
+     * 
+     * @param formula The formula to evaluate.
+     * @param assignment The assignment; bit i is the value of {@link #VARIABLES}[i].
+     * 
+     * @return The value of the formula.
+     */
+    private static boolean evaluate(Formula formula, int assignment) {
+        boolean result;
+        if (formula instanceof True) {
+            result = true;
+        } else if (formula instanceof False) {
+            result = false;
+        } else if (formula instanceof Variable) {
+            int index = Arrays.asList(VARIABLES).indexOf(((Variable) formula).getName());
+            result = (assignment & (1 << index)) != 0;
+        } else if (formula instanceof Negation) {
+            result = !evaluate(((Negation) formula).getFormula(), assignment);
+        } else if (formula instanceof Conjunction) {
+            result = evaluate(((Conjunction) formula).getLeft(), assignment)
+                    && evaluate(((Conjunction) formula).getRight(), assignment);
+        } else {
+            result = evaluate(((Disjunction) formula).getLeft(), assignment)
+                    || evaluate(((Disjunction) formula).getRight(), assignment);
+        }
+        return result;
+    }
+
+    /**
+     * Checks by enumerating all assignments whether the formula is satisfiable together with <code>!A || B</code>.
+     * 
+     * @param formula The formula to check.
+     * 
+     * @return Whether the formula and <code>!A || B</code> are satisfiable.
+     */
+    private static boolean bruteForce(Formula formula) {
+        Formula withBase = and(or(not("A"), "B"), formula);
+        boolean sat = false;
+        for (int assignment = 0; assignment < (1 << VARIABLES.length) && !sat; assignment++) {
+            sat = evaluate(withBase, assignment);
+        }
+        return sat;
+    }
+
+    /**
+     * Creates a random formula.
+     * 
+     * @param random The random number generator.
+     * @param depth The maximum depth of the formula.
+     * 
+     * @return The random formula.
+     */
+    private static Formula randomFormula(Random random, int depth) {
+        Formula result;
+        int type = depth == 0 ? random.nextInt(3) : random.nextInt(6);
+        switch (type) {
+        case 0:
+        case 1:
+            result = new Variable(VARIABLES[random.nextInt(VARIABLES.length)]);
+            break;
+        case 2:
+            result = random.nextInt(8) == 0 ? (random.nextBoolean() ? True.INSTANCE : False.INSTANCE)
+                    : new Variable(VARIABLES[random.nextInt(VARIABLES.length)]);
+            break;
+        case 3:
+            result = new Negation(randomFormula(random, depth - 1));
+            break;
+        case 4:
+            result = new Conjunction(randomFormula(random, depth - 1), randomFormula(random, depth - 1));
+            break;
+        default:
+            result = new Disjunction(randomFormula(random, depth - 1), randomFormula(random, depth - 1));
+            break;
+        }
+        return result;
+    }
+
+    /**
+     * Creates a solver for the base CNF <code>!A || B</code>.
+     * 
+     * @param strategy The CNF strategy to use.
+     * @param statistics The statistics to record the encodings in.
+     * 
+     * @return The solver.
+     */
+    private static IntSatSolver createSolver(CnfStrategy strategy, EncodingStatistics statistics) {
+        Cnf base = new Cnf();
+        base.addRow(new CnfVariable(true, "A"), new CnfVariable("B"));
+        BinaryCnf binary = BinaryCnf.fromCnf(base);
+        return new IntSatSolver(binary, new VariableIdTable(binary, null), strategy,
+                DeadCodeFinder.DEFAULT_DISTRIBUTIVE_LIMIT, statistics);
+    }
+
+    /**
+     * Tests that the encoding is equisatisfiable to the formula for many random formulas with each strategy, using
+     * one solver for all of them.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testRandomFormulas() throws Exception {
+        for (CnfStrategy strategy : CnfStrategy.values()) {
+            EncodingStatistics statistics = new EncodingStatistics();
+            IntSatSolver solver = createSolver(strategy, statistics);
+
+            Random random = new Random(42);
+            for (int i = 0; i < 2000; i++) {
+                Formula formula = randomFormula(random, 4);
+                assertThat(strategy + ": " + formula, solver.isSatisfiable(formula), is(bruteForce(formula)));
+            }
+
+            long total = 0;
+            for (Encoding encoding : Encoding.values()) {
+                total += statistics.getNumFormulas(encoding);
+            }
+            assertThat(total, is(2000L));
+        }
+    }
+
+    /**
+     * Tests that the adaptive strategy chooses the encoding based on the shape and size of the formula.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testAdaptiveChoice() throws Exception {
+        EncodingStatistics statistics = new EncodingStatistics();
+        IntSatSolver solver = createSolver(CnfStrategy.ADAPTIVE, statistics);
+
+        // already in CNF, also after pushing the negation inwards
+        solver.isSatisfiable(and(or("A", not("B")), not(and("C", "D"))));
+        assertThat(statistics.getNumFormulas(Encoding.DIRECT), is(1L));
+        assertThat(statistics.getNumAuxiliaryVariables(), is(0L));
+
+        // small DNF: 4 clauses when multiplied out
+        solver.isSatisfiable(or(and("A", "B"), and("C", "D")));
+        assertThat(statistics.getNumFormulas(Encoding.DISTRIBUTIVE), is(1L));
+        assertThat(statistics.getNumAuxiliaryVariables(), is(0L));
+
+        // large DNF: 2^5 clauses when multiplied out
+        Formula large = and("A", "B");
+        for (int i = 0; i < 4; i++) {
+            large = or(large, and("C" + i, "D" + i));
+        }
+        solver.isSatisfiable(large);
+        assertThat(statistics.getNumFormulas(Encoding.TSEITIN), is(1L));
+        assertThat(statistics.getNumAuxiliaryVariables(), is(5L));
+
+        assertThat(statistics.getNumClauses(), is(2L + 4L + 11L));
+    }
+
+    /**
+     * Tests some special cases of the encoding.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testSpecialCases() throws Exception {
+        Cnf base = new Cnf();
+        base.addRow(new CnfVariable(true, "A"), new CnfVariable("B"));
+        IntSatSolver solver = new IntSatSolver(BinaryCnf.fromCnf(base));
+
+        assertThat(solver.isSatisfiable(True.INSTANCE), is(true));
+        assertThat(solver.isSatisfiable(False.INSTANCE), is(false));
+        assertThat(solver.isSatisfiable(not(True.INSTANCE)), is(false));
+        assertThat(solver.isSatisfiable(or(False.INSTANCE, "A")), is(true));
+        assertThat(solver.isSatisfiable(and("A", not("B"))), is(false));
+        assertThat(solver.isSatisfiable(not(or(not("A"), "B"))), is(false));
+        assertThat(solver.isSatisfiable(and("UNKNOWN", not("UNKNOWN"))), is(false));
+        assertThat(solver.isSatisfiable(new Variable("UNKNOWN")), is(true));
+        assertThat(solver.isSatisfiable(not("UNKNOWN")), is(true));
+    }
+
+    /**
+     * Tests that the {@link VariableIdTable} uses the numbers of the CNF, then the variability model, and adds
+     * further variables on demand.
+     */
+    @Test
+    public void testVariableIdTable() {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable(true, "A"), new CnfVariable("B"));
+        BinaryCnf binary = BinaryCnf.fromCnf(cnf);
+
+        Set<VariabilityVariable> variables = new HashSet<>();
+        variables.add(new VariabilityVariable("A", "bool"));
+        variables.add(new VariabilityVariable("C", "bool"));
+        VariableIdTable ids = new VariableIdTable(binary, new VariabilityModel(new File("dummy"), variables));
+
+        assertThat(ids.getNumBaseVariables(), is(2));
+        assertThat(ids.getId("A"), is(binary.getVariableNumber("A")));
+        assertThat(ids.getId("B"), is(binary.getVariableNumber("B")));
+        assertThat(ids.getId("C"), is(3));
+        assertThat(ids.size(), is(3));
+
+        assertThat(ids.getId("D"), is(4));
+        assertThat(ids.getId("D"), is(4));
+        assertThat(ids.size(), is(4));
+    }
+
+}
@@ -58,7 +58,7 @@ public class MissingVariablesFinderTest {
      * </ul>
      * .
      */
-    private static final @NonNull VariabilityModel VAR_MODEL;
+    static final @NonNull VariabilityModel VAR_MODEL;
    
     static {
         Set<@NonNull VariabilityVariable> vars = new HashSet<>();
@@ -68,6 +68,15 @@ public class MissingVariablesFinderTest {
         VAR_MODEL = new VariabilityModel(new File(""), vars);
     }
     
+    /**
+     * Returns the class of the component to test.
+     * 
+     * @return The component class.
+     */
+    protected @NonNull Class<? extends MissingVariablesFinder> getComponentClass() {
+        return MissingVariablesFinder.class;
+    }
+
     /**
      * Runs the {@link MissingVariablesFinder} component.
      * 
@@ -80,7 +89,7 @@ public class MissingVariablesFinderTest {
      * 
      * @throws SetUpException If setting up fails.
      */
-    private @NonNull List<String> run(MissingVariablesFinder.@NonNull Analysis type,
+    protected @NonNull List<String> run(MissingVariablesFinder.@NonNull Analysis type,
             @NonNull VariabilityModel varModel, @NonNull BuildModel buildModel, SourceFile<?> ... codeElements)
             throws SetUpException {
 
@@ -88,7 +97,7 @@ public class MissingVariablesFinderTest {
         config.registerSetting(MissingVariablesFinder.MISSING_TYPE);
         config.setValue(MissingVariablesFinder.MISSING_TYPE, type);
         
-        List<String> result = AnalysisComponentExecuter.executeComponent(MissingVariablesFinder.class, config,
+        List<String> result = AnalysisComponentExecuter.executeComponent(getComponentClass(), config,
                 new VariabilityModel[] {varModel}, new BuildModel[] {buildModel}, codeElements);
         
         return result;
@@ -194,4 +203,26 @@ public class MissingVariablesFinderTest {
         assertThat(result, is(Arrays.asList("CONFIG_B")));
     }
     
+    /**
+     * Tests that the used variables of several streamed source files are combined.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    public void testMultipleFiles() throws SetUpException {
+        BuildModel bm = new BuildModel();
+        bm.add(new File("a.c"), new Variable("CONFIG_A"));
+        
+        SourceFile<CodeBlock> first = new SourceFile<>(new File("a.c"));
+        first.addElement(new CodeBlock(new Variable("CONFIG_C_MODULE")));
+        SourceFile<CodeBlock> second = new SourceFile<>(new File("b.c"));
+        second.addElement(new CodeBlock(or("CONFIG_D", "CONFIG_A")));
+        SourceFile<CodeBlock> third = new SourceFile<>(new File("c.c"));
+        
+        assertThat(run(Analysis.DEFINED_BUT_NOT_USED, VAR_MODEL, bm, first, second, third),
+                is(Arrays.asList("CONFIG_B")));
+        assertThat(run(Analysis.USED_BUT_NOT_DEFINED, VAR_MODEL, bm, first, second, third),
+                is(Arrays.asList("CONFIG_D")));
+    }
+    
 }
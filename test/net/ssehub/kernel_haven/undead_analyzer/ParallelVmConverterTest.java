@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.ssehub.kernel_haven.cnf.VmToCnfConverter;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+
+/**
+ * Tests the {@link ParallelVmConverter}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class ParallelVmConverterTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Creates a variability model with the given DIMACS content.
+     * 
+     * @param dimacs The content of the constraint model.
+     * 
+     * @return The variability model.
+     * 
+     * @throws Exception If writing the file fails.
+     */
+    private VariabilityModel createVm(String dimacs) throws Exception {
+        File file = tempFolder.newFile();
+        Files.write(file.toPath(), dimacs.getBytes(StandardCharsets.UTF_8));
+        VariabilityModel vm = new VariabilityModel(file, new HashSet<>());
+        vm.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+        return vm;
+    }
+
+    /**
+     * Asserts that the parallel conversion has the same result as the sequential {@link VmToCnfConverter}.
+     * 
+     * @param vm The variability model to convert.
+     * 
+     * @throws Exception unwanted.
+     */
+    private static void assertSameAsSequential(VariabilityModel vm) throws Exception {
+        BinaryCnf expected = BinaryCnf.fromCnf(new VmToCnfConverter().convertVmToCnf(vm));
+        BinaryCnf actual = ParallelVmConverter.convert(vm);
+
+        assertThat(actual.getNumVariables(), is(expected.getNumVariables()));
+        for (int i = 1; i <= expected.getNumVariables(); i++) {
+            assertThat(actual.getVariableName(i), is(expected.getVariableName(i)));
+        }
+        assertThat(actual.toCnf(), is(expected.toCnf()));
+    }
+
+    /**
+     * Tests that a large file, which is split into many chunks, has the same result as with the sequential
+     * conversion.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testLargeFile() throws Exception {
+        Random random = new Random(7);
+        int numVariables = 5000;
+        StringBuilder dimacs = new StringBuilder();
+        for (int i = 1; i <= numVariables; i++) {
+            dimacs.append("c ").append(i).append(" CONFIG_").append(i % 4000).append('\n');
+        }
+        dimacs.append("p cnf ").append(numVariables).append(" 100000\n");
+        for (int i = 0; i < 100000; i++) {
+            int size = 1 + random.nextInt(4);
+            for (int j = 0; j < size; j++) {
+                dimacs.append(random.nextBoolean() ? "-" : "").append(1 + random.nextInt(numVariables)).append(' ');
+            }
+            dimacs.append(i % 10 == 0 ? "0\r\n" : "0\n");
+        }
+        VariabilityModel vm = createVm(dimacs.toString());
+
+        assertSameAsSequential(vm);
+
+        // the result does not depend on the parallelism
+        ForkJoinPool singlePool = new ForkJoinPool(1);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            BinaryCnf single = ParallelVmConverter.convert(vm.getConstraintModel(), singlePool);
+            BinaryCnf multi = ParallelVmConverter.convert(vm.getConstraintModel(), pool);
+            assertThat(multi.toCnf(), is(single.toCnf()));
+        } finally {
+            singlePool.shutdown();
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests a small file with empty lines and surrounding white space.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testSmallFile() throws Exception {
+        assertSameAsSequential(createVm("c 1 ALPHA\nc 2 BETA\n\nc 3 GAMMA\np cnf 3 3\n-1 2 0\n  -3 0  \n\n0\n"));
+    }
+
+    /**
+     * Tests that files that are not parsed in parallel are still converted like before.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testSequentialFallback() throws Exception {
+        // name comment after a clause
+        assertSameAsSequential(createVm("c 1 ALPHA\np cnf 2 2\n1 0\nc 2 BETA\n-1 2 0\n"));
+        // variable without name
+        assertSameAsSequential(createVm("c 1 ALPHA\np cnf 2 1\n-1 2 0\n"));
+
+        VariabilityModel unknownType = createVm("c 1 ALPHA\n1 0\n");
+        unknownType.getDescriptor().setConstraintFileType(ConstraintFileType.UNKNOWN);
+        assertSameAsSequential(unknownType);
+    }
+
+    /**
+     * Tests that a missing file is reported.
+     * 
+     * @throws Exception wanted.
+     */
+    @Test(expected = FormatException.class)
+    public void testMissingFile() throws Exception {
+        ParallelVmConverter.convert(new File(tempFolder.getRoot(), "missing.dimacs"), ForkJoinPool.commonPool());
+    }
+
+}
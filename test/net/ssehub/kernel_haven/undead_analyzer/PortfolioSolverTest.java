@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link PortfolioSolver} and the cancellation of the {@link IntSatSolver}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class PortfolioSolverTest {
+
+    /**
+     * Creates a pigeonhole CNF: <code>pigeons</code> pigeons in one hole less. Each clause also contains the variable
+     * <code>X</code>, so that the CNF is hard to solve under <code>!X</code>, and trivial under <code>X</code>.
+     * 
+     * @param pigeons The number of pigeons.
+     * 
+     * @return The CNF.
+     */
+    static BinaryCnf createPigeonhole(int pigeons) {
+        int holes = pigeons - 1;
+        Cnf cnf = new Cnf();
+        for (int p = 0; p < pigeons; p++) {
+            CnfVariable[] row = new CnfVariable[holes + 1];
+            for (int h = 0; h < holes; h++) {
+                row[h] = new CnfVariable("P" + p + "H" + h);
+            }
+            row[holes] = new CnfVariable("X");
+            cnf.addRow(row);
+        }
+        for (int h = 0; h < holes; h++) {
+            for (int p = 0; p < pigeons; p++) {
+                for (int q = p + 1; q < pigeons; q++) {
+                    cnf.addRow(new CnfVariable(true, "P" + p + "H" + h), new CnfVariable(true, "P" + q + "H" + h),
+                            new CnfVariable("X"));
+                }
+            }
+        }
+        return BinaryCnf.fromCnf(cnf);
+    }
+
+    /**
+     * Tests that queries that reach the conflict limit are answered by the portfolio, and that the portfolio can
+     * be used for several races.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testHardQueries() throws Exception {
+        BinaryCnf base = createPigeonhole(8);
+        VariableIdTable ids = new VariableIdTable(base, null);
+        EncodingStatistics statistics = new EncodingStatistics();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            IntSatSolver primary = new IntSatSolver(base, ids, CnfStrategy.ADAPTIVE, 16, statistics);
+            primary.setConflictLimit(10);
+            PortfolioSolver portfolio = new PortfolioSolver(base, ids, CnfStrategy.ADAPTIVE, 16, statistics,
+                    executor);
+
+            assertThat(primary.trySatisfiable(not("X")), nullValue());
+            assertThat(primary.trySatisfiable(new Variable("X")), is(true));
+
+            for (int i = 0; i < 3; i++) {
+                assertThat(portfolio.isSatisfiable(not("X")), is(false));
+                assertThat(portfolio.isSatisfiable(new Variable("X")), is(true));
+                assertThat(portfolio.isSatisfiable(and("X", "P0H0")), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that a running query can be cancelled from another thread, and that the solver answers later queries.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testCancel() throws Exception {
+        IntSatSolver solver = new IntSatSolver(createPigeonhole(12));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> future = executor.submit(() -> solver.trySatisfiable(not("X")));
+            Thread.sleep(200);
+            while (!future.isDone()) {
+                solver.cancel();
+                Thread.sleep(10);
+            }
+            assertThat(future.get(), nullValue());
+
+            // still cancelled
+            assertThat(solver.trySatisfiable(new Variable("X")), nullValue());
+
+            solver.resetCancelled();
+            assertThat(solver.trySatisfiable(new Variable("X")), is(true));
+            assertThat(solver.trySatisfiable(and("X", not("P0H0"))), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.test_utils.TestAnalysisComponentProvider;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DeadCodeBlock;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.DetailedDeadCodeBlock;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.Reason;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link ShardedDeadCodeFinder} and the {@link DeadCodeShardWorker}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class ShardedDeadCodeFinderTest {
+
+    private static final File TESTDATA_DIR = new File(AllTests.TESTDATA_DIR, "deadCodeAnalysis");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Creates the variability model for the analyses.
+     * Variability Model:
+     * <pre><code>
+     * NOT(ALPHA) OR BETA
+     * NOT(GAMMA)
+     * </code></pre>
+     * 
+     * @return The variability model.
+     */
+    private static @NonNull VariabilityModel createVm() {
+        Set<VariabilityVariable> variables = new HashSet<>();
+        variables.add(new VariabilityVariable("ALPHA", "bool", 1));
+        variables.add(new VariabilityVariable("BETA", "bool", 2));
+        variables.add(new VariabilityVariable("GAMMA", "bool", 3));
+        VariabilityModel vm = new VariabilityModel(new File(TESTDATA_DIR, "varModel.cnf"), variables);
+        vm.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+        return vm;
+    }
+
+    /**
+     * Tests that a source file with nested elements is restored from a shard input record.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testSourceFileRoundTrip() throws Exception {
+        File path = new File("dir/file.c");
+        SourceFile<CodeBlock> sourceFile = new SourceFile<>(path);
+        CodeBlock outer = new CodeBlock(1, 10, path, new Variable("A"), new Variable("A"));
+        outer.addNestedElement(new CodeBlock(2, 4, path, new Variable("B"), and("A", "B")));
+        outer.addNestedElement(new CodeBlock(5, 7, path, not("B"), and("A", not("B"))));
+        sourceFile.addElement(outer);
+        sourceFile.addElement(new CodeBlock(12, 13, path, new Variable("C"), new Variable("C")));
+
+        StringWriter out = new StringWriter();
+        DeadCodeShardWorker.writeSourceFile(out, sourceFile, new Variable("FILE"));
+
+        BuildModel bm = new BuildModel();
+        BufferedReader in = new BufferedReader(new StringReader(out.toString()));
+        SourceFile<CodeBlock> read = DeadCodeShardWorker.readSourceFile(in, bm, true);
+        assertThat(DeadCodeShardWorker.readSourceFile(in, bm, true), nullValue());
+
+        assertThat(read.getPath(), is(path));
+        assertThat(bm.getPc(path), is(new Variable("FILE")));
+        assertThat(read.getTopElementCount(), is(2));
+        CodeBlock readOuter = read.getElement(0);
+        assertThat(readOuter.getLineStart(), is(1));
+        assertThat(readOuter.getNestedElementCount(), is(2));
+        assertThat(readOuter.getNestedElement(1).getLineStart(), is(5));
+        assertThat(readOuter.getNestedElement(1).getCondition(), is(not("B")));
+        assertThat(readOuter.getNestedElement(1).getPresenceCondition(), is(and("A", not("B"))));
+        assertThat(read.getElement(1).getLineEnd(), is(13));
+    }
+
+    /**
+     * Tests that the shard of a file only depends on its path.
+     */
+    @Test
+    public void testGetShard() {
+        int shard = ShardedDeadCodeFinder.getShard(new File("dir/file.c"), 7);
+        assertThat(shard >= 0 && shard < 7, is(true));
+        assertThat(ShardedDeadCodeFinder.getShard(new File("dir/file.c"), 7), is(shard));
+        assertThat(ShardedDeadCodeFinder.getShard(new File("dir/file.c"), 1), is(0));
+    }
+
+    /**
+     * Tests that an invalid number of shards throws an exception.
+     * 
+     * @throws SetUpException wanted.
+     */
+    @Test(expected = SetUpException.class)
+    public void testInvalidNumberOfShards() throws SetUpException {
+        TestConfiguration config = new TestConfiguration(new Properties());
+        config.registerSetting(ShardedDeadCodeFinder.NUMBER_OF_SHARDS);
+        config.setValue(ShardedDeadCodeFinder.NUMBER_OF_SHARDS, 0);
+
+        new ShardedDeadCodeFinder(config, null, null, null);
+    }
+
+    /**
+     * Runs an analysis with two worker processes and checks that the merged result is in the order of the code model.
+     * Variability Model:
+     * <pre><code>
+     * NOT(ALPHA) OR BETA
+     * NOT(GAMMA)
+     * </code></pre>
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test(timeout = 60000)
+    public void testShardedAnalysis() throws Exception {
+        TestConfiguration config = new TestConfiguration(new Properties());
+        config.registerSetting(DeadCodeFinder.DETAILED_SETTING);
+        config.registerSetting(ShardedDeadCodeFinder.NUMBER_OF_SHARDS);
+        config.setValue(ShardedDeadCodeFinder.NUMBER_OF_SHARDS, 2);
+
+        VariabilityModel vm = createVm();
+
+        BuildModel bm = new BuildModel();
+        List<@NonNull SourceFile<?>> sourceFiles = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            File path = new File("file" + i + ".c");
+            bm.add(path, new Variable("ALPHA"));
+
+            SourceFile<CodeBlock> sourceFile = new SourceFile<>(path);
+            sourceFile.addElement(new CodeBlock(1, 2, path, new Variable("BETA"), new Variable("BETA")));
+            CodeBlock outer = new CodeBlock(3, 10, path, not("BETA"), not("BETA"));
+            outer.addNestedElement(new CodeBlock(4, 5, path, new Variable("GAMMA"), and(not("BETA"), "GAMMA")));
+            sourceFile.addElement(outer);
+            sourceFile.addElement(new CodeBlock(11, 12, path, new Variable("GAMMA"), new Variable("GAMMA")));
+            sourceFiles.add(sourceFile);
+        }
+
+        ShardedDeadCodeFinder finder = new ShardedDeadCodeFinder(config, new TestAnalysisComponentProvider<>(vm),
+                new TestAnalysisComponentProvider<>(bm), new TestAnalysisComponentProvider<>(sourceFiles));
+
+        for (int i = 0; i < 8; i++) {
+            for (int line : new int[] {3, 4, 11}) {
+                DeadCodeBlock block = finder.getNextResult();
+                assertThat(block.getSourceFile(), is(new File("file" + i + ".c")));
+                assertThat(block.getStartLine(), is(line));
+            }
+        }
+        assertThat(finder.getNextResult(), nullValue());
+    }
+
+    /**
+     * Tests that the workers find the same undead blocks as the in-process analysis. In particular, unconditional
+     * nested blocks are skipped, even if their presence condition is not equal to the one of their parent.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test(timeout = 60000)
+    public void testUndeadSameAsInProcess() throws Exception {
+        File path = new File("file.c");
+        BuildModel bm = new BuildModel();
+        bm.add(path, new Variable("ALPHA"));
+
+        SourceFile<CodeBlock> sourceFile = new SourceFile<>(path);
+        CodeBlock outer = new CodeBlock(1, 8, path, new Variable("BETA"), new Variable("BETA"));
+        outer.addNestedElement(new CodeBlock(2, 3, path, True.INSTANCE, and("BETA", True.INSTANCE)));
+        outer.addNestedElement(new CodeBlock(4, 5, path, not("GAMMA"), and("BETA", not("GAMMA"))));
+        outer.addNestedElement(new CodeBlock(6, 7, path, new Variable("GAMMA"), and("BETA", "GAMMA")));
+        sourceFile.addElement(outer);
+        List<@NonNull SourceFile<?>> sourceFiles = new ArrayList<>();
+        sourceFiles.add(sourceFile);
+
+        TestConfiguration config = new TestConfiguration(new Properties());
+        config.registerSetting(DeadCodeFinder.DETAILED_SETTING);
+        config.setValue(DeadCodeFinder.DETAILED_SETTING, true);
+        config.registerSetting(DeadCodeFinder.UNDEAD_SETTING);
+        config.setValue(DeadCodeFinder.UNDEAD_SETTING, true);
+        config.registerSetting(ShardedDeadCodeFinder.NUMBER_OF_SHARDS);
+        config.setValue(ShardedDeadCodeFinder.NUMBER_OF_SHARDS, 1);
+
+        DeadCodeFinder inProcess = new DeadCodeFinder(config, new TestAnalysisComponentProvider<>(createVm()),
+                new TestAnalysisComponentProvider<>(bm), new TestAnalysisComponentProvider<>(sourceFiles));
+        List<@NonNull String> expected = new ArrayList<>();
+        DeadCodeBlock block;
+        while ((block = inProcess.getNextResult()) != null) {
+            expected.add(block.getStartLine() + " " + ((DetailedDeadCodeBlock) block).getReason());
+        }
+
+        ShardedDeadCodeFinder sharded = new ShardedDeadCodeFinder(config,
+                new TestAnalysisComponentProvider<>(createVm()), new TestAnalysisComponentProvider<>(bm),
+                new TestAnalysisComponentProvider<>(sourceFiles));
+        List<@NonNull String> actual = new ArrayList<>();
+        while ((block = sharded.getNextResult()) != null) {
+            actual.add(block.getStartLine() + " " + ((DetailedDeadCodeBlock) block).getReason());
+        }
+
+        assertThat(expected.contains("2 " + Reason.CPP_UNDEAD), is(false));
+        assertThat(expected.contains("4 " + Reason.CPP_AND_VM_UNDEAD), is(true));
+        assertThat(actual, is(expected));
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.undead_analyzer.DeadCodeFinder.CnfStrategy;
+import net.ssehub.kernel_haven.undead_analyzer.SlowQueryLog.Query;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link SlowQueryLog}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class SlowQueryLogTest {
+
+    private static final File FILE = new File("file1.c");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Counts the clauses of a DIMACS file and checks them against its header.
+     * 
+     * @param file The DIMACS file.
+     * 
+     * @return The number of clauses.
+     * 
+     * @throws IOException unwanted.
+     */
+    private static int countClauses(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        int numClauses = 0;
+        int header = -1;
+        for (String line : lines) {
+            if (line.startsWith("p cnf ")) {
+                header = Integer.parseInt(line.split(" ")[3]);
+            } else if (!line.startsWith("c ")) {
+                assertThat(line.endsWith(" 0"), is(true));
+                numClauses++;
+            }
+        }
+        assertThat(numClauses, is(header));
+        return numClauses;
+    }
+
+    /**
+     * Tests that only the slowest queries are kept and written.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testKeepsSlowest() throws Exception {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable("A"), new CnfVariable("B"));
+        cnf.addRow(new CnfVariable(true, "A"), new CnfVariable("C"));
+        BinaryCnf vm = BinaryCnf.fromCnf(cnf);
+        File dir = new File(tempFolder.getRoot(), "queries");
+
+        SlowQueryLog log = new SlowQueryLog(1000000, 2, dir, true, vm, new VariableIdTable(vm, null),
+                CnfStrategy.ADAPTIVE, 16);
+        assertThat(log.isSlow(999999), is(false));
+        assertThat(log.isSlow(1000000), is(true));
+
+        log.record(FILE, 3, and("A", "D"), true, 2, 5000000);
+        log.record(FILE, 7, new Variable("B"), true, 1, 1000000);
+        log.record(FILE, 9, and("A", not("D")), false, 2, 9000000);
+        log.record(FILE, 11, new Variable("C"), true, 1, 2000000);
+
+        assertThat(log.getNumSlowQueries(), is(4));
+        List<Query> queries = log.getQueries();
+        assertThat(queries.size(), is(2));
+        assertThat(queries.get(0).getLine(), is(9));
+        assertThat(queries.get(0).isWithVm(), is(false));
+        assertThat(queries.get(1).getLine(), is(3));
+        assertThat(queries.get(1).getSourceFile(), is(FILE));
+
+        // the files of the queries that were pushed out are deleted again
+        assertThat(dir.list().length, is(2));
+        int withVm = countClauses(queries.get(1).getDimacsFile());
+        int withoutVm = countClauses(queries.get(0).getDimacsFile());
+        assertThat(withVm, is(withoutVm + 2));
+        assertThat(Files.readAllLines(queries.get(1).getDimacsFile().toPath()).get(0), is("c file file1.c line 3"));
+
+        String[] table = log.toTable();
+        assertThat(table.length, is(4));
+        assertThat(table[2].contains("file1.c:9"), is(true));
+    }
+
+    /**
+     * Tests that queries recorded by several threads at the same time leave exactly the files of the kept queries.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test(timeout = 60000)
+    public void testConcurrentRecords() throws Exception {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable("A"), new CnfVariable("B"));
+        BinaryCnf vm = BinaryCnf.fromCnf(cnf);
+        File dir = new File(tempFolder.getRoot(), "queries");
+        SlowQueryLog log = new SlowQueryLog(1, 3, dir, true, vm, new VariableIdTable(vm, null),
+                CnfStrategy.ADAPTIVE, 16);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    log.record(FILE, i, and("A", "X" + i), true, 1, 1 + i * threads.length + offset);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(log.getNumSlowQueries(), is(200));
+        Set<String> expected = new HashSet<>();
+        for (Query query : log.getQueries()) {
+            expected.add(query.getDimacsFile().getName());
+        }
+        assertThat(expected.size(), is(3));
+        assertThat(new HashSet<>(Arrays.asList(dir.list())), is(expected));
+    }
+
+    /**
+     * Tests that the {@link DeadCodeContext} records its queries with their source lines.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testContext() throws Exception {
+        Set<VariabilityVariable> variables = new HashSet<>();
+        variables.add(new VariabilityVariable("ALPHA", "bool", 1));
+        variables.add(new VariabilityVariable("BETA", "bool", 2));
+        variables.add(new VariabilityVariable("GAMMA", "bool", 3));
+        VariabilityModel vm = new VariabilityModel(new File(AllTests.TESTDATA_DIR, "deadCodeAnalysis/varModel.cnf"),
+                variables);
+        vm.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+
+        BuildModel bm = new BuildModel();
+        bm.add(FILE, new Variable("ALPHA"));
+        DeadCodeContext context = new DeadCodeContext(vm, bm, false, false);
+        File dir = tempFolder.newFolder();
+        // all queries reach a threshold of 0 ms
+        context.setSlowQueryLog(0, 10, dir, false);
+
+        SourceFile<CodeBlock> sourceFile = new SourceFile<>(FILE);
+        sourceFile.addElement(new CodeBlock(1, 2, FILE, new Variable("BETA"), new Variable("BETA")));
+        sourceFile.addElement(new CodeBlock(3, 4, FILE, not("BETA"), not("BETA")));
+        assertThat(context.getSlowQueryLog(), nullValue());
+        context.analyze(sourceFile);
+
+        List<Query> queries = context.getSlowQueryLog().getQueries();
+        assertThat(queries.size(), is(2));
+        Set<Integer> lines = new HashSet<>();
+        for (Query query : queries) {
+            lines.add(query.getLine());
+            assertThat(query.getSourceFile(), is(FILE));
+            assertThat(query.isWithVm(), is(true));
+            // without the variability model, only the query and its activation literal are written
+            assertThat(countClauses(query.getDimacsFile()), is(query.getNumClauses() + 1));
+        }
+        assertThat(lines.contains(1), is(true));
+        assertThat(lines.contains(3), is(true));
+    }
+
+}
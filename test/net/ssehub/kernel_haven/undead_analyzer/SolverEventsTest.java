@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link SolverEvents}. The Flight Recorder API is used reflectively, like in the class under test, so
+ * that this compiles with Java 8.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class SolverEventsTest {
+
+    private static final File FILE = new File("file1.c");
+
+    private static final String QUERY_EVENT = "net.ssehub.kernel_haven.undead_analyzer.SatQuery";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Tests that no events are started if no recording is running.
+     */
+    @Test
+    public void testDisabledWithoutRecording() {
+        assertThat(SolverEvents.beginQuery(), nullValue());
+        assertThat(SolverEvents.beginVmConversion(), nullValue());
+    }
+
+    /**
+     * Tests {@link SolverEvents#getSize(net.ssehub.kernel_haven.util.logic.Formula)}.
+     */
+    @Test
+    public void testGetSize() {
+        assertThat(SolverEvents.getSize(new Variable("A")), is(1));
+        assertThat(SolverEvents.getSize(and("A", not("B"))), is(4));
+        assertThat(SolverEvents.getSize(or(and("A", "B"), "C")), is(5));
+    }
+
+    /**
+     * Tests that the solved queries of an analysis are recorded as events, with the file, the formula size, the
+     * number of clauses and the verdict.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testQueryEventsRecorded() throws Exception {
+        Class<?> recordingClass;
+        try {
+            recordingClass = Class.forName("jdk.jfr.Recording");
+        } catch (ClassNotFoundException e) {
+            recordingClass = null;
+        }
+        assumeTrue(recordingClass != null);
+
+        Set<VariabilityVariable> variables = new HashSet<>();
+        variables.add(new VariabilityVariable("ALPHA", "bool", 1));
+        variables.add(new VariabilityVariable("BETA", "bool", 2));
+        variables.add(new VariabilityVariable("GAMMA", "bool", 3));
+        VariabilityModel vm = new VariabilityModel(new File(AllTests.TESTDATA_DIR, "deadCodeAnalysis/varModel.cnf"),
+                variables);
+        vm.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+        BuildModel bm = new BuildModel();
+        bm.add(FILE, new Variable("ALPHA"));
+        DeadCodeContext context = new DeadCodeContext(vm, bm, false, false);
+
+        SourceFile<CodeBlock> sourceFile = new SourceFile<>(FILE);
+        sourceFile.addElement(new CodeBlock(new Variable("BETA")));
+        sourceFile.addElement(new CodeBlock(not("BETA")));
+
+        Object recording = recordingClass.getConstructor().newInstance();
+        recordingClass.getMethod("enable", String.class).invoke(recording, QUERY_EVENT);
+        recordingClass.getMethod("start").invoke(recording);
+        try {
+            context.analyze(sourceFile);
+        } finally {
+            recordingClass.getMethod("stop").invoke(recording);
+        }
+        Path dump = new File(tempFolder.getRoot(), "recording.jfr").toPath();
+        recordingClass.getMethod("dump", Path.class).invoke(recording, dump);
+        recordingClass.getMethod("close").invoke(recording);
+
+        List<Object> events = new ArrayList<>();
+        Class<?> recordedEventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+        for (Object event : (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", Path.class).invoke(null, dump)) {
+            Object type = recordedEventClass.getMethod("getEventType").invoke(event);
+            if (QUERY_EVENT.equals(type.getClass().getMethod("getName").invoke(type))) {
+                events.add(event);
+            }
+        }
+
+        assertThat(events.size(), is(2));
+        List<Boolean> verdicts = new ArrayList<>();
+        for (Object event : events) {
+            assertThat(recordedEventClass.getMethod("getString", String.class).invoke(event, "file"),
+                    is(FILE.getPath()));
+            // pc AND filePc
+            int formulaSize = (int) recordedEventClass.getMethod("getInt", String.class).invoke(event, "formulaSize");
+            assertThat(formulaSize == 3 || formulaSize == 4, is(true));
+            assertThat((int) recordedEventClass.getMethod("getInt", String.class).invoke(event, "clauses") > 0,
+                    is(true));
+            assertThat(recordedEventClass.getMethod("getBoolean", String.class).invoke(event, "withVm"), is(true));
+            verdicts.add((Boolean) recordedEventClass.getMethod("getBoolean", String.class)
+                    .invoke(event, "satisfiable"));
+        }
+        assertThat(verdicts.contains(true) && verdicts.contains(false), is(true));
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * A stub of an external DIMACS solver for the tests of the {@link ExternalSolver}, which runs Sat4j in a separate
+ * process. It reads plain DIMACS CNF (<code>p cnf</code>) and answers once its input ends, or the incremental iCNF
+ * format (<code>p inccnf</code>) and answers each assumption line <code>a &lt;literals&gt; 0</code> immediately.
+ * <p>
+ * Options: <code>--exit-code-only</code> answers plain DIMACS CNF only with the exit code 10 or 20, without a result
+ * line. <code>--verbose</code> prints a comment line for each clause that is read.
+ * </p>
+ * 
+ * @author Adam
+ */
+public class StubDimacsSolver {
+
+    /**
+     * Don't allow any instances.
+     */
+    private StubDimacsSolver() {
+    }
+
+    /**
+     * Reads the literals of a clause or assumption line.
+     * 
+     * @param tokens The tokens of the line.
+     * @param start The index of the first literal.
+     * @param literals The vector to fill; cleared first.
+     * 
+     * @return The largest variable of the line.
+     */
+    private static int readLiterals(String[] tokens, int start, VecInt literals) {
+        literals.clear();
+        int maxVariable = 0;
+        for (int i = start; i < tokens.length; i++) {
+            int literal = Integer.parseInt(tokens[i]);
+            if (literal == 0) {
+                break;
+            }
+            literals.push(literal);
+            maxVariable = Math.max(maxVariable, Math.abs(literal));
+        }
+        return maxVariable;
+    }
+
+    /**
+     * Main method of the stub solver.
+     * 
+     * @param args The options.
+     * 
+     * @throws IOException If reading the input fails.
+     * @throws TimeoutException Can't happen, since there is no timeout.
+     */
+    public static void main(String[] args) throws IOException, TimeoutException {
+        boolean exitCodeOnly = Arrays.asList(args).contains("--exit-code-only");
+        boolean verbose = Arrays.asList(args).contains("--verbose");
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII));
+        ISolver solver = SolverFactory.newDefault();
+        VecInt literals = new VecInt();
+        int numVariables = 0;
+        boolean contradiction = false;
+        boolean incremental = false;
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith("p ")) {
+                incremental = line.contains("inccnf");
+                System.out.println("c stub solver");
+
+            } else if (!line.isEmpty() && !line.startsWith("c")) {
+                boolean assumption = line.startsWith("a ");
+                String[] tokens = line.split("\\s+");
+                int maxVariable = readLiterals(tokens, assumption ? 1 : 0, literals);
+                if (maxVariable > numVariables) {
+                    numVariables = maxVariable;
+                    solver.newVar(numVariables);
+                }
+
+                if (assumption) {
+                    boolean sat = !contradiction && solver.isSatisfiable(literals);
+                    System.out.println(sat ? "s SATISFIABLE" : "s UNSATISFIABLE");
+                    System.out.flush();
+                } else {
+                    if (verbose) {
+                        System.out.println("c read clause " + literals);
+                    }
+                    try {
+                        solver.addClause(literals);
+                    } catch (ContradictionException e) {
+                        contradiction = true;
+                    }
+                }
+            }
+        }
+
+        if (!incremental) {
+            boolean sat = !contradiction && solver.isSatisfiable();
+            if (!exitCodeOnly) {
+                System.out.println(sat ? "s SATISFIABLE" : "s UNSATISFIABLE");
+            }
+            System.out.flush();
+            System.exit(sat ? 10 : 20);
+        }
+    }
+
+}
@@ -28,7 +28,6 @@ import net.ssehub.kernel_haven.analysis.AnalysisComponent;
 import net.ssehub.kernel_haven.build_model.BuildModel;
 import net.ssehub.kernel_haven.code_model.CodeElement;
 import net.ssehub.kernel_haven.code_model.SourceFile;
-import net.ssehub.kernel_haven.config.DefaultSettings;
 import net.ssehub.kernel_haven.test_utils.TestAnalysisComponentProvider;
 import net.ssehub.kernel_haven.test_utils.TestConfiguration;
 import net.ssehub.kernel_haven.util.logic.Formula;
@@ -45,21 +44,8 @@ import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
 public class ThreadedDeadCodeFinderTest extends DeadCodeFinderTest {
 
     @Override
-    @SuppressWarnings("null")
-    public DeadCodeFinder createComponent(CodeElement<?> element, @NonNull Formula filePc, boolean considerVmVarsOnly,
-            boolean detailedAnalysis) throws SetUpException {
-        // Generate configuration
-        @NonNull TestConfiguration tConfig = null;
-        Properties config = new Properties();
-        try {
-            tConfig = new TestConfiguration(config);
-        } catch (SetUpException e) {
-            Assert.fail("Could not generate test configuration: " + e.getMessage());
-        }
-        tConfig.setValue(DefaultSettings.ANALYSIS_USE_VARMODEL_VARIABLES_ONLY, considerVmVarsOnly);
-        tConfig.registerSetting(DeadCodeFinder.DETAILED_SETTING);
-        tConfig.setValue(DeadCodeFinder.DETAILED_SETTING, detailedAnalysis);
-        
+    public DeadCodeFinder createComponent(@NonNull TestConfiguration tConfig, CodeElement<?> element,
+            @NonNull Formula filePc) throws SetUpException {
         // Load variability model
         Set<VariabilityVariable> variables = new HashSet<>();
         VariabilityVariable alpha = new VariabilityVariable("ALPHA", "bool", 1);
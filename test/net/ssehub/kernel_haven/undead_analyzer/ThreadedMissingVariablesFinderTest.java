@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.undead_analyzer.MissingVariablesFinder.Analysis;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Tests the {@link ThreadedMissingVariablesFinder}.
+ * 
+ * @author Adam
+ */
+public class ThreadedMissingVariablesFinderTest extends MissingVariablesFinderTest {
+
+    @Override
+    protected @NonNull Class<? extends MissingVariablesFinder> getComponentClass() {
+        return ThreadedMissingVariablesFinder.class;
+    }
+
+    /**
+     * Tests that many files give the same results as the sequential {@link MissingVariablesFinder}.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    @SuppressWarnings("null")
+    public void testSameAsSequential() throws SetUpException {
+        Random random = new Random(42);
+        BuildModel bm = new BuildModel();
+        List<@NonNull SourceFile<?>> files = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            File path = new File("file" + i + ".c");
+            bm.add(path, new Variable("CONFIG_" + (char) ('A' + random.nextInt(26))));
+
+            SourceFile<CodeBlock> file = new SourceFile<>(path);
+            for (int j = 0; j < 5; j++) {
+                CodeBlock block = new CodeBlock(createFormula(random));
+                block.addNestedElement(new CodeBlock(createFormula(random)));
+                file.addElement(block);
+            }
+            files.add(file);
+        }
+        SourceFile<?>[] fileArray = files.toArray(new SourceFile<?>[files.size()]);
+
+        for (Analysis type : Analysis.values()) {
+            Set<String> threaded = new HashSet<>(run(type, VAR_MODEL, bm, fileArray));
+
+            TestConfiguration config = new TestConfiguration(new Properties());
+            config.registerSetting(MissingVariablesFinder.MISSING_TYPE);
+            config.setValue(MissingVariablesFinder.MISSING_TYPE, type);
+            MissingVariablesFinder sequential = new MissingVariablesFinder(config, null, null, null);
+            Set<String> expected = new HashSet<>(type == Analysis.DEFINED_BUT_NOT_USED
+                    ? sequential.definedButUnused(VAR_MODEL, bm, files)
+                    : sequential.usedButNotDefined(VAR_MODEL, bm, files));
+
+            assertThat(threaded, is(expected));
+        }
+    }
+
+    /**
+     * Creates a random formula with some CONFIG_ variables.
+     * 
+     * @param random The random source.
+     * 
+     * @return A formula.
+     */
+    private static @NonNull Formula createFormula(@NonNull Random random) {
+        Formula result = new Variable("CONFIG_X" + random.nextInt(2000));
+        for (int i = random.nextInt(4); i > 0; i--) {
+            Formula other = new Variable((random.nextBoolean() ? "CONFIG_" : "OTHER_") + random.nextInt(2000)
+                    + (random.nextInt(5) == 0 ? "_MODULE" : ""));
+            result = new Conjunction(result, random.nextBoolean() ? other : new Negation(other));
+        }
+        return result;
+    }
+
+    /**
+     * Tests that setting an invalid number of threads throws an exception.
+     * 
+     * @throws SetUpException wanted.
+     */
+    @Test(expected = SetUpException.class)
+    @SuppressWarnings("null")
+    public void testInvalidNumberOfThreads() throws SetUpException {
+        TestConfiguration config = new TestConfiguration(new Properties());
+        config.registerSetting(ThreadedMissingVariablesFinder.NUMBER_OF_OF_THREADS);
+        config.setValue(ThreadedMissingVariablesFinder.NUMBER_OF_OF_THREADS, 0);
+
+        new ThreadedMissingVariablesFinder(config, null, null, null);
+    }
+
+}
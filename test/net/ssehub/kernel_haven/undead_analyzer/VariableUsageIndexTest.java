@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.undead_analyzer;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.test_utils.AnalysisComponentExecuter;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.undead_analyzer.MissingVariablesFinder.Analysis;
+import net.ssehub.kernel_haven.undead_analyzer.VariableUsageIndex.Usage;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * Tests the {@link VariableUsageIndex}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class VariableUsageIndexTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Creates a code block with a condition.
+     * 
+     * @param line The start line.
+     * @param condition The condition of the block.
+     * @param parentPc The presence condition of the parent; <code>null</code> if the block is on the top level.
+     * 
+     * @return The block.
+     */
+    private static @NonNull CodeBlock block(int line, @NonNull Formula condition, Formula parentPc) {
+        return new CodeBlock(line, line + 1, new File("unused"), condition,
+                parentPc == null ? condition : and(parentPc, condition));
+    }
+
+    /**
+     * Creates the test files.
+     * 
+     * @return The source files.
+     */
+    private static @NonNull SourceFile<?> @NonNull [] createFiles() {
+        CodeBlock outer = block(3, or("CONFIG_A", "CONFIG_E"), null);
+        outer.addNestedElement(block(5, and("CONFIG_D", not("CONFIG_A")), outer.getPresenceCondition()));
+        SourceFile<CodeBlock> first = new SourceFile<>(new File("dir/b.c"));
+        first.addElement(outer);
+        first.addElement(block(10, new Variable("OTHER"), null));
+
+        SourceFile<CodeBlock> second = new SourceFile<>(new File("a.c"));
+        second.addElement(new CodeBlock(new Variable("CONFIG_D")));
+        second.addElement(block(7, new Variable("CONFIG_C_MODULE"), null));
+
+        return new SourceFile<?>[] {first, second};
+    }
+
+    /**
+     * Runs the given missing variables component with an index file.
+     * 
+     * @param component The component class.
+     * @param threads The number of threads.
+     * @param indexFile The file to write the index to.
+     * 
+     * @throws SetUpException unwanted.
+     */
+    private static <T> void run(@NonNull Class<? extends AnalysisComponent<T>> component, int threads,
+            @NonNull File indexFile) throws SetUpException {
+
+        BuildModel bm = new BuildModel();
+        bm.add(new File("a.c"), new Variable("CONFIG_B"));
+        bm.add(new File("dir/b.c"), and("CONFIG_A", "NOT_CONFIG"));
+
+        TestConfiguration config = new TestConfiguration(new Properties());
+        config.registerSetting(MissingVariablesFinder.MISSING_TYPE);
+        config.setValue(MissingVariablesFinder.MISSING_TYPE, Analysis.DEFINED_BUT_NOT_USED);
+        config.registerSetting(MissingVariablesFinder.USAGE_INDEX_SETTING);
+        config.setValue(MissingVariablesFinder.USAGE_INDEX_SETTING, indexFile);
+        config.registerSetting(ThreadedMissingVariablesFinder.NUMBER_OF_OF_THREADS);
+        config.setValue(ThreadedMissingVariablesFinder.NUMBER_OF_OF_THREADS, threads);
+
+        AnalysisComponentExecuter.executeComponent(component, config,
+                new VariabilityModel[] {MissingVariablesFinderTest.VAR_MODEL}, new BuildModel[] {bm}, createFiles());
+    }
+
+    /**
+     * Converts the usages to strings.
+     * 
+     * @param usages The usages.
+     * 
+     * @return The usages as <code>file:line</code> strings.
+     */
+    private static @NonNull List<String> toStrings(@NonNull List<@NonNull Usage> usages) {
+        List<String> result = new ArrayList<>();
+        for (Usage usage : usages) {
+            result.add(usage.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Tests that the index written by the {@link MissingVariablesFinder} contains the usages of the variables.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testQueries() throws Exception {
+        File indexFile = tempFolder.newFile();
+        run(MissingVariablesFinder.class, 1, indexFile);
+
+        VariableUsageIndex index = VariableUsageIndex.map(indexFile);
+        assertThat(index.getVariables(), is(Arrays.asList("CONFIG_A", "CONFIG_B", "CONFIG_C_MODULE", "CONFIG_D",
+                "CONFIG_E")));
+
+        String b = new File("dir/b.c").getPath();
+        assertThat(toStrings(index.getUsages("CONFIG_A")), is(Arrays.asList(b + ":0", b + ":3", b + ":5")));
+        assertThat(toStrings(index.getUsages("CONFIG_B")), is(Arrays.asList("a.c:0")));
+        assertThat(toStrings(index.getUsages("CONFIG_C_MODULE")), is(Arrays.asList("a.c:7")));
+        assertThat(toStrings(index.getUsages("CONFIG_D")), is(Arrays.asList("a.c:-1", b + ":5")));
+        assertThat(toStrings(index.getUsages("CONFIG_E")), is(Arrays.asList(b + ":3")));
+        assertThat(index.getUsages("OTHER").isEmpty(), is(true));
+        assertThat(index.getUsages("CONFIG_UNKNOWN").isEmpty(), is(true));
+    }
+
+    /**
+     * Tests that the threaded and combined analyses write the same index as the sequential one.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testSameIndexWithThreads() throws Exception {
+        File sequential = tempFolder.newFile();
+        run(MissingVariablesFinder.class, 1, sequential);
+        byte[] expected = Files.readAllBytes(sequential.toPath());
+
+        File threaded = tempFolder.newFile();
+        run(ThreadedMissingVariablesFinder.class, 3, threaded);
+        assertThat(Arrays.equals(Files.readAllBytes(threaded.toPath()), expected), is(true));
+
+        File combined = tempFolder.newFile();
+        run(CombinedMissingVariablesFinder.class, 3, combined);
+        assertThat(Arrays.equals(Files.readAllBytes(combined.toPath()), expected), is(true));
+    }
+
+    /**
+     * Tests that an invalid file is rejected.
+     * 
+     * @throws IOException wanted.
+     * @throws FormatException wanted.
+     */
+    @Test(expected = FormatException.class)
+    public void testInvalidFile() throws IOException, FormatException {
+        File file = tempFolder.newFile();
+        Files.write(file.toPath(), new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20,
+            21, 22, 23, 24});
+        VariableUsageIndex.map(file);
+    }
+
+}